@@ -69,6 +69,10 @@ import org.slf4j.LoggerFactory;
  * <li> [prefix]Driver.StaleTimeout - How long an idle connection should be
  *      retained in the pool (assuming the pool size is above minimum) in ms.
  *      Default is 3600000, or 1 hour.
+ * <li> [prefix]Driver.StatementCacheSize - How many prepared statements to
+ *      retain per connection for reuse by the fixed queries of EntityGroup
+ *      (see ConnectionMonitor.prepareStatement).  Zero disables the cache.
+ *      Default is 0. </li>
  * <li> [prefix]QueryCounting - Yes or No, count the number of queries
  *      executed (actually the number of Connector objects constructed;
  *      reusing a Connector is not counted.)  Default is no. </li>
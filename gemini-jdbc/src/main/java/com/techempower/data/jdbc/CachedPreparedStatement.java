@@ -0,0 +1,880 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.data.jdbc;
+
+import java.io.*;
+import java.math.*;
+import java.net.*;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Mostly a pass-through to a real prepared statement, except for close() 
+ * and isClosed(): closing returns the statement to the StatementCache from
+ * which it was obtained rather than closing it, so that it may be reused by
+ * a later call to prepare the same SQL on the same Connection.  Closing
+ * also closes the ResultSets obtained from this statement.
+ *   <p>
+ * Each checkout from the cache gets its own CachedPreparedStatement, so a
+ * closed instance stays closed, and throws SQLException if used, even after
+ * the real statement has been handed to another client.  A statement for 
+ * which closeOnCompletion() has been requested is not returned to the 
+ * cache, since the driver may close it while it is idle.
+ */
+class CachedPreparedStatement
+    implements PreparedStatement
+{
+  private final StatementCache cache;
+  private final StatementCache.Key key;
+  private final PreparedStatement statement;
+  private final int initialMaxRows;
+  private final int initialFetchSize;
+  private final int initialQueryTimeout;
+  private final List<ResultSet> results = new ArrayList<>(1);
+  private volatile boolean closed;
+  private volatile boolean cacheable = true;
+
+  /**
+   * Constructor.  The statement's limits are recorded as prepared, so that
+   * they can be restored before the statement is reused.
+   */
+  CachedPreparedStatement(StatementCache cache, StatementCache.Key key, 
+      PreparedStatement statement) throws SQLException
+  {
+    this(cache, key, statement, statement.getMaxRows(), 
+        statement.getFetchSize(), statement.getQueryTimeout());
+  }
+
+  /**
+   * Constructor.
+   */
+  private CachedPreparedStatement(StatementCache cache, 
+      StatementCache.Key key, PreparedStatement statement, 
+      int initialMaxRows, int initialFetchSize, int initialQueryTimeout)
+  {
+    this.cache = cache;
+    this.key = key;
+    this.statement = statement;
+    this.initialMaxRows = initialMaxRows;
+    this.initialFetchSize = initialFetchSize;
+    this.initialQueryTimeout = initialQueryTimeout;
+  }
+
+  /**
+   * Gets the key under which this statement is cached.
+   */
+  StatementCache.Key getKey()
+  {
+    return key;
+  }
+
+  /**
+   * Gets the real statement.
+   */
+  PreparedStatement getStatement()
+  {
+    return statement;
+  }
+
+  /**
+   * Restores any limits a client changed to their values as prepared, so
+   * that the next client to take this statement is not affected by them.
+   */
+  void resetLimits() throws SQLException
+  {
+    if (statement.getMaxRows() != initialMaxRows)
+    {
+      statement.setMaxRows(initialMaxRows);
+    }
+    if (statement.getFetchSize() != initialFetchSize)
+    {
+      statement.setFetchSize(initialFetchSize);
+    }
+    if (statement.getQueryTimeout() != initialQueryTimeout)
+    {
+      statement.setQueryTimeout(initialQueryTimeout);
+    }
+  }
+
+  /**
+   * Whether this statement may be returned to the cache when closed.
+   */
+  boolean isCacheable()
+  {
+    return cacheable;
+  }
+
+  /**
+   * Closes the ResultSets obtained from this statement, as well as the 
+   * statement's current ResultSet, if any.
+   */
+  void closeResults() throws SQLException
+  {
+    for (ResultSet resultSet : results)
+    {
+      resultSet.close();
+    }
+    results.clear();
+    final ResultSet current = statement.getResultSet();
+    if (current != null)
+    {
+      current.close();
+    }
+  }
+
+  /**
+   * Gets a new, open, instance wrapping the same statement, to hand to the 
+   * next client to take the statement from the cache.
+   */
+  CachedPreparedStatement reopen()
+  {
+    return new CachedPreparedStatement(cache, key, statement, 
+        initialMaxRows, initialFetchSize, initialQueryTimeout);
+  }
+
+  /**
+   * Gets the real statement for use by the client, unless this instance
+   * has been closed.
+   */
+  private PreparedStatement open() throws SQLException
+  {
+    if (closed)
+    {
+      throw new SQLException("Statement is closed.");
+    }
+    return statement;
+  }
+
+  /**
+   * Records a ResultSet obtained from the statement, so that it can be
+   * closed along with this statement.
+   */
+  private ResultSet track(ResultSet resultSet)
+  {
+    if (resultSet != null)
+    {
+      results.add(resultSet);
+    }
+    return resultSet;
+  }
+
+  @Override
+  public void close() throws SQLException
+  {
+    if (!closed)
+    {
+      closed = true;
+      cache.release(this);
+    }
+  }
+
+  @Override
+  public boolean isClosed() throws SQLException
+  {
+    return closed || statement.isClosed();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException
+  {
+    return iface.isInstance(open()) 
+        ? (T)open() 
+        : open().unwrap(iface);
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException
+  {
+    return iface.isInstance(open()) || open().isWrapperFor(iface);
+  }
+
+  @Override
+  public boolean execute() throws SQLException
+  {
+    return open().execute();
+  }
+
+  @Override
+  public boolean execute(String sql) throws SQLException
+  {
+    return open().execute(sql);
+  }
+
+  @Override
+  public boolean execute(String sql, int autoGeneratedKeys) throws SQLException
+  {
+    return open().execute(sql, autoGeneratedKeys);
+  }
+
+  @Override
+  public boolean execute(String sql, int[] columnIndexes) throws SQLException
+  {
+    return open().execute(sql, columnIndexes);
+  }
+
+  @Override
+  public boolean execute(String sql, String[] columnNames) throws SQLException
+  {
+    return open().execute(sql, columnNames);
+  }
+
+  @Override
+  public boolean getMoreResults() throws SQLException
+  {
+    return open().getMoreResults();
+  }
+
+  @Override
+  public boolean getMoreResults(int current) throws SQLException
+  {
+    return open().getMoreResults(current);
+  }
+
+  @Override
+  public boolean isCloseOnCompletion() throws SQLException
+  {
+    return open().isCloseOnCompletion();
+  }
+
+  @Override
+  public boolean isPoolable() throws SQLException
+  {
+    return open().isPoolable();
+  }
+
+  @Override
+  public int executeUpdate() throws SQLException
+  {
+    return open().executeUpdate();
+  }
+
+  @Override
+  public int executeUpdate(String sql) throws SQLException
+  {
+    return open().executeUpdate(sql);
+  }
+
+  @Override
+  public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException
+  {
+    return open().executeUpdate(sql, autoGeneratedKeys);
+  }
+
+  @Override
+  public int executeUpdate(String sql, int[] columnIndexes) throws SQLException
+  {
+    return open().executeUpdate(sql, columnIndexes);
+  }
+
+  @Override
+  public int executeUpdate(String sql, String[] columnNames) throws SQLException
+  {
+    return open().executeUpdate(sql, columnNames);
+  }
+
+  @Override
+  public int getFetchDirection() throws SQLException
+  {
+    return open().getFetchDirection();
+  }
+
+  @Override
+  public int getFetchSize() throws SQLException
+  {
+    return open().getFetchSize();
+  }
+
+  @Override
+  public int getMaxFieldSize() throws SQLException
+  {
+    return open().getMaxFieldSize();
+  }
+
+  @Override
+  public int getMaxRows() throws SQLException
+  {
+    return open().getMaxRows();
+  }
+
+  @Override
+  public int getQueryTimeout() throws SQLException
+  {
+    return open().getQueryTimeout();
+  }
+
+  @Override
+  public int getResultSetConcurrency() throws SQLException
+  {
+    return open().getResultSetConcurrency();
+  }
+
+  @Override
+  public int getResultSetHoldability() throws SQLException
+  {
+    return open().getResultSetHoldability();
+  }
+
+  @Override
+  public int getResultSetType() throws SQLException
+  {
+    return open().getResultSetType();
+  }
+
+  @Override
+  public int getUpdateCount() throws SQLException
+  {
+    return open().getUpdateCount();
+  }
+
+  @Override
+  public int[] executeBatch() throws SQLException
+  {
+    return open().executeBatch();
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException
+  {
+    return open().getConnection();
+  }
+
+  @Override
+  public ParameterMetaData getParameterMetaData() throws SQLException
+  {
+    return open().getParameterMetaData();
+  }
+
+  @Override
+  public ResultSet executeQuery() throws SQLException
+  {
+    return track(open().executeQuery());
+  }
+
+  @Override
+  public ResultSet executeQuery(String sql) throws SQLException
+  {
+    return track(open().executeQuery(sql));
+  }
+
+  @Override
+  public ResultSet getGeneratedKeys() throws SQLException
+  {
+    return track(open().getGeneratedKeys());
+  }
+
+  @Override
+  public ResultSet getResultSet() throws SQLException
+  {
+    return track(open().getResultSet());
+  }
+
+  @Override
+  public ResultSetMetaData getMetaData() throws SQLException
+  {
+    return open().getMetaData();
+  }
+
+  @Override
+  public SQLWarning getWarnings() throws SQLException
+  {
+    return open().getWarnings();
+  }
+
+  @Override
+  public void addBatch() throws SQLException
+  {
+    open().addBatch();
+  }
+
+  @Override
+  public void addBatch(String sql) throws SQLException
+  {
+    open().addBatch(sql);
+  }
+
+  @Override
+  public void cancel() throws SQLException
+  {
+    open().cancel();
+  }
+
+  @Override
+  public void clearBatch() throws SQLException
+  {
+    open().clearBatch();
+  }
+
+  @Override
+  public void clearParameters() throws SQLException
+  {
+    open().clearParameters();
+  }
+
+  @Override
+  public void clearWarnings() throws SQLException
+  {
+    open().clearWarnings();
+  }
+
+  @Override
+  public void closeOnCompletion() throws SQLException
+  {
+    open().closeOnCompletion();
+    cacheable = false;
+  }
+
+  @Override
+  public void setArray(int parameterIndex, Array x) throws SQLException
+  {
+    open().setArray(parameterIndex, x);
+  }
+
+  @Override
+  public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException
+  {
+    open().setAsciiStream(parameterIndex, x);
+  }
+
+  @Override
+  public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException
+  {
+    open().setAsciiStream(parameterIndex, x, length);
+  }
+
+  @Override
+  public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException
+  {
+    open().setAsciiStream(parameterIndex, x, length);
+  }
+
+  @Override
+  public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException
+  {
+    open().setBigDecimal(parameterIndex, x);
+  }
+
+  @Override
+  public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException
+  {
+    open().setBinaryStream(parameterIndex, x);
+  }
+
+  @Override
+  public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException
+  {
+    open().setBinaryStream(parameterIndex, x, length);
+  }
+
+  @Override
+  public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException
+  {
+    open().setBinaryStream(parameterIndex, x, length);
+  }
+
+  @Override
+  public void setBlob(int parameterIndex, InputStream x) throws SQLException
+  {
+    open().setBlob(parameterIndex, x);
+  }
+
+  @Override
+  public void setBlob(int parameterIndex, InputStream x, long length) throws SQLException
+  {
+    open().setBlob(parameterIndex, x, length);
+  }
+
+  @Override
+  public void setBlob(int parameterIndex, Blob x) throws SQLException
+  {
+    open().setBlob(parameterIndex, x);
+  }
+
+  @Override
+  public void setBoolean(int parameterIndex, boolean x) throws SQLException
+  {
+    open().setBoolean(parameterIndex, x);
+  }
+
+  @Override
+  public void setByte(int parameterIndex, byte x) throws SQLException
+  {
+    open().setByte(parameterIndex, x);
+  }
+
+  @Override
+  public void setBytes(int parameterIndex, byte[] x) throws SQLException
+  {
+    open().setBytes(parameterIndex, x);
+  }
+
+  @Override
+  public void setCharacterStream(int parameterIndex, Reader x) throws SQLException
+  {
+    open().setCharacterStream(parameterIndex, x);
+  }
+
+  @Override
+  public void setCharacterStream(int parameterIndex, Reader x, int length) throws SQLException
+  {
+    open().setCharacterStream(parameterIndex, x, length);
+  }
+
+  @Override
+  public void setCharacterStream(int parameterIndex, Reader x, long length) throws SQLException
+  {
+    open().setCharacterStream(parameterIndex, x, length);
+  }
+
+  @Override
+  public void setClob(int parameterIndex, Reader x) throws SQLException
+  {
+    open().setClob(parameterIndex, x);
+  }
+
+  @Override
+  public void setClob(int parameterIndex, Reader x, long length) throws SQLException
+  {
+    open().setClob(parameterIndex, x, length);
+  }
+
+  @Override
+  public void setClob(int parameterIndex, Clob x) throws SQLException
+  {
+    open().setClob(parameterIndex, x);
+  }
+
+  @Override
+  public void setCursorName(String name) throws SQLException
+  {
+    open().setCursorName(name);
+  }
+
+  @Override
+  public void setDate(int parameterIndex, Date x) throws SQLException
+  {
+    open().setDate(parameterIndex, x);
+  }
+
+  @Override
+  public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException
+  {
+    open().setDate(parameterIndex, x, cal);
+  }
+
+  @Override
+  public void setDouble(int parameterIndex, double x) throws SQLException
+  {
+    open().setDouble(parameterIndex, x);
+  }
+
+  @Override
+  public void setEscapeProcessing(boolean enable) throws SQLException
+  {
+    open().setEscapeProcessing(enable);
+  }
+
+  @Override
+  public void setFetchDirection(int direction) throws SQLException
+  {
+    open().setFetchDirection(direction);
+  }
+
+  @Override
+  public void setFetchSize(int rows) throws SQLException
+  {
+    open().setFetchSize(rows);
+  }
+
+  @Override
+  public void setFloat(int parameterIndex, float x) throws SQLException
+  {
+    open().setFloat(parameterIndex, x);
+  }
+
+  @Override
+  public void setInt(int parameterIndex, int x) throws SQLException
+  {
+    open().setInt(parameterIndex, x);
+  }
+
+  @Override
+  public void setLong(int parameterIndex, long x) throws SQLException
+  {
+    open().setLong(parameterIndex, x);
+  }
+
+  @Override
+  public void setMaxFieldSize(int max) throws SQLException
+  {
+    open().setMaxFieldSize(max);
+  }
+
+  @Override
+  public void setMaxRows(int max) throws SQLException
+  {
+    open().setMaxRows(max);
+  }
+
+  @Override
+  public void setNCharacterStream(int parameterIndex, Reader x) throws SQLException
+  {
+    open().setNCharacterStream(parameterIndex, x);
+  }
+
+  @Override
+  public void setNCharacterStream(int parameterIndex, Reader x, long length) throws SQLException
+  {
+    open().setNCharacterStream(parameterIndex, x, length);
+  }
+
+  @Override
+  public void setNClob(int parameterIndex, Reader x) throws SQLException
+  {
+    open().setNClob(parameterIndex, x);
+  }
+
+  @Override
+  public void setNClob(int parameterIndex, Reader x, long length) throws SQLException
+  {
+    open().setNClob(parameterIndex, x, length);
+  }
+
+  @Override
+  public void setNClob(int parameterIndex, NClob x) throws SQLException
+  {
+    open().setNClob(parameterIndex, x);
+  }
+
+  @Override
+  public void setNString(int parameterIndex, String x) throws SQLException
+  {
+    open().setNString(parameterIndex, x);
+  }
+
+  @Override
+  public void setNull(int parameterIndex, int sqlType) throws SQLException
+  {
+    open().setNull(parameterIndex, sqlType);
+  }
+
+  @Override
+  public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException
+  {
+    open().setNull(parameterIndex, sqlType, typeName);
+  }
+
+  @Override
+  public void setObject(int parameterIndex, Object x) throws SQLException
+  {
+    open().setObject(parameterIndex, x);
+  }
+
+  @Override
+  public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException
+  {
+    open().setObject(parameterIndex, x, targetSqlType);
+  }
+
+  @Override
+  public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException
+  {
+    open().setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+  }
+
+  @Override
+  public void setPoolable(boolean poolable) throws SQLException
+  {
+    open().setPoolable(poolable);
+  }
+
+  @Override
+  public void setQueryTimeout(int seconds) throws SQLException
+  {
+    open().setQueryTimeout(seconds);
+  }
+
+  @Override
+  public void setRef(int parameterIndex, Ref x) throws SQLException
+  {
+    open().setRef(parameterIndex, x);
+  }
+
+  @Override
+  public void setRowId(int parameterIndex, RowId x) throws SQLException
+  {
+    open().setRowId(parameterIndex, x);
+  }
+
+  @Override
+  public void setSQLXML(int parameterIndex, SQLXML x) throws SQLException
+  {
+    open().setSQLXML(parameterIndex, x);
+  }
+
+  @Override
+  public void setShort(int parameterIndex, short x) throws SQLException
+  {
+    open().setShort(parameterIndex, x);
+  }
+
+  @Override
+  public void setString(int parameterIndex, String x) throws SQLException
+  {
+    open().setString(parameterIndex, x);
+  }
+
+  @Override
+  public void setTime(int parameterIndex, Time x) throws SQLException
+  {
+    open().setTime(parameterIndex, x);
+  }
+
+  @Override
+  public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException
+  {
+    open().setTime(parameterIndex, x, cal);
+  }
+
+  @Override
+  public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException
+  {
+    open().setTimestamp(parameterIndex, x);
+  }
+
+  @Override
+  public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException
+  {
+    open().setTimestamp(parameterIndex, x, cal);
+  }
+
+  @Override
+  public void setURL(int parameterIndex, URL x) throws SQLException
+  {
+    open().setURL(parameterIndex, x);
+  }
+
+  @Override
+  public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException
+  {
+    open().setUnicodeStream(parameterIndex, x, length);
+  }
+
+  @Override
+  public boolean isSimpleIdentifier(String identifier) throws SQLException
+  {
+    return open().isSimpleIdentifier(identifier);
+  }
+
+  @Override
+  public String enquoteIdentifier(String identifier, boolean alwaysQuote) throws SQLException
+  {
+    return open().enquoteIdentifier(identifier, alwaysQuote);
+  }
+
+  @Override
+  public String enquoteLiteral(String val) throws SQLException
+  {
+    return open().enquoteLiteral(val);
+  }
+
+  @Override
+  public String enquoteNCharLiteral(String val) throws SQLException
+  {
+    return open().enquoteNCharLiteral(val);
+  }
+
+  @Override
+  public long executeLargeUpdate() throws SQLException
+  {
+    return open().executeLargeUpdate();
+  }
+
+  @Override
+  public long executeLargeUpdate(String sql) throws SQLException
+  {
+    return open().executeLargeUpdate(sql);
+  }
+
+  @Override
+  public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException
+  {
+    return open().executeLargeUpdate(sql, autoGeneratedKeys);
+  }
+
+  @Override
+  public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException
+  {
+    return open().executeLargeUpdate(sql, columnIndexes);
+  }
+
+  @Override
+  public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException
+  {
+    return open().executeLargeUpdate(sql, columnNames);
+  }
+
+  @Override
+  public long getLargeMaxRows() throws SQLException
+  {
+    return open().getLargeMaxRows();
+  }
+
+  @Override
+  public long getLargeUpdateCount() throws SQLException
+  {
+    return open().getLargeUpdateCount();
+  }
+
+  @Override
+  public long[] executeLargeBatch() throws SQLException
+  {
+    return open().executeLargeBatch();
+  }
+
+  @Override
+  public void setLargeMaxRows(long max) throws SQLException
+  {
+    open().setLargeMaxRows(max);
+  }
+
+  @Override
+  public void setObject(int parameterIndex, Object x, SQLType targetSqlType) throws SQLException
+  {
+    open().setObject(parameterIndex, x, targetSqlType);
+  }
+
+  @Override
+  public void setObject(int parameterIndex, Object x, SQLType targetSqlType, int scaleOrLength) throws SQLException
+  {
+    open().setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+  }
+
+}  // End CachedPreparedStatement.
@@ -60,6 +60,7 @@ class JdbcConnectionAttributes
   public static final long    MINIMUM_TEST_INTERVAL = UtilityConstants.MINUTE;
   public static final long    DEFAULT_STALE_TIMEOUT = 10 * UtilityConstants.MINUTE;
   public static final long    DEFAULT_ABORT_TIMEOUT = UtilityConstants.HOUR;
+  public static final int     DEFAULT_STATEMENT_CACHE_SIZE = 0;
  
   //
   // Member variables.
@@ -83,6 +84,7 @@ class JdbcConnectionAttributes
   
   private final long                       staleTimeout;
   private final long                       abortTimeout;
+  private final int                        statementCacheSize;
   
   private final DatabaseConnectionListener listener;
   
@@ -119,6 +121,8 @@ class JdbcConnectionAttributes
         MINIMUM_TEST_INTERVAL, MAXIMUM_TEST_INTERVAL);
     this.staleTimeout = focus.getLong("Driver.StaleTimeout", DEFAULT_STALE_TIMEOUT);
     this.abortTimeout = focus.getLong("Driver.AbortTimeout", DEFAULT_ABORT_TIMEOUT);
+    this.statementCacheSize = focus.getInt("Driver.StatementCacheSize", 
+        DEFAULT_STATEMENT_CACHE_SIZE, 0, Integer.MAX_VALUE);
     this.listener = listener;
     
     // Load driver
@@ -246,6 +250,14 @@ class JdbcConnectionAttributes
     return this.abortTimeout;
   }
 
+  /**
+   * Gets the number of prepared statements to retain per connection.
+   */
+  public int getStatementCacheSize()
+  {
+    return this.statementCacheSize;
+  }
+
   /**
    * Gets the display name.
    */
@@ -83,6 +83,13 @@ public class JdbcConnectionProfile
    */
   private int connectCount = 0;
 
+  /**
+   * Number of prepared statements reused from and added to the statement 
+   * cache (historical).
+   */
+  private final AtomicLong statementCacheHits = new AtomicLong();
+  private final AtomicLong statementCacheMisses = new AtomicLong();
+
   /**
    * Last used time stamp.
    */
@@ -103,6 +110,12 @@ public class JdbcConnectionProfile
    */
   private volatile ConnectionWrapper connection;
   
+  /**
+   * The prepared statements of the current connection, or null if the
+   * statement cache is disabled or there is no connection.
+   */
+  private volatile StatementCache statementCache;
+  
   /**
    * Should the Connection be closed immediately once the client releases this
    * Profile?
@@ -178,6 +191,9 @@ public class JdbcConnectionProfile
           
           connection = new ConnectionWrapper(this, DriverManager.getConnection(connectionUrl,
             attributes.getUsername(), attributes.getPassword()));
+          statementCache = attributes.getStatementCacheSize() > 0
+              ? new StatementCache(attributes.getStatementCacheSize())
+              : null;
         }
         catch (SQLException sqlexc)
         {
@@ -491,9 +507,62 @@ public class JdbcConnectionProfile
       }
       
       connection = null;
+      
+      // Statements belong to the closed connection, so any that are still
+      // in use must not be returned to a cache.
+      if (statementCache != null)
+      {
+        statementCache.invalidate();
+        statementCache = null;
+      }
     }
   }
 
+  /**
+   * Prepares a statement on the current Connection, reusing an idle
+   * statement for the same SQL if the statement cache is enabled.
+   */
+  protected PreparedStatement prepareStatement(String sql, 
+      int autoGeneratedKeys) throws SQLException
+  {
+    final Connection connect = getConnection();
+    final StatementCache cache = statementCache;
+    if (cache == null)
+    {
+      return connect.prepareStatement(sql, autoGeneratedKeys);
+    }
+    
+    final PreparedStatement cached = cache.take(sql, autoGeneratedKeys);
+    if (cached != null)
+    {
+      statementCacheHits.incrementAndGet();
+      return cached;
+    }
+    
+    statementCacheMisses.incrementAndGet();
+    return cache.wrap(sql, autoGeneratedKeys, 
+        (autoGeneratedKeys == Statement.NO_GENERATED_KEYS)
+            ? connect.prepareStatement(sql)
+            : connect.prepareStatement(sql, autoGeneratedKeys));
+  }
+
+  /**
+   * Gets the number of prepared statements reused from the statement cache.
+   */
+  public long getStatementCacheHits()
+  {
+    return statementCacheHits.get();
+  }
+
+  /**
+   * Gets the number of prepared statements that were not available in the
+   * statement cache and were prepared anew.
+   */
+  public long getStatementCacheMisses()
+  {
+    return statementCacheMisses.get();
+  }
+
   private String logPrefix() {
     return "[c" + getId() + ";t" + reservedForThread.get() + "] ";
   }
@@ -558,6 +627,8 @@ public class JdbcConnectionProfile
         + "; uses: " + this.useCount 
         + "; connections: " + this.connectCount 
         + "; closes: " + this.closeCount 
+        + "; statements: " + this.statementCacheHits + " hits/" 
+            + this.statementCacheMisses + " misses"
         + (this.lastUsed > 0 ? "; last used " + DateHelper.getHumanDifference(this.lastUsed, 2) + " ago" : "")
         + "]";
   }
@@ -609,6 +680,33 @@ public class JdbcConnectionProfile
       JdbcConnectionProfile.this.close();
     }
 
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException
+    {
+      return JdbcConnectionProfile.this.prepareStatement(sql, 
+          Statement.NO_GENERATED_KEYS);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys)
+        throws SQLException
+    {
+      return JdbcConnectionProfile.this.prepareStatement(sql, 
+          autoGeneratedKeys);
+    }
+
+    @Override
+    public long getStatementCacheHits()
+    {
+      return JdbcConnectionProfile.this.getStatementCacheHits();
+    }
+
+    @Override
+    public long getStatementCacheMisses()
+    {
+      return JdbcConnectionProfile.this.getStatementCacheMisses();
+    }
+
     @Override
     public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException
     {
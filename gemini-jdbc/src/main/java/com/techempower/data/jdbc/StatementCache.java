@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.data.jdbc;
+
+import java.util.*;
+import java.sql.*;
+
+/**
+ * A bounded cache of the prepared statements of a single Connection, used by
+ * JdbcConnectionProfile.  Statements are checked out of the cache by take()
+ * and returned when the client closes them; a statement for SQL that is
+ * already checked out is prepared anew and, when closed, is kept only if no
+ * other statement for the same SQL is idle.  The least-recently used idle 
+ * statements are closed once the cache exceeds its capacity.
+ *   <p>
+ * When the Connection is closed, the cache is invalidated so that any
+ * statements still checked out are closed rather than cached.  Idle
+ * statements that the driver has closed in the meantime are discarded 
+ * rather than handed out.
+ */
+class StatementCache
+{
+
+  //
+  // Member variables.
+  //
+
+  private final int capacity;
+  private final LinkedHashMap<Key, CachedPreparedStatement> idle;
+  private boolean valid = true;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   * 
+   * @param capacity The maximum number of idle statements to retain.
+   */
+  StatementCache(int capacity)
+  {
+    this.capacity = capacity;
+    this.idle = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * Checks out an idle statement for the provided SQL, or returns null if
+   * there is none.
+   */
+  synchronized PreparedStatement take(String sql, int autoGeneratedKeys)
+  {
+    final CachedPreparedStatement statement = idle.remove(
+        new Key(sql, autoGeneratedKeys));
+    if (statement == null)
+    {
+      return null;
+    }
+    try
+    {
+      if (statement.getStatement().isClosed())
+      {
+        return null;
+      }
+    }
+    catch (SQLException sqlexc)
+    {
+      return null;
+    }
+    return statement.reopen();
+  }
+
+  /**
+   * Wraps a newly-prepared statement such that closing it returns it to 
+   * this cache.
+   */
+  PreparedStatement wrap(String sql, int autoGeneratedKeys, 
+      PreparedStatement statement) throws SQLException
+  {
+    try
+    {
+      return new CachedPreparedStatement(this, 
+          new Key(sql, autoGeneratedKeys), statement);
+    }
+    catch (SQLException sqlexc)
+    {
+      statement.close();
+      throw sqlexc;
+    }
+  }
+
+  /**
+   * Called when a client closes a statement; closes the statement's 
+   * ResultSets, clears its parameters, restores its maximum rows, fetch size
+   * and query timeout, and retains it as idle, or closes it if it cannot be
+   * retained.
+   */
+  void release(CachedPreparedStatement statement) throws SQLException
+  {
+    boolean retain;
+    synchronized (this)
+    {
+      retain = valid && statement.isCacheable()
+          && !idle.containsKey(statement.getKey());
+    }
+    if (retain)
+    {
+      try
+      {
+        statement.closeResults();
+        statement.getStatement().clearParameters();
+        statement.getStatement().clearBatch();
+        statement.getStatement().clearWarnings();
+        statement.resetLimits();
+      }
+      catch (SQLException sqlexc)
+      {
+        retain = false;
+      }
+    }
+    
+    CachedPreparedStatement evicted = null;
+    if (retain)
+    {
+      synchronized (this)
+      {
+        if (valid && !idle.containsKey(statement.getKey()))
+        {
+          idle.put(statement.getKey(), statement);
+          if (idle.size() > capacity)
+          {
+            final Iterator<CachedPreparedStatement> iterator = 
+                idle.values().iterator();
+            evicted = iterator.next();
+            iterator.remove();
+          }
+        }
+        else
+        {
+          retain = false;
+        }
+      }
+    }
+    
+    if (!retain)
+    {
+      statement.getStatement().close();
+    }
+    if (evicted != null)
+    {
+      evicted.getStatement().close();
+    }
+  }
+
+  /**
+   * Invalidates this cache once its Connection has been closed.  The idle
+   * statements are discarded without being individually closed, since 
+   * closing the Connection releases them.
+   */
+  synchronized void invalidate()
+  {
+    valid = false;
+    idle.clear();
+  }
+
+  /**
+   * Gets the number of idle statements.
+   */
+  synchronized int size()
+  {
+    return idle.size();
+  }
+
+  //
+  // Inner classes.
+  //
+
+  /**
+   * Identifies a statement by its SQL and whether it returns generated 
+   * keys.
+   */
+  static final class Key
+  {
+    private final String sql;
+    private final int autoGeneratedKeys;
+
+    Key(String sql, int autoGeneratedKeys)
+    {
+      this.sql = sql;
+      this.autoGeneratedKeys = autoGeneratedKeys;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      if (o instanceof Key)
+      {
+        final Key other = (Key)o;
+        return autoGeneratedKeys == other.autoGeneratedKeys
+            && sql.equals(other.sql);
+      }
+      return false;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return 31 * sql.hashCode() + autoGeneratedKeys;
+    }
+  }
+
+}  // End StatementCache.
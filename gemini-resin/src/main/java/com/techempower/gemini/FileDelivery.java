@@ -0,0 +1,463 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+import javax.servlet.http.*;
+
+import com.caucho.server.http.CauchoResponse;
+import com.caucho.vfs.Vfs;
+import com.techempower.helper.*;
+import com.techempower.util.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes files to HTTP responses for HttpRequest.includeFile.  Supports
+ * conditional GETs (If-None-Match and If-Modified-Since against an ETag
+ * derived from the file's length and modification time), single byte-range
+ * requests (Range and If-Range), and HEAD requests.
+ *   <p>
+ * File contents are sent with Resin's sendfile support when the response is
+ * Resin's own, and otherwise with FileChannel.transferTo to the servlet
+ * output stream.  Small files are cached in direct (off-heap) buffers, 
+ * bounded by total size and evicted least-recently-used first; a cached 
+ * file is reloaded when its length or modification time changes.
+ *   <p>
+ * Reads the following configuration options from the .conf file:
+ *   <ul>
+ * <li>FileDelivery.CacheSize - The total number of bytes of small files to
+ *     cache, or 0 to disable the cache.  Default is 16 MiB.</li>
+ * <li>FileDelivery.CacheFileSize - The size of the largest file to cache.
+ *     Default is 64 KiB.</li>
+ * <li>FileDelivery.Sendfile - Use Resin's sendfile support when available?
+ *     Default is yes.</li>
+ *   </ul>
+ */
+public class FileDelivery
+  implements Configurable
+{
+
+  //
+  // Constants.
+  //
+
+  public static final long   DEFAULT_CACHE_SIZE = 16 * 1024 * 1024;
+  public static final long   DEFAULT_CACHE_FILE_SIZE = 64 * 1024;
+  
+  private static final long[] UNSATISFIABLE = new long[0];
+  private static final String RANGE_PREFIX = "bytes=";
+
+  //
+  // Member variables.
+  //
+
+  private final Logger                    log = LoggerFactory.getLogger(getClass());
+  private final Map<String, CachedFile>   cache = new LinkedHashMap<>(16, 0.75f, true);
+  private long                            cachedBytes = 0;
+  private volatile long                   cacheSize = DEFAULT_CACHE_SIZE;
+  private volatile long                   cacheFileSize = DEFAULT_CACHE_FILE_SIZE;
+  private volatile boolean                sendfile = true;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   */
+  public FileDelivery(GeminiApplication application)
+  {
+    application.getConfigurator().addConfigurable(this);
+  }
+
+  /**
+   * Constructor for use without an application; uses the default
+   * configuration.
+   */
+  public FileDelivery()
+  {
+  }
+
+  @Override
+  public void configure(EnhancedProperties props)
+  {
+    final EnhancedProperties.Focus focus = props.focus("FileDelivery.");
+    cacheSize = focus.getLong("CacheSize", DEFAULT_CACHE_SIZE, 0L, Long.MAX_VALUE);
+    cacheFileSize = focus.getLong("CacheFileSize", DEFAULT_CACHE_FILE_SIZE, 
+        0L, Integer.MAX_VALUE);
+    sendfile = focus.getBoolean("Sendfile", true);
+    
+    synchronized (cache)
+    {
+      cache.clear();
+      cachedBytes = 0;
+    }
+  }
+
+  /**
+   * Writes a file to a response, setting the status and the ETag, 
+   * Last-Modified, Accept-Ranges, Content-Length, and Content-Range headers
+   * as applicable.  Content-Type and Content-Disposition are left to the 
+   * caller.
+   * 
+   * @throws FileNotFoundException if the file does not exist.
+   * @throws IOException if the file cannot be read or the response cannot 
+   *         be written.
+   */
+  public void deliver(HttpServletRequest request, HttpServletResponse response,
+      File file) throws IOException
+  {
+    if (!file.isFile())
+    {
+      throw new FileNotFoundException(file.getPath());
+    }
+    final long length = file.length();
+    final long lastModified = file.lastModified();
+    final String etag = "\"" + Long.toHexString(length) + "-" 
+        + Long.toHexString(lastModified) + "\"";
+    
+    response.setHeader("ETag", etag);
+    response.setDateHeader("Last-Modified", lastModified);
+    response.setHeader("Accept-Ranges", "bytes");
+    
+    if (isNotModified(request, etag, lastModified))
+    {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+    
+    long start = 0;
+    long count = length;
+    final String range = request.getHeader("Range");
+    if (range != null && isRangeCurrent(request, etag, lastModified))
+    {
+      final long[] bounds = parseRange(range, length);
+      if (bounds == UNSATISFIABLE)
+      {
+        response.setHeader("Content-Range", "bytes */" + length);
+        response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        return;
+      }
+      else if (bounds != null)
+      {
+        start = bounds[0];
+        count = bounds[1] - bounds[0] + 1;
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setHeader("Content-Range", 
+            "bytes " + bounds[0] + "-" + bounds[1] + "/" + length);
+      }
+    }
+    
+    if (count <= Integer.MAX_VALUE)
+    {
+      response.setContentLength((int)count);
+    }
+    else
+    {
+      response.setHeader("Content-Length", Long.toString(count));
+    }
+    if (count == 0 || "HEAD".equalsIgnoreCase(request.getMethod()))
+    {
+      return;
+    }
+    
+    final ByteBuffer cached = getCachedContent(file, length, lastModified);
+    if (cached != null)
+    {
+      cached.position((int)start).limit((int)(start + count));
+      final WritableByteChannel target = Channels.newChannel(
+          response.getOutputStream());
+      while (cached.hasRemaining())
+      {
+        target.write(cached);
+      }
+    }
+    else if (!sendfile || !sendfile(response, file, start, count))
+    {
+      transfer(file, start, count, response.getOutputStream());
+    }
+  }
+
+  /**
+   * Determines whether the client's copy of the file is current, per the
+   * If-None-Match header or, in its absence, If-Modified-Since.
+   */
+  protected boolean isNotModified(HttpServletRequest request, String etag, 
+      long lastModified)
+  {
+    final String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null)
+    {
+      for (String candidate : ifNoneMatch.split(","))
+      {
+        final String tag = candidate.trim();
+        if (tag.equals("*") 
+            || tag.equals(etag) 
+            || (tag.startsWith("W/") && tag.substring(2).equals(etag)))
+        {
+          return true;
+        }
+      }
+      return false;
+    }
+    
+    final long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+    return ifModifiedSince >= 0 
+        && lastModified / 1000 <= ifModifiedSince / 1000;
+  }
+
+  /**
+   * Determines whether a Range request should be honored, per the If-Range
+   * header if present.
+   */
+  protected boolean isRangeCurrent(HttpServletRequest request, String etag,
+      long lastModified)
+  {
+    final String ifRange = request.getHeader("If-Range");
+    if (ifRange == null)
+    {
+      return true;
+    }
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+    {
+      // Only a strong ETag comparison is permitted.
+      return ifRange.equals(etag);
+    }
+    final long date = getDateHeader(request, "If-Range");
+    return date >= 0 && date / 1000 == lastModified / 1000;
+  }
+
+  /**
+   * Parses a Range header specifying a single range of bytes, returning the
+   * first and last positions (inclusive), UNSATISFIABLE if the range lies 
+   * beyond the end of the file, or null if the header is malformed or 
+   * specifies multiple ranges, in which case the whole file is sent.
+   */
+  static long[] parseRange(String range, long length)
+  {
+    if (!range.startsWith(RANGE_PREFIX) || range.indexOf(',') >= 0)
+    {
+      return null;
+    }
+    final String spec = range.substring(RANGE_PREFIX.length()).trim();
+    final int dash = spec.indexOf('-');
+    if (dash < 0)
+    {
+      return null;
+    }
+    
+    final long first = NumberHelper.parseLong(spec.substring(0, dash).trim(), -1L);
+    final long last = NumberHelper.parseLong(spec.substring(dash + 1).trim(), -1L);
+    if (dash == 0)
+    {
+      // A suffix range: the final "last" bytes.
+      if (last < 0)
+      {
+        return null;
+      }
+      if (last == 0 || length == 0)
+      {
+        return UNSATISFIABLE;
+      }
+      return new long[] { Math.max(0, length - last), length - 1 };
+    }
+    if (first < 0 || (dash < spec.length() - 1 && last < first))
+    {
+      return null;
+    }
+    if (first >= length)
+    {
+      return UNSATISFIABLE;
+    }
+    return new long[] { first, 
+        (last < 0 || last >= length) ? length - 1 : last };
+  }
+
+  /**
+   * Gets a date header, or -1 if it is absent or malformed.
+   */
+  private static long getDateHeader(HttpServletRequest request, String name)
+  {
+    try
+    {
+      return request.getDateHeader(name);
+    }
+    catch (IllegalArgumentException iae)
+    {
+      return -1L;
+    }
+  }
+
+  /**
+   * Gets a read-only view of a small file's content from the cache, loading
+   * it if necessary, or returns null if the file is not to be cached.
+   */
+  private ByteBuffer getCachedContent(File file, long length, long lastModified)
+    throws IOException
+  {
+    if (length > cacheFileSize || length > cacheSize)
+    {
+      return null;
+    }
+    
+    final String key = file.getAbsolutePath();
+    synchronized (cache)
+    {
+      final CachedFile cached = cache.get(key);
+      if (cached != null 
+          && cached.length == length 
+          && cached.lastModified == lastModified)
+      {
+        return cached.content.duplicate();
+      }
+    }
+    
+    final ByteBuffer content = ByteBuffer.allocateDirect((int)length);
+    try (FileChannel channel = FileChannel.open(file.toPath(), 
+        StandardOpenOption.READ))
+    {
+      while (content.hasRemaining() && channel.read(content) >= 0)
+      {
+        // Read until full.
+      }
+    }
+    if (content.hasRemaining())
+    {
+      // The file was truncated while being read.
+      return null;
+    }
+    content.flip();
+    final ByteBuffer readOnly = content.asReadOnlyBuffer();
+    
+    synchronized (cache)
+    {
+      final CachedFile previous = cache.put(key, 
+          new CachedFile(readOnly, length, lastModified));
+      if (previous != null)
+      {
+        cachedBytes -= previous.length;
+      }
+      cachedBytes += length;
+      
+      final Iterator<CachedFile> iterator = cache.values().iterator();
+      while (cachedBytes > cacheSize && iterator.hasNext())
+      {
+        cachedBytes -= iterator.next().length;
+        iterator.remove();
+      }
+    }
+    return readOnly.duplicate();
+  }
+
+  /**
+   * Sends a region of a file using Resin's sendfile support, which avoids
+   * copying the file through the JVM where the platform allows.  Returns
+   * false if the response is not written directly by Resin.
+   */
+  private boolean sendfile(HttpServletResponse response, File file, 
+      long start, long count) throws IOException
+  {
+    HttpServletResponse unwrapped = response;
+    while (unwrapped instanceof HttpServletResponseWrapper)
+    {
+      if ((unwrapped instanceof BodyTransformingResponse)
+          && (((BodyTransformingResponse)unwrapped).isTransformingBody()))
+      {
+        // The file must pass through the wrapper, e.g., to be compressed.
+        return false;
+      }
+      unwrapped = (HttpServletResponse)((HttpServletResponseWrapper)unwrapped).getResponse();
+    }
+    if (unwrapped instanceof CauchoResponse)
+    {
+      final CauchoResponse cauchoResponse = (CauchoResponse)unwrapped;
+      if (cauchoResponse.isCauchoResponseStream())
+      {
+        cauchoResponse.getResponseStream().sendFile(
+            Vfs.lookup(file.getAbsolutePath()), start, count);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Copies a region of a file to an output stream with 
+   * FileChannel.transferTo.
+   */
+  private void transfer(File file, long start, long count, OutputStream out)
+    throws IOException
+  {
+    try (FileChannel channel = FileChannel.open(file.toPath(), 
+        StandardOpenOption.READ))
+    {
+      final WritableByteChannel target = Channels.newChannel(out);
+      long position = start;
+      long remaining = count;
+      while (remaining > 0)
+      {
+        final long transferred = channel.transferTo(position, remaining, target);
+        if (transferred <= 0)
+        {
+          log.info("File {} ended before {} bytes were sent.", file, count);
+          break;
+        }
+        position += transferred;
+        remaining -= transferred;
+      }
+    }
+  }
+
+  //
+  // Inner classes.
+  //
+
+  /**
+   * The content and metadata of a cached file.
+   */
+  private static final class CachedFile
+  {
+    private final ByteBuffer content;
+    private final long length;
+    private final long lastModified;
+
+    private CachedFile(ByteBuffer content, long length, long lastModified)
+    {
+      this.content = content;
+      this.length = length;
+      this.lastModified = lastModified;
+    }
+  }
+
+}  // End FileDelivery.
@@ -56,6 +56,8 @@ public class HttpRequest
   // Member variables.
   //
   
+  private static final FileDelivery DEFAULT_FILE_DELIVERY = new FileDelivery();
+
   private final GeminiApplication  application;
   private final Logger             log = LoggerFactory.getLogger(getClass());
   private final HttpServletRequest request;
@@ -576,6 +578,25 @@ public class HttpRequest
   @Override
   public void setCookie(String name, String value, String domain, String path,
       int age, boolean secure)
+  {
+    setCookie(name, value, domain, path, age, secure, false);
+  }
+  
+  /**
+   * Sends a cookie to the response.  Use an empty String for "path" to not 
+   * have a path parameter set for the cookie.
+   *
+   * @param name the cookie's name
+   * @param value the cookie's value
+   * @param domain the domain name for the cookie.
+   * @param path the server path to which the cookie applies.
+   * @param age the cookie's lifetime
+   * @param secure the cookie should only be used for HTTPS/SSL requests.
+   * @param httpOnly the cookie should not be exposed to client-side scripts.
+   */
+  @Override
+  public void setCookie(String name, String value, String domain, String path,
+      int age, boolean secure, boolean httpOnly)
   {
     //log.debug("Set a new cookie to value " + value);
     final javax.servlet.http.Cookie targetCookie = 
@@ -589,6 +610,7 @@ public class HttpRequest
       targetCookie.setPath(path);
     }
     targetCookie.setSecure(secure);
+    targetCookie.setHttpOnly(httpOnly);
     //if (secure) { this.log.debug("Cookie " + name + " set as secure.", LogLevel.DEBUG); }
     targetCookie.setMaxAge(age);
     response.addCookie(targetCookie);
@@ -966,7 +988,8 @@ public class HttpRequest
   
   /**
    * Writes a file to the response.  This method should be using similar to 
-   * "includeJSP" - at the end of a handler method.
+   * "includeJSP" - at the end of a handler method.  Conditional and range
+   * requests are honored; see FileDelivery.
    * 
    * @param file The file on disk.
    * @param fileName The file name to present with the response; does not have
@@ -1020,19 +1043,12 @@ public class HttpRequest
           "attachment; filename=\""  + fileName + "\"");
     }
     
-    byte[] buffer = new byte[4096];
-    try (
-        FileInputStream fis = new FileInputStream(file);
-        OutputStream os = getOutputStream();
-        )
+    final FileDelivery delivery = (this.application instanceof ResinGeminiApplication)
+        ? ((ResinGeminiApplication)this.application).getFileDelivery()
+        : DEFAULT_FILE_DELIVERY;
+    try
     {
-      // Write out the file.
-      int read;
-      while (fis.available() > 0)
-      {
-        read = fis.read(buffer);
-        os.write(buffer, 0, read);
-      }
+      delivery.deliver(this.request, this.response, file);
     }
     catch (IOException e)
     {
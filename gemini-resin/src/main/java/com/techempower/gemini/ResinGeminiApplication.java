@@ -77,6 +77,25 @@ public abstract class ResinGeminiApplication
   extends    GeminiApplication
 {
 
+  //
+  // Member variables.
+  //
+
+  private final FileDelivery fileDelivery;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   */
+  public ResinGeminiApplication()
+  {
+    super();
+    this.fileDelivery = constructFileDelivery();
+  }
+
   /**
    * Overload: Constructs a Dispatcher reference.  Overload to return a custom
    * object -or- to construct a basic Dispatcher and call addHandler as necessary
@@ -139,4 +158,20 @@ public abstract class ResinGeminiApplication
     return new ResinMustacheManager(this);
   }
 
+  /**
+   * Overload: Constructs the FileDelivery used by HttpRequest.includeFile.
+   */
+  protected FileDelivery constructFileDelivery()
+  {
+    return new FileDelivery(this);
+  }
+
+  /**
+   * Gets the FileDelivery used by HttpRequest.includeFile.
+   */
+  public FileDelivery getFileDelivery()
+  {
+    return this.fileDelivery;
+  }
+
 }  // End GeminiApplication.
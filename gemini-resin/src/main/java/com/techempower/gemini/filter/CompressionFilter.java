@@ -0,0 +1,359 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package com.techempower.gemini.filter;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import com.techempower.gemini.*;
+import com.techempower.gemini.monitor.*;
+import com.techempower.io.*;
+
+/**
+ * CompressionFilter compresses responses with gzip or deflate as negotiated
+ * by the request's Accept-Encoding header.  Map it ahead of the Gemini
+ * servlet to compress JSON, Mustache and included-file responses, and
+ * ahead of static content (such as the scripts and style-sheets referenced
+ * by ScriptsAndSheets) to serve precompressed files.
+ *   <p>
+ * Responses smaller than MinimumSize, or whose content type is not listed
+ * in CompressibleTypes (images, archives and the like are already
+ * compressed), are sent as-is.  Deflaters are pooled across requests.
+ *   <p>
+ * When Precompressed is enabled and a GET or HEAD request beneath one of
+ * the PrecompressedPaths maps to a file in the web application that has a
+ * ".gz" sibling at least as new as itself, the sibling is sent with 
+ * Content-Encoding gzip instead, so static assets compressed at build time
+ * cost nothing to compress per request.  Paths within WEB-INF and META-INF
+ * are never served this way.
+ *   <p>
+ * Compression time and bytes saved are reported to the application's
+ * GeminiMonitor.
+ *   <p>
+ * Initialization parameters:
+ * <ul>
+ * <li>MinimumSize - responses smaller than this many bytes are not 
+ *     compressed.  Default 1024.</li>
+ * <li>CompressionLevel - 1 (fastest) to 9 (smallest).  Default 6.</li>
+ * <li>PooledDeflaters - the maximum number of idle Deflaters retained for
+ *     each encoding.  Default is twice the number of processors.</li>
+ * <li>CompressibleTypes - comma-separated content types, or type prefixes
+ *     ending in "/", to compress.  Types ending in "+json" or "+xml" are
+ *     always compressible.</li>
+ * <li>Precompressed - "yes" to serve ".gz" siblings.  Default yes.</li>
+ * <li>PrecompressedPaths - comma-separated path prefixes, relative to the
+ *     context, of the static assets for which ".gz" siblings are served;
+ *     for example, "/css/,/js/".  Default none, in which case no ".gz" 
+ *     siblings are served.</li>
+ * </ul>
+ */
+public class CompressionFilter
+  extends    BasicFilter
+{
+
+  //
+  // Constants.
+  //
+
+  public static final String COMPONENT_CODE = "hCmF";
+  public static final long   DEFAULT_MINIMUM_SIZE = 1024L;
+  public static final long   DEFAULT_COMPRESSION_LEVEL = 6L;
+  public static final String DEFAULT_COMPRESSIBLE_TYPES = "text/,"
+      + "application/json,application/javascript,application/x-javascript,"
+      + "application/xml,image/svg+xml";
+  public static final String PRECOMPRESSED_SUFFIX = ".gz";
+
+  //
+  // Member variables.
+  //
+
+  private int               minimumSize = (int)DEFAULT_MINIMUM_SIZE;
+  private String[]          compressibleTypes = DEFAULT_COMPRESSIBLE_TYPES.split(",");
+  private boolean           precompressed = true;
+  private String[]          precompressedPaths = new String[0];
+  private DeflaterPool      gzipPool;
+  private DeflaterPool      deflatePool;
+  private FileDelivery      fileDelivery;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Initializes the Filter aspect of this component.
+   */
+  @Override
+  public void init(FilterConfig config)
+  {
+    super.init(config);
+    minimumSize = (int)Math.max(1L, Math.min(Integer.MAX_VALUE, 
+        getInitParameter(config, "MinimumSize", DEFAULT_MINIMUM_SIZE)));
+    final int level = (int)Math.max(Deflater.BEST_SPEED, Math.min(
+        Deflater.BEST_COMPRESSION, 
+        getInitParameter(config, "CompressionLevel", DEFAULT_COMPRESSION_LEVEL)));
+    final int pooled = (int)getInitParameter(config, "PooledDeflaters", 
+        2L * Runtime.getRuntime().availableProcessors());
+    gzipPool = new DeflaterPool(level, 
+        CompressingOutputStream.Encoding.GZIP.isNowrap(), pooled);
+    deflatePool = new DeflaterPool(level, 
+        CompressingOutputStream.Encoding.DEFLATE.isNowrap(), pooled);
+    final List<String> types = new ArrayList<>();
+    for (String type : getInitParameter(config, "CompressibleTypes", 
+        DEFAULT_COMPRESSIBLE_TYPES).split(","))
+    {
+      if (!type.trim().isEmpty())
+      {
+        types.add(type.trim().toLowerCase(Locale.ROOT));
+      }
+    }
+    compressibleTypes = types.toArray(new String[types.size()]);
+    final List<String> paths = new ArrayList<>();
+    for (String path : getInitParameter(config, "PrecompressedPaths", "")
+        .split(","))
+    {
+      if (!path.trim().isEmpty())
+      {
+        paths.add(path.trim());
+      }
+    }
+    precompressedPaths = paths.toArray(new String[paths.size()]);
+    precompressed = getInitParameter(config, "Precompressed", true)
+        && precompressedPaths.length > 0;
+  }
+
+  /**
+   * Handles a filtering request.
+   */
+  @Override
+  protected void filter(HttpServletRequest request, HttpServletResponse response, 
+                     FilterChain chain)
+    throws IOException, 
+           ServletException
+  {
+    // Caches must keep compressed and uncompressed variants apart.
+    response.addHeader("Vary", "Accept-Encoding");
+    
+    final CompressingOutputStream.Encoding encoding = 
+        CompressingOutputStream.Encoding.negotiate(request.getHeader("Accept-Encoding"));
+    if (encoding == null)
+    {
+      chain.doFilter(request, response);
+      return;
+    }
+    
+    if ((precompressed) 
+        && (encoding == CompressingOutputStream.Encoding.GZIP)
+        && (sendPrecompressed(request, response)))
+    {
+      return;
+    }
+    
+    final CompressionResponseWrapper wrapper = new CompressionResponseWrapper(
+        response, this, encoding, monitor());
+    try
+    {
+      chain.doFilter(request, wrapper);
+    }
+    finally
+    {
+      // Release the Deflater back to its pool and complete the body even
+      // if the chain failed.
+      wrapper.finish();
+    }
+  }
+
+  /**
+   * Sends the precompressed sibling of the requested file, if there is
+   * one, returning false if not.
+   */
+  protected boolean sendPrecompressed(HttpServletRequest request, 
+      HttpServletResponse response) throws IOException
+  {
+    final String method = request.getMethod();
+    if (!"GET".equals(method) && !"HEAD".equals(method))
+    {
+      return false;
+    }
+    // The servlet path and path info are decoded, unlike the request URI,
+    // so encoded dots and slashes cannot slip past these checks.
+    final String path = request.getServletPath() 
+        + (request.getPathInfo() != null ? request.getPathInfo() : "");
+    if (!isPrecompressedPath(path))
+    {
+      return false;
+    }
+    final String realPath = getServletContext().getRealPath(path);
+    if (realPath == null)
+    {
+      return false;
+    }
+    final File file = new File(realPath);
+    final File compressed = new File(realPath + PRECOMPRESSED_SUFFIX);
+    if (!compressed.isFile() 
+        || !file.isFile() 
+        || compressed.lastModified() < file.lastModified())
+    {
+      return false;
+    }
+    
+    final String contentType = getServletContext().getMimeType(file.getName());
+    if (contentType != null)
+    {
+      response.setContentType(contentType);
+    }
+    response.setHeader("Content-Encoding", 
+        CompressingOutputStream.Encoding.GZIP.getToken());
+    fileDelivery().deliver(request, response, compressed);
+    
+    final GeminiMonitor monitor = monitor();
+    if (monitor != null)
+    {
+      monitor.precompressedDelivered(file.length(), compressed.length());
+    }
+    return true;
+  }
+
+  /**
+   * Determines whether a ".gz" sibling may be served for a path: it must
+   * fall beneath a configured prefix, name a file rather than a directory,
+   * and not reach into WEB-INF, META-INF or a parent directory.
+   */
+  protected boolean isPrecompressedPath(String path)
+  {
+    if (path.isEmpty()
+        || path.endsWith("/")
+        || path.contains("..")
+        || path.indexOf('\\') >= 0)
+    {
+      return false;
+    }
+    final String upper = path.toUpperCase(Locale.ROOT);
+    if (upper.contains("WEB-INF") || upper.contains("META-INF"))
+    {
+      return false;
+    }
+    for (String prefix : precompressedPaths)
+    {
+      if (path.startsWith(prefix))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Determines whether a content type should be compressed.
+   */
+  public boolean isCompressible(String contentType)
+  {
+    if (contentType == null)
+    {
+      return false;
+    }
+    final int semicolon = contentType.indexOf(';');
+    final String type = (semicolon >= 0 
+        ? contentType.substring(0, semicolon) 
+        : contentType).trim().toLowerCase(Locale.ROOT);
+    if (type.endsWith("+json") || type.endsWith("+xml"))
+    {
+      return true;
+    }
+    for (String compressible : compressibleTypes)
+    {
+      if (compressible.endsWith("/") 
+          ? type.startsWith(compressible) 
+          : type.equals(compressible))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gets the minimum size of a response to compress.
+   */
+  public int getMinimumSize()
+  {
+    return minimumSize;
+  }
+
+  /**
+   * Gets the Deflater pool for an encoding.
+   */
+  public DeflaterPool getDeflaterPool(CompressingOutputStream.Encoding encoding)
+  {
+    return (encoding == CompressingOutputStream.Encoding.GZIP 
+        ? gzipPool 
+        : deflatePool);
+  }
+
+  /**
+   * Gets the application's monitor, if available.
+   */
+  private GeminiMonitor monitor()
+  {
+    return (app() != null ? app().getMonitor() : null);
+  }
+
+  /**
+   * Gets a FileDelivery, preferring the application's.
+   */
+  private FileDelivery fileDelivery()
+  {
+    if (fileDelivery == null)
+    {
+      fileDelivery = (app() instanceof ResinGeminiApplication)
+          ? ((ResinGeminiApplication)app()).getFileDelivery()
+          : new FileDelivery();
+    }
+    return fileDelivery;
+  }
+
+  /**
+   * Destroys the Filter aspect of this component.
+   */
+  @Override
+  public void destroy()
+  {
+    if (gzipPool != null)
+    {
+      gzipPool.clear();
+    }
+    if (deflatePool != null)
+    {
+      deflatePool.clear();
+    }
+    super.destroy();
+  }
+  
+}  // End CompressionFilter.
@@ -0,0 +1,508 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package com.techempower.gemini.filter;
+
+import java.io.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import com.techempower.gemini.*;
+import com.techempower.gemini.monitor.*;
+import com.techempower.io.*;
+
+/**
+ * Wraps a response so that its body is compressed with a negotiated
+ * content-coding when that is worthwhile.  Used by CompressionFilter.
+ *   <p>
+ * Whether to compress is decided as late as possible: when the declared
+ * Content-Length is known, when the body written so far exceeds the
+ * minimum size, or when the response is finished.  Until then, up to the
+ * minimum size is buffered and flushes are deferred.  A response is only
+ * compressed if its status permits a body, it has no Content-Encoding or
+ * Content-Range already, and its content type is one the filter considers
+ * compressible.  When compressed, any Content-Length is dropped and a
+ * strong ETag is made weak, since the bytes sent differ from the entity's.
+ */
+public class CompressionResponseWrapper
+  extends    HttpServletResponseWrapper
+  implements BodyTransformingResponse
+{
+
+  //
+  // Member variables.
+  //
+
+  private final CompressionFilter                filter;
+  private final CompressingOutputStream.Encoding encoding;
+  private final GeminiMonitor                    monitor;
+  private Boolean                                decision;
+  private long                                   declaredLength = -1L;
+  private CompressionServletOutputStream         stream;
+  private PrintWriter                            writer;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   *
+   * @param response The response to wrap.
+   * @param filter The filter providing configuration.
+   * @param encoding The content-coding negotiated with the client.
+   * @param monitor A monitor to receive statistics; may be null.
+   */
+  public CompressionResponseWrapper(HttpServletResponse response,
+      CompressionFilter filter, CompressingOutputStream.Encoding encoding,
+      GeminiMonitor monitor)
+  {
+    super(response);
+    this.filter = filter;
+    this.encoding = encoding;
+    this.monitor = monitor;
+  }
+
+  /**
+   * Determines whether the body is, or will be, compressed.  If the
+   * declared length is known, this settles the decision; FileDelivery uses
+   * it, by way of isTransformingBody, to decide whether it may bypass this
+   * wrapper with sendfile.
+   */
+  public boolean isCompressing()
+  {
+    if (decision != null)
+    {
+      return decision;
+    }
+    if (declaredLength >= 0L)
+    {
+      return decide(declaredLength >= filter.getMinimumSize());
+    }
+    return isEligible();
+  }
+
+  /**
+   * The body is transformed when it is compressed.
+   */
+  @Override
+  public boolean isTransformingBody()
+  {
+    return isCompressing();
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() throws IOException
+  {
+    if (writer != null)
+    {
+      throw new IllegalStateException("getWriter() has already been called.");
+    }
+    return stream();
+  }
+
+  @Override
+  public PrintWriter getWriter() throws IOException
+  {
+    if (writer == null)
+    {
+      if (stream != null)
+      {
+        throw new IllegalStateException("getOutputStream() has already been called.");
+      }
+      writer = new PrintWriter(new OutputStreamWriter(stream(),
+          getCharacterEncoding()));
+    }
+    return writer;
+  }
+
+  @Override
+  public void flushBuffer() throws IOException
+  {
+    if (writer != null)
+    {
+      writer.flush();
+    }
+    if (stream != null)
+    {
+      // An explicit flush of the response means the application wants
+      // what it has written so far to reach the client, so settle the
+      // decision rather than deferring.
+      stream.flush(true);
+    }
+    super.flushBuffer();
+  }
+
+  @Override
+  public void resetBuffer()
+  {
+    super.resetBuffer();
+    if (stream != null)
+    {
+      stream.clearPending();
+    }
+  }
+
+  @Override
+  public void reset()
+  {
+    super.reset();
+    declaredLength = -1L;
+    if (stream != null)
+    {
+      stream.clearPending();
+    }
+  }
+
+  @Override
+  public void setContentLength(int length)
+  {
+    setDeclaredLength(length);
+  }
+
+  /**
+   * Intercepts the Servlet 3.1 form of setContentLength, which is not 
+   * declared by the Servlet 3.0 API this module compiles against and so
+   * cannot be marked as an override.  Without this, a container's 
+   * HttpServletResponseWrapper would pass the length straight through to
+   * a response that may be compressed.
+   */
+  public void setContentLengthLong(long length)
+  {
+    setDeclaredLength(length);
+  }
+
+  /**
+   * Handles a Content-Length set by any means.
+   */
+  private void setDeclaredLength(long length)
+  {
+    declaredLength = length;
+    if (decision == null)
+    {
+      // Small or incompressible responses can be settled now, which lets
+      // the length through before anything is written.
+      if ((length < filter.getMinimumSize()) || (!isEligible()))
+      {
+        decide(false);
+      }
+    }
+    else if (!decision)
+    {
+      sendContentLength(length);
+    }
+  }
+
+  @Override
+  public void setHeader(String name, String value)
+  {
+    if ("Content-Length".equalsIgnoreCase(name))
+    {
+      setContentLengthHeader(value);
+    }
+    else
+    {
+      super.setHeader(name, value);
+    }
+  }
+
+  @Override
+  public void addHeader(String name, String value)
+  {
+    if ("Content-Length".equalsIgnoreCase(name))
+    {
+      setContentLengthHeader(value);
+    }
+    else
+    {
+      super.addHeader(name, value);
+    }
+  }
+
+  @Override
+  public void setIntHeader(String name, int value)
+  {
+    if ("Content-Length".equalsIgnoreCase(name))
+    {
+      setDeclaredLength(value);
+    }
+    else
+    {
+      super.setIntHeader(name, value);
+    }
+  }
+
+  @Override
+  public void addIntHeader(String name, int value)
+  {
+    if ("Content-Length".equalsIgnoreCase(name))
+    {
+      setDeclaredLength(value);
+    }
+    else
+    {
+      super.addIntHeader(name, value);
+    }
+  }
+
+  /**
+   * Completes the response body, writing out anything still buffered and
+   * finishing the compressed data.  Called by CompressionFilter after the
+   * rest of the chain has run.
+   */
+  public void finish() throws IOException
+  {
+    if (writer != null)
+    {
+      writer.flush();
+    }
+    if (stream != null)
+    {
+      stream.finish();
+    }
+    else if (decision == null)
+    {
+      // Nothing was written (e.g., a HEAD request or a redirect); pass
+      // along any declared length.
+      decide(false);
+    }
+  }
+
+  /**
+   * Parses a Content-Length header value.
+   */
+  private void setContentLengthHeader(String value)
+  {
+    try
+    {
+      setDeclaredLength(Long.parseLong(value.trim()));
+    }
+    catch (NumberFormatException nfexc)
+    {
+      super.setHeader("Content-Length", value);
+    }
+  }
+
+  /**
+   * Passes a Content-Length through to the wrapped response.
+   */
+  private void sendContentLength(long length)
+  {
+    if (length <= Integer.MAX_VALUE)
+    {
+      super.setContentLength((int)length);
+    }
+    else
+    {
+      super.setHeader("Content-Length", Long.toString(length));
+    }
+  }
+
+  /**
+   * Gets the stream, creating it if necessary.
+   */
+  private CompressionServletOutputStream stream()
+  {
+    if (stream == null)
+    {
+      stream = new CompressionServletOutputStream();
+    }
+    return stream;
+  }
+
+  /**
+   * Determines whether the response's status and headers permit
+   * compression.
+   */
+  private boolean isEligible()
+  {
+    final int status = getStatus();
+    return (status != SC_NO_CONTENT)
+        && (status != SC_PARTIAL_CONTENT)
+        && (status != SC_NOT_MODIFIED)
+        && (getHeader("Content-Encoding") == null)
+        && (getHeader("Content-Range") == null)
+        && (filter.isCompressible(getContentType()));
+  }
+
+  /**
+   * Settles whether the response is compressed, if not already settled,
+   * and adjusts headers accordingly.
+   */
+  private boolean decide(boolean largeEnough)
+  {
+    if (decision == null)
+    {
+      decision = largeEnough && isEligible();
+      if (decision)
+      {
+        super.setHeader("Content-Encoding", encoding.getToken());
+        final String etag = getHeader("ETag");
+        if ((etag != null) && (!etag.startsWith("W/")))
+        {
+          super.setHeader("ETag", "W/" + etag);
+        }
+      }
+      else if (declaredLength >= 0L)
+      {
+        sendContentLength(declaredLength);
+      }
+    }
+    return decision;
+  }
+
+  /**
+   * The output stream provided to the application.  Buffers up to the
+   * minimum size until the compression decision is made, then writes to
+   * the real response either directly or through a compressor.
+   */
+  private class CompressionServletOutputStream
+    extends     ServletOutputStream
+  {
+    private final byte[]            single = new byte[1];
+    private byte[]                  pending = new byte[filter.getMinimumSize()];
+    private int                     pendingCount;
+    private OutputStream            target;
+    private CompressingOutputStream compressor;
+    private boolean                 finished;
+
+    @Override
+    public void write(int b) throws IOException
+    {
+      single[0] = (byte)b;
+      write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+      if (finished)
+      {
+        throw new IOException("Response already finished.");
+      }
+      if (target == null)
+      {
+        if ((decision == null) && (declaredLength < 0L)
+            && (pendingCount + len <= pending.length))
+        {
+          System.arraycopy(b, off, pending, pendingCount, len);
+          pendingCount += len;
+          return;
+        }
+        open(declaredLength >= 0L
+            ? declaredLength >= filter.getMinimumSize()
+            : true);
+      }
+      target.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+      // Writers and JSON generators flush routinely when they are done; 
+      // deferring those until the decision is made keeps small responses
+      // from being sent before we know whether to compress them.
+      flush(false);
+    }
+
+    /**
+     * Flushes, optionally forcing the compression decision.
+     */
+    void flush(boolean force) throws IOException
+    {
+      if ((target == null) && (force))
+      {
+        open(declaredLength >= 0L
+            ? declaredLength >= filter.getMinimumSize()
+            : true);
+      }
+      if (target != null)
+      {
+        target.flush();
+      }
+    }
+
+    /**
+     * Discards buffered output that has not yet been sent.
+     */
+    void clearPending()
+    {
+      pendingCount = 0;
+    }
+
+    /**
+     * Writes out anything buffered and finishes the compressed data.
+     */
+    void finish() throws IOException
+    {
+      if (finished)
+      {
+        return;
+      }
+      if (target == null)
+      {
+        open(pendingCount >= pending.length);
+      }
+      finished = true;
+      if (compressor != null)
+      {
+        compressor.finish();
+        if (monitor != null)
+        {
+          monitor.responseCompressed(compressor.getBytesIn(), 
+              compressor.getBytesOut(), compressor.getCompressionNanos());
+        }
+      }
+    }
+
+    /**
+     * Settles the decision and opens the target, writing out anything
+     * buffered.
+     */
+    private void open(boolean largeEnough) throws IOException
+    {
+      final OutputStream out = getResponse().getOutputStream();
+      if (decide(largeEnough))
+      {
+        compressor = new CompressingOutputStream(out, encoding, 
+            filter.getDeflaterPool(encoding));
+        target = compressor;
+      }
+      else
+      {
+        target = out;
+      }
+      if (pendingCount > 0)
+      {
+        target.write(pending, 0, pendingCount);
+      }
+      pending = null;
+      pendingCount = 0;
+    }
+  }
+
+}  // End CompressionResponseWrapper.
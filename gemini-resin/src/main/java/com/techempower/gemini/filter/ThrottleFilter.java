@@ -34,6 +34,7 @@ import java.util.concurrent.atomic.*;
 import javax.servlet.*;
 import javax.servlet.http.*;
 
+import com.techempower.gemini.ratelimit.*;
 import com.techempower.helper.*;
 
 /*
@@ -58,6 +59,14 @@ import com.techempower.helper.*;
       <param-name>UnthrottledUris</param-name>
       <param-value>/images/,/css/,/js/,/favicon.ico</param-value>
     </init-param>
+    <init-param>
+      <param-name>RequestsPerWindow</param-name>
+      <param-value>300</param-value>
+    </init-param>
+    <init-param>
+      <param-name>WindowSeconds</param-name>
+      <param-value>60</param-value>
+    </init-param>
     <init-param>
       <param-name>DebugEnabled</param-name>
       <param-value>false</param-value>
@@ -70,21 +79,38 @@ import com.techempower.helper.*;
 */
 
 /**
- * Limits concurrent requests, except for configured User-Agents and URIs that
- * we don't want to throttle.
+ * Limits concurrent requests and, optionally, the rate of requests per IP 
+ * address, except for configured User-Agents and URIs that we don't want to
+ * throttle.  Requests exceeding the concurrency limit or from banned clients
+ * receive a 503; requests exceeding the rate limit receive a 429 with a 
+ * Retry-After header.
+ *   <p>
+ * The rate limit (RequestsPerWindow per WindowSeconds, disabled by default)
+ * is enforced by a bounded RateLimiter tracking at most 
+ * MaximumTrackedAddresses addresses.  IP address patterns 
+ * (UnthrottledIpAddressPatterns and BannedIpAddressPatterns) match an 
+ * address that contains them anywhere.  IP address prefixes
+ * (UnthrottledIpAddressPrefixes and BannedIpAddressPrefixes) match only the
+ * start of an address (e.g., "10.0.") and are looked up in a PrefixTrie, so
+ * long lists of them cost no more per request than short ones.
  */
 public class ThrottleFilter
      extends BasicFilter
 {
   public  static final String  PARAM_CLIENT_IP          = "ClientIP";
+  public  static final int     SC_TOO_MANY_REQUESTS     = 429;
   private final ConcurrentHashMap<String, AtomicInteger> addressCache      
               = new ConcurrentHashMap<>();
+  private final AtomicLong     throttledCount           = new AtomicLong();
   private int                  maxConcurrentRequests    = 2;
+  private RateLimiter          rateLimiter              = null;
   private String[]             welcomeIpAddressPatterns = null;
+  private PrefixTrie<String>   welcomeIpAddressPrefixes = null;
   private String[]             welcomeAbuserUserAgents  = null;
   private String[]             welcomeAbuserUris        = null;
   private String[]             bannedUserAgents         = null;
   private String[]             bannedIpAddressPatterns  = null;
+  private PrefixTrie<String>   bannedIpAddressPrefixes  = null;
 
   @Override
   public void init(FilterConfig config)
@@ -94,6 +120,20 @@ public class ThrottleFilter
       maxConcurrentRequests);
     log.info("max concurrent requests: {}", maxConcurrentRequests);
     
+    final int requestsPerWindow = (int)getInitParameter(config, 
+        "RequestsPerWindow", 0);
+    if (requestsPerWindow > 0)
+    {
+      final long windowSeconds = Math.max(1, getInitParameter(config, 
+          "WindowSeconds", 60));
+      final int maximumAddresses = (int)Math.max(1, getInitParameter(config, 
+          "MaximumTrackedAddresses", RateLimiter.DEFAULT_MAXIMUM_KEYS));
+      rateLimiter = new RateLimiter(requestsPerWindow, windowSeconds * 1000L, 
+          maximumAddresses);
+      log.info("max requests per address: {} per {}s", requestsPerWindow, 
+          windowSeconds);
+    }
+    
     String unthrottledIpAddressPatterns = getInitParameter(config, "UnthrottledIpAddressPatterns", null);
     welcomeIpAddressPatterns = StringHelper.splitTrimAndLower(unthrottledIpAddressPatterns, ",");
     if (CollectionHelper.isNonEmpty(welcomeIpAddressPatterns))
@@ -103,6 +143,13 @@ public class ThrottleFilter
         log.info("will not throttle this IP address pattern: {}", welcomeIpAddressPatterns[i]);
       }
     }
+    String[] prefixes = StringHelper.splitTrimAndLower(
+        getInitParameter(config, "UnthrottledIpAddressPrefixes", null), ",");
+    welcomeIpAddressPrefixes = PrefixTrie.of(prefixes);
+    if (CollectionHelper.isNonEmpty(prefixes))
+    {
+      log.info("will not throttle {} IP address prefixes.", prefixes.length);
+    }
     else
     {
       log.info("will throttle all IP address patterns.");
@@ -147,6 +194,13 @@ public class ThrottleFilter
         log.info("will ban this IP address pattern: {}", bannedIpAddressPatterns[i]);
       }
     }
+    prefixes = StringHelper.splitTrimAndLower(
+        getInitParameter(config, "BannedIpAddressPrefixes", null), ",");
+    bannedIpAddressPrefixes = PrefixTrie.of(prefixes);
+    if (CollectionHelper.isNonEmpty(prefixes))
+    {
+      log.info("will ban {} IP address prefixes.", prefixes.length);
+    }
     else
     {
       log.info("will not ban any IP address patterns.");
@@ -226,48 +280,38 @@ public class ThrottleFilter
     {
       log.debug("{} has banned User-Agent: {}", ipAddress, userAgent);
     }
+    else if (rateLimiter != null && !rateLimiter.tryAcquire(ipAddress))
+    {
+      throttledCount.incrementAndGet();
+      log.info("{} - {} - {} - rate limiting request for {}",
+          System.currentTimeMillis(), StringHelper.padSpace(ipAddress, 15),
+          userAgent, requestSignature);
+      response.setHeader("Retry-After", 
+          Long.toString(rateLimiter.getWindowMillis() / 1000L));
+      response.sendError(SC_TOO_MANY_REQUESTS);
+      return;
+    }
     else
     {
-      int count = 0;
-      
-      // Our current request count.
-      AtomicInteger atomic = addressCache.get(ipAddress);
-
-      // No previous record of this IP address.
-      if (atomic == null)
-      {
-        // Try to add a new atomic.
-        if ((atomic = addressCache.putIfAbsent(ipAddress, new AtomicInteger(1))) != null)
-        {
-          // We purposefully don't call increment yet.
-          count = atomic.get();
-        }
-        // For whatever reason, we got null back from putIfAbsent.  Let's
-        // assume a count of 1.
-        else
+      // Count this request unless it would reach the maximum concurrent 
+      // requests permitted.  The entry is removed once the address has no
+      // requests in flight, so the map is bounded by in-flight requests.
+      final AtomicInteger[] admitted = new AtomicInteger[1];
+      addressCache.compute(ipAddress, (address, atomic) -> {
+        final int current = (atomic == null) ? 0 : atomic.get();
+        if (current + 1 < maxConcurrentRequests)
         {
-          // Atomic was null => the put was successful but for reasons unknown,
-          // what the javadocs suggest will happen did not - that object reference
-          // was not returned; let's get it and ensure that atomic is not null.
-          atomic = addressCache.get(ipAddress);
-          count = 1;
+          admitted[0] = (atomic == null) ? new AtomicInteger() : atomic;
+          admitted[0].incrementAndGet();
+          return admitted[0];
         }
-      }
-      else
-      {
-        // We purposefully don't call increment yet.
-        count = atomic.get() + 1;
-      }
+        return atomic;
+      });
 
-      // Would this request still be below the maximum concurrent requests
-      // permitted?
-      if (count < maxConcurrentRequests)
+      if (admitted[0] != null)
       {
         try
         {
-          // Okay, this is an honest to goodness request
-          // which isn't to be throttled; increment.
-          count = atomic.incrementAndGet();
           // You can go about your business. Move along.
           chain.doFilter(request, response);
           
@@ -279,21 +323,15 @@ public class ThrottleFilter
         }
         finally
         {
-          // Only proceed if we have an atomic reference.
-          if (atomic != null)
-          {
-            count = atomic.decrementAndGet();
-            if (count <= 0)
-            {
-              addressCache.remove(ipAddress);
-            }
-          }
+          addressCache.computeIfPresent(ipAddress, 
+              (address, atomic) -> atomic.decrementAndGet() <= 0 ? null : atomic);
         }
       }
     }
     
     // We don't increment here because this request
     // is going to get throttled and return immediately.
+    throttledCount.incrementAndGet();
     log.info("{} - {} - {} - throttling request for {}",
         System.currentTimeMillis(), StringHelper.padSpace(ipAddress, 15),
         userAgent, requestSignature);
@@ -309,7 +347,11 @@ public class ThrottleFilter
   {
     if (ipAddress != null)
     {
-      final String lower = ipAddress.toLowerCase();          
+      final String lower = ipAddress.toLowerCase();
+      if (welcomeIpAddressPrefixes.matches(lower))
+      {
+        return true;
+      }
       for (int i = 0; i < welcomeIpAddressPatterns.length; i++)
       {
         if (lower.contains(welcomeIpAddressPatterns[i]))
@@ -372,6 +414,10 @@ public class ThrottleFilter
     if (ipAddress != null)
     {
       final String lower = ipAddress.toLowerCase();
+      if (bannedIpAddressPrefixes.matches(lower))
+      {
+        return true;
+      }
       for (int i = 0; i < bannedIpAddressPatterns.length; i++)
       {
         if (lower.contains(bannedIpAddressPatterns[i]))
@@ -405,6 +451,23 @@ public class ThrottleFilter
     return false;
   }
 
+  /**
+   * Gets the number of requests throttled or banned since initialization.
+   */
+  public long getThrottledCount()
+  {
+    return throttledCount.get();
+  }
+
+  /**
+   * Gets the per-address RateLimiter, or null if no rate limit is 
+   * configured.
+   */
+  public RateLimiter getRateLimiter()
+  {
+    return rateLimiter;
+  }
+
   /**
    * Get the request signature for filtering purposes.
    */
@@ -77,6 +77,7 @@ public class ResinMustacheManager
   public void resetTemplateCache()
   {
     mustacheFactory = new DefaultMustacheFactory(new File(mustacheDirectory));
+    resetCompiledTemplates();
   }
   
   /**
@@ -35,7 +35,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Manages the creation of user session objects.  Initializes new sessions 
- * to the proper timeout, etc.
+ * to the proper timeout, etc.  Sessions are the servlet container's; see 
+ * StoredSessionManager for sessions kept outside of the container.
  *   <p>
  * The Context class uses SessionManager to create sessions.  This allows 
  * for any necessary initialization to happen on all new sessions.
@@ -162,36 +163,28 @@ public class HttpSessionManager
     // same browser over time to help counter session hijacking.
     if (strictSessions)
     {
+      final int requestHash = getRequestHash(request.getRawRequest());
       if (newSession)
       {
-        // For a new session, generate a request hash for future comparisons.
-        int requestHash = getRequestHash(request.getRawRequest());
-        session.setAttribute(SESSION_HASH, "" + requestHash);
-        //log.debug("Stored request hash as session hash: " + requestHash);
+        // For a new session, store the request hash for future comparisons.
+        session.setAttribute(SESSION_HASH, requestHash);
       }
       else
       {
         // For an existing session, compare a hash of the current request
         // versus what we have in the session.  If they don't match, clear
         // the session, which will result in the user needing to re-
-        // authenticate.
-        int requestHash = getRequestHash(request.getRawRequest());
-        int sessionHash = 0;
-        try
-        {
-          sessionHash = Integer.parseInt((String)session.getAttribute(SESSION_HASH));
-        }
-        catch (Exception exc)
-        {
-          // Do nothing.
-        }
+        // authenticate.  Sessions created before the hash was stored as an
+        // Integer hold it as a String.
+        final Object stored = session.getAttribute(SESSION_HASH);
+        final boolean matches = (stored instanceof Integer)
+            ? (Integer)stored == requestHash
+            : Integer.toString(requestHash).equals(stored);
         
         // If the request hash doesn't match what we have on record within
         // the session, then this may be a different browser.
-        if (requestHash != sessionHash)
+        if (!matches)
         {
-          //log.debug("Request hash: " + requestHash);
-          //log.debug("Session hash: " + sessionHash);
           log.info("Session hash mismatch.  Invalidating session {}",
               session.getId());
           session.invalidate();
@@ -199,9 +192,7 @@ public class HttpSessionManager
           // Probably not necessary to request a new session, but we'll do
           // so anyway.
           session = HttpSession.createSession(request.getRawRequest().getSession(true));
-          
-          //log.debug("New session: " + session);
-          session.setAttribute(SESSION_HASH, "" + requestHash);
+          session.setAttribute(SESSION_HASH, requestHash);
           
           // Session requires "new session" attributes.
           newSession = true;
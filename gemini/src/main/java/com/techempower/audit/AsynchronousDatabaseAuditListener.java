@@ -0,0 +1,668 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.audit;
+
+import java.io.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import com.techempower.*;
+import com.techempower.asynchronous.*;
+import com.techempower.data.*;
+import com.techempower.thread.*;
+import com.techempower.util.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A variation of BasicDatabaseAuditListener that does not write audits on
+ * the thread committing them.  Committed audits are captured as 
+ * AuditRecords and placed into a bounded queue.  A background writer 
+ * thread drains the queue and inserts audits using JDBC batches, flushing 
+ * whenever a full batch has accumulated or the flush interval has elapsed
+ * since the oldest queued audit arrived.
+ *   <p>
+ * If the database falls behind and the queue is full, committing threads
+ * wait up to the enqueue timeout for space (backpressure).  If space does
+ * not become available and a spill file has been set, audits are appended
+ * to the spill file; otherwise they are dropped and counted.  Batches that
+ * fail to insert are also spilled.  Spilled audits are re-inserted by the
+ * writer thread once the database is accepting writes again, including 
+ * after an application restart.
+ *   <p>
+ * The listener registers itself as an Asynchronous resource of the 
+ * application.  Until it has been started, and after it has been stopped,
+ * audits are written synchronously as with BasicDatabaseAuditListener.  
+ * When stopped, audits remaining in the queue are flushed before the writer
+ * thread exits.
+ *   <p>
+ * Queue depth, flush latency, and the counts of written, spilled, and 
+ * dropped audits are available for monitoring.
+ */
+public class AsynchronousDatabaseAuditListener
+  extends    BasicDatabaseAuditListener
+  implements Asynchronous
+{
+
+  //
+  // Constants.
+  //
+
+  public static final int  DEFAULT_QUEUE_CAPACITY   = 10000;
+  public static final int  DEFAULT_BATCH_SIZE       = 200;
+  public static final long DEFAULT_FLUSH_INTERVAL   = UtilityConstants.SECOND;
+  public static final long DEFAULT_ENQUEUE_TIMEOUT  = 250L;
+  
+  private static final String REPLAY_SUFFIX = ".replay";
+  private static final String OFFSET_SUFFIX = ".offset";
+  private static final String UNREADABLE_SUFFIX = ".unreadable-";
+  private static final long   REPLAY_RETRY_DELAY = 10 * UtilityConstants.SECOND;
+
+  //
+  // Member variables.
+  //
+
+  private final Logger                       log = LoggerFactory.getLogger(getClass());
+  private final BlockingQueue<AuditRecord>   queue;
+  private final Object                       spillLock = new Object();
+  private final LatencyStats                 flushLatency = new LatencyStats("Audit flushes");
+  private final AtomicLong                   written = new AtomicLong();
+  private final AtomicLong                   spilled = new AtomicLong();
+  private final AtomicLong                   dropped = new AtomicLong();
+  private       int                          batchSize = DEFAULT_BATCH_SIZE;
+  private       long                         flushInterval = DEFAULT_FLUSH_INTERVAL;
+  private       long                         enqueueTimeout = DEFAULT_ENQUEUE_TIMEOUT;
+  private       File                         spillFile;
+  private volatile AuditWriterThread         writer;
+  private volatile boolean                   spillPending;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   * 
+   * @param queueCapacity the maximum number of audits waiting to be written.
+   */
+  public AsynchronousDatabaseAuditListener(TechEmpowerApplication application,
+    ConnectorFactory connectorFactory, int queueCapacity)
+  {
+    super(application, connectorFactory);
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    application.addAsynchronous(this);
+  }
+
+  /**
+   * Constructor using the default queue capacity.
+   */
+  public AsynchronousDatabaseAuditListener(TechEmpowerApplication application,
+    ConnectorFactory connectorFactory)
+  {
+    this(application, connectorFactory, DEFAULT_QUEUE_CAPACITY);
+  }
+
+  /**
+   * Sets the maximum number of audits to insert in a single batch.
+   */
+  public void setBatchSize(int batchSize)
+  {
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  /**
+   * Sets the maximum time, in milliseconds, that a queued audit will wait 
+   * for its batch to fill before the batch is flushed.
+   */
+  public void setFlushInterval(long flushInterval)
+  {
+    this.flushInterval = Math.max(1L, flushInterval);
+  }
+
+  /**
+   * Sets the maximum time, in milliseconds, that a committing thread will
+   * wait for space in a full queue before spilling or dropping its audit.
+   */
+  public void setEnqueueTimeout(long enqueueTimeout)
+  {
+    this.enqueueTimeout = Math.max(0L, enqueueTimeout);
+  }
+
+  /**
+   * Sets the local file to which audits are spilled when they cannot be
+   * queued or written.  If null (the default), such audits are dropped.
+   * Any audits spilled by a previous run will be written once the listener
+   * is started.
+   */
+  public void setSpillFile(File spillFile)
+  {
+    synchronized (spillLock)
+    {
+      this.spillFile = spillFile;
+      this.spillPending = spillFile != null
+          && (spillFile.exists() || getReplayFile().exists());
+    }
+  }
+
+  @Override
+  public void begin()
+  {
+    if (writer == null)
+    {
+      writer = new AuditWriterThread();
+      writer.begin();
+    }
+  }
+
+  @Override
+  public void end()
+  {
+    final AuditWriterThread current = writer;
+    if (current != null)
+    {
+      writer = null;
+      current.end();
+      try
+      {
+        current.join(UtilityConstants.MINUTE);
+      }
+      catch (InterruptedException iexc)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Override
+  public void auditCommitted(AuditSession session, Audit audit)
+  {
+    if (writer == null)
+    {
+      super.auditCommitted(session, audit);
+      return;
+    }
+    
+    final AuditRecord record = AuditRecord.of(session, audit);
+    if (record == null)
+    {
+      log.debug("Ignoring audit without affected object or cause: {}.", audit);
+      return;
+    }
+    
+    boolean queued = false;
+    try
+    {
+      queued = queue.offer(record, enqueueTimeout, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException iexc)
+    {
+      Thread.currentThread().interrupt();
+    }
+    if (!queued)
+    {
+      spillOrDrop(Collections.singletonList(record));
+    }
+  }
+
+  /**
+   * Writes records to the spill file, or counts them as dropped if there
+   * is no spill file or the spill file cannot be written.
+   */
+  private void spillOrDrop(List<AuditRecord> records)
+  {
+    synchronized (spillLock)
+    {
+      if (spillFile != null)
+      {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(spillFile, true))))
+        {
+          for (AuditRecord record : records)
+          {
+            record.writeTo(out);
+          }
+          spilled.addAndGet(records.size());
+          spillPending = true;
+          return;
+        }
+        catch (IOException ioexc)
+        {
+          log.error("Unable to spill {} audits to {}.", records.size(), 
+              spillFile, ioexc);
+        }
+      }
+    }
+    dropped.addAndGet(records.size());
+    log.error("Dropped {} audits.", records.size());
+  }
+
+  /**
+   * Re-inserts spilled audits.  The spill file is first renamed so that
+   * audits spilled during the replay are retained for a later attempt.
+   * After each batch is inserted (or spilled again), the offset of the
+   * audits consumed so far is recorded, so that a replay interrupted by a
+   * failure or a restart resumes after them rather than inserting them
+   * again.  A replay file that cannot be read to its end is set aside with
+   * an ".unreadable-" suffix rather than retried.  Returns false if the
+   * database rejected a batch, in which case the remaining audits are 
+   * spilled again.
+   */
+  private boolean replaySpill()
+  {
+    final File replayFile;
+    synchronized (spillLock)
+    {
+      if (spillFile == null)
+      {
+        spillPending = false;
+        return true;
+      }
+      replayFile = getReplayFile();
+      if (!replayFile.exists())
+      {
+        // An offset left without its replay file does not apply to the 
+        // file about to be replayed.
+        deleteReplayOffset(getOffsetFile());
+        if (!spillFile.renameTo(replayFile))
+        {
+          log.error("Unable to rename {} for replay.", spillFile);
+          return false;
+        }
+      }
+      spillPending = false;
+    }
+    
+    final File offsetFile = getOffsetFile();
+    final long startOffset = readReplayOffset(offsetFile);
+    final List<AuditRecord> batch = new ArrayList<>(batchSize);
+    boolean succeeded = true;
+    long consumed = startOffset;
+    File unreadable = null;
+    try (FileInputStream file = new FileInputStream(replayFile))
+    {
+      file.getChannel().position(startOffset);
+      final CountingInputStream counter = new CountingInputStream(
+          new BufferedInputStream(file));
+      final DataInputStream in = new DataInputStream(counter);
+      long recordEnd = startOffset;
+      try
+      {
+        while (true)
+        {
+          final long recordStart = counter.count;
+          try
+          {
+            batch.add(AuditRecord.readFrom(in));
+            recordEnd = startOffset + counter.count;
+          }
+          catch (EOFException eofexc)
+          {
+            if (counter.count > recordStart)
+            {
+              // The file ends part way through a record.
+              throw eofexc;
+            }
+            break;
+          }
+          if (batch.size() >= batchSize)
+          {
+            succeeded = write(batch, succeeded);
+            batch.clear();
+            consumed = recordEnd;
+            writeReplayOffset(offsetFile, consumed);
+          }
+        }
+        succeeded = write(batch, succeeded);
+      }
+      catch (IOException ioexc)
+      {
+        // Keep the audits read before the unreadable data, and set the 
+        // file aside so that it is neither lost nor replayed again.
+        succeeded = write(batch, succeeded);
+        consumed = recordEnd;
+        unreadable = new File(spillFile.getPath() 
+            + UNREADABLE_SUFFIX + System.currentTimeMillis());
+        log.error("Unable to read spilled audits from {} after offset {}; "
+            + "moving the file to {}.", replayFile, consumed, unreadable, ioexc);
+      }
+    }
+    catch (IOException ioexc)
+    {
+      log.error("Unable to open spilled audits in {}.", replayFile, ioexc);
+      spillPending = true;
+      return false;
+    }
+    
+    // The offset is deleted before the file it belongs to, so that an 
+    // interruption between the two leaves the file to be replayed again 
+    // rather than an offset that would skip audits in the next file.
+    deleteReplayOffset(offsetFile);
+    if (unreadable != null && !replayFile.renameTo(unreadable))
+    {
+      log.error("Unable to move {} to {}.", replayFile, unreadable);
+      writeReplayOffset(offsetFile, consumed);
+      return false;
+    }
+    if (replayFile.exists() && !replayFile.delete())
+    {
+      log.error("Unable to delete replayed audit file {}.", replayFile);
+    }
+    log.info("Replayed spilled audits from {}.", replayFile);
+    synchronized (spillLock)
+    {
+      // A spill file may remain from a previous run that was interrupted
+      // during replay.
+      spillPending = spillPending || spillFile.exists();
+    }
+    return succeeded;
+  }
+
+  /**
+   * Reads the offset of the audits already consumed from the replay file,
+   * or zero if no replay has been interrupted.
+   */
+  private long readReplayOffset(File offsetFile)
+  {
+    if (offsetFile.exists())
+    {
+      try (DataInputStream in = new DataInputStream(new FileInputStream(offsetFile)))
+      {
+        return in.readLong();
+      }
+      catch (IOException ioexc)
+      {
+        log.error("Unable to read replay offset from {}.", offsetFile, ioexc);
+      }
+    }
+    return 0L;
+  }
+
+  /**
+   * Records the offset of the audits consumed from the replay file.
+   */
+  private void writeReplayOffset(File offsetFile, long offset)
+  {
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(offsetFile)))
+    {
+      out.writeLong(offset);
+    }
+    catch (IOException ioexc)
+    {
+      log.error("Unable to record replay offset in {}.", offsetFile, ioexc);
+    }
+  }
+
+  /**
+   * Deletes the record of the audits consumed from the replay file.
+   */
+  private void deleteReplayOffset(File offsetFile)
+  {
+    if (offsetFile.exists() && !offsetFile.delete())
+    {
+      log.error("Unable to delete replay offset file {}.", offsetFile);
+    }
+  }
+
+  /**
+   * Gets the file that records how much of the replay file has been 
+   * consumed.
+   */
+  private File getOffsetFile()
+  {
+    return new File(spillFile.getPath() + OFFSET_SUFFIX);
+  }
+
+  /**
+   * Gets the file used to hold spilled audits while they are being 
+   * replayed.
+   */
+  private File getReplayFile()
+  {
+    return new File(spillFile.getPath() + REPLAY_SUFFIX);
+  }
+
+  /**
+   * Inserts a batch of records, spilling them instead if the database is 
+   * not accepting writes (as indicated by a previous failure) or if the 
+   * insert fails.  Returns whether the database is accepting writes.
+   */
+  private boolean write(List<AuditRecord> batch, boolean accepting)
+  {
+    if (batch.isEmpty())
+    {
+      return accepting;
+    }
+    if (accepting)
+    {
+      final long start = System.nanoTime();
+      try
+      {
+        insert(batch);
+        flushLatency.recordSince(start);
+        written.addAndGet(batch.size());
+        return true;
+      }
+      catch (SQLException exc)
+      {
+        log.error("Unable to persist batch of {} audits.", batch.size(), exc);
+      }
+    }
+    spillOrDrop(batch);
+    return false;
+  }
+
+  /**
+   * Gets the number of audits waiting in the queue.
+   */
+  public int getQueueDepth()
+  {
+    return queue.size();
+  }
+
+  /**
+   * Gets the remaining capacity of the queue.
+   */
+  public int getQueueRemainingCapacity()
+  {
+    return queue.remainingCapacity();
+  }
+
+  /**
+   * Gets latency statistics for batch inserts.
+   */
+  public LatencyStats getFlushLatency()
+  {
+    return flushLatency;
+  }
+
+  /**
+   * Gets the number of audits written by the writer thread.
+   */
+  public long getWrittenCount()
+  {
+    return written.get();
+  }
+
+  /**
+   * Gets the number of audits spilled to the spill file.
+   */
+  public long getSpilledCount()
+  {
+    return spilled.get();
+  }
+
+  /**
+   * Gets the number of audits dropped because they could neither be queued
+   * nor spilled.
+   */
+  public long getDroppedCount()
+  {
+    return dropped.get();
+  }
+
+  @Override
+  public String getAuditListenerName()
+  {
+    return "Asynchronous Database Audit Listener";
+  }
+
+  @Override
+  public String toString()
+  {
+    return "AsynchronousDatabaseAuditListener [queued: " + getQueueDepth()
+        + "; written: " + getWrittenCount() 
+        + "; spilled: " + getSpilledCount()
+        + "; dropped: " + getDroppedCount() 
+        + "; " + flushLatency + "]";
+  }
+
+  /**
+   * The thread that drains the queue and writes batches of audits.
+   */
+  class AuditWriterThread
+    extends EndableThread
+  {
+    /**
+     * Constructor.
+     */
+    AuditWriterThread()
+    {
+      super("Audit Writer Thread");
+      setDaemon(true);
+    }
+    
+    @Override
+    public void run()
+    {
+      setStartTime();
+      
+      final List<AuditRecord> batch = new ArrayList<>(batchSize);
+      long deadline = 0L;
+      long replayAfter = 0L;
+      
+      while (isRunning() || !queue.isEmpty() || !batch.isEmpty())
+      {
+        final long wait = batch.isEmpty() 
+            ? flushInterval 
+            : deadline - System.currentTimeMillis();
+        AuditRecord record = null;
+        if (wait > 0 && isRunning())
+        {
+          try
+          {
+            record = queue.poll(wait, TimeUnit.MILLISECONDS);
+          }
+          catch (InterruptedException iexc)
+          {
+            // Interrupted by end(); the loop condition handles stopping.
+          }
+        }
+        else
+        {
+          record = queue.poll();
+        }
+        
+        if (record != null)
+        {
+          if (batch.isEmpty())
+          {
+            deadline = System.currentTimeMillis() + flushInterval;
+          }
+          batch.add(record);
+          queue.drainTo(batch, batchSize - batch.size());
+        }
+        
+        final long now = System.currentTimeMillis();
+        if (!batch.isEmpty() 
+            && (batch.size() >= batchSize || now >= deadline || !isRunning()))
+        {
+          if (!write(batch, true))
+          {
+            replayAfter = now + REPLAY_RETRY_DELAY;
+          }
+          batch.clear();
+        }
+        else if (batch.isEmpty() && spillPending && isRunning() 
+            && now >= replayAfter)
+        {
+          if (!replaySpill())
+          {
+            replayAfter = now + REPLAY_RETRY_DELAY;
+          }
+        }
+      }
+    }
+  }  // End AuditWriterThread.
+
+  /**
+   * Counts the bytes read through it, to track offsets in the replay file.
+   */
+  private static final class CountingInputStream
+    extends FilterInputStream
+  {
+    private long count;
+
+    private CountingInputStream(InputStream in)
+    {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+      final int result = super.read();
+      if (result >= 0)
+      {
+        count++;
+      }
+      return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+      final int result = super.read(b, off, len);
+      if (result > 0)
+      {
+        count += result;
+      }
+      return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+      final long result = super.skip(n);
+      count += result;
+      return result;
+    }
+  }
+
+}  // End AsynchronousDatabaseAuditListener.
@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.audit;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * An immutable snapshot of an Audit and the cause of its AuditSession, 
+ * suitable for writing after the request that created the Audit has 
+ * completed.  The affected and cause objects are reduced to their 
+ * identities so that later modifications to them are not reflected in the
+ * record.
+ *   <p>
+ * Records can be written to and read from a DataOutput/DataInput, which
+ * AsynchronousDatabaseAuditListener uses to spill audits to a local file
+ * when the database cannot keep up.
+ */
+public final class AuditRecord
+{
+
+  //
+  // Member variables.
+  //
+
+  private final int                type;
+  private final long               timestamp;
+  private final long               affectedID;
+  private final int                affectedTypeID;
+  private final long               causeID;
+  private final int                causeTypeID;
+  private final int                attributeID;
+  private final String             originalValue;
+  private final String             newValue;
+  private final Map<String,String> customAttributes;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   */
+  public AuditRecord(int type, long timestamp, long affectedID, 
+      int affectedTypeID, long causeID, int causeTypeID, int attributeID, 
+      String originalValue, String newValue, 
+      Map<String,String> customAttributes)
+  {
+    this.type = type;
+    this.timestamp = timestamp;
+    this.affectedID = affectedID;
+    this.affectedTypeID = affectedTypeID;
+    this.causeID = causeID;
+    this.causeTypeID = causeTypeID;
+    this.attributeID = attributeID;
+    this.originalValue = originalValue;
+    this.newValue = newValue;
+    this.customAttributes = (customAttributes == null || customAttributes.isEmpty())
+        ? Collections.emptyMap()
+        : Collections.unmodifiableMap(new LinkedHashMap<>(customAttributes));
+  }
+
+  /**
+   * Creates a record from an Audit and its AuditSession.  Returns null if
+   * either the Audit's affected object or the session's cause is missing.
+   */
+  public static AuditRecord of(AuditSession session, Audit audit)
+  {
+    final Auditable affected = audit.getAffected();
+    final Auditable cause = session.getCause();
+    if (affected == null || cause == null)
+    {
+      return null;
+    }
+    return new AuditRecord(audit.getType(), audit.getTimestamp().getTime(),
+        affected.getId(), affected.getAuditableTypeID(), 
+        cause.getId(), cause.getAuditableTypeID(), audit.getAttributeID(), 
+        audit.getOriginalValue(), audit.getNewValue(), 
+        audit.hasCustom() ? audit.getCustomAttributes() : null);
+  }
+
+  public int getType()
+  {
+    return type;
+  }
+
+  public long getTimestamp()
+  {
+    return timestamp;
+  }
+
+  public long getAffectedID()
+  {
+    return affectedID;
+  }
+
+  public int getAffectedTypeID()
+  {
+    return affectedTypeID;
+  }
+
+  public long getCauseID()
+  {
+    return causeID;
+  }
+
+  public int getCauseTypeID()
+  {
+    return causeTypeID;
+  }
+
+  public int getAttributeID()
+  {
+    return attributeID;
+  }
+
+  public String getOriginalValue()
+  {
+    return originalValue;
+  }
+
+  public String getNewValue()
+  {
+    return newValue;
+  }
+
+  /**
+   * Gets the custom attributes, which map additional column names to 
+   * values.  Never null.
+   */
+  public Map<String,String> getCustomAttributes()
+  {
+    return customAttributes;
+  }
+
+  /**
+   * Writes this record to a DataOutput.
+   */
+  public void writeTo(DataOutput out) throws IOException
+  {
+    out.writeInt(type);
+    out.writeLong(timestamp);
+    out.writeLong(affectedID);
+    out.writeInt(affectedTypeID);
+    out.writeLong(causeID);
+    out.writeInt(causeTypeID);
+    out.writeInt(attributeID);
+    writeNullable(out, originalValue);
+    writeNullable(out, newValue);
+    out.writeInt(customAttributes.size());
+    for (Map.Entry<String,String> entry : customAttributes.entrySet())
+    {
+      out.writeUTF(entry.getKey());
+      writeNullable(out, entry.getValue());
+    }
+  }
+
+  /**
+   * Reads a record previously written by writeTo.
+   */
+  public static AuditRecord readFrom(DataInput in) throws IOException
+  {
+    final int type = in.readInt();
+    final long timestamp = in.readLong();
+    final long affectedID = in.readLong();
+    final int affectedTypeID = in.readInt();
+    final long causeID = in.readLong();
+    final int causeTypeID = in.readInt();
+    final int attributeID = in.readInt();
+    final String originalValue = readNullable(in);
+    final String newValue = readNullable(in);
+    final int customCount = in.readInt();
+    Map<String,String> custom = null;
+    if (customCount > 0)
+    {
+      custom = new LinkedHashMap<>(customCount);
+      for (int i = 0; i < customCount; i++)
+      {
+        final String name = in.readUTF();
+        custom.put(name, readNullable(in));
+      }
+    }
+    return new AuditRecord(type, timestamp, affectedID, affectedTypeID,
+        causeID, causeTypeID, attributeID, originalValue, newValue, custom);
+  }
+
+  private static void writeNullable(DataOutput out, String value) 
+      throws IOException
+  {
+    out.writeBoolean(value != null);
+    if (value != null)
+    {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readNullable(DataInput in) throws IOException
+  {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "AuditRecord [" + Audit.getAuditTypeName(type) 
+        + "; affected " + affectedTypeID + ":" + affectedID
+        + "; cause " + causeTypeID + ":" + causeID
+        + "; attribute " + attributeID + "]";
+  }
+
+}  // End AuditRecord.
@@ -32,14 +32,14 @@ import java.util.*;
 
 import com.techempower.*;
 import com.techempower.data.*;
-import com.techempower.helper.*;
-import com.techempower.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A basic database audit listener that uses a BasicConnectorFactory and
- * runs simple INSERT queries to insert audits.  The standard schema for
+ * runs parameterized INSERT queries to insert audits.  Audits are written
+ * synchronously as they are committed; see AsynchronousDatabaseAuditListener
+ * for a variation that writes batches of audits on a background thread.  The standard schema for
  * the Audit table is below:
  * <p>
  * <pre>{@code
@@ -61,6 +61,13 @@ public class BasicDatabaseAuditListener
   implements AuditListener
 {
 
+  //
+  // Constants.
+  //
+  
+  private static final String STANDARD_COLUMNS = 
+      "Type,AuditTime,Affected,AffectedTypeID,Cause,CauseTypeID,AttributeID,OriginalValue,NewValue";
+  
   //
   // Member variables.
   //
@@ -107,8 +114,8 @@ public class BasicDatabaseAuditListener
   @Override
   public void auditCommitted(AuditSession session, Audit audit)
   {
-    if (audit.getAffected() == null
-        || session.getCause() == null)
+    final AuditRecord record = AuditRecord.of(session, audit);
+    if (record == null)
     {
       log.debug(
           "Unexpected input to auditCommitted.  " +
@@ -117,49 +124,87 @@ public class BasicDatabaseAuditListener
       return;
     }
 
-    StringList fields = new StringList();
-    StringList values = new StringList();
-    
-    // Convert the timestamp.
-    java.sql.Timestamp time = new java.sql.Timestamp(audit.getTimestamp().getTime());
-    
-    // Add the fields.
-    fields.add("Type,AuditTime,Affected,AffectedTypeID,Cause,CauseTypeID,AttributeID,OriginalValue,NewValue");
-    values.add("" + audit.getType());
-    values.add("'" + time.toString() + "'");
-    values.add("" + audit.getAffected().getId());
-    values.add("" + audit.getAffected().getAuditableTypeID());
-    values.add("" + session.getCause().getId());
-    values.add("" + session.getCause().getAuditableTypeID());
-    values.add("" + audit.getAttributeID());
-    values.add((audit.getOriginalValue() == null) ? "NULL" : DatabaseHelper.prepare(audit.getOriginalValue()));
-    values.add((audit.getNewValue() == null) ? "NULL" : DatabaseHelper.prepare(audit.getNewValue()));
-
-    // Look at custom attributes.
-    if (audit.hasCustom())
+    try
     {
-      Map<String,String> customAttributes = audit.getCustomAttributes();
-      for (Map.Entry<String, String> entry : customAttributes.entrySet())
-      {
-        fields.add(entry.getKey());
-        values.add(DatabaseHelper.prepare(entry.getValue()));
-      }
+      insert(Collections.singletonList(record));
+    }
+    catch (SQLException exc)
+    {
+      log.error("Unable to persist audit.", exc);
+    }
+  }
+  
+  /**
+   * Inserts a batch of audit records using parameterized batch INSERT
+   * statements.  Records that share the same set of custom attribute 
+   * columns are inserted together in a single JDBC batch.
+   */
+  protected void insert(List<AuditRecord> records)
+      throws SQLException
+  {
+    // Group the records by their set of columns, which only varies with
+    // custom attributes.  The custom columns are sorted so that records with
+    // the same attributes share a group regardless of their maps' iteration
+    // order, and values are bound by column name in that sorted order.
+    final Map<List<String>, List<AuditRecord>> byColumns = new LinkedHashMap<>(2);
+    for (AuditRecord record : records)
+    {
+      final List<String> columns = new ArrayList<>(record.getCustomAttributes().keySet());
+      Collections.sort(columns);
+      byColumns.computeIfAbsent(columns, 
+          key -> new ArrayList<>(records.size())).add(record);
     }
-    
-    String query = "INSERT INTO " + auditTable
-      + " (" + fields + ") VALUES (" + values + ");";
 
     try (ConnectionMonitor monitor = this.connFactory.getConnectionMonitor())
     {
-      try (PreparedStatement statement = monitor.getConnection().prepareStatement(query))
+      for (Map.Entry<List<String>, List<AuditRecord>> entry : byColumns.entrySet())
       {
-        statement.executeUpdate();
+        try (PreparedStatement statement = monitor.prepareStatement(
+            getInsertQuery(entry.getKey())))
+        {
+          for (AuditRecord record : entry.getValue())
+          {
+            int index = 1;
+            statement.setInt(index++, record.getType());
+            statement.setTimestamp(index++, new Timestamp(record.getTimestamp()));
+            statement.setLong(index++, record.getAffectedID());
+            statement.setInt(index++, record.getAffectedTypeID());
+            statement.setLong(index++, record.getCauseID());
+            statement.setInt(index++, record.getCauseTypeID());
+            statement.setInt(index++, record.getAttributeID());
+            statement.setString(index++, record.getOriginalValue());
+            statement.setString(index++, record.getNewValue());
+            for (String column : entry.getKey())
+            {
+              statement.setString(index++, record.getCustomAttributes().get(column));
+            }
+            statement.addBatch();
+          }
+          statement.executeBatch();
+        }
       }
     }
-    catch (SQLException exc)
+  }
+  
+  /**
+   * Gets the parameterized INSERT query for the standard columns plus the
+   * provided custom columns.
+   */
+  private String getInsertQuery(List<String> customColumns)
+  {
+    final StringBuilder query = new StringBuilder(200)
+        .append("INSERT INTO ").append(auditTable)
+        .append(" (").append(STANDARD_COLUMNS);
+    for (String column : customColumns)
     {
-      log.error("Unable to persist audit.", exc);
+      query.append(',').append(column);
+    }
+    query.append(") VALUES (?,?,?,?,?,?,?,?,?");
+    for (int i = 0; i < customColumns.size(); i++)
+    {
+      query.append(",?");
     }
+    return query.append(");").toString();
   }
 
   @Override
@@ -27,7 +27,7 @@
 
 /**
  * Entity change-auditing functionality, allowing the construction of an
- * application audit trail.  Includes a basic listener that saves audits to a
- * database table.
+ * application audit trail.  Includes basic listeners that save audits to a
+ * database table, either synchronously or in batches on a background thread.
  */
 package com.techempower.audit;
@@ -31,8 +31,9 @@ import gnu.trove.map.*;
 import gnu.trove.map.hash.*;
 
 import java.lang.reflect.*;
+import java.sql.SQLException;
 import java.util.*;
-import java.util.concurrent.*;
+import java.util.function.*;
 
 import com.techempower.data.*;
 import com.techempower.helper.*;
@@ -51,9 +52,17 @@ import com.techempower.util.*;
  * operations (adding, removing objects for example) are synchronized.
  * <p>
  * Read operations are made threadsafe without synchronization through the use
- * of CopyOnWriteArrayList (from the Java concurrency package) and
- * ConcurrentLongMap, which is a simple re-working of ConcurrentHashMap also
- * from the Java concurrency package.
+ * of a GroupStore, selected by the group's CacheStorage.  The STANDARD store
+ * indexes objects by identity with a ConcurrentHashMap; the COMPACT store 
+ * uses ConcurrentLongMap, which is a simple re-working of ConcurrentHashMap
+ * for primitive keys.  Either store keeps a sorted group's order in a 
+ * SortedIndex, which readers traverse without locking.
+ * <p>
+ * The SortedIndex finds objects by comparison, so an application that
+ * changes the sort fields of a cached object in place must call reorder 
+ * (or put, which reorders) for that object before the group is next read 
+ * in order.  Such a reorder costs O(n), because the object must be found
+ * in its old position by identity rather than by comparison.
  * <p>
  * Testing so far indicates read performance that is greatly improved over
  * previous versions that used synchronization for both reads and writes.
@@ -67,9 +76,11 @@ public class CacheGroup<T extends Identifiable>
   // Member variables.
   //
 
-  private ConcurrentMap<Long, T>  objects             = new ConcurrentHashMap<>();
-  private List<T>                 objectsInOrder      = new CopyOnWriteArrayList<>();
+  private CacheStorage            storage             = CacheStorage.STANDARD;
+  private GroupStore<T>           objects;
   private volatile boolean        initialized         = false;
+  private volatile boolean        loadedOnce          = false;
+  private volatile Thread         coldStartThread;
   private boolean                 errorOnInitialize   = false;
   private long                    lowestIdentity      = Long.MAX_VALUE;
   private long                    highestIdentity     = 0;
@@ -94,6 +105,7 @@ public class CacheGroup<T extends Identifiable>
   {
     super(controller, type, table, id, maker, comparator,
         where, whereArguments, readOnly, distribute);
+    this.objects = createStore(Collections.<T>emptyList());
   }
 
   /**
@@ -127,6 +139,44 @@ public class CacheGroup<T extends Identifiable>
     return new Builder<>(type);
   }
 
+  /**
+   * Gets the storage engine used by this group.
+   */
+  public CacheStorage storage()
+  {
+    return this.storage;
+  }
+
+  /**
+   * Sets the storage engine used by this group.  Any objects already in the
+   * group are moved to the new storage.
+   */
+  protected void setStorage(CacheStorage storage)
+  {
+    synchronized (this)
+    {
+      this.storage = Objects.requireNonNull(storage);
+      this.objects = createStore(copyOrderedObjects(this.objects));
+    }
+  }
+
+  /**
+   * Creates a new store for the provided objects using the group's storage
+   * engine and comparator.
+   */
+  private GroupStore<T> createStore(Collection<T> initialObjects)
+  {
+    return GroupStore.create(this.storage, comparator(), initialObjects);
+  }
+
+  /**
+   * Copies the objects of a store, in order, to a new list.
+   */
+  private List<T> copyOrderedObjects(GroupStore<T> store)
+  {
+    return new ArrayList<>(store.snapshot());
+  }
+
   /**
    * Sets the objects list to the contents of the provided Collection.
    */
@@ -142,28 +192,12 @@ public class CacheGroup<T extends Identifiable>
     {
       if (objects == null)
       {
-        this.objects = new ConcurrentHashMap<>();
-        this.objectsInOrder = new CopyOnWriteArrayList<>();
+        this.objects = createStore(Collections.<T>emptyList());
       }
       else
       {
-        final ConcurrentMap<Long, T> workMap = new ConcurrentHashMap<>(
-            objects.size());
-        final List<T> workList = new ArrayList<>(objects.size());
-        
-        for (T object : objects)
-        {
-          workMap.put(object.getId(), object);
-          workList.add(object);
-        }
-
-        // Replace the member variables.
-        this.objects = workMap; 
-        // Avoid maintaining the sorted list if not needed.
-        if (comparator() != EntityGroup.NO_COMPARATOR)
-        {
-          this.objectsInOrder = new CopyOnWriteArrayList<>(workList);
-        }
+        // Replace the member variable.
+        this.objects = createStore(objects);
 
         // If we're setting objects from somewhere else, we should assume
         // that this is initializing the cache group.
@@ -189,8 +223,7 @@ public class CacheGroup<T extends Identifiable>
       // Instantiate a new object so that any threads currently working with
       // an old reference outside of a synchronized block will not be
       // affected.
-      this.objects = new ConcurrentHashMap<>();
-      this.objectsInOrder = new CopyOnWriteArrayList<>();
+      this.objects = createStore(Collections.<T>emptyList());
       setErrorOnInitialize(false);
       resetHighLowIdentities();
     }
@@ -217,12 +250,64 @@ public class CacheGroup<T extends Identifiable>
   public List<T> list()
   {
     initializeIfNecessary();
-    // If sorting is disabled, return values().
-    if (comparator() == EntityGroup.NO_COMPARATOR)
+    return copyOrderedObjects(this.objects);
+  }
+
+  /**
+   * Locates the offset within the sorted objects in O(log n) time and copies
+   * only the requested page.
+   */
+  @Override
+  public List<T> list(int offset, int limit)
+  {
+    if (offset < 0 || limit < 0)
     {
-      return new ArrayList<>(this.objects.values());
+      throw new IllegalArgumentException("Offset and limit must not be negative.");
     }
-    return new ArrayList<>(this.objectsInOrder);
+    initializeIfNecessary();
+    return this.objects.page(offset, limit);
+  }
+
+  /**
+   * Gets an unmodifiable list of the objects in the same order as list(),
+   * reflecting the state of the group at the time this method is called.
+   * Unlike list(), this does not copy the objects if the group has a
+   * comparator, so it is suitable for iterating over large groups.
+   */
+  public List<T> snapshot()
+  {
+    initializeIfNecessary();
+    return this.objects.snapshot();
+  }
+  
+  /**
+   * Scans the cached objects in place rather than copying them into an
+   * intermediate list first.
+   */
+  @Override
+  public List<T> list(Predicate<? super T> predicate)
+  {
+    initializeIfNecessary();
+    return filter(orderedObjects(), predicate);
+  }
+
+  /**
+   * Scans the cached objects in place rather than copying them into an
+   * intermediate list first.
+   */
+  @Override
+  public T get(Predicate<? super T> predicate)
+  {
+    initializeIfNecessary();
+    return first(orderedObjects(), predicate);
+  }
+
+  /**
+   * Gets the cached objects in the order used by list(), without copying.
+   */
+  protected Iterable<T> orderedObjects()
+  {
+    return this.objects.ordered();
   }
   
   @Override
@@ -231,7 +316,7 @@ public class CacheGroup<T extends Identifiable>
     initializeIfNecessary();
     
     // Grab a reference.
-    final ConcurrentMap<Long, T> map = this.objects;
+    final GroupStore<T> map = this.objects;
 
     final TLongObjectMap<T> toReturn = new TLongObjectHashMap<>(map.size());
     final Iterator<T> values = map.values().iterator();
@@ -391,15 +476,14 @@ public class CacheGroup<T extends Identifiable>
   public final void addToCache(T... objectsToAdd)
   {
     // Grab references.
-    final ConcurrentMap<Long, T> map = this.objects;
-    final Comparator<? super T> comparator = comparator();
+    final GroupStore<T> map = this.objects;
     
-    // Avoid maintaining the sorted list if not needed.
-    if (comparator == EntityGroup.NO_COMPARATOR)
+    // Avoid synchronizing if the sorted list is not maintained.
+    if (!map.isSorted())
     {
       for (T object : objectsToAdd)
       {
-        map.put(object.getId(), object);
+        map.put(object);
 
         if (areHighLowIdentitiesInitialized())
         {
@@ -416,31 +500,15 @@ public class CacheGroup<T extends Identifiable>
     }
     else
     {
-      final List<T> orderedList = this.objectsInOrder;
       synchronized (this)
       {
         for (T object : objectsToAdd)
         {
           // Only proceed if we don't already have this reference in the cache.
+          // Any existing reference with the same ID is replaced.
           if (!map.containsValue(object))
           {
-            // If we already have a reference with the same ID, let's remove it.
-            if (map.containsKey(object.getId()))
-            {
-              // Remove the existing reference from the ordered list.
-              orderedList.remove(map.get(object.getId()));
-            }
-
-            map.put(object.getId(), object);
-            int search = Collections.binarySearch(orderedList, object, comparator);
-            if (search < 0)
-            {
-              orderedList.add(-search - 1, object);
-            }
-            else
-            {
-              orderedList.add(object);
-            }
+            map.put(object);
 
             if (areHighLowIdentitiesInitialized())
             {
@@ -473,10 +541,10 @@ public class CacheGroup<T extends Identifiable>
   public boolean removeFromCache(long... ids)
   {
     // Grab references.
-    final ConcurrentMap<Long, T> map = this.objects;
+    final GroupStore<T> map = this.objects;
 
-    // Skip updating objectsInOrder if not using sorting.
-    if (comparator() == EntityGroup.NO_COMPARATOR)
+    // Avoid synchronizing if the sorted list is not maintained.
+    if (!map.isSorted())
     {
       for (long id : ids)
       {
@@ -485,13 +553,12 @@ public class CacheGroup<T extends Identifiable>
       return true;
     }
 
-    // Using sorting, so maintain objectsInOrder.
-    final List<T> orderedList = this.objectsInOrder;
+    // Using sorting, so synchronize to maintain the sorted list.
     synchronized (this)
     {
       for (long id : ids)
       {
-        orderedList.remove(map.remove(id));
+        map.remove(id);
       }
 
       // Recalculate high/low identities if needed.
@@ -589,24 +656,93 @@ public class CacheGroup<T extends Identifiable>
   {
     synchronized (this)
     {
-      List<T> allObjects = fetchAllPersistedObjects();
-      // Avoid maintaining the sorted list if not needed.
-      if (comparator() != EntityGroup.NO_COMPARATOR)
+      if (!this.loadedOnce)
+      {
+        this.coldStartThread = Thread.currentThread();
+      }
+      try
+      {
+        initialize(fetchAllPersistedObjects());
+      }
+      finally
       {
-        this.objectsInOrder = new CopyOnWriteArrayList<>(allObjects);
+        this.coldStartThread = null;
       }
+    }
+  }
+
+  /**
+   * Initializes this CacheGroup with objects that have been fetched from 
+   * the database by other means, such as a CacheSnapshot.
+   */
+  void initialize(List<T> allObjects)
+  {
+    synchronized (this)
+    {
       copyListToObjectMap(allObjects);
       
       // Reset the high and low identities.
       resetHighLowIdentities();
       
       setInitialized(true);
+      this.loadedOnce = true;
       
       // Execute custom post-initialization processing.
       customPostInitialization();
     }
   }
   
+  /**
+   * Reads from the primary database, except during the group's first
+   * initialization.  A replica may lag the primary, and anything loaded
+   * after a change (a refresh or reset following a cluster notification, 
+   * or a miss) is kept until the next change, so such loads must observe
+   * the primary's current state.  Only the cold-start bulk load may use a
+   * replica.
+   */
+  @Override
+  protected ConnectionMonitor getReadConnectionMonitor() throws SQLException
+  {
+    if (this.coldStartThread == Thread.currentThread())
+    {
+      return super.getReadConnectionMonitor();
+    }
+    final ReadRouting.Scope primary = ReadRouting.readPrimary();
+    try
+    {
+      return super.getReadConnectionMonitor();
+    }
+    finally
+    {
+      primary.close();
+    }
+  }
+  
+  /**
+   * Gets the number of persisted entities, bypassing the cache.
+   */
+  int persistedSize()
+  {
+    return rawSize();
+  }
+
+  /**
+   * Gets the highest identity of any persisted entity, bypassing the cache.
+   */
+  long persistedHighest()
+  {
+    return rawHighest();
+  }
+
+  /**
+   * Fetches the persisted entities with identities greater than the given
+   * identity, bypassing the cache.
+   */
+  List<T> fetchPersistedObjectsAbove(long identity)
+  {
+    return rawListAbove(identity);
+  }
+
   /**
    * Called by initialize to fetch a list of persistent entities using the
    * EntityGroup.list method.
@@ -628,24 +764,12 @@ public class CacheGroup<T extends Identifiable>
   }
 
   /**
-   * Copies ordered objects to the LongMap.
+   * Copies ordered objects to a new store, replacing the current one.
    */
   protected void copyListToObjectMap(List<T> l)
   {
-    final Iterator<T> iter = l.iterator();
-    
-    // Create a new map, work, to populate.
-    final ConcurrentMap<Long, T> work = new ConcurrentHashMap<>(
-        l.size());
-    T co;
-    while (iter.hasNext())
-    {
-      co = iter.next();
-      work.put(co.getId(), co);
-    }
-    
     // Replace the member variable.
-    this.objects = work;
+    this.objects = createStore(l);
   }
 
   /**
@@ -709,8 +833,8 @@ public class CacheGroup<T extends Identifiable>
    */
   protected void calculateHighLowIdentities()
   {
-    // Use objects instead of objectsInOrder in case NO_COMPARATOR is specified and
-    // objectsInOrder is not maintained.
+    // Use values() rather than the sorted order in case NO_COMPARATOR is
+    // specified and the sorted order is not maintained.
     final Iterator<?> iter = this.objects.values().iterator();
     
     Identifiable co;
@@ -785,9 +909,7 @@ public class CacheGroup<T extends Identifiable>
     }
 
     // Grab references.
-    final ConcurrentMap<Long, T> map = this.objects;
-    final List<T> orderedList = this.objectsInOrder;
-    final Comparator<? super T> comparator = comparator();
+    final GroupStore<T> map = this.objects;
 
     synchronized (this)
     {
@@ -797,35 +919,13 @@ public class CacheGroup<T extends Identifiable>
       for (long id : ids)
       {
         // Remove the object with this id from the cache, if it's there.
-        if (comparator == EntityGroup.NO_COMPARATOR)
-        {
-          map.remove(id);
-        }
-        else
-        {
-          // Only update orderedList if sorting is desired.
-          orderedList.remove(map.remove(id));
-        }
+        map.remove(id);
         final T object = objectsMap.get(id);
         
         // Put the newly loaded object into the cache.
         if (object != null)
         {
-          map.put(id, object);
-          // Only update orderedList if sorting is desired.
-          if (comparator != EntityGroup.NO_COMPARATOR)
-          {
-            // Use the comparator to insert it at the appropriate position.
-            int search = Collections.binarySearch(orderedList, object, comparator);
-            if (search < 0)
-            {
-              orderedList.add(-search - 1, object);
-            }
-            else
-            {
-              orderedList.add(object);
-            }
-          }
+          map.put(object);
         }
       }
     }
@@ -833,7 +933,9 @@ public class CacheGroup<T extends Identifiable>
 
   /**
    * This method ensures that the next time the ordered objects are fetched, 
-   * the specified objects will be in the correct positions.
+   * the specified objects will be in the correct positions.  It must be 
+   * called after changing, in place, any field by which the group is 
+   * sorted; put does so on the caller's behalf.
    * 
    * @param ids the ids of the objects
    */
@@ -847,8 +949,7 @@ public class CacheGroup<T extends Identifiable>
     }
 
     // Grab references.
-    final ConcurrentMap<Long, T> map = this.objects;
-    final List<T> orderedList = this.objectsInOrder;
+    final GroupStore<T> map = this.objects;
 
     synchronized (this)
     {
@@ -863,33 +964,7 @@ public class CacheGroup<T extends Identifiable>
         final T object = map.get(id);
         if (object != null)
         {
-          // Since writes to the list are expensive, let's see if it's already
-          // in the correct order before modifying anything.
-          final int index = orderedList.indexOf(object);
-          final T previous = (index == 0)
-              ? null
-              : orderedList.get(index - 1);
-          final T next = (index == this.objectsInOrder.size() - 1)
-              ? null
-              : orderedList.get(index + 1);
-          if ((previous == null || comparator().compare(object, previous) >= 0)
-              && (next == null || comparator().compare(object, next) <= 0))
-          {
-            return;
-          }
-          // Boo, it's out of order.  We need to do two write operations now,
-          // which causes the list to copy itself twice.
-          orderedList.remove(object);
-          final int search = Collections.binarySearch(orderedList, object, 
-              comparator());
-          if (search < 0)
-          {
-            orderedList.add(-search - 1, object);
-          }
-          else
-          {
-            orderedList.add(object);
-          }
+          map.reorder(object);
         }
       }
     }
@@ -976,6 +1051,8 @@ public class CacheGroup<T extends Identifiable>
   public static class Builder<T extends Identifiable>
       extends EntityGroup.Builder<T>
   {
+    protected CacheStorage storage = CacheStorage.STANDARD;
+    
     protected Builder(Class<T> type)
     {
       super(type);
@@ -995,7 +1072,7 @@ public class CacheGroup<T extends Identifiable>
         throw new NullPointerException();
       }
       
-      return new CacheGroup<>(
+      final CacheGroup<T> group = new CacheGroup<>(
           controller,
           this.type,
           this.table,
@@ -1006,6 +1083,22 @@ public class CacheGroup<T extends Identifiable>
           this.whereArguments,
           this.readOnly,
           this.distribute);
+      group.setStorage(this.storage);
+      return group;
+    }
+
+    /**
+     * Sets the storage engine used by the group.  The default is
+     * {@link CacheStorage#STANDARD}.
+     */
+    public Builder<T> storage(CacheStorage cacheStorage)
+    {
+      if (cacheStorage == null)
+      {
+        throw new NullPointerException();
+      }
+      this.storage = cacheStorage;
+      return this;
     }
 
     @Override
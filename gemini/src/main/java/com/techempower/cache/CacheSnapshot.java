@@ -0,0 +1,688 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.cache;
+
+import java.io.*;
+import java.math.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.channels.FileChannel.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+
+import com.techempower.collection.relation.*;
+import com.techempower.data.*;
+import com.techempower.helper.*;
+import com.techempower.util.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A binary snapshot of the contents of an EntityStore's cache groups and
+ * cached relations, written to disk so that a restarting application can
+ * warm its caches from the file rather than by reading every table.
+ *   <p>
+ * Entities are captured using their EntityGroup's field mappings (see
+ * {@link EntityGroup#writeMap}) and restored as though they had been read
+ * from the database (see {@link EntityGroup#makeFromMap}).  The snapshot is
+ * written to a temporary file that then replaces the previous snapshot, and
+ * is read back through a memory-mapped buffer.
+ *   <p>
+ * A snapshot of a group is only trusted after it has been reconciled with
+ * the database:
+ * <ul>
+ * <li>The table's checksum must match the checksum recorded when the 
+ * snapshot was written.  The checksum is taken before the group's contents
+ * are captured, so a change made while the snapshot is being written 
+ * causes a mismatch rather than going unnoticed.</li>
+ * <li>Rows with identities above the snapshot's high-water mark are fetched
+ * and added to the snapshot.  If the table's row count then differs from the
+ * snapshot's, rows have been deleted and the snapshot is discarded.</li>
+ * </ul>
+ * A checksum query is therefore required; without one, changes to existing
+ * rows could not be detected.  Groups and relations whose snapshots are 
+ * discarded are simply left to load from the database as usual.
+ *   <p>
+ * Field values are written in a tagged binary form that covers the types 
+ * read from JDBC.  Java serialization is not used, so a snapshot file 
+ * cannot instantiate arbitrary classes; a group with a field of any other
+ * type is omitted from the snapshot.
+ *   <p>
+ * Only plain CacheGroups are captured: subclasses such as PureMemoryGroup 
+ * and SubsetCacheGroup populate themselves in ways a snapshot cannot 
+ * reconcile.
+ */
+public class CacheSnapshot
+{
+
+  //
+  // Constants.
+  //
+
+  private static final int MAGIC   = 0x47435331;  // "GCS1"
+  private static final int VERSION = 2;
+
+  private static final int SECTION_END      = 0;
+  private static final int SECTION_GROUP    = 1;
+  private static final int SECTION_RELATION = 2;
+
+  private static final byte TAG_NULL         = 0;
+  private static final byte TAG_STRING       = 1;
+  private static final byte TAG_INTEGER      = 2;
+  private static final byte TAG_LONG         = 3;
+  private static final byte TAG_BOOLEAN      = 4;
+  private static final byte TAG_DOUBLE       = 5;
+  private static final byte TAG_FLOAT        = 6;
+  private static final byte TAG_SHORT        = 7;
+  private static final byte TAG_BYTE         = 8;
+  private static final byte TAG_CHARACTER    = 9;
+  private static final byte TAG_BIG_DECIMAL  = 10;
+  private static final byte TAG_BIG_INTEGER  = 11;
+  private static final byte TAG_DATE         = 12;
+  private static final byte TAG_SQL_DATE     = 13;
+  private static final byte TAG_SQL_TIME     = 14;
+  private static final byte TAG_TIMESTAMP    = 15;
+  private static final byte TAG_BYTES        = 16;
+
+  private static final String TABLE_PLACEHOLDER = "{table}";
+
+  //
+  // Member variables.
+  //
+
+  private final EntityStore store;
+  private final Path        file;
+  private final String      checksumQuery;
+  private final long        maxAgeMillis;
+  private final Logger      log = LoggerFactory.getLogger(getClass());
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   *
+   * @param store The EntityStore whose caches are captured.
+   * @param file The snapshot file.
+   * @param checksumQuery A SQL query that returns a checksum of a table in
+   *        the last column of its first row, with "{table}" in place of the
+   *        table name; for example, "CHECKSUM TABLE {table}" for MySQL.
+   * @throws IllegalArgumentException if no checksum query is provided.
+   * @param maxAgeMillis The age beyond which a snapshot is not used, or 0
+   *        to use snapshots of any age.
+   */
+  public CacheSnapshot(EntityStore store, Path file, String checksumQuery,
+      long maxAgeMillis)
+  {
+    if (StringHelper.isEmpty(checksumQuery))
+    {
+      throw new IllegalArgumentException("A checksum query is required for cache snapshots.");
+    }
+    this.store = store;
+    this.file = file;
+    this.checksumQuery = checksumQuery;
+    this.maxAgeMillis = maxAgeMillis;
+  }
+
+  /**
+   * Gets the snapshot file.
+   */
+  public Path getFile()
+  {
+    return this.file;
+  }
+
+  /**
+   * Writes a snapshot of every initialized cache group and loaded cached
+   * relation, replacing any previous snapshot.  A group that cannot be 
+   * captured, for example because a field value cannot be serialized, is
+   * omitted.
+   *
+   * @return The number of groups and relations written.
+   */
+  public synchronized int write() throws IOException
+  {
+    final long start = System.currentTimeMillis();
+    final Path directory = this.file.toAbsolutePath().getParent();
+    if (directory != null)
+    {
+      Files.createDirectories(directory);
+    }
+    final Path temporary = this.file.resolveSibling(
+        this.file.getFileName() + ".tmp");
+    
+    int written = 0;
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        Files.newOutputStream(temporary), 1 << 16)))
+    {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(System.currentTimeMillis());
+      
+      for (EntityGroup<? extends Identifiable> group : this.store.getGroupList())
+      {
+        if (group.getClass() == CacheGroup.class
+            && ((CacheGroup<?>)group).isInitialized())
+        {
+          written += writeSection(out, SECTION_GROUP, group.getType().getName(),
+              section -> writeGroup(section, (CacheGroup<?>)group));
+        }
+      }
+      for (CachedRelation<?, ?> relation : this.store.getCachedRelations())
+      {
+        if (relation.isLoaded())
+        {
+          written += writeSection(out, SECTION_RELATION, relation.tableName(),
+              section -> writeRelation(section, relation));
+        }
+      }
+      out.writeInt(SECTION_END);
+    }
+    
+    Files.move(temporary, this.file, StandardCopyOption.REPLACE_EXISTING, 
+        StandardCopyOption.ATOMIC_MOVE);
+    log.info("Wrote cache snapshot of {} groups and relations to {} ({} bytes) in {}ms.",
+        written, this.file, Files.size(this.file), 
+        System.currentTimeMillis() - start);
+    return written;
+  }
+
+  /**
+   * Restores cache groups and cached relations from the snapshot, 
+   * reconciling each with the database.  Groups and relations that are
+   * already loaded are left alone.  A missing, stale, or unreadable 
+   * snapshot restores nothing.
+   *
+   * @return The number of groups and relations restored.
+   */
+  public synchronized int load()
+  {
+    if (!Files.isRegularFile(this.file))
+    {
+      log.info("No cache snapshot found at {}.", this.file);
+      return 0;
+    }
+    
+    final long start = System.currentTimeMillis();
+    final Map<String, CacheGroup<?>> groups = new HashMap<>();
+    for (EntityGroup<? extends Identifiable> group : this.store.getGroupList())
+    {
+      if (group.getClass() == CacheGroup.class)
+      {
+        groups.put(group.getType().getName(), (CacheGroup<?>)group);
+      }
+    }
+    final Map<String, CachedRelation<?, ?>> relations = new HashMap<>();
+    for (CachedRelation<?, ?> relation : this.store.getCachedRelations())
+    {
+      relations.put(relation.tableName(), relation);
+    }
+    
+    int restored = 0;
+    try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ))
+    {
+      if (channel.size() > Integer.MAX_VALUE)
+      {
+        log.warn("Cache snapshot {} is too large to map; ignoring it.", this.file);
+        return 0;
+      }
+      final ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+      {
+        log.warn("Cache snapshot {} is not a compatible snapshot; ignoring it.", this.file);
+        return 0;
+      }
+      final long created = buffer.getLong();
+      if (this.maxAgeMillis > 0 
+          && System.currentTimeMillis() - created > this.maxAgeMillis)
+      {
+        log.info("Cache snapshot {} was written at {} and is too old to use.", 
+            this.file, new java.util.Date(created));
+        return 0;
+      }
+      
+      int kind;
+      while ((kind = buffer.getInt()) != SECTION_END)
+      {
+        final String name = readString(buffer);
+        final int length = buffer.getInt();
+        final ByteBuffer section = buffer.slice();
+        section.limit(length);
+        buffer.position(buffer.position() + length);
+        
+        try
+        {
+          if (kind == SECTION_GROUP && groups.containsKey(name))
+          {
+            restored += restoreGroup(section, groups.get(name)) ? 1 : 0;
+          }
+          else if (kind == SECTION_RELATION && relations.containsKey(name))
+          {
+            restored += restoreRelation(section, relations.get(name)) ? 1 : 0;
+          }
+        }
+        catch (IOException | SQLException | RuntimeException exc)
+        {
+          log.warn("Unable to restore {} from cache snapshot.", name, exc);
+        }
+      }
+    }
+    catch (IOException | RuntimeException exc)
+    {
+      log.warn("Unable to read cache snapshot {}.", this.file, exc);
+    }
+    
+    log.info("Restored {} groups and relations from cache snapshot in {}ms.",
+        restored, System.currentTimeMillis() - start);
+    return restored;
+  }
+
+  /**
+   * Writes a section: its kind, name, and length, followed by the content
+   * provided by the writer.  The content is buffered first so that a
+   * failure leaves the snapshot intact.
+   *
+   * @return 1 if the section was written; 0 if it was omitted.
+   */
+  private int writeSection(DataOutputStream out, int kind, String name,
+      SectionWriter writer) throws IOException
+  {
+    final ByteArrayOutputStream content = new ByteArrayOutputStream();
+    try (DataOutputStream section = new DataOutputStream(content))
+    {
+      writer.write(section);
+    }
+    catch (IOException | SQLException | RuntimeException exc)
+    {
+      log.warn("Unable to write {} to cache snapshot; omitting it.", name, exc);
+      return 0;
+    }
+    out.writeInt(kind);
+    writeString(out, name);
+    out.writeInt(content.size());
+    content.writeTo(out);
+    return 1;
+  }
+
+  /**
+   * Writes the content of a group section: the group's checksum, size, and
+   * highest identity, followed by its field names and then the identity and
+   * field values of each entity.
+   */
+  private <T extends Identifiable> void writeGroup(DataOutputStream out, 
+      CacheGroup<T> group) throws IOException, SQLException
+  {
+    // Taken first, so that a change made after the checksum is read but 
+    // before the snapshot is captured makes the snapshot look out of date
+    // rather than current.
+    final String checksum = checksum(group.table());
+    final List<T> objects = group.snapshot();
+    String[] fields = new String[0];
+    long highest = 0;
+    for (T object : objects)
+    {
+      highest = Math.max(highest, object.getId());
+    }
+    if (!objects.isEmpty())
+    {
+      fields = group.writeMap(objects.get(0)).keySet().toArray(fields);
+    }
+    
+    writeString(out, checksum);
+    out.writeInt(objects.size());
+    out.writeLong(highest);
+    out.writeInt(fields.length);
+    for (String field : fields)
+    {
+      writeString(out, field);
+    }
+    for (T object : objects)
+    {
+      final Map<String, Object> properties = group.writeMap(object);
+      out.writeLong(object.getId());
+      for (String field : fields)
+      {
+        writeValue(out, properties.get(field));
+      }
+    }
+  }
+
+  /**
+   * Writes the content of a relation section: the relation's checksum and
+   * size, followed by each pair.
+   */
+  private void writeRelation(DataOutputStream out, CachedRelation<?, ?> relation)
+      throws IOException, SQLException
+  {
+    final String checksum = checksum(relation.tableName());
+    final LongRelation pairs = relation.relation();
+    writeString(out, checksum);
+    out.writeInt(pairs.size());
+    for (LongRelationIterator iterator = pairs.iterator(); iterator.hasNext(); )
+    {
+      iterator.next();
+      out.writeLong(iterator.left());
+      out.writeLong(iterator.right());
+    }
+  }
+
+  /**
+   * Restores a group from its section, if the group is not yet initialized
+   * and the section reconciles with the database.
+   */
+  private <T extends Identifiable> boolean restoreGroup(ByteBuffer section,
+      CacheGroup<T> group) throws IOException, SQLException
+  {
+    final long start = System.currentTimeMillis();
+    final String checksum = readString(section);
+    final int size = section.getInt();
+    final long highest = section.getLong();
+    final String[] fields = new String[section.getInt()];
+    for (int i = 0; i < fields.length; i++)
+    {
+      fields[i] = readString(section);
+    }
+    
+    if (group.isInitialized()
+        || !Objects.equals(checksum, checksum(group.table())))
+    {
+      log.info("Cache snapshot of {} is out of date.", group.name());
+      return false;
+    }
+    final List<T> additions = (group.persistedHighest() > highest)
+        ? group.fetchPersistedObjectsAbove(highest)
+        : Collections.<T>emptyList();
+    if (size + additions.size() != group.persistedSize())
+    {
+      log.info("Cache snapshot of {} is out of date.", group.name());
+      return false;
+    }
+    
+    final List<T> objects = new ArrayList<>(size + additions.size());
+    final Map<String, Object> properties = new HashMap<>(fields.length * 2);
+    for (int i = 0; i < size; i++)
+    {
+      final long id = section.getLong();
+      for (String field : fields)
+      {
+        properties.put(field, readValue(section));
+      }
+      objects.add(group.makeFromMap(id, properties));
+    }
+    objects.addAll(additions);
+    group.initialize(objects);
+    
+    log.info("Restored {} from cache snapshot: {} rows ({} new) in {}ms.", 
+        group.name(), objects.size(), additions.size(), 
+        System.currentTimeMillis() - start);
+    return true;
+  }
+
+  /**
+   * Restores a relation from its section, if the relation is not yet loaded
+   * and the section reconciles with the database.
+   */
+  private boolean restoreRelation(ByteBuffer section, 
+      CachedRelation<?, ?> relation) throws SQLException
+  {
+    final String checksum = readString(section);
+    final int size = section.getInt();
+    if (relation.isLoaded()
+        || !Objects.equals(checksum, checksum(relation.tableName()))
+        || size != relation.persistedSize())
+    {
+      log.info("Cache snapshot of {} is out of date.", relation.tableName());
+      return false;
+    }
+    
+    final long[] leftIDs = new long[size];
+    final long[] rightIDs = new long[size];
+    for (int i = 0; i < size; i++)
+    {
+      leftIDs[i] = section.getLong();
+      rightIDs[i] = section.getLong();
+    }
+    relation.restore(leftIDs, rightIDs);
+    log.info("Restored {} from cache snapshot: {} pairs.", 
+        relation.tableName(), size);
+    return true;
+  }
+
+  /**
+   * Runs the checksum query for a table.
+   */
+  private String checksum(String table) throws SQLException
+  {
+    final ConnectorFactory cf = this.store.getConnectorFactory();
+    final String query = this.checksumQuery.replace(TABLE_PLACEHOLDER, 
+        DatabaseHelper.quoteTableOrColumn(cf, table));
+    try (ConnectionMonitor monitor = cf.getConnectionMonitor();
+         Statement statement = monitor.getConnection().createStatement();
+         ResultSet resultSet = statement.executeQuery(query))
+    {
+      return resultSet.next()
+          ? resultSet.getString(resultSet.getMetaData().getColumnCount())
+          : null;
+    }
+  }
+
+  //
+  // Value encoding.
+  //
+
+  private static void writeString(DataOutputStream out, String value) 
+      throws IOException
+  {
+    if (value == null)
+    {
+      out.writeInt(-1);
+    }
+    else
+    {
+      final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static String readString(ByteBuffer in)
+  {
+    final int length = in.getInt();
+    if (length < 0)
+    {
+      return null;
+    }
+    final byte[] bytes = new byte[length];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeValue(DataOutputStream out, Object value) 
+      throws IOException
+  {
+    if (value == null)
+    {
+      out.writeByte(TAG_NULL);
+    }
+    else if (value instanceof String)
+    {
+      out.writeByte(TAG_STRING);
+      writeString(out, (String)value);
+    }
+    else if (value instanceof Integer)
+    {
+      out.writeByte(TAG_INTEGER);
+      out.writeInt((Integer)value);
+    }
+    else if (value instanceof Long)
+    {
+      out.writeByte(TAG_LONG);
+      out.writeLong((Long)value);
+    }
+    else if (value instanceof Boolean)
+    {
+      out.writeByte(TAG_BOOLEAN);
+      out.writeBoolean((Boolean)value);
+    }
+    else if (value instanceof Double)
+    {
+      out.writeByte(TAG_DOUBLE);
+      out.writeDouble((Double)value);
+    }
+    else if (value instanceof Float)
+    {
+      out.writeByte(TAG_FLOAT);
+      out.writeFloat((Float)value);
+    }
+    else if (value instanceof Short)
+    {
+      out.writeByte(TAG_SHORT);
+      out.writeShort((Short)value);
+    }
+    else if (value instanceof Byte)
+    {
+      out.writeByte(TAG_BYTE);
+      out.writeByte((Byte)value);
+    }
+    else if (value instanceof Character)
+    {
+      out.writeByte(TAG_CHARACTER);
+      out.writeChar((Character)value);
+    }
+    else if (value instanceof BigDecimal)
+    {
+      out.writeByte(TAG_BIG_DECIMAL);
+      writeString(out, value.toString());
+    }
+    else if (value instanceof BigInteger)
+    {
+      out.writeByte(TAG_BIG_INTEGER);
+      writeString(out, value.toString());
+    }
+    else if (value instanceof Timestamp)
+    {
+      out.writeByte(TAG_TIMESTAMP);
+      out.writeLong(((Timestamp)value).getTime());
+      out.writeInt(((Timestamp)value).getNanos());
+    }
+    else if (value instanceof java.sql.Date)
+    {
+      out.writeByte(TAG_SQL_DATE);
+      out.writeLong(((java.sql.Date)value).getTime());
+    }
+    else if (value instanceof Time)
+    {
+      out.writeByte(TAG_SQL_TIME);
+      out.writeLong(((Time)value).getTime());
+    }
+    else if (value instanceof java.util.Date)
+    {
+      out.writeByte(TAG_DATE);
+      out.writeLong(((java.util.Date)value).getTime());
+    }
+    else if (value instanceof byte[])
+    {
+      out.writeByte(TAG_BYTES);
+      out.writeInt(((byte[])value).length);
+      out.write((byte[])value);
+    }
+    else
+    {
+      throw new NotSerializableException(value.getClass().getName());
+    }
+  }
+
+  private static Object readValue(ByteBuffer in) throws IOException
+  {
+    final byte tag = in.get();
+    switch (tag)
+    {
+      case TAG_NULL:
+        return null;
+      case TAG_STRING:
+        return readString(in);
+      case TAG_INTEGER:
+        return in.getInt();
+      case TAG_LONG:
+        return in.getLong();
+      case TAG_BOOLEAN:
+        return in.get() != 0;
+      case TAG_DOUBLE:
+        return in.getDouble();
+      case TAG_FLOAT:
+        return in.getFloat();
+      case TAG_SHORT:
+        return in.getShort();
+      case TAG_BYTE:
+        return in.get();
+      case TAG_CHARACTER:
+        return in.getChar();
+      case TAG_BIG_DECIMAL:
+        return new BigDecimal(readString(in));
+      case TAG_BIG_INTEGER:
+        return new BigInteger(readString(in));
+      case TAG_TIMESTAMP:
+      {
+        final Timestamp timestamp = new Timestamp(in.getLong());
+        timestamp.setNanos(in.getInt());
+        return timestamp;
+      }
+      case TAG_SQL_DATE:
+        return new java.sql.Date(in.getLong());
+      case TAG_SQL_TIME:
+        return new Time(in.getLong());
+      case TAG_DATE:
+        return new java.util.Date(in.getLong());
+      case TAG_BYTES:
+      {
+        final byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return bytes;
+      }
+      default:
+        throw new IOException("Unknown value tag " + tag + ".");
+    }
+  }
+
+  //
+  // Inner classes.
+  //
+
+  /**
+   * Writes the content of a section.
+   */
+  @FunctionalInterface
+  private interface SectionWriter
+  {
+    void write(DataOutputStream out) throws IOException, SQLException;
+  }
+
+}  // End CacheSnapshot.
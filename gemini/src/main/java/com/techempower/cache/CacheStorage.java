@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.cache;
+
+/**
+ * The storage engines available to a CacheGroup.  The engine determines how
+ * the group's objects are indexed by identity.  Either engine may be
+ * selected per group, through {@link CacheGroup.Builder#storage} or the
+ * storage attribute of the CachedEntity annotation.
+ *   <p>
+ * With either engine, a group that has a comparator keeps its sorted order
+ * in a SortedIndex, so adding and removing an object costs O(log n), and 
+ * objects that compare as equal under the comparator are ordered by 
+ * identity.  Reordering an object whose sort fields were changed in place
+ * costs O(n), since it is found in its old position by identity.
+ */
+public enum CacheStorage
+{
+  /**
+   * Objects are indexed by a ConcurrentHashMap keyed by boxed identities.
+   * This is the default.
+   */
+  STANDARD,
+
+  /**
+   * Objects are indexed by a ConcurrentLongMap keyed by primitive 
+   * identities, so lookups allocate nothing and each entry carries no boxed
+   * key.  Testing whether the group contains a particular object looks the 
+   * object up by its identity rather than scanning every object in the 
+   * group.
+   */
+  COMPACT
+  
+}
@@ -151,10 +151,18 @@ public class CachedRelation<L extends Identifiable, R extends Identifiable>
   private final String quotedRightColumn;
   private final LongRelation relation;
   private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Object loadMonitor = new Object();
   private final Collection<CachedRelationListener> listeners
       = new ArrayList<>();
   private final Logger log = LoggerFactory.getLogger(getClass());
   private volatile boolean loaded = false;
+  private volatile boolean loadedOnce = false;
+  
+  /**
+   * Incremented, while holding the write lock, by every change to the 
+   * relation so that a concurrent load can tell that its rows are stale.
+   */
+  private volatile long generation;
 
   /**
    * A unique identifier for this cached relation to be assigned by the entity
@@ -244,6 +252,7 @@ public class CachedRelation<L extends Identifiable, R extends Identifiable>
     this.lock.writeLock().lock();
     try
     {
+      this.generation++;
       if (!this.relation.add(leftID, rightID))
       {
         return false;
@@ -344,6 +353,7 @@ public class CachedRelation<L extends Identifiable, R extends Identifiable>
     this.lock.writeLock().lock();
     try
     {
+      this.generation++;
       long[] newLefts = new long[relationToAdd.size()];
       long[] newRights = new long[relationToAdd.size()];
       int insertCount = 0; 
@@ -503,6 +513,7 @@ public class CachedRelation<L extends Identifiable, R extends Identifiable>
     this.lock.writeLock().lock();
     try
     {
+      this.generation++;
       this.relation.clear();
       this.lock.writeLock().unlock();
       
@@ -801,48 +812,140 @@ public class CachedRelation<L extends Identifiable, R extends Identifiable>
   }
 
   /**
-   * Loads the contents of this relation from the database.
+   * Loads the contents of this relation from the database.  The rows are 
+   * read into a staging relation without holding the write lock, which is
+   * then only held while the staged pairs are copied in.  At most one thread
+   * reads the table at a time.  Only the first load may be served by a
+   * read replica; a reload after a reset reflects a change that a lagging
+   * replica may not have seen yet, so it reads the primary.
    */
   protected void load()
   {
-    this.lock.writeLock().lock();
     try
     {
-      if (this.loaded)
-      {
-        return;
-      }
-      
-      this.relation.clear();
-      
-      try (ConnectionMonitor monitor = this.cf.getConnectionMonitor())
+      loadIfNecessary();
+    }
+    catch (SQLException e)
+    {
+      log.error("Exception while loading relations.", e);
+    }
+  }
+
+  /**
+   * Loads the contents of this relation if they are not loaded, throwing
+   * any exception raised while reading the table.  If the relation is
+   * changed, cleared or reset while the table is being read, the staged
+   * rows may predate the change, so they are discarded and the table is
+   * read again.
+   */
+  void loadIfNecessary() throws SQLException
+  {
+    synchronized (this.loadMonitor)
+    {
+      while (!this.loaded)
       {
-        try (PreparedStatement selectStatement = monitor.getConnection().prepareStatement(
-            "SELECT " + quotedLeftColumn + ", "
-                + quotedRightColumn + " FROM " + quotedTable
-                + ";"))
+        final long startGeneration = this.generation;
+        final LongRelation staging = (LongRelation)this.relation.clone();
+        staging.clear();
+        
+        final ReadRouting.Scope primary = this.loadedOnce 
+            ? ReadRouting.readPrimary() 
+            : null;
+        try (ConnectionMonitor monitor = this.cf.getReadConnectionMonitor())
         {
-          try (ResultSet resultSet = selectStatement.executeQuery())
+          try (PreparedStatement selectStatement = monitor.getConnection().prepareStatement(
+              "SELECT " + quotedLeftColumn + ", "
+                  + quotedRightColumn + " FROM " + quotedTable
+                  + ";",
+              ResultSet.TYPE_FORWARD_ONLY,
+              ResultSet.CONCUR_READ_ONLY))
           {
-            while (resultSet.next())
+            try (ResultSet resultSet = selectStatement.executeQuery())
             {
-              long leftID = resultSet.getLong(this.leftColumn);
-              long rightID = resultSet.getLong(this.rightColumn);
-              this.relation.add(leftID, rightID);
+              while (resultSet.next())
+              {
+                staging.add(resultSet.getLong(1), resultSet.getLong(2));
+              }
             }
           }
         }
+        finally
+        {
+          if (primary != null)
+          {
+            primary.close();
+          }
+        }
+        
+        this.lock.writeLock().lock();
+        try
+        {
+          if (this.generation == startGeneration)
+          {
+            this.relation.clear();
+            this.relation.addAll(staging);
+            this.loaded = true;
+            this.loadedOnce = true;
+          }
+        }
+        finally
+        {
+          this.lock.writeLock().unlock();
+        }
       }
-      
-      this.loaded = true;
     }
-    catch (SQLException e)
+  }
+
+  /**
+   * Returns whether the contents of this relation have been loaded.
+   */
+  boolean isLoaded()
+  {
+    return this.loaded;
+  }
+
+  /**
+   * Replaces the contents of this relation with pairs that have been read
+   * from the database by other means, such as a CacheSnapshot, and marks
+   * the relation as loaded.
+   */
+  void restore(long[] leftIDs, long[] rightIDs)
+  {
+    synchronized (this.loadMonitor)
     {
-      log.error("Exception while loading relations.", e);
+      this.lock.writeLock().lock();
+      try
+      {
+        this.generation++;
+        this.relation.clear();
+        for (int i = 0; i < leftIDs.length; i++)
+        {
+          this.relation.add(leftIDs[i], rightIDs[i]);
+        }
+        this.loaded = true;
+      }
+      finally
+      {
+        this.lock.writeLock().unlock();
+      }
     }
-    finally
+  }
+
+  /**
+   * Gets the number of persisted pairs, bypassing the cache.
+   */
+  int persistedSize() throws SQLException
+  {
+    try (ConnectionMonitor monitor = this.cf.getReadConnectionMonitor())
     {
-      this.lock.writeLock().unlock();
+      try (PreparedStatement countStatement = monitor.getConnection().prepareStatement(
+          "SELECT COUNT(*) FROM " + quotedTable + ";"))
+      {
+        try (ResultSet resultSet = countStatement.executeQuery())
+        {
+          return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+      }
     }
   }
 
@@ -915,6 +1018,7 @@ public class CachedRelation<L extends Identifiable, R extends Identifiable>
     this.lock.writeLock().lock();
     try
     {
+      this.generation++;
       if (!this.relation.remove(leftID, rightID))
       {
         return false;
@@ -1015,6 +1119,7 @@ public class CachedRelation<L extends Identifiable, R extends Identifiable>
     this.lock.writeLock().lock();
     try
     {
+      this.generation++;
       long[] removedLefts = new long[relationToRemove.size()];
       long[] removedRights = new long[relationToRemove.size()];
       int deleteCount = 0; 
@@ -1171,6 +1276,7 @@ public class CachedRelation<L extends Identifiable, R extends Identifiable>
     this.lock.writeLock().lock();
     try
     {
+      this.generation++;
       if (!this.relation.removeLeftValue(leftID))
       {
         return false;
@@ -1249,6 +1355,7 @@ public class CachedRelation<L extends Identifiable, R extends Identifiable>
     this.lock.writeLock().lock();
     try
     {
+      this.generation++;
       if (!this.relation.removeRightValue(rightID))
       {
         return false;
@@ -1363,6 +1470,7 @@ public class CachedRelation<L extends Identifiable, R extends Identifiable>
     this.lock.writeLock().lock();
     try
     {
+      this.generation++;
       if (this.relation.containsAll(relationToReplace)
           && relationToReplace.containsAll(this.relation))
       {
@@ -1533,6 +1641,7 @@ public class CachedRelation<L extends Identifiable, R extends Identifiable>
     this.lock.writeLock().lock();
     try
     {
+      this.generation++;
       this.loaded = false;
       
       if (notifyListeners)
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.cache;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.function.*;
+
+import com.esotericsoftware.reflectasm.*;
+import com.techempower.util.*;
+
+/**
+ * A method of an entity type, resolved once and subsequently invoked without
+ * java.lang.reflect.  EntityStore compiles one of these per entity type and
+ * method signature the first time a method-value query names the method,
+ * and reuses it for every later query against that type.
+ *   <p>
+ * Invocation goes through the ReflectASM MethodAccess held by the type's
+ * EntityGroup.  Methods that MethodAccess cannot see (such as interface
+ * default methods) fall back to a plain reflective Method.
+ *
+ * @param <T> The type of entity on which the method is declared.
+ */
+public final class EntityMethod<T extends Identifiable>
+{
+
+  //
+  // Member variables.
+  //
+
+  private final String       name;
+  private final MethodAccess access;
+  private final int          index;
+  private final Method       method;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.  Use {@link #of} to resolve a method.
+   */
+  private EntityMethod(String name, MethodAccess access, int index,
+      Method method)
+  {
+    this.name = name;
+    this.access = access;
+    this.index = index;
+    this.method = method;
+  }
+
+  /**
+   * Resolves the named method of the given type.
+   *
+   * @param access The MethodAccess for the type, as held by its EntityGroup.
+   * @param type The entity type.
+   * @param methodName The name of the method.
+   * @param paramTypes The parameter types of the method.
+   * @throws ControllerError if no such method exists.
+   */
+  public static <T extends Identifiable> EntityMethod<T> of(
+      MethodAccess access, Class<T> type, String methodName,
+      Class<?>... paramTypes)
+  {
+    if (access != null)
+    {
+      try
+      {
+        return new EntityMethod<>(methodName, access,
+            access.getIndex(methodName, paramTypes), null);
+      }
+      catch (IllegalArgumentException iaexc)
+      {
+        // Not visible to MethodAccess; try reflection below.
+      }
+    }
+
+    try
+    {
+      return new EntityMethod<>(methodName, null, -1,
+          type.getMethod(methodName, paramTypes));
+    }
+    catch (NoSuchMethodException exc)
+    {
+      throw new ControllerError("No method found: " + methodName, exc);
+    }
+  }
+
+  /**
+   * Gets the name of the method.
+   */
+  public String getName()
+  {
+    return this.name;
+  }
+
+  /**
+   * Invokes the method on the given entity.
+   *
+   * @throws ControllerError if the method cannot be invoked or throws.
+   */
+  public Object invoke(T object, Object... args)
+  {
+    try
+    {
+      if (this.access != null)
+      {
+        return this.access.invoke(object, this.index, args);
+      }
+      return this.method.invoke(object, args);
+    }
+    catch (InvocationTargetException | RuntimeException exc)
+    {
+      throw new ControllerError("Unable to invoke method: " + this.name, exc);
+    }
+    catch (IllegalAccessException exc)
+    {
+      throw new ControllerError("Method cannot be accessed: " + this.name, exc);
+    }
+  }
+
+  /**
+   * Returns a Predicate that matches entities for which this method returns
+   * the given value.
+   *
+   * @param value The value to match.
+   * @param args The arguments to pass to the method.
+   * @param loose If true, the method's return value will be matched both
+   *        literally and after a call to toString.
+   */
+  public Predicate<T> matching(Object value, Object[] args, boolean loose)
+  {
+    return object -> {
+      final Object objValue = invoke(object, args);
+      return Objects.equals(value, objValue)
+          || (loose && objValue != null && value != null
+              && value.equals(objValue.toString()));
+    };
+  }
+
+  @Override
+  public String toString()
+  {
+    return "EntityMethod [" + this.name + "]";
+  }
+
+}  // End EntityMethod.
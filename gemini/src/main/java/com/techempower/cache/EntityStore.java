@@ -31,9 +31,15 @@ import com.google.common.primitives.*;
 import gnu.trove.map.*;
 import gnu.trove.map.hash.*;
 
+import java.io.*;
 import java.lang.reflect.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
 
 import org.reflections.*;
 
@@ -72,6 +78,27 @@ import org.slf4j.LoggerFactory;
  * <li>EntityStore.CacheMethodValues - Cache the values of objects 
  * queried by reflection (in getObjectByMethod, etc.), which can improve the 
  * performance of future lookups at the cost of memory?  Default is no.</li>
+ * <li>EntityStore.Preload - Load all cache groups and cached relations from
+ * the database at startup, in parallel, rather than each on first use?  
+ * Default is no.</li>
+ * <li>EntityStore.PreloadThreads - The number of worker threads used to 
+ * preload.  Default is 4.</li>
+ * <li>EntityStore.Snapshot.File - The path of a file to which to write a
+ * snapshot of the cache groups and cached relations at shutdown, and from
+ * which to restore them at startup.  See CacheSnapshot.  Default is none, 
+ * disabling snapshots.</li>
+ * <li>EntityStore.Snapshot.IntervalSeconds - If non-zero, also write the 
+ * snapshot on this interval.  Default is 0.</li>
+ * <li>EntityStore.Snapshot.ChecksumQuery - A SQL query, with "{table}" in 
+ * place of the table name, that returns a checksum of a table, used to
+ * detect changes to rows captured in the snapshot.  Required for snapshots
+ * to be enabled.  Default is none.</li>
+ * <li>EntityStore.Snapshot.MaxAgeSeconds - The age beyond which a snapshot
+ * is not used, or 0 for no limit.  Default is 86400 (one day).</li>
+ * <li>EntityStore.GeneratedRowMappers - Populate entities read from the 
+ * database by way of generated setters that take primitive values 
+ * directly, rather than by reflection?  See EntityRowMapper.  Default is 
+ * no.</li>
  * </ul>
  */
 public class EntityStore
@@ -85,7 +112,8 @@ public class EntityStore
   private static final Class<?>[] NO_PARAMETERS  = new Class[0];
   private static final Object[]   NO_VALUES      = new Object[0];
   private static final int        INITIAL_GROUPS_SIZE = 20;
-  private static final String     ERROR_METHOD_ACCESS = "Method cannot be accessed: ";
+  private static final int        DEFAULT_PRELOAD_THREADS = 4;
+  private static final int        DEFAULT_SNAPSHOT_MAX_AGE = 86400;
   private static final String     ERROR_FIELD_ACCESS = "Field cannot be accessed: ";
 
   //
@@ -103,6 +131,11 @@ public class EntityStore
   private Reflections     reflections       = null;
   private boolean         initialized       = false;
   private boolean         cacheMethodValues = false;
+  private boolean         preload           = false;
+  private int             preloadThreads    = DEFAULT_PRELOAD_THREADS;
+  private CacheSnapshot   snapshot          = null;
+  private int             snapshotInterval  = 0;
+  private boolean         rowMappers        = false;
 
   /**
    * Whether to expect the return value from Statement.executeUpdate() to indicate
@@ -141,7 +174,10 @@ public class EntityStore
    */
   private final ConcurrentMap<Class<EntityRelationDescriptor<? extends Identifiable, ? extends Identifiable>>, EntityRelation<? extends Identifiable, ? extends Identifiable>> relationsMap = new ConcurrentHashMap<>();
 
-  private ConcurrentMap<String, String> cachedResponses = new ConcurrentHashMap<>();
+  /**
+   * Rendered responses, evicted as the entities they depend on change.
+   */
+  private final ResponseCache responseCache = new ResponseCache();
 
   /**
    * Keeps track of the methods that are annotated with either @Indexed or 
@@ -155,6 +191,23 @@ public class EntityStore
    */
   private final Map<Class<? extends Identifiable>, Boolean> indexedAnnotatedClasses = new HashMap<>();
 
+  /**
+   * Keeps track of the methods that are annotated with @Indexed(range = true).
+   */
+  private final Map<Class<? extends Identifiable>, Set<String>> rangeIndexedMethods = new HashMap<>();
+
+  /**
+   * Keeps track of the composite indexes declared by @Indexed(with = ...), 
+   * each as the array of method names that make up the composite.
+   */
+  private final Map<Class<? extends Identifiable>, List<String[]>> compositeIndexes = new HashMap<>();
+
+  /**
+   * Methods resolved by the method-value queries, keyed by entity type and
+   * then by method signature, so that each method is looked up only once.
+   */
+  private final ConcurrentMap<Class<? extends Identifiable>, ConcurrentMap<String, EntityMethod<?>>> entityMethods = new ConcurrentHashMap<>();
+
   /**
    * The type adapters used by entity groups in this cache.  These allow
    * non-standard data entity field types to be stored in the database.
@@ -179,7 +232,7 @@ public class EntityStore
     this.application      = application;
     this.connectorFactory = connectorFactory;
     this.groups           = new HashMap<>(INITIAL_GROUPS_SIZE);
-    this.listeners        = new CacheListener[0];
+    this.listeners        = new CacheListener[] { responseCache };
 
     // Start constructing Reflections on a new thread since it takes a
     // bit of time.
@@ -218,6 +271,32 @@ public class EntityStore
       log.warn("EntityStore.UseAffectedRows is enabled, which REQUIRES that the database connection be configured so update statements return the count of affected rows. If unsure, disable this.");
     }
 
+    responseCache.configure(props);
+
+    preload           = props.getBoolean("EntityStore.Preload", preload);
+    preloadThreads    = props.getInt("EntityStore.PreloadThreads", preloadThreads, 1, 64);
+    rowMappers        = props.getBoolean("EntityStore.GeneratedRowMappers", rowMappers);
+    
+    final EnhancedProperties.Focus focus = props.focus("EntityStore.Snapshot.");
+    final String snapshotFile = focus.get("File", "");
+    final String snapshotChecksumQuery = focus.get("ChecksumQuery", "");
+    snapshotInterval  = focus.getInt("IntervalSeconds", 0, 0, Integer.MAX_VALUE);
+    snapshot          = null;
+    if (StringHelper.isNonEmpty(snapshotFile))
+    {
+      if (StringHelper.isNonEmpty(snapshotChecksumQuery))
+      {
+        snapshot = new CacheSnapshot(this, Paths.get(snapshotFile), 
+            snapshotChecksumQuery,
+            TimeUnit.SECONDS.toMillis(focus.getInt("MaxAgeSeconds", 
+                DEFAULT_SNAPSHOT_MAX_AGE, 0, Integer.MAX_VALUE)));
+      }
+      else
+      {
+        log.warn("EntityStore.Snapshot.File is set but EntityStore.Snapshot.ChecksumQuery is not; cache snapshots are disabled.");
+      }
+    }
+
     methodValueCaches = new HashMap<>();
     
     // This should only happen when the application is reconfigured.
@@ -527,12 +606,27 @@ public class EntityStore
   protected <T extends Identifiable> void collectIndexedMethodAnnotations(EntityGroup<T> group)
   {
     indexedAnnotatedMethods.put(group.type(), new HashMap<String, Boolean>());
+    rangeIndexedMethods.put(group.type(), new HashSet<String>());
+    compositeIndexes.put(group.type(), new ArrayList<String[]>());
     
     for (Method method : group.type().getMethods())
     {
       if (method.isAnnotationPresent(Indexed.class))
       {
         indexedAnnotatedMethods.get(group.type()).put(method.getName(), true);
+        
+        final Indexed indexed = method.getAnnotation(Indexed.class);
+        if (indexed.range())
+        {
+          rangeIndexedMethods.get(group.type()).add(method.getName());
+        }
+        if (indexed.with().length > 0)
+        {
+          final String[] composite = new String[indexed.with().length + 1];
+          composite[0] = method.getName();
+          System.arraycopy(indexed.with(), 0, composite, 1, indexed.with().length);
+          compositeIndexes.get(group.type()).add(composite);
+        }
       }
       else if (method.getAnnotation(NotIndexed.class) != null)
       {
@@ -644,6 +738,193 @@ public class EntityStore
     initialized = true;
   }
 
+  /**
+   * Whether a snapshot file has been configured.  See CacheSnapshot.
+   */
+  public boolean isSnapshotEnabled()
+  {
+    return snapshot != null;
+  }
+
+  /**
+   * Gets the interval, in seconds, on which the snapshot should be written,
+   * or 0 if it should only be written at shutdown.
+   */
+  public int getSnapshotIntervalSeconds()
+  {
+    return snapshotInterval;
+  }
+
+  /**
+   * Writes a snapshot of the cache groups and cached relations to the 
+   * configured snapshot file, if any.
+   *
+   * @return The number of groups and relations written.
+   */
+  public int writeSnapshot()
+  {
+    if (snapshot != null)
+    {
+      try
+      {
+        return snapshot.write();
+      }
+      catch (IOException ioexc)
+      {
+        log.error("Unable to write cache snapshot.", ioexc);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Restores the cache groups and cached relations from the configured 
+   * snapshot file, if any, reconciling each with the database.  Anything not
+   * restored loads from the database as usual.
+   *
+   * @return The number of groups and relations restored.
+   */
+  public int loadSnapshot()
+  {
+    return (snapshot != null) ? snapshot.load() : 0;
+  }
+
+  /**
+   * Whether EntityGroups should populate entities by way of generated row
+   * mappers.  See EntityRowMapper.
+   */
+  public boolean isGeneratedRowMappersEnabled()
+  {
+    return rowMappers;
+  }
+
+  /**
+   * Whether cache groups and cached relations should be loaded at startup.
+   * See preload().
+   */
+  public boolean isPreloadEnabled()
+  {
+    return preload;
+  }
+
+  /**
+   * Loads every cache group and cached relation that has not yet been 
+   * loaded, using the number of worker threads set by 
+   * EntityStore.PreloadThreads.
+   *
+   * @see #preload(int)
+   */
+  public List<PreloadResult> preload()
+  {
+    return preload(preloadThreads);
+  }
+
+  /**
+   * Loads every cache group and cached relation that has not yet been 
+   * loaded, fanning the work out across a bounded pool of worker threads,
+   * and logs progress as each completes.  Groups that are not caches, such
+   * as LruCacheGroups, are skipped.  This method blocks until loading is
+   * complete.
+   *   <p>
+   * Note that a group whose customPostInitialization reads another group
+   * holds its own monitor while it waits for the other to load.
+   *
+   * @param threads the maximum number of groups and relations to load at
+   *        once.
+   * @return one result per group and relation, including any that failed.
+   */
+  public List<PreloadResult> preload(int threads)
+  {
+    final List<Callable<PreloadResult>> tasks = new ArrayList<>();
+    final AtomicInteger completed = new AtomicInteger();
+    for (EntityGroup<? extends Identifiable> group : getGroupList())
+    {
+      if (group instanceof CacheGroup)
+      {
+        final CacheGroup<?> cacheGroup = (CacheGroup<?>)group;
+        tasks.add(() -> preload(cacheGroup.name(), completed, tasks.size(), 
+            () -> {
+              cacheGroup.initializeIfNecessary();
+              return cacheGroup.size();
+            }));
+      }
+    }
+    for (CachedRelation<?, ?> relation : getCachedRelations())
+    {
+      tasks.add(() -> preload(relation.tableName(), completed, tasks.size(), 
+          () -> {
+            try
+            {
+              relation.loadIfNecessary();
+            }
+            catch (SQLException e)
+            {
+              throw new EntityException("Exception while loading relations.", e);
+            }
+            return relation.size();
+          }));
+    }
+    
+    log.info("Preloading {} cache groups and relations with {} threads.", 
+        tasks.size(), threads);
+    final List<PreloadResult> results = new ArrayList<>(tasks.size());
+    final ExecutorService service = Executors.newFixedThreadPool(
+        Math.max(1, Math.min(threads, tasks.size())));
+    try
+    {
+      for (Future<PreloadResult> future : service.invokeAll(tasks))
+      {
+        results.add(future.get());
+      }
+    }
+    catch (InterruptedException iexc)
+    {
+      log.error("Preload interrupted.", iexc);
+      Thread.currentThread().interrupt();
+    }
+    catch (ExecutionException eexc)
+    {
+      // Should not happen; the tasks capture their own exceptions.
+      log.error("Exception while preloading.", eexc);
+    }
+    finally
+    {
+      service.shutdown();
+    }
+    return results;
+  }
+
+  /**
+   * Loads one group or relation on behalf of preload().
+   */
+  private PreloadResult preload(String name, AtomicInteger completed, 
+      int total, IntSupplier loader)
+  {
+    final long start = System.nanoTime();
+    int rows = 0;
+    Throwable error = null;
+    try
+    {
+      rows = loader.getAsInt();
+    }
+    catch (RuntimeException exc)
+    {
+      error = exc;
+    }
+    final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    if (error == null)
+    {
+      log.info("Preloaded {} ({} of {}): {} rows in {}ms.", 
+          name, completed.incrementAndGet(), total, rows, millis);
+    }
+    else
+    {
+      log.error("Preload of {} ({} of {}) failed after {}ms.", 
+          name, completed.incrementAndGet(), total, millis, error);
+    }
+    return new PreloadResult(name, rows, millis, error);
+  }
+
   /**
    * Return the number of the objects contained in the entity group specified
    * by type. Throws ControllerError if no such group is registered.
@@ -662,6 +943,17 @@ public class EntityStore
     return getGroupSafe(type).list();
   }
 
+  /**
+   * Return a page of the objects contained in the entity group specified by
+   * type: at most limit objects, starting at the given offset, in the same
+   * order as list(type).  Throws ControllerError if no such group is 
+   * registered.
+   */
+  public <T extends Identifiable> List<T> list(Class<T> type, int offset, int limit)
+  {
+    return getGroupSafe(type).list(offset, limit);
+  }
+
   /**
    * Return all the objects contained in the entity group specified by
    * type, mapped by id.  Throws ControllerError if no such group is registered.
@@ -736,66 +1028,42 @@ public class EntityStore
     String methodName, Class<?>[] paramTypes, Object[] args, Object value, 
     boolean loose)
   {
-    List<T> toReturn = new ArrayList<>();
+    return list(type, getEntityMethod(type, methodName, paramTypes)
+        .matching(value, args, loose));
+  }
 
-    List<T> objects = list(type);
+  /**
+   * Return a collection of objects contained in the entity group for which
+   * the given predicate is true, in the group's order.  Cached groups are
+   * scanned in place, without first copying the group into a list.
+   * Throws ControllerError if no such group is registered.
+   */
+  public <T extends Identifiable> List<T> list(Class<T> type,
+      Predicate<? super T> predicate)
+  {
+    return getGroupSafe(type).list(predicate);
+  }
 
-    if (CollectionHelper.isNonEmpty(objects))
+  /**
+   * Gets the compiled method of the given type with the given name and
+   * parameter types, resolving it on first use.  Throws ControllerError if
+   * no such method exists.
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends Identifiable> EntityMethod<T> getEntityMethod(
+      Class<T> type, String methodName, Class<?>... paramTypes)
+  {
+    final EntityGroup<T> group = getGroupSafe(type);
+    final ConcurrentMap<String, EntityMethod<?>> methods = 
+        entityMethods.computeIfAbsent(type, t -> new ConcurrentHashMap<>());
+    final StringBuilder signature = new StringBuilder(methodName);
+    for (Class<?> paramType : paramTypes)
     {
-      // Try to get the method.
-      Method method;
-      try
-      {
-        method = type.getDeclaredMethod(methodName, paramTypes);
-      }
-      catch (NoSuchMethodException exc)
-      {
-        try
-        {
-          method = type.getMethod(methodName, paramTypes);
-        }
-        catch (NoSuchMethodException etexc)
-        {
-          throw new ControllerError("No method found: " + methodName, etexc);
-        }
-      }
-      
-      // Continue if we have a method.
-      if (method != null)
-      {
-        try
-        {
-          Iterator<T> iterator = objects.iterator();
-          T object;
-
-          while (iterator.hasNext())
-          {
-            object = iterator.next();
-
-            // Check the value returned by the method.
-            Object objValue = method.invoke(object, args);
-            if (value.equals(objValue))
-            {
-              toReturn.add(object);
-            }
-            else if ((loose) && (value.equals(objValue.toString())))
-            {
-              toReturn.add(object);
-            }
-          }
-        }
-        catch (InvocationTargetException etexc)
-        {
-          throw new ControllerError("Unable to invoke method: " + methodName, etexc);
-        }
-        catch (SecurityException | IllegalAccessException e)
-        {
-          throw new ControllerError(ERROR_METHOD_ACCESS + methodName, e);
-        }
-      }
+      signature.append(',').append(paramType.getName());
     }
-
-    return toReturn;
+    return (EntityMethod<T>)methods.computeIfAbsent(signature.toString(), 
+        key -> EntityMethod.of(group.methodAccess(), type, methodName, 
+            paramTypes));
   }
 
   /**
@@ -1028,34 +1296,156 @@ public class EntityStore
       }
     }
     
-    Method method = null;
-    final List<T> list = list(type);
+    return get(type, getEntityMethod(type, methodName)
+        .matching(value, NO_VALUES, false));
+  }
 
-    try
+  /**
+   * Return the first object in the entity group, in the group's order, for
+   * which the given predicate is true, or null if there is no such object.
+   * Throws ControllerError if no such group is registered.
+   */
+  public <T extends Identifiable> T get(Class<T> type, 
+      Predicate<? super T> predicate)
+  {
+    return getGroupSafe(type).get(predicate);
+  }
+
+  /**
+   * Return a collection of objects contained in the entity group for which
+   * each of the given methods returns the corresponding given value.  Uses a
+   * composite index if one was declared over the same methods with 
+   * {@code @Indexed(with = ...)}, in any order; otherwise scans the group.
+   *
+   * @param methodNames the methods whose return values are compared to the
+   *        "values" parameter.
+   * @param values the values for which to search, one per method name.
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends Identifiable> List<T> list(Class<T> type, 
+      String[] methodNames, Object[] values)
+  {
+    if (methodNames.length != values.length)
     {
-      for (T object : list)
+      throw new ControllerError("Expected one value per method name.");
+    }
+    
+    final String[] composite = getCompositeIndex(type, methodNames);
+    final MethodValueCache<T> methodValueCache = (MethodValueCache<T>)methodValueCaches.get(type);
+    if (composite != null && methodValueCache != null)
+    {
+      // Put the values in the order in which the composite was declared.
+      final List<String> requested = Arrays.asList(methodNames);
+      final Object[] compositeValues = new Object[composite.length];
+      for (int i = 0; i < composite.length; i++)
       {
-        // Cache a reference to the Method if not yet done so.
-        if (method == null)
-        {
-          method = object.getClass().getMethod(methodName, NO_PARAMETERS);
-        }
-
-        // Check the value of the field within this object.
-        final Object objValue = method.invoke(object, NO_VALUES);
-        
-        if (Objects.equals(value, objValue))
-        {
-          return object;
-        }
+        compositeValues[i] = values[requested.indexOf(composite[i])];
       }
+      return methodValueCache.getObjects(composite, compositeValues);
     }
-    catch (NoSuchMethodException | SecurityException | IllegalAccessException | InvocationTargetException e)
+    
+    Predicate<T> predicate = object -> true;
+    for (int i = 0; i < methodNames.length; i++)
     {
-      throw new ControllerError(ERROR_METHOD_ACCESS + methodName, e);
+      predicate = predicate.and(getEntityMethod(type, methodNames[i])
+          .matching(values[i], NO_VALUES, false));
     }
+    return list(type, predicate);
+  }
 
-    // If we get here, return null.
+  /**
+   * Return a collection of objects contained in the entity group for which
+   * the given method returns a value between the given bounds, inclusive,
+   * ordered by that value and then by id.  A null bound leaves that end of
+   * the range open, and objects for which the method returns null are never
+   * included.  Uses a sorted index if the method is annotated with 
+   * {@code @Indexed(range = true)}; otherwise scans the group.
+   *
+   * @param methodName a method whose non-null return values are mutually
+   *        Comparable.
+   * @param from the lowest value for which to search, or null.
+   * @param to the highest value for which to search, or null.
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends Identifiable> List<T> listBetween(Class<T> type, 
+      String methodName, Object from, Object to)
+  {
+    final Set<String> rangeMethods = rangeIndexedMethods.get(type);
+    final MethodValueCache<T> methodValueCache = (MethodValueCache<T>)methodValueCaches.get(type);
+    if (rangeMethods != null && rangeMethods.contains(methodName)
+        && methodValueCache != null)
+    {
+      return methodValueCache.getObjectsBetween(methodName, from, to);
+    }
+    
+    final EntityMethod<T> method = getEntityMethod(type, methodName);
+    final List<T> matches = list(type, 
+        object -> isBetween(method.invoke(object), from, to));
+    matches.sort(Comparator.<T, Comparable<Object>>comparing(
+            object -> (Comparable<Object>)method.invoke(object))
+        .thenComparingLong(Identifiable::getId));
+    return matches;
+  }
+
+  /**
+   * Return a collection of objects contained in the entity group for which
+   * each of the given methods returns the corresponding given value and the
+   * range method returns a value between the given bounds, inclusive.  This
+   * narrows the group by exact match first (see 
+   * {@link #list(Class, String[], Object[])}) and then filters that result by
+   * range, so it benefits most from a composite index over the exact-match
+   * methods.
+   *
+   * @param methodNames the methods whose return values are compared to the
+   *        "values" parameter.
+   * @param values the values for which to search, one per method name.
+   * @param rangeMethodName a method whose non-null return values are 
+   *        mutually Comparable.
+   * @param from the lowest value for which to search, or null.
+   * @param to the highest value for which to search, or null.
+   */
+  public <T extends Identifiable> List<T> listBetween(Class<T> type, 
+      String[] methodNames, Object[] values, String rangeMethodName, 
+      Object from, Object to)
+  {
+    final EntityMethod<T> method = getEntityMethod(type, rangeMethodName);
+    final List<T> matches = list(type, methodNames, values);
+    matches.removeIf(object -> !isBetween(method.invoke(object), from, to));
+    return matches;
+  }
+
+  /**
+   * Determines whether a value lies between the given bounds, inclusive.
+   * Null values are never between any bounds; null bounds are open.
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static boolean isBetween(Object value, Object from, Object to)
+  {
+    return value != null
+        && (from == null || ((Comparable)value).compareTo(from) >= 0)
+        && (to == null || ((Comparable)value).compareTo(to) <= 0);
+  }
+
+  /**
+   * Gets the declared composite index made up of exactly the given methods,
+   * in any order, or null if there is no such index.
+   */
+  private String[] getCompositeIndex(Class<? extends Identifiable> type, 
+      String[] methodNames)
+  {
+    final List<String[]> composites = compositeIndexes.get(type);
+    if (composites != null)
+    {
+      final Set<String> requested = new HashSet<>(Arrays.asList(methodNames));
+      for (String[] composite : composites)
+      {
+        if (composite.length == methodNames.length
+            && requested.equals(new HashSet<>(Arrays.asList(composite))))
+        {
+          return composite;
+        }
+      }
+    }
     return null;
   }
 
@@ -1306,7 +1696,8 @@ public class EntityStore
             }
             else
             {
-              builder = CacheGroup.of((Class<? extends Identifiable>)clazz);
+              builder = CacheGroup.of((Class<? extends Identifiable>)clazz)
+                  .storage(annotation.storage());
             }
             
             if (!annotation.table().isEmpty())
@@ -1510,44 +1901,56 @@ public class EntityStore
     return new ArrayList<>(cachedRelations);
   }
   
+  /**
+   * Gets the cache of rendered responses.  It is registered as a listener
+   * of this store, so its entries are evicted as the entities they depend
+   * on change.
+   */
+  public ResponseCache getResponseCache()
+  {
+    return responseCache;
+  }
+  
   /**
    * Returns the cached response text associated with the given parameter keys.
    * @param parameterKeys The key of expected cached response.
    * @return The cached response payload for the given parameterKeys or 
    *         <code>null</code> if there is no cached response for the given 
    *         request.
+   * @deprecated Use getResponseCache().
    */
+  @Deprecated
   public String getCachedResponse(String parameterKeys)
   {
-    return cachedResponses.get(parameterKeys);
+    final ResponseCache.Entry entry = responseCache.get(parameterKeys);
+    return (entry != null 
+        ? new String(entry.getBody(), StandardCharsets.UTF_8) 
+        : null);
   }
   
   /**   
    * Caches the response text for the parameters associated with the given
-   * request.
+   * request.  The entry carries no dependency tags, so it lives until the
+   * default time-to-live passes, it is evicted for space, or the cache is
+   * reset.
    * @param parameterKeys The key for the given responseText string.
    * @param responseText The responseText to cache for the given request.
+   * @deprecated Use getResponseCache().
    */
+  @Deprecated
   public void setCachedResponse(String parameterKeys, String responseText)
   {
-    // Remove the previous.
-    cachedResponses.remove(parameterKeys);
-    // Try to put it in.
-    cachedResponses.putIfAbsent(parameterKeys, responseText);
-    // This is inherently NOT thread-safe, but in cases where this
-    // comes up, we don't really care: some other thread put a response
-    // value in at or around the same time we removed and tried to put.
-    // If out put returns their value, then w/e. If it returns null, then
-    // we can assume ours was there first.
+    responseCache.put(parameterKeys, new ResponseCache.Entry(
+        responseText.getBytes(StandardCharsets.UTF_8), null, 
+        responseCache.getDefaultTtlMillis(), null));
   }
   
   /**
-   * Clears all cached responses (in memory and on disk).
+   * Clears all cached responses.
    */
   public void clearCachedResponses()
   {
-    // Brand new one, let the old one get garbage collected.
-    cachedResponses = new ConcurrentHashMap<>();
+    responseCache.clear();
   }
 
   /**
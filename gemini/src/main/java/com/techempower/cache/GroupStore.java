@@ -0,0 +1,355 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.cache;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.techempower.collection.*;
+import com.techempower.data.*;
+import com.techempower.util.*;
+
+/**
+ * The objects held by a CacheGroup, indexed by identity and, if the group
+ * has a comparator, kept in sorted order by a SortedIndex.  Reads may be 
+ * made concurrently with modifications, but CacheGroup is responsible for
+ * serializing modifications to a store that maintains sorted order.
+ *   <p>
+ * Subclasses provide the identity index; see {@link CacheStorage}.
+ */
+abstract class GroupStore<T extends Identifiable>
+{
+
+  private final Comparator<? super T> comparator;
+  private final SortedIndex<T> objectsInOrder;
+
+  /**
+   * Constructor.
+   */
+  protected GroupStore(Comparator<? super T> comparator)
+  {
+    this.comparator = comparator;
+    // Avoid maintaining the sorted order if not needed.  Otherwise, break 
+    // ties by identity so that the index imposes a total order.
+    this.objectsInOrder = isSorted() 
+        ? new SortedIndex<>((o1, o2) -> {
+              final int comparison = comparator.compare(o1, o2);
+              return (comparison != 0) 
+                  ? comparison
+                  : Long.compare(o1.getId(), o2.getId());
+            })
+        : null;
+  }
+
+  /**
+   * Creates a store of the requested kind holding the provided objects,
+   * which need not be in order.
+   */
+  static <T extends Identifiable> GroupStore<T> create(CacheStorage storage,
+      Comparator<? super T> comparator, Collection<T> objects)
+  {
+    final GroupStore<T> store = (storage == CacheStorage.COMPACT)
+        ? new CompactStore<>(comparator, objects.size())
+        : new StandardStore<>(comparator, objects.size());
+    for (T object : objects)
+    {
+      store.putObject(object);
+    }
+    if (store.isSorted())
+    {
+      store.objectsInOrder.setAll(store.values());
+    }
+    return store;
+  }
+
+  /**
+   * Returns whether this store maintains a sorted order.
+   */
+  final boolean isSorted()
+  {
+    return this.comparator != EntityGroup.NO_COMPARATOR;
+  }
+
+  /**
+   * Gets the object with the provided identity.
+   */
+  abstract T get(long id);
+
+  /**
+   * Returns whether an object with the provided identity is held.
+   */
+  abstract boolean containsKey(long id);
+
+  /**
+   * Returns whether the provided object is held.
+   */
+  abstract boolean containsValue(Object object);
+
+  /**
+   * Gets the number of objects held.
+   */
+  abstract int size();
+
+  /**
+   * Gets the objects held, in no particular order.
+   */
+  abstract Collection<T> values();
+
+  /**
+   * Adds an object to the identity index only, returning the object it
+   * replaced, if any.
+   */
+  protected abstract T putObject(T object);
+
+  /**
+   * Removes an object from the identity index only, returning it.
+   */
+  protected abstract T removeObject(long id);
+
+  /**
+   * Gets the objects held, in sorted order if the store is sorted.
+   */
+  final Iterable<T> ordered()
+  {
+    return isSorted() ? this.objectsInOrder : values();
+  }
+
+  /**
+   * Gets an unmodifiable list of the objects held, in sorted order if the
+   * store is sorted, that will not reflect subsequent modifications.  A
+   * sorted store provides this without copying.
+   */
+  final List<T> snapshot()
+  {
+    return isSorted() 
+        ? this.objectsInOrder.snapshot()
+        : Collections.unmodifiableList(new ArrayList<>(values()));
+  }
+
+  /**
+   * Gets up to limit objects, in sorted order if the store is sorted, 
+   * starting at the provided offset.  A sorted store locates the offset in 
+   * O(log n) time.
+   */
+  final List<T> page(int offset, int limit)
+  {
+    if (isSorted())
+    {
+      return this.objectsInOrder.page(offset, limit);
+    }
+    final List<T> page = new ArrayList<>(Math.min(limit, 
+        Math.max(0, size() - offset)));
+    final Iterator<T> iterator = values().iterator();
+    for (int skipped = 0; skipped < offset && iterator.hasNext(); skipped++)
+    {
+      iterator.next();
+    }
+    while (page.size() < limit && iterator.hasNext())
+    {
+      page.add(iterator.next());
+    }
+    return page;
+  }
+
+  /**
+   * Adds an object, replacing any held object with the same identity.
+   */
+  final void put(T object)
+  {
+    final T existing = putObject(object);
+    if (isSorted())
+    {
+      if (existing != null)
+      {
+        this.objectsInOrder.remove(existing);
+      }
+      this.objectsInOrder.add(object);
+    }
+  }
+
+  /**
+   * Removes and returns the object with the provided identity.
+   */
+  final T remove(long id)
+  {
+    final T removed = removeObject(id);
+    if (removed != null && isSorted())
+    {
+      this.objectsInOrder.remove(removed);
+    }
+    return removed;
+  }
+
+  /**
+   * Moves a held object to its correct sorted position, following a change
+   * to the field(s) by which it is sorted.
+   *   <p>
+   * The sorted index locates objects by comparison, so it cannot notice an
+   * object whose sort fields were changed in place.  Callers that modify a
+   * held object's sort fields must call this (by way of CacheGroup.reorder
+   * or CacheGroup.put) before the store is next read in order; until then,
+   * ordered reads and pages may place the object incorrectly.
+   *   <p>
+   * Since the object can no longer be found by comparison, removing it from
+   * its old position is a linear scan by identity, so reordering an object
+   * whose sort fields have changed costs O(n); adding it at its new 
+   * position costs O(log n).  Reordering an object whose sort fields have 
+   * not changed costs O(log n).
+   */
+  final void reorder(T object)
+  {
+    if (isSorted())
+    {
+      final boolean removed = this.objectsInOrder.remove(object);
+      
+      // Every held object is in the sorted index; a miss means the two
+      // indexes have diverged.
+      assert removed : "Object " + object.getId() + " is not in the sorted index.";
+      if (removed)
+      {
+        this.objectsInOrder.add(object);
+      }
+    }
+  }
+
+  /**
+   * The STANDARD store, with a ConcurrentHashMap as its identity index.
+   */
+  static final class StandardStore<T extends Identifiable>
+    extends GroupStore<T>
+  {
+    private final ConcurrentMap<Long, T> objects;
+
+    StandardStore(Comparator<? super T> comparator, int expectedSize)
+    {
+      super(comparator);
+      this.objects = new ConcurrentHashMap<>(expectedSize);
+    }
+
+    @Override
+    T get(long id)
+    {
+      return this.objects.get(id);
+    }
+
+    @Override
+    boolean containsKey(long id)
+    {
+      return this.objects.containsKey(id);
+    }
+
+    @Override
+    boolean containsValue(Object object)
+    {
+      return this.objects.containsValue(object);
+    }
+
+    @Override
+    int size()
+    {
+      return this.objects.size();
+    }
+
+    @Override
+    Collection<T> values()
+    {
+      return this.objects.values();
+    }
+
+    @Override
+    protected T putObject(T object)
+    {
+      return this.objects.put(object.getId(), object);
+    }
+
+    @Override
+    protected T removeObject(long id)
+    {
+      return this.objects.remove(id);
+    }
+  }
+
+  /**
+   * The COMPACT store, with a ConcurrentLongMap as its identity index.
+   */
+  static final class CompactStore<T extends Identifiable>
+    extends GroupStore<T>
+  {
+    private final ConcurrentLongMap<T> objects;
+
+    CompactStore(Comparator<? super T> comparator, int expectedSize)
+    {
+      super(comparator);
+      this.objects = new ConcurrentLongMap<>(expectedSize);
+    }
+
+    @Override
+    T get(long id)
+    {
+      return this.objects.get(id);
+    }
+
+    @Override
+    boolean containsKey(long id)
+    {
+      return this.objects.containsKey(id);
+    }
+
+    @Override
+    boolean containsValue(Object object)
+    {
+      return (object instanceof Identifiable)
+          && object.equals(this.objects.get(((Identifiable)object).getId()));
+    }
+
+    @Override
+    int size()
+    {
+      return this.objects.size();
+    }
+
+    @Override
+    Collection<T> values()
+    {
+      return this.objects.values();
+    }
+
+    @Override
+    protected T putObject(T object)
+    {
+      return this.objects.put(object.getId(), object);
+    }
+
+    @Override
+    protected T removeObject(long id)
+    {
+      return this.objects.remove(id);
+    }
+  }
+
+}  // End GroupStore.
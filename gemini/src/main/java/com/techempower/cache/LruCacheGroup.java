@@ -27,11 +27,12 @@
 package com.techempower.cache;
 
 import gnu.trove.map.*;
+import gnu.trove.map.hash.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import com.google.common.cache.*;
-import com.google.common.primitives.*;
 import com.techempower.data.*;
 import com.techempower.util.*;
 
@@ -42,12 +43,23 @@ import com.techempower.util.*;
  * on knowing the full set of entities such as list() and lowest() will
  * bypass the cache.  If your use-case calls for an LRU-style cache, you are
  * not likely to call these full-set methods anyway.
+ *   <p>
+ * Multi-id reads such as list(ids) and map(ids) fetch all of the missing
+ * entities together, in "IN (...)" queries of at most batchSize ids.  Loads
+ * are single-flight: while an entity is being fetched, other threads that
+ * request it wait for that fetch rather than querying again.  A put, remove,
+ * refresh or reset of an entity while it is being fetched marks that fetch
+ * stale, and the fetched copy is then returned to its callers but not
+ * cached.
  */
 public class LruCacheGroup<T extends Identifiable>
      extends EntityGroup<T> 
 {
 
   private final LoadingCache<Long, T> objects;
+  private final ConcurrentMap<Long, PendingLoad> loading 
+      = new ConcurrentHashMap<>();
+  private final int batchSize;
   
   /**
    * Constructor.
@@ -63,16 +75,51 @@ public class LruCacheGroup<T extends Identifiable>
       int size,
       boolean readOnly,
       boolean distribute) 
+  {
+    this(controller, type, table, id, maker, comparator, where, 
+        whereArguments, size, MAXIMUM_IDS_PER_QUERY, readOnly, distribute);
+  }
+  
+  /**
+   * Constructor.
+   */
+  protected LruCacheGroup(EntityStore controller, 
+      Class<T> type,
+      String table, 
+      String id, 
+      EntityMaker<T> maker,
+      Comparator<? super T> comparator, 
+      String where, 
+      String[] whereArguments, 
+      int size,
+      int batchSize,
+      boolean readOnly,
+      boolean distribute) 
   {
     super(controller, type, table, id, maker, comparator, where, 
         whereArguments, readOnly, distribute);
     
+    this.batchSize = batchSize;
     objects = CacheBuilder.newBuilder()
         .maximumSize(size)
         .build(new CacheLoader<Long, T>() {
           @Override public T load(Long identity) throws Exception {
             return getViaEntityGroup(identity);
           }
+          @Override public Map<Long, T> loadAll(Iterable<? extends Long> identities) {
+            // Guava's getAll requires a value for every key, so any 
+            // identity that does not exist is reported as missing.
+            final Map<Long, T> loaded = loadMissing(identities);
+            for (Long identity : identities)
+            {
+              if (!loaded.containsKey(identity))
+              {
+                throw new CacheLoader.InvalidCacheLoadException(
+                    getType().getSimpleName() + " id " + identity + " not found.");
+              }
+            }
+            return loaded;
+          }
         });
   }
 
@@ -125,9 +172,172 @@ public class LruCacheGroup<T extends Identifiable>
     }
   }
   
+  @Override
+  public List<T> list(Collection<Long> ids)
+  {
+    final TLongObjectMap<T> map = map(ids);
+    final List<T> list = new ArrayList<>(ids.size());
+    for (long identity : ids)
+    {
+      final T object = map.get(identity);
+      if (object != null)
+      {
+        list.add(object);
+      }
+    }
+    return list;
+  }
+
+  @Override
+  public TLongObjectMap<T> map(Collection<Long> ids)
+  {
+    final TLongObjectMap<T> result = new TLongObjectHashMap<>(ids.size());
+    final Map<Long, T> present = objects.getAllPresent(ids);
+    for (Map.Entry<Long, T> entry : present.entrySet())
+    {
+      result.put(entry.getKey(), entry.getValue());
+    }
+    
+    if (present.size() < ids.size())
+    {
+      final Set<Long> missing = new LinkedHashSet<>(ids);
+      missing.removeAll(present.keySet());
+      for (Map.Entry<Long, T> entry : loadMissing(missing).entrySet())
+      {
+        result.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Loads the given objects, which are not in the cache, and adds them to 
+   * the cache.  Ids that are already being loaded by another thread are 
+   * awaited rather than queried again; the rest are fetched in batches.
+   * Returns the objects that exist, mapped by id.
+   */
+  protected Map<Long, T> loadMissing(Iterable<? extends Long> ids)
+  {
+    final Map<Long, T> result = new HashMap<>();
+    final Map<Long, PendingLoad> owned = new LinkedHashMap<>();
+    final Map<Long, CompletableFuture<T>> awaited = new HashMap<>();
+    for (Long identity : ids)
+    {
+      if (owned.containsKey(identity) || awaited.containsKey(identity))
+      {
+        continue;
+      }
+      final PendingLoad load = new PendingLoad();
+      final PendingLoad existing = loading.putIfAbsent(identity, load);
+      if (existing == null)
+      {
+        owned.put(identity, load);
+      }
+      else
+      {
+        awaited.put(identity, existing.future);
+      }
+    }
+    
+    try
+    {
+      final List<Long> toLoad = new ArrayList<>(owned.keySet());
+      for (int start = 0; start < toLoad.size(); start += batchSize)
+      {
+        final TLongObjectMap<T> loaded = rawMap(toLoad.subList(start, 
+            Math.min(start + batchSize, toLoad.size())));
+        for (T object : loaded.valueCollection())
+        {
+          final PendingLoad load = owned.get(object.getId());
+          if (load != null)
+          {
+            load.install(object.getId(), object);
+          }
+          result.put(object.getId(), object);
+        }
+      }
+      for (Map.Entry<Long, PendingLoad> entry : owned.entrySet())
+      {
+        entry.getValue().future.complete(result.get(entry.getKey()));
+      }
+    }
+    catch (RuntimeException exc)
+    {
+      for (PendingLoad load : owned.values())
+      {
+        load.future.completeExceptionally(exc);
+      }
+      throw exc;
+    }
+    finally
+    {
+      for (Map.Entry<Long, PendingLoad> entry : owned.entrySet())
+      {
+        loading.remove(entry.getKey(), entry.getValue());
+      }
+    }
+    
+    for (Map.Entry<Long, CompletableFuture<T>> entry : awaited.entrySet())
+    {
+      final T object = await(entry.getValue());
+      if (object != null)
+      {
+        result.put(entry.getKey(), object);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Waits for an object being loaded by another thread.
+   */
+  private T await(CompletableFuture<T> future)
+  {
+    try
+    {
+      return future.join();
+    }
+    catch (CompletionException exc)
+    {
+      if (exc.getCause() instanceof RuntimeException)
+      {
+        throw (RuntimeException)exc.getCause();
+      }
+      throw exc;
+    }
+  }
+  
+  /**
+   * Changes the cached copy of an object, first marking any fetch of the
+   * object that is underway as stale so that the fetched copy does not
+   * replace the change.
+   * 
+   * @param object The new copy, or null to remove the object from the cache.
+   */
+  private void cacheChange(long id, T object)
+  {
+    final PendingLoad load = loading.get(id);
+    if (load != null)
+    {
+      load.invalidate(id, object);
+    }
+    else if (object != null)
+    {
+      objects.put(id, object);
+    }
+    else
+    {
+      objects.invalidate(id);
+    }
+  }
+  
   @Override
   public void reset()
   {
+    for (Map.Entry<Long, PendingLoad> entry : loading.entrySet())
+    {
+      entry.getValue().invalidate(entry.getKey(), null);
+    }
     objects.invalidateAll();
   }
   
@@ -147,7 +357,7 @@ public class LruCacheGroup<T extends Identifiable>
   public int put(T object)
   {
     int rowsUpdated = super.put(object);
-    objects.put(object.getId(), object);
+    cacheChange(object.getId(), object);
     return rowsUpdated;
   }
   
@@ -171,7 +381,7 @@ public class LruCacheGroup<T extends Identifiable>
   public void remove(long id)
   {
     super.remove(id);
-    objects.invalidate(id);
+    cacheChange(id, null);
   }
   
   @Override
@@ -189,7 +399,11 @@ public class LruCacheGroup<T extends Identifiable>
   protected T getViaEntityGroup(long id)
     throws NoSuchEntityException
   {
-    final T result = super.get(id);
+    // Join a batch load of this object if one is underway.
+    final PendingLoad inFlight = loading.get(id);
+    final T result = (inFlight != null)
+        ? await(inFlight.future)
+        : super.get(id);
     if (result == null)
     {
       throw new NoSuchEntityException(getType().getSimpleName() 
@@ -210,7 +424,10 @@ public class LruCacheGroup<T extends Identifiable>
   @Override
   public void refresh(long... ids)
   {
-    objects.invalidateAll(Longs.asList(ids));
+    for (long identity : ids)
+    {
+      cacheChange(identity, null);
+    }
   }
   
   @Override
@@ -223,6 +440,45 @@ public class LruCacheGroup<T extends Identifiable>
   // Inner classes.
   // 
 
+  /**
+   * A fetch of one object by loadMissing.  The fetched copy is cached only
+   * if nothing has changed the object since the fetch began; the check and
+   * the changes are made while holding this load's monitor, so neither can
+   * slip in between the other's check and write.
+   */
+  private final class PendingLoad
+  {
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+    private boolean stale;
+
+    /**
+     * Caches the fetched copy unless the load has been marked stale.
+     */
+    synchronized void install(long id, T object)
+    {
+      if (!stale)
+      {
+        objects.put(id, object);
+      }
+    }
+
+    /**
+     * Marks the load stale and applies a change to the cached copy.
+     */
+    synchronized void invalidate(long id, T object)
+    {
+      stale = true;
+      if (object != null)
+      {
+        objects.put(id, object);
+      }
+      else
+      {
+        objects.invalidate(id);
+      }
+    }
+  }
+
   /**
    * Creates new instances of {@code LruCacheGroup}.
    */
@@ -234,6 +490,7 @@ public class LruCacheGroup<T extends Identifiable>
      */
     public static final int DEFAULT_SIZE = 10000;
     private int size = DEFAULT_SIZE;
+    private int batchSize = MAXIMUM_IDS_PER_QUERY;
     
     protected Builder(Class<T> type)
     {
@@ -258,6 +515,7 @@ public class LruCacheGroup<T extends Identifiable>
           this.where,
           this.whereArguments,
           this.size,
+          this.batchSize,
           this.readOnly,
           this.distribute);
     }
@@ -323,6 +581,21 @@ public class LruCacheGroup<T extends Identifiable>
       this.size = newSize;
       return this;
     }
+    
+    /**
+     * Sets the largest number of missing entities fetched by a single query
+     * when several are requested at once.  The default is 
+     * {@link EntityGroup#MAXIMUM_IDS_PER_QUERY}.
+     */
+    public Builder<T> batchSize(int newBatchSize)
+    {
+      if (newBatchSize < 1)
+      {
+        throw new IllegalArgumentException("Batch size must be positive.");
+      }
+      this.batchSize = newBatchSize;
+      return this;
+    }
 
   } // End Builder.
 
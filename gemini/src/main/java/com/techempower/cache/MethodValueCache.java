@@ -27,7 +27,6 @@
 
 package com.techempower.cache;
 
-import gnu.trove.iterator.*;
 import gnu.trove.map.*;
 import gnu.trove.map.hash.*;
 import gnu.trove.set.*;
@@ -53,6 +52,14 @@ import com.techempower.util.*;
  * for only {@code getFoo} gets populated.  If {@code getObjects} is never
  * called on method {@code getBar}, the cache for {@code getBar} is never
  * populated.
+ * <p>
+ * In addition to exact-match lookups on a single method, the cache can 
+ * maintain sorted indexes for range lookups ({@code getObjectsBetween}) and 
+ * composite indexes over several methods at once ({@code getObjects} with an
+ * array of method names).  These are also populated lazily, the first time
+ * they are queried.
+ * <p>
+ * Entities that share a value are returned in order of their ids.
  * 
  * @param <T> The type of objects whose values are being cached.
  */
@@ -66,6 +73,14 @@ public class MethodValueCache<T extends Identifiable>
       = new HashMap<>();
   private final Map<String, Method> mapMethodNameToMethod 
       = new HashMap<>();
+  private final Map<String, NavigableMap<Object, TLongSet>> mapMethodNameToSortedValueToIds
+      = new HashMap<>();
+  private final Map<String, Method[]> mapCompositeNameToMethods
+      = new HashMap<>();
+  private final Map<String, Map<List<Object>, TLongSet>> mapCompositeNameToValuesToIds
+      = new HashMap<>();
+  private final Map<String, TLongObjectMap<List<Object>>> mapCompositeNameToIdToValues
+      = new HashMap<>();
   private boolean loaded = false;
   
   // Assigned in the constructor.
@@ -107,17 +122,17 @@ public class MethodValueCache<T extends Identifiable>
         
         Object value = mapIdToValue.get(id);
 
-        TLongSet ids = mapValueToIds.get(value);
-        if (ids != null)
-        {
-          ids.remove(id);
-          if (ids.isEmpty())
-          {
-            mapValueToIds.remove(value);
-          }
-        }
+        removeId(methodName, mapValueToIds, value, id);
         mapIdToValue.remove(id);
       }
+      
+      for (String compositeName : this.mapCompositeNameToMethods.keySet())
+      {
+        TLongObjectMap<List<Object>> mapIdToValues = this.mapCompositeNameToIdToValues.get(compositeName);
+        
+        removeId(null, this.mapCompositeNameToValuesToIds.get(compositeName),
+            mapIdToValues.remove(id), id);
+      }
     }
     finally
     {
@@ -212,15 +227,159 @@ public class MethodValueCache<T extends Identifiable>
           return new ArrayList<>(0);
         }
         
+        List<T> values = new ArrayList<>(ids.size());
+        addObjects(values, ids);
+        return values;
+      }
+    }
+    finally
+    {
+      this.lock.readLock().unlock();
+    }
+    
+    // If we're here, then this is the first time this method has been called.
+    this.lock.writeLock().lock();
+    try
+    {
+      addMethod(methodName);
+    }
+    finally
+    {
+      this.lock.writeLock().unlock();
+    }
+    
+    return getObjects(methodName, value);
+  }
+  
+  /**
+   * Returns the entities whose values for the given method fall between the
+   * given bounds, inclusive, ordered by those values and then by id.  A null
+   * bound leaves 
+   * that end of the range open.  Entities for which the method returns null
+   * are never included.  For example, if methodName is "getCreated", the 
+   * following is true about the returned entities: 
+   * {@code from <= entity.getCreated() <= to}.
+   * 
+   * @param methodName The name of the method to call.  Its non-null return
+   *        values must be mutually Comparable.
+   * @param from The lowest desired value, or null for no lower bound.
+   * @param to The highest desired value, or null for no upper bound.
+   * @return The entities that have values in the given range.
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public List<T> getObjectsBetween(String methodName, Object from, Object to)
+  {
+    if (!this.loaded)
+    {
+      load();
+    }
+
+    this.lock.readLock().lock();
+    try
+    {
+      NavigableMap<Object, TLongSet> mapSortedValueToIds = 
+          this.mapMethodNameToSortedValueToIds.get(methodName);
+      
+      if (mapSortedValueToIds != null)
+      {
+        // If we're here, then this method has been range-queried before.
+        final Map<Object, TLongSet> range;
+        if (from == null && to == null)
+        {
+          range = mapSortedValueToIds;
+        }
+        else if (from == null)
+        {
+          range = mapSortedValueToIds.headMap(to, true);
+        }
+        else if (to == null)
+        {
+          range = mapSortedValueToIds.tailMap(from, true);
+        }
+        else if (((Comparable)from).compareTo(to) > 0)
+        {
+          return new ArrayList<>(0);
+        }
+        else
+        {
+          range = mapSortedValueToIds.subMap(from, true, to, true);
+        }
+        
         List<T> values = new ArrayList<>();
+        for (TLongSet ids : range.values())
+        {
+          addObjects(values, ids);
+        }
+        return values;
+      }
+    }
+    finally
+    {
+      this.lock.readLock().unlock();
+    }
+    
+    // If we're here, then this is the first range query on this method.
+    this.lock.writeLock().lock();
+    try
+    {
+      addRangeMethod(methodName);
+    }
+    finally
+    {
+      this.lock.writeLock().unlock();
+    }
+    
+    return getObjectsBetween(methodName, from, to);
+  }
+  
+  /**
+   * Returns the entities who have the given values for all of the given 
+   * methods.  For example, if methodNames is {"getStatus", "getOwnerId"} and
+   * values is {"Open", 5L}, then the following is true about the returned
+   * entities: entity.getStatus().equals("Open") and
+   * entity.getOwnerId().equals(5L).  The methods are indexed together as a
+   * composite, so the same method names in a different order constitute a
+   * separate index.
+   * 
+   * @param methodNames The names of the methods to call.
+   * @param values The desired values of the methods, in the same order.
+   * @return The entities that have the given values.
+   */
+  public List<T> getObjects(String[] methodNames, Object[] values)
+  {
+    if (methodNames.length != values.length)
+    {
+      throw new IllegalArgumentException(
+          "Expected one value per method name; got " + methodNames.length 
+          + " names and " + values.length + " values.");
+    }
+    
+    if (!this.loaded)
+    {
+      load();
+    }
+
+    final String compositeName = String.join(",", methodNames);
+    
+    this.lock.readLock().lock();
+    try
+    {
+      Map<List<Object>, TLongSet> mapValuesToIds = 
+          this.mapCompositeNameToValuesToIds.get(compositeName);
+      
+      if (mapValuesToIds != null)
+      {
+        // If we're here, then this composite has been queried before.
+        TLongSet ids = mapValuesToIds.get(Arrays.asList(values));
         
-        for (TLongIterator iterator = ids.iterator(); iterator.hasNext();)
+        if (ids == null || ids.isEmpty())
         {
-          long id = iterator.next();
-          values.add(this.cache.get(this.type, id));
+          return new ArrayList<>(0);
         }
         
-        return values;
+        List<T> objects = new ArrayList<>(ids.size());
+        addObjects(objects, ids);
+        return objects;
       }
     }
     finally
@@ -228,18 +387,32 @@ public class MethodValueCache<T extends Identifiable>
       this.lock.readLock().unlock();
     }
     
-    // If we're here, then this is the first time this method has been called.
+    // If we're here, then this is the first time this composite was queried.
     this.lock.writeLock().lock();
     try
     {
-      addMethod(methodName);
+      addComposite(compositeName, methodNames);
     }
     finally
     {
       this.lock.writeLock().unlock();
     }
     
-    return getObjects(methodName, value);
+    return getObjects(methodNames, values);
+  }
+  
+  /**
+   * Adds the entities with the given ids to the given list, in order of 
+   * their ids.
+   */
+  private void addObjects(List<T> objects, TLongSet ids)
+  {
+    final long[] sorted = ids.toArray();
+    Arrays.sort(sorted);
+    for (long id : sorted)
+    {
+      objects.add(this.cache.get(this.type, id));
+    }
   }
   
   /**
@@ -289,15 +462,7 @@ public class MethodValueCache<T extends Identifiable>
         Map<Object, TLongSet> mapValueToIds = this.mapMethodNameToValueToIds.get(methodName);
         
         Object oldValue = mapIdToValue.get(id);
-        TLongSet oldIds = mapValueToIds.get(oldValue);
-        if (oldIds != null)
-        {
-          oldIds.remove(id);
-          if (oldIds.isEmpty())
-          {
-            mapValueToIds.remove(oldValue);
-          }
-        }
+        removeId(methodName, mapValueToIds, oldValue, id);
         mapIdToValue.remove(id);
         
         if (object != null)
@@ -305,15 +470,25 @@ public class MethodValueCache<T extends Identifiable>
           // Add in the new id/value mapping.
           Object newValue = invokeMethod(object, methodName);
           mapIdToValue.put(id, newValue);
-          TLongSet ids = mapValueToIds.get(newValue);
-          if (ids == null)
-          {
-            ids = new TLongHashSet();
-            mapValueToIds.put(newValue, ids);
-          }
-          ids.add(id);
+          addId(methodName, mapValueToIds, newValue, id);
         }
       } 
+      
+      // Likewise for the composite indexes.
+      for (Map.Entry<String, Method[]> entry : this.mapCompositeNameToMethods.entrySet())
+      {
+        TLongObjectMap<List<Object>> mapIdToValues = this.mapCompositeNameToIdToValues.get(entry.getKey());
+        Map<List<Object>, TLongSet> mapValuesToIds = this.mapCompositeNameToValuesToIds.get(entry.getKey());
+        
+        removeId(null, mapValuesToIds, mapIdToValues.remove(id), id);
+        
+        if (object != null)
+        {
+          List<Object> newValues = invokeMethods(object, entry.getValue());
+          mapIdToValues.put(id, newValues);
+          addId(null, mapValuesToIds, newValues, id);
+        }
+      }
     }
     finally
     {
@@ -344,6 +519,51 @@ public class MethodValueCache<T extends Identifiable>
     }
   }
 
+  /**
+   * Stores the given method and a sorted index of the values of that method 
+   * for all entities in this cache.
+   * 
+   * @param methodName The name of the method to be stored.
+   */
+  protected void addRangeMethod(String methodName)
+  {
+    this.mapMethodNameToSortedValueToIds.put(methodName, new TreeMap<>());
+    if (this.mapMethodNameToMethod.containsKey(methodName))
+    {
+      indexMethod(methodName);
+    }
+    else
+    {
+      addMethod(methodName);
+    }
+  }
+
+  /**
+   * Stores the given methods as a composite and the combined values of those
+   * methods for all entities in this cache.
+   * 
+   * @param compositeName The name by which the composite is stored.
+   * @param methodNames The names of the methods in the composite.
+   */
+  protected void addComposite(String compositeName, String[] methodNames)
+  {
+    try
+    {
+      Method[] methods = new Method[methodNames.length];
+      for (int i = 0; i < methodNames.length; i++)
+      {
+        methods[i] = this.type.getMethod(methodNames[i]);
+      }
+      this.mapCompositeNameToMethods.put(compositeName, methods);
+      
+      indexComposite(compositeName);
+    }
+    catch (NoSuchMethodException e)
+    {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
   /**
    * Stores the values of the given method for all entities in this cache.
    * 
@@ -374,19 +594,104 @@ public class MethodValueCache<T extends Identifiable>
       mapValueToIds.clear();
     }
     
+    NavigableMap<Object, TLongSet> mapSortedValueToIds = 
+        this.mapMethodNameToSortedValueToIds.get(methodName);
+    if (mapSortedValueToIds != null)
+    {
+      mapSortedValueToIds.clear();
+    }
+    
     for (T object : this.cache.list(this.type))
     {
       Object value = invokeMethod(object, methodName);
       long id = object.getId();
       mapIdToValue.put(id, value);
+      addId(methodName, mapValueToIds, value, id);
+    }
+  }
 
-      TLongSet ids = mapValueToIds.get(value);
-      if (ids == null)
+  /**
+   * Stores the combined values of the given composite for all entities in
+   * this cache.
+   * 
+   * @param compositeName The name of the composite to be stored.
+   */
+  protected void indexComposite(String compositeName)
+  {
+    Method[] methods = this.mapCompositeNameToMethods.get(compositeName);
+    TLongObjectMap<List<Object>> mapIdToValues = new TLongObjectHashMap<>();
+    Map<List<Object>, TLongSet> mapValuesToIds = new HashMap<>();
+    
+    for (T object : this.cache.list(this.type))
+    {
+      List<Object> values = invokeMethods(object, methods);
+      long id = object.getId();
+      mapIdToValues.put(id, values);
+      addId(null, mapValuesToIds, values, id);
+    }
+    
+    this.mapCompositeNameToIdToValues.put(compositeName, mapIdToValues);
+    this.mapCompositeNameToValuesToIds.put(compositeName, mapValuesToIds);
+  }
+  
+  /**
+   * Maps the given value to the given id in the given index, and in the 
+   * sorted index of the given method if it has one.
+   * 
+   * @param methodName The method whose sorted index should also be updated,
+   *        or null if the index is not for a single method.
+   */
+  private <K> void addId(String methodName, Map<K, TLongSet> mapValueToIds, 
+      K value, long id)
+  {
+    TLongSet ids = mapValueToIds.get(value);
+    if (ids == null)
+    {
+      ids = new TLongHashSet();
+      mapValueToIds.put(value, ids);
+      
+      // The sorted index shares the id sets of the exact-match index.
+      if (methodName != null && value != null)
+      {
+        NavigableMap<Object, TLongSet> mapSortedValueToIds = 
+            this.mapMethodNameToSortedValueToIds.get(methodName);
+        if (mapSortedValueToIds != null)
+        {
+          mapSortedValueToIds.put(value, ids);
+        }
+      }
+    }
+    ids.add(id);
+  }
+  
+  /**
+   * Removes the mapping of the given value to the given id from the given 
+   * index, and from the sorted index of the given method if it has one.
+   * 
+   * @param methodName The method whose sorted index should also be updated,
+   *        or null if the index is not for a single method.
+   */
+  private <K> void removeId(String methodName, 
+      Map<K, TLongSet> mapValueToIds, K value, long id)
+  {
+    TLongSet ids = mapValueToIds.get(value);
+    if (ids != null)
+    {
+      ids.remove(id);
+      if (ids.isEmpty())
       {
-        ids = new TLongHashSet();
-        mapValueToIds.put(value, ids);
+        mapValueToIds.remove(value);
+        
+        if (methodName != null && value != null)
+        {
+          NavigableMap<Object, TLongSet> mapSortedValueToIds = 
+              this.mapMethodNameToSortedValueToIds.get(methodName);
+          if (mapSortedValueToIds != null)
+          {
+            mapSortedValueToIds.remove(value);
+          }
+        }
       }
-      ids.add(id);
     }
   }
   
@@ -413,6 +718,30 @@ public class MethodValueCache<T extends Identifiable>
     }
   }
   
+  /**
+   * Invokes each of the given methods of the given object.
+   * 
+   * @param object The object.
+   * @param methods The methods to be invoked.
+   * @return The return values of the invoked methods, in the same order.
+   */
+  protected List<Object> invokeMethods(T object, Method[] methods)
+  {
+    Object[] values = new Object[methods.length];
+    for (int i = 0; i < methods.length; i++)
+    {
+      try
+      {
+        values[i] = methods[i].invoke(object);
+      }
+      catch (IllegalAccessException | InvocationTargetException e)
+      {
+        values[i] = null;
+      }
+    }
+    return Arrays.asList(values);
+  }
+  
   /**
    * Initializes this cache.  Queries all entities on each method that is 
    * currently known by this cache.
@@ -432,6 +761,11 @@ public class MethodValueCache<T extends Identifiable>
         indexMethod(methodName);
       }
       
+      for (String compositeName : this.mapCompositeNameToMethods.keySet())
+      {
+        indexComposite(compositeName);
+      }
+      
       this.loaded = true;
     }
     finally
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.cache;
+
+/**
+ * The outcome of preloading one cache group or cached relation, as reported
+ * by {@link EntityStore#preload(int)}.
+ */
+public class PreloadResult
+{
+
+  //
+  // Member variables.
+  //
+
+  private final String    name;
+  private final int       rows;
+  private final long      millis;
+  private final Throwable error;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   *
+   * @param name The name of the group or relation.
+   * @param rows The number of entities or pairs loaded.
+   * @param millis The time taken to load, in milliseconds.
+   * @param error The error that prevented loading, or null.
+   */
+  public PreloadResult(String name, int rows, long millis, Throwable error)
+  {
+    this.name = name;
+    this.rows = rows;
+    this.millis = millis;
+    this.error = error;
+  }
+
+  /**
+   * Gets the name of the group or relation.
+   */
+  public String name()
+  {
+    return this.name;
+  }
+
+  /**
+   * Gets the number of entities or pairs loaded.
+   */
+  public int rows()
+  {
+    return this.rows;
+  }
+
+  /**
+   * Gets the time taken to load, in milliseconds.
+   */
+  public long millis()
+  {
+    return this.millis;
+  }
+
+  /**
+   * Gets the error that prevented loading, or null if loading succeeded.
+   */
+  public Throwable error()
+  {
+    return this.error;
+  }
+
+  /**
+   * Returns whether loading succeeded.
+   */
+  public boolean isSuccessful()
+  {
+    return this.error == null;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "PreloadResult [" + this.name + "; rows: " + this.rows 
+        + "; " + this.millis + "ms"
+        + (this.error == null ? "" : "; error: " + this.error) + "]";
+  }
+
+}  // End PreloadResult.
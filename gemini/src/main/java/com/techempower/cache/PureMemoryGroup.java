@@ -212,7 +212,7 @@ public class PureMemoryGroup<T extends Identifiable>
     @Override
     public PureMemoryGroup<T> build(EntityStore entityStore)
     {
-      return new PureMemoryGroup<>(
+      final PureMemoryGroup<T> group = new PureMemoryGroup<>(
           entityStore,
           this.type,
           this.maker,
@@ -220,6 +220,8 @@ public class PureMemoryGroup<T extends Identifiable>
           this.initializer,
           this.readOnly,
           this.distribute);
+      group.setStorage(this.storage);
+      return group;
     }
 
     /**
@@ -237,6 +239,13 @@ public class PureMemoryGroup<T extends Identifiable>
       return this;
     }
     
+    @Override
+    public Builder<T> storage(CacheStorage cacheStorage)
+    {
+      super.storage(cacheStorage);
+      return this;
+    }
+
     @Override
     public Builder<T> maker(EntityMaker<T> entityMaker)
     {
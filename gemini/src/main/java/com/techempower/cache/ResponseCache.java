@@ -0,0 +1,550 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package com.techempower.cache;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import com.google.common.cache.*;
+import com.google.common.util.concurrent.*;
+import com.techempower.util.*;
+
+/**
+ * A size-bounded cache of rendered responses or fragments, stored as
+ * pre-encoded bytes with a content type.  Provided by EntityStore, which
+ * registers it as a CacheListener so that cached responses are evicted
+ * when the entities they were rendered from change.
+ *   <p>
+ * Each entry carries its own time-to-live and a set of tags naming what it
+ * depends on.  A tag is either an entity type (see tagFor(Class)), which is
+ * invalidated by any change to an entity of that type, or a single entity
+ * (see tagFor(Class, long)), which is invalidated only by a change to that
+ * entity or a reset of its type.  Untagged entries live until they expire,
+ * are evicted for space, or the whole cache is reset.
+ *   <p>
+ * Renders are coalesced: when several threads ask for the same missing
+ * entry through get(key, renderer), one renders it and the others wait for
+ * and share the result.  If an entity an entry depends on changes while it
+ * is being rendered, the result is served but not retained.
+ *   <p>
+ * Eviction is Guava's approximate LRU, bounded by total bytes.
+ *   <p>
+ * Configuration options (read via EntityStore's configuration):
+ * <ul>
+ * <li>ResponseCache.MaximumBytes - total size of cached bodies. Default 
+ *     32 MiB.</li>
+ * <li>ResponseCache.DefaultTtlSeconds - time-to-live for entries that do
+ *     not specify their own.  Default 300.</li>
+ * </ul>
+ */
+public class ResponseCache
+  implements CacheListener
+{
+
+  //
+  // Constants.
+  //
+
+  public static final long   DEFAULT_MAXIMUM_BYTES = 32L * 1024L * 1024L;
+  public static final int    DEFAULT_TTL_SECONDS   = 300;
+  
+  /**
+   * Approximate per-entry overhead, in bytes, counted toward the size bound.
+   */
+  private static final int   ENTRY_OVERHEAD = 128;
+
+  //
+  // Member variables.
+  //
+
+  private final ConcurrentMap<String, Set<String>> tagIndex = new ConcurrentHashMap<>();
+  private final Set<Render>  rendering = ConcurrentHashMap.newKeySet();
+  private final AtomicLong   evictions = new AtomicLong();
+  private volatile Cache<String, Entry> entries;
+  private volatile long      maximumBytes = DEFAULT_MAXIMUM_BYTES;
+  private volatile long      defaultTtlMillis = DEFAULT_TTL_SECONDS * UtilityConstants.SECOND;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   */
+  public ResponseCache()
+  {
+    this.entries = build(maximumBytes);
+  }
+
+  /**
+   * Configures the cache.  Changing the size bound discards all entries.
+   */
+  public void configure(EnhancedProperties props)
+  {
+    final EnhancedProperties.Focus focus = props.focus("ResponseCache.");
+    defaultTtlMillis = focus.getInt("DefaultTtlSeconds", DEFAULT_TTL_SECONDS, 
+        0, Integer.MAX_VALUE) * UtilityConstants.SECOND;
+    final long bytes = focus.getLong("MaximumBytes", DEFAULT_MAXIMUM_BYTES, 
+        0L, Long.MAX_VALUE);
+    if (bytes != maximumBytes)
+    {
+      maximumBytes = bytes;
+      final Cache<String, Entry> previous = entries;
+      entries = build(bytes);
+      previous.invalidateAll();
+    }
+  }
+
+  /**
+   * Constructs the underlying cache.
+   */
+  private Cache<String, Entry> build(long bytes)
+  {
+    return CacheBuilder.newBuilder()
+        .maximumWeight(bytes)
+        .weigher((String key, Entry entry) -> entry.weight(key))
+        .removalListener((RemovalNotification<String, Entry> notification) -> {
+          if (notification.wasEvicted())
+          {
+            evictions.incrementAndGet();
+          }
+          // A replaced entry's key stays indexed under the tags that the
+          // replacement also carries.
+          unindex(notification.getKey(), notification.getValue(),
+              notification.getCause() == RemovalCause.REPLACED
+                  ? entries.asMap().get(notification.getKey())
+                  : null);
+        })
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * Gets the tag representing any entity of a type.
+   */
+  public static String tagFor(Class<?> type)
+  {
+    return type.getName();
+  }
+
+  /**
+   * Gets the tag representing a single entity.
+   */
+  public static String tagFor(Class<?> type, long id)
+  {
+    return type.getName() + '#' + id;
+  }
+
+  /**
+   * Gets the default time-to-live, in milliseconds.
+   */
+  public long getDefaultTtlMillis()
+  {
+    return defaultTtlMillis;
+  }
+
+  /**
+   * Gets a cached entry, or null if there is none or it has expired.
+   */
+  public Entry get(String key)
+  {
+    final Cache<String, Entry> cache = entries;
+    final Entry entry = cache.getIfPresent(key);
+    if ((entry != null) && (entry.isExpired()))
+    {
+      cache.asMap().remove(key, entry);
+      return null;
+    }
+    return entry;
+  }
+
+  /**
+   * Gets a cached entry, rendering and caching it if necessary.  Only one
+   * thread renders a missing entry; others requesting the same key wait
+   * for it.  If the renderer returns an entry that is not cacheable (see
+   * Entry.isCacheable), it is returned to the thread that rendered it
+   * without being cached, and any threads that were waiting for it receive
+   * null and should render their own response.
+   *
+   * @throws ExecutionException wrapping any exception from the renderer.
+   */
+  public Entry get(String key, Callable<Entry> renderer)
+    throws ExecutionException
+  {
+    final Entry cached = get(key);
+    if (cached != null)
+    {
+      return cached;
+    }
+    
+    // The render stays registered until the entry is in the cache, so that
+    // an invalidation between the renderer returning and Guava storing the
+    // entry (when the key is not yet there to be invalidated) is still seen.
+    final Cache<String, Entry> cache = entries;
+    final Render render = new Render();
+    rendering.add(render);
+    try
+    {
+      final Entry entry = cache.get(key, () -> {
+        final Entry rendered = renderer.call();
+        if ((!rendered.isCacheable()) || (render.affects(rendered)))
+        {
+          throw new UncacheableException(rendered);
+        }
+        index(key, rendered);
+        return rendered;
+      });
+      if (render.affects(entry))
+      {
+        cache.asMap().remove(key, entry);
+      }
+      return entry;
+    }
+    catch (UncheckedExecutionException | ExecutionException exc)
+    {
+      if (exc.getCause() instanceof UncacheableException)
+      {
+        final UncacheableException uncacheable = (UncacheableException)exc.getCause();
+        return (uncacheable.thread == Thread.currentThread()
+            ? uncacheable.entry
+            : null);
+      }
+      if (exc instanceof ExecutionException)
+      {
+        throw (ExecutionException)exc;
+      }
+      throw new ExecutionException(exc.getCause());
+    }
+    finally
+    {
+      rendering.remove(render);
+    }
+  }
+
+  /**
+   * Caches an entry, replacing any existing entry for the key.
+   */
+  public void put(String key, Entry entry)
+  {
+    index(key, entry);
+    entries.put(key, entry);
+  }
+
+  /**
+   * Removes a single entry.
+   */
+  public void invalidate(String key)
+  {
+    entries.invalidate(key);
+  }
+
+  /**
+   * Removes all entries carrying a tag.
+   */
+  public void invalidateTag(String tag)
+  {
+    for (Render render : rendering)
+    {
+      render.invalidated.add(tag);
+    }
+    final Set<String> keys = tagIndex.remove(tag);
+    if (keys != null)
+    {
+      entries.invalidateAll(keys);
+    }
+  }
+
+  /**
+   * Removes all entries.
+   */
+  public void clear()
+  {
+    for (Render render : rendering)
+    {
+      render.cleared = true;
+    }
+    entries.invalidateAll();
+    tagIndex.clear();
+  }
+
+  /**
+   * Gets the number of entries cached.
+   */
+  public long size()
+  {
+    return entries.size();
+  }
+
+  /**
+   * Gets the maximum total size, in bytes, of cached entries.
+   */
+  public long getMaximumBytes()
+  {
+    return maximumBytes;
+  }
+
+  /**
+   * Gets hit, miss and load statistics.
+   */
+  public CacheStats getStats()
+  {
+    return entries.stats();
+  }
+
+  /**
+   * Gets the number of entries evicted for space.
+   */
+  public long getEvictionCount()
+  {
+    return evictions.get();
+  }
+
+  /**
+   * Records an entry's key against each of its tags.
+   */
+  private void index(String key, Entry entry)
+  {
+    for (String tag : entry.tags)
+    {
+      tagIndex.computeIfAbsent(tag, t -> ConcurrentHashMap.newKeySet()).add(key);
+    }
+  }
+
+  /**
+   * Removes an entry's key from each of its tags, other than those also
+   * carried by the entry now cached for the key, if any.
+   */
+  private void unindex(String key, Entry entry, Entry current)
+  {
+    if ((key == null) || (entry == null))
+    {
+      return;
+    }
+    for (String tag : entry.tags)
+    {
+      if ((current != null) && (current.tags.contains(tag)))
+      {
+        continue;
+      }
+      tagIndex.computeIfPresent(tag, (t, keys) -> {
+        keys.remove(key);
+        return (keys.isEmpty() ? null : keys);
+      });
+    }
+  }
+
+  //
+  // CacheListener methods.
+  //
+
+  @Override
+  public void cacheFullReset()
+  {
+    clear();
+  }
+
+  @Override
+  public <T extends Identifiable> void cacheTypeReset(Class<T> type)
+  {
+    invalidateTag(tagFor(type));
+    // Also drop entries depending on individual entities of the type,
+    // including any being rendered now.
+    final String prefix = tagFor(type) + '#';
+    for (Render render : rendering)
+    {
+      render.invalidated.add(prefix);
+    }
+    for (String tag : tagIndex.keySet())
+    {
+      if (tag.startsWith(prefix))
+      {
+        invalidateTag(tag);
+      }
+    }
+  }
+
+  @Override
+  public <T extends Identifiable> void cacheObjectExpired(Class<T> type, long identifier)
+  {
+    invalidateTag(tagFor(type));
+    invalidateTag(tagFor(type, identifier));
+  }
+
+  @Override
+  public <T extends Identifiable> void removeFromCache(Class<T> type, long identifier)
+  {
+    cacheObjectExpired(type, identifier);
+  }
+
+  /**
+   * A cached response: its body, content type, expiration and tags.
+   */
+  public static class Entry
+  {
+    private final byte[]      body;
+    private final String      contentType;
+    private final long        expires;
+    private final Set<String> tags;
+    private final boolean     cacheable;
+
+    /**
+     * Constructor.
+     *
+     * @param body The encoded response body.  Not copied.
+     * @param contentType The response content type; may be null.
+     * @param ttlMillis How long the entry may be served.
+     * @param tags The tags the entry depends on; may be null.
+     * @param cacheable Whether the entry may be cached at all.
+     */
+    public Entry(byte[] body, String contentType, long ttlMillis, 
+        Collection<String> tags, boolean cacheable)
+    {
+      this.body = body;
+      this.contentType = contentType;
+      this.expires = System.nanoTime() 
+          + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, ttlMillis));
+      this.tags = (tags == null || tags.isEmpty()
+          ? Collections.emptySet()
+          : Collections.unmodifiableSet(new HashSet<>(tags)));
+      this.cacheable = cacheable;
+    }
+
+    /**
+     * Constructor for a cacheable entry.
+     */
+    public Entry(byte[] body, String contentType, long ttlMillis,
+        Collection<String> tags)
+    {
+      this(body, contentType, ttlMillis, tags, true);
+    }
+
+    /**
+     * Gets the encoded body.  The array is shared and must not be modified.
+     */
+    public byte[] getBody()
+    {
+      return body;
+    }
+
+    /**
+     * Gets the content type; may be null.
+     */
+    public String getContentType()
+    {
+      return contentType;
+    }
+
+    /**
+     * Gets the tags this entry depends on.
+     */
+    public Set<String> getTags()
+    {
+      return tags;
+    }
+
+    /**
+     * Is this entry allowed to be cached?  Responses that failed or were
+     * redirected, for example, should be marked uncacheable.
+     */
+    public boolean isCacheable()
+    {
+      return cacheable;
+    }
+
+    /**
+     * Has this entry's time-to-live passed?
+     */
+    public boolean isExpired()
+    {
+      return System.nanoTime() - expires >= 0L;
+    }
+
+    /**
+     * Gets the weight of this entry for the size bound.
+     */
+    int weight(String key)
+    {
+      return (int)Math.min(Integer.MAX_VALUE, 
+          (long)body.length + 2L * key.length() + ENTRY_OVERHEAD);
+    }
+  }
+
+  /**
+   * Tracks what is invalidated while an entry is being rendered, so that a
+   * render that may have read since-changed entities is not retained.
+   */
+  private static class Render
+  {
+    private final Set<String> invalidated = ConcurrentHashMap.newKeySet();
+    private volatile boolean  cleared;
+    
+    /**
+     * Was any tag of the rendered entry invalidated during rendering?
+     */
+    private boolean affects(Entry entry)
+    {
+      if (cleared)
+      {
+        return true;
+      }
+      for (String tag : entry.tags)
+      {
+        if (invalidated.contains(tag))
+        {
+          return true;
+        }
+        final int hash = tag.indexOf('#');
+        if ((hash >= 0) && (invalidated.contains(tag.substring(0, hash + 1))))
+        {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Carries an uncacheable render out of the Guava loader.
+   */
+  private static class UncacheableException
+    extends    Exception
+  {
+    private static final long serialVersionUID = 1L;
+    
+    private final transient Entry  entry;
+    private final transient Thread thread;
+    
+    private UncacheableException(Entry entry)
+    {
+      super(null, null, false, false);
+      this.entry = entry;
+      this.thread = Thread.currentThread();
+    }
+  }
+
+}  // End ResponseCache.
@@ -2,6 +2,7 @@ package com.techempower.cache;
 
 import java.sql.*;
 import java.util.*;
+import java.util.function.*;
 
 import org.slf4j.*;
 
@@ -118,6 +119,33 @@ public class SubsetCacheGroup<T extends Identifiable> extends CacheGroup<T>
     return rawList();
   }
 
+  /**
+   * Include everything, cached and un-cached.
+   */
+  @Override
+  public List<T> list(int offset, int limit)
+  {
+    return page(rawList(), offset, limit);
+  }
+
+  /**
+   * Include everything, cached and un-cached.
+   */
+  @Override
+  public List<T> list(Predicate<? super T> predicate)
+  {
+    return filter(rawList(), predicate);
+  }
+
+  /**
+   * Include everything, cached and un-cached.
+   */
+  @Override
+  public T get(Predicate<? super T> predicate)
+  {
+    return first(rawList(), predicate);
+  }
+
   /**
    * Try to pull requested IDs from the cache, but fetch un-cached as needed.
    */
@@ -238,8 +266,17 @@ public class SubsetCacheGroup<T extends Identifiable> extends CacheGroup<T>
       if (controller == null) {
         throw new NullPointerException();
       }
-      return new SubsetCacheGroup<>(controller, this.type, this.table, this.id, this.maker, this.comparator, this.where,
-          this.whereArguments, this.readOnly, this.distribute);
+      final SubsetCacheGroup<T> group = new SubsetCacheGroup<>(controller, this.type, this.table, this.id, this.maker,
+          this.comparator, this.where, this.whereArguments, this.readOnly, this.distribute);
+      group.setStorage(this.storage);
+      return group;
+    }
+
+    @Override
+    public Builder<T> storage(CacheStorage cacheStorage)
+    {
+      super.storage(cacheStorage);
+      return this;
     }
   }
 }
@@ -40,7 +40,27 @@ import java.lang.annotation.*;
  * true) has the "distribute" flag set to true. Otherwise each instance will
  * risk having a stale method value cache and you'll get wrong answers from
  * EntityStore.get() and list() and honestly it won't be very fun.
+ * <p>
+ * On a method, {@code range} and {@code with} declare additional indexes
+ * beyond the default exact-match index.  Both are ignored on classes.
  */
 @Target({ ElementType.METHOD, ElementType.TYPE })
 @Retention(RetentionPolicy.RUNTIME)
-public @interface Indexed { }
+public @interface Indexed 
+{
+  
+  /**
+   * Also maintains a sorted index of this method's values, so that entities
+   * can be found by a range of values using EntityStore.listBetween.  The
+   * method's non-null return values must be mutually Comparable.
+   */
+  boolean range() default false;
+  
+  /**
+   * The names of other methods to combine with this one in a composite 
+   * index, so that entities can be found by the values of all of these 
+   * methods at once using EntityStore.list(Class, String[], Object[]).
+   */
+  String[] with() default {};
+  
+}
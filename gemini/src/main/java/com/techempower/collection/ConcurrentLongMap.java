@@ -0,0 +1,381 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.collection;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A concurrent map from primitive long keys to object values.  Lookups never
+ * box their keys and never lock; modifications are serialized on the map's
+ * monitor.  This suits read-mostly caches such as CacheGroup, where a
+ * ConcurrentHashMap&lt;Long, V&gt; allocates a Long for every lookup and 
+ * retains a boxed key alongside every entry.
+ *   <p>
+ * Entries are kept in singly-linked bucket chains whose links are immutable,
+ * in the manner of the original java.util.concurrent.ConcurrentHashMap.  A
+ * removal copies the part of the chain in front of the removed entry and a
+ * resize copies the whole table, so a reader that has already fetched a
+ * chain or table continues to see a consistent, if slightly stale, state.
+ *   <p>
+ * Iteration over {@link #values()} is weakly consistent: it never throws
+ * ConcurrentModificationException, and reflects the state of the map at 
+ * some point at or since the creation of the iterator.
+ *
+ * @param <V> The type of values in the map.
+ */
+public class ConcurrentLongMap<V>
+{
+
+  //
+  // Constants.
+  //
+
+  private static final int   DEFAULT_CAPACITY = 16;
+  private static final int   MAXIMUM_CAPACITY = 1 << 30;
+  private static final float LOAD_FACTOR      = 0.75f;
+
+  //
+  // Member variables.
+  //
+
+  private volatile AtomicReferenceArray<Node<V>> table;
+  private volatile int size;
+  private int threshold;
+  
+  private final Collection<V> values = new Values();
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   */
+  public ConcurrentLongMap()
+  {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param expectedSize The number of entries the map should be able to hold
+   *        without resizing.
+   */
+  public ConcurrentLongMap(int expectedSize)
+  {
+    int capacity = DEFAULT_CAPACITY;
+    while (capacity < MAXIMUM_CAPACITY 
+        && capacity * LOAD_FACTOR < expectedSize)
+    {
+      capacity <<= 1;
+    }
+    this.table = new AtomicReferenceArray<>(capacity);
+    this.threshold = (int)(capacity * LOAD_FACTOR);
+  }
+
+  /**
+   * Returns the value mapped to the given key, or null if there is none.
+   */
+  public V get(long key)
+  {
+    final AtomicReferenceArray<Node<V>> tab = this.table;
+    for (Node<V> node = tab.get(indexFor(key, tab.length())); 
+         node != null; 
+         node = node.next)
+    {
+      if (node.key == key)
+      {
+        return node.value;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns whether a value is mapped to the given key.
+   */
+  public boolean containsKey(long key)
+  {
+    return get(key) != null;
+  }
+
+  /**
+   * Returns whether the given value is mapped to any key.  This requires a
+   * scan of the whole map.
+   */
+  public boolean containsValue(Object value)
+  {
+    if (value != null)
+    {
+      for (V candidate : this.values)
+      {
+        if (value.equals(candidate))
+        {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Maps the given value to the given key, returning the value previously
+   * mapped to the key, if any.  Null values are not permitted.
+   */
+  public synchronized V put(long key, V value)
+  {
+    Objects.requireNonNull(value, "ConcurrentLongMap does not permit null values.");
+    
+    final AtomicReferenceArray<Node<V>> tab = this.table;
+    final int index = indexFor(key, tab.length());
+    final Node<V> head = tab.get(index);
+    for (Node<V> node = head; node != null; node = node.next)
+    {
+      if (node.key == key)
+      {
+        final V previous = node.value;
+        node.value = value;
+        return previous;
+      }
+    }
+    
+    tab.set(index, new Node<>(key, value, head));
+    if (++this.size > this.threshold)
+    {
+      resize();
+    }
+    return null;
+  }
+
+  /**
+   * Removes the value mapped to the given key, returning it, or null if 
+   * there was none.
+   */
+  public synchronized V remove(long key)
+  {
+    final AtomicReferenceArray<Node<V>> tab = this.table;
+    final int index = indexFor(key, tab.length());
+    final Node<V> head = tab.get(index);
+    Node<V> removed = head;
+    while (removed != null && removed.key != key)
+    {
+      removed = removed.next;
+    }
+    if (removed == null)
+    {
+      return null;
+    }
+    
+    // Copy the entries ahead of the removed one onto the remainder of the
+    // chain, leaving the chain seen by concurrent readers intact.
+    Node<V> newHead = removed.next;
+    for (Node<V> node = head; node != removed; node = node.next)
+    {
+      newHead = new Node<>(node.key, node.value, newHead);
+    }
+    tab.set(index, newHead);
+    this.size--;
+    return removed.value;
+  }
+
+  /**
+   * Removes all entries from the map.
+   */
+  public synchronized void clear()
+  {
+    this.table = new AtomicReferenceArray<>(this.table.length());
+    this.size = 0;
+  }
+
+  /**
+   * Returns the number of entries in the map.
+   */
+  public int size()
+  {
+    return this.size;
+  }
+
+  /**
+   * Returns whether the map is empty.
+   */
+  public boolean isEmpty()
+  {
+    return this.size == 0;
+  }
+
+  /**
+   * Returns a copy of the keys in the map.
+   */
+  public long[] keys()
+  {
+    final AtomicReferenceArray<Node<V>> tab = this.table;
+    long[] keys = new long[this.size];
+    int count = 0;
+    for (int i = 0; i < tab.length(); i++)
+    {
+      for (Node<V> node = tab.get(i); node != null; node = node.next)
+      {
+        if (count == keys.length)
+        {
+          keys = Arrays.copyOf(keys, count * 2 + 1);
+        }
+        keys[count++] = node.key;
+      }
+    }
+    return (count == keys.length) ? keys : Arrays.copyOf(keys, count);
+  }
+
+  /**
+   * Returns a view of the values in the map.  The view does not support
+   * modification.
+   */
+  public Collection<V> values()
+  {
+    return this.values;
+  }
+
+  /**
+   * Doubles the size of the table.  Called while holding the monitor.
+   */
+  private void resize()
+  {
+    final AtomicReferenceArray<Node<V>> oldTable = this.table;
+    final int oldCapacity = oldTable.length();
+    if (oldCapacity >= MAXIMUM_CAPACITY)
+    {
+      return;
+    }
+    
+    final int newCapacity = oldCapacity << 1;
+    final AtomicReferenceArray<Node<V>> newTable = 
+        new AtomicReferenceArray<>(newCapacity);
+    for (int i = 0; i < oldCapacity; i++)
+    {
+      for (Node<V> node = oldTable.get(i); node != null; node = node.next)
+      {
+        final int index = indexFor(node.key, newCapacity);
+        newTable.set(index, new Node<>(node.key, node.value, newTable.get(index)));
+      }
+    }
+    this.table = newTable;
+    this.threshold = (int)(newCapacity * LOAD_FACTOR);
+  }
+
+  /**
+   * Determines the table index for a key.
+   */
+  private static int indexFor(long key, int capacity)
+  {
+    int hash = (int)(key ^ (key >>> 32));
+    hash ^= (hash >>> 16);
+    hash *= 0x85ebca6b;
+    hash ^= (hash >>> 13);
+    return hash & (capacity - 1);
+  }
+
+  @Override
+  public String toString()
+  {
+    return "ConcurrentLongMap [" + this.size + " entries]";
+  }
+
+  //
+  // Inner classes.
+  //
+
+  /**
+   * An entry in a bucket chain.
+   */
+  private static final class Node<V>
+  {
+    private final long    key;
+    private volatile V    value;
+    private final Node<V> next;
+    
+    private Node(long key, V value, Node<V> next)
+    {
+      this.key = key;
+      this.value = value;
+      this.next = next;
+    }
+  }
+
+  /**
+   * The view returned by values().
+   */
+  private final class Values
+    extends AbstractCollection<V>
+  {
+    @Override
+    public int size()
+    {
+      return ConcurrentLongMap.this.size;
+    }
+
+    @Override
+    public Iterator<V> iterator()
+    {
+      final AtomicReferenceArray<Node<V>> tab = ConcurrentLongMap.this.table;
+      return new Iterator<V>() {
+        private int index = 0;
+        private Node<V> next = advance(null);
+        
+        private Node<V> advance(Node<V> node)
+        {
+          Node<V> candidate = (node == null) ? null : node.next;
+          while (candidate == null && this.index < tab.length())
+          {
+            candidate = tab.get(this.index++);
+          }
+          return candidate;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+          return this.next != null;
+        }
+
+        @Override
+        public V next()
+        {
+          if (this.next == null)
+          {
+            throw new NoSuchElementException();
+          }
+          final Node<V> current = this.next;
+          this.next = advance(current);
+          return current.value;
+        }
+      };
+    }
+  }
+
+}  // End ConcurrentLongMap.
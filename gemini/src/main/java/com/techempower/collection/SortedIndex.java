@@ -0,0 +1,599 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.collection;
+
+import java.util.*;
+
+/**
+ * A sorted collection backed by a persistent, weight-balanced binary tree
+ * in which each node records the size of its subtree.  Adding or removing
+ * an element costs O(log n) and rebuilds only the path from the root to the
+ * affected node; every other node is shared with the prior version of the
+ * tree.  Positional access by index, and locating the start of a page of
+ * elements, is also O(log n).
+ *   <p>
+ * Reads are lock-free: they operate on whichever root was most recently
+ * published, so an iterator walks a stable snapshot for its entire life and
+ * never throws ConcurrentModificationException, yet creating one copies
+ * nothing.  Modifications are serialized on the index's monitor.
+ *   <p>
+ * The comparator must be consistent for the lifetime of the elements in
+ * the index and should impose a total order, since two elements that
+ * compare as equal are treated as the same element (the later replaces the
+ * earlier).  If an element is mutated such that it no longer sorts where it
+ * was inserted, {@link #remove(Object)} falls back to locating it by
+ * identity with a linear scan, so removing such an element costs O(n).
+ * The index cannot avoid this: the comparator is its only view of an 
+ * element's sort key, and after the mutation the comparator reports only
+ * the new key.
+ *
+ * @param <T> The type of elements in the index.
+ */
+public class SortedIndex<T>
+  implements Iterable<T>
+{
+
+  //
+  // Constants.
+  //
+
+  /**
+   * Balance parameters: a subtree may be at most DELTA times the size of
+   * its sibling; ROTATION_RATIO chooses between single and double 
+   * rotations.  These are the parameters used by Haskell's Data.Map.
+   */
+  private static final int DELTA          = 3;
+  private static final int ROTATION_RATIO = 2;
+
+  //
+  // Member variables.
+  //
+
+  private final Comparator<? super T> comparator;
+  private volatile Node<T> root;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.  Creates an empty index.
+   */
+  public SortedIndex(Comparator<? super T> comparator)
+  {
+    this.comparator = Objects.requireNonNull(comparator);
+  }
+
+  /**
+   * Constructor.  Creates an index of the provided elements, which need not
+   * be in order.
+   */
+  public SortedIndex(Comparator<? super T> comparator, 
+      Collection<? extends T> elements)
+  {
+    this(comparator);
+    setAll(elements);
+  }
+
+  /**
+   * Gets the comparator that orders this index.
+   */
+  public Comparator<? super T> comparator()
+  {
+    return this.comparator;
+  }
+
+  /**
+   * Gets the number of elements in the index.
+   */
+  public int size()
+  {
+    return size(this.root);
+  }
+
+  /**
+   * Returns whether the index is empty.
+   */
+  public boolean isEmpty()
+  {
+    return this.root == null;
+  }
+
+  /**
+   * Gets the element at the provided position.
+   * 
+   * @throws IndexOutOfBoundsException if the index is out of range.
+   */
+  public T get(int index)
+  {
+    return get(this.root, index);
+  }
+
+  /**
+   * Gets the position of the provided element, or -1 if the element is
+   * not found by comparison.
+   */
+  public int indexOf(T element)
+  {
+    Node<T> node = this.root;
+    int offset = 0;
+    while (node != null)
+    {
+      final int comparison = this.comparator.compare(element, node.value);
+      if (comparison < 0)
+      {
+        node = node.left;
+      }
+      else if (comparison > 0)
+      {
+        offset += size(node.left) + 1;
+        node = node.right;
+      }
+      else
+      {
+        return offset + size(node.left);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Adds an element to the index, replacing any element that compares as
+   * equal to it.
+   */
+  public synchronized void add(T element)
+  {
+    this.root = insert(this.root, element);
+  }
+
+  /**
+   * Removes an element from the index.  The element is first located by 
+   * comparison, in O(log n) time; if that fails, because the element was
+   * mutated after it was added, it is located by identity, in O(n) time.
+   *
+   * @return true if an element was removed.
+   */
+  public synchronized boolean remove(T element)
+  {
+    final Node<T> current = this.root;
+    final Node<T> removed = delete(current, element);
+    if (size(removed) != size(current))
+    {
+      this.root = removed;
+      return true;
+    }
+    
+    // The element may have been modified since it was added; find it by
+    // identity instead.
+    final int index = identityIndexOf(current, element);
+    if (index >= 0)
+    {
+      this.root = deleteAt(current, index);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Replaces the contents of the index with the provided elements, which
+   * need not be in order.
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized void setAll(Collection<? extends T> elements)
+  {
+    final T[] sorted = (T[])elements.toArray();
+    Arrays.sort(sorted, this.comparator);
+    this.root = build(sorted, 0, sorted.length);
+  }
+
+  /**
+   * Removes all elements from the index.
+   */
+  public synchronized void clear()
+  {
+    this.root = null;
+  }
+
+  /**
+   * Returns an iterator over the elements of the index, in order, as of 
+   * the moment this method is called.  The iterator does not support 
+   * removal.
+   */
+  @Override
+  public Iterator<T> iterator()
+  {
+    return new NodeIterator<>(this.root);
+  }
+
+  /**
+   * Returns an unmodifiable list of the elements of the index, in order, as
+   * of the moment this method is called.  Creating the list copies nothing;
+   * positional access to it costs O(log n) and iteration over it costs O(1)
+   * per element.
+   */
+  public List<T> snapshot()
+  {
+    return new Snapshot<>(this.root);
+  }
+
+  /**
+   * Copies up to limit elements of the index, in order, starting at the 
+   * provided offset, to a new ArrayList.  The offset is located in O(log n)
+   * time.  An offset at or beyond the end of the index yields an empty 
+   * list.
+   */
+  public List<T> page(int offset, int limit)
+  {
+    if (offset < 0 || limit < 0)
+    {
+      throw new IllegalArgumentException("Offset and limit must not be negative.");
+    }
+    final Node<T> snapshot = this.root;
+    final List<T> page = new ArrayList<>(Math.min(limit, 
+        Math.max(0, size(snapshot) - offset)));
+    for (Iterator<T> iterator = new NodeIterator<>(snapshot, offset); 
+         page.size() < limit && iterator.hasNext(); )
+    {
+      page.add(iterator.next());
+    }
+    return page;
+  }
+
+  /**
+   * Copies the elements of the index, in order, to a new ArrayList.
+   */
+  public List<T> toList()
+  {
+    final Node<T> snapshot = this.root;
+    final List<T> list = new ArrayList<>(size(snapshot));
+    for (Iterator<T> iterator = new NodeIterator<>(snapshot); iterator.hasNext(); )
+    {
+      list.add(iterator.next());
+    }
+    return list;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "SortedIndex [" + size() + " elements]";
+  }
+
+  //
+  // Tree operations.  All are static and return new nodes rather than 
+  // modifying existing ones.
+  //
+
+  private static <T> int size(Node<T> node)
+  {
+    return node == null ? 0 : node.size;
+  }
+
+  private static <T> T get(Node<T> root, int index)
+  {
+    if (index < 0 || index >= size(root))
+    {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size(root));
+    }
+    Node<T> node = root;
+    int position = index;
+    while (true)
+    {
+      final int leftSize = size(node.left);
+      if (position < leftSize)
+      {
+        node = node.left;
+      }
+      else if (position > leftSize)
+      {
+        position -= leftSize + 1;
+        node = node.right;
+      }
+      else
+      {
+        return node.value;
+      }
+    }
+  }
+
+  private static <T> int identityIndexOf(Node<T> root, T element)
+  {
+    int index = 0;
+    for (Iterator<T> iterator = new NodeIterator<>(root); iterator.hasNext(); index++)
+    {
+      if (iterator.next() == element)
+      {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  private Node<T> insert(Node<T> node, T element)
+  {
+    if (node == null)
+    {
+      return new Node<>(element, null, null);
+    }
+    final int comparison = this.comparator.compare(element, node.value);
+    if (comparison < 0)
+    {
+      return balance(node.value, insert(node.left, element), node.right);
+    }
+    else if (comparison > 0)
+    {
+      return balance(node.value, node.left, insert(node.right, element));
+    }
+    else
+    {
+      return new Node<>(element, node.left, node.right);
+    }
+  }
+
+  private Node<T> delete(Node<T> node, T element)
+  {
+    if (node == null)
+    {
+      return null;
+    }
+    final int comparison = this.comparator.compare(element, node.value);
+    if (comparison < 0)
+    {
+      final Node<T> left = delete(node.left, element);
+      return (left == node.left) ? node : balance(node.value, left, node.right);
+    }
+    else if (comparison > 0)
+    {
+      final Node<T> right = delete(node.right, element);
+      return (right == node.right) ? node : balance(node.value, node.left, right);
+    }
+    else
+    {
+      return glue(node.left, node.right);
+    }
+  }
+
+  private static <T> Node<T> deleteAt(Node<T> node, int index)
+  {
+    final int leftSize = size(node.left);
+    if (index < leftSize)
+    {
+      return balance(node.value, deleteAt(node.left, index), node.right);
+    }
+    else if (index > leftSize)
+    {
+      return balance(node.value, node.left, deleteAt(node.right, index - leftSize - 1));
+    }
+    else
+    {
+      return glue(node.left, node.right);
+    }
+  }
+
+  /**
+   * Joins two subtrees whose sizes are already in balance and whose 
+   * elements all sort left-before-right.
+   */
+  private static <T> Node<T> glue(Node<T> left, Node<T> right)
+  {
+    if (left == null)
+    {
+      return right;
+    }
+    if (right == null)
+    {
+      return left;
+    }
+    if (left.size > right.size)
+    {
+      final int last = left.size - 1;
+      return balance(get(left, last), deleteAt(left, last), right);
+    }
+    else
+    {
+      return balance(get(right, 0), left, deleteAt(right, 0));
+    }
+  }
+
+  /**
+   * Creates a node from a value and two subtrees that are at most one
+   * insertion or deletion out of balance, rotating as necessary.
+   */
+  private static <T> Node<T> balance(T value, Node<T> left, Node<T> right)
+  {
+    final int leftSize = size(left);
+    final int rightSize = size(right);
+    if (leftSize + rightSize <= 1)
+    {
+      return new Node<>(value, left, right);
+    }
+    if (rightSize > DELTA * leftSize)
+    {
+      // Rotate left.
+      if (size(right.left) < ROTATION_RATIO * size(right.right))
+      {
+        return new Node<>(right.value, new Node<>(value, left, right.left), right.right);
+      }
+      final Node<T> pivot = right.left;
+      return new Node<>(pivot.value, 
+          new Node<>(value, left, pivot.left), 
+          new Node<>(right.value, pivot.right, right.right));
+    }
+    if (leftSize > DELTA * rightSize)
+    {
+      // Rotate right.
+      if (size(left.right) < ROTATION_RATIO * size(left.left))
+      {
+        return new Node<>(left.value, left.left, new Node<>(value, left.right, right));
+      }
+      final Node<T> pivot = left.right;
+      return new Node<>(pivot.value, 
+          new Node<>(left.value, left.left, pivot.left), 
+          new Node<>(value, pivot.right, right));
+    }
+    return new Node<>(value, left, right);
+  }
+
+  /**
+   * Builds a perfectly balanced tree from a sorted array range.
+   */
+  private static <T> Node<T> build(T[] sorted, int from, int to)
+  {
+    if (from >= to)
+    {
+      return null;
+    }
+    final int middle = (from + to) >>> 1;
+    return new Node<>(sorted[middle], 
+        build(sorted, from, middle), build(sorted, middle + 1, to));
+  }
+
+  //
+  // Inner classes.
+  //
+
+  /**
+   * An immutable tree node.
+   */
+  private static final class Node<T>
+  {
+    private final T       value;
+    private final Node<T> left;
+    private final Node<T> right;
+    private final int     size;
+    
+    private Node(T value, Node<T> left, Node<T> right)
+    {
+      this.value = value;
+      this.left = left;
+      this.right = right;
+      this.size = size(left) + size(right) + 1;
+    }
+  }
+
+  /**
+   * An in-order iterator over a tree snapshot.
+   */
+  private static final class NodeIterator<T>
+    implements Iterator<T>
+  {
+    private final Deque<Node<T>> stack = new ArrayDeque<>();
+    
+    private NodeIterator(Node<T> root)
+    {
+      pushLeft(root);
+    }
+    
+    /**
+     * Creates an iterator that begins at the provided position.
+     */
+    private NodeIterator(Node<T> root, int index)
+    {
+      Node<T> node = root;
+      int position = index;
+      while (node != null)
+      {
+        final int leftSize = size(node.left);
+        if (position <= leftSize)
+        {
+          this.stack.push(node);
+          if (position == leftSize)
+          {
+            break;
+          }
+          node = node.left;
+        }
+        else
+        {
+          position -= leftSize + 1;
+          node = node.right;
+        }
+      }
+    }
+    
+    private void pushLeft(Node<T> node)
+    {
+      for (Node<T> current = node; current != null; current = current.left)
+      {
+        this.stack.push(current);
+      }
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return !this.stack.isEmpty();
+    }
+
+    @Override
+    public T next()
+    {
+      if (this.stack.isEmpty())
+      {
+        throw new NoSuchElementException();
+      }
+      final Node<T> node = this.stack.pop();
+      pushLeft(node.right);
+      return node.value;
+    }
+  }
+
+  /**
+   * The unmodifiable list view returned by snapshot().
+   */
+  private static final class Snapshot<T>
+    extends    AbstractList<T>
+    implements RandomAccess
+  {
+    private final Node<T> root;
+    
+    private Snapshot(Node<T> root)
+    {
+      this.root = root;
+    }
+
+    @Override
+    public T get(int index)
+    {
+      return SortedIndex.get(this.root, index);
+    }
+
+    @Override
+    public int size()
+    {
+      return SortedIndex.size(this.root);
+    }
+
+    @Override
+    public Iterator<T> iterator()
+    {
+      return new NodeIterator<>(this.root);
+    }
+  }
+
+}  // End SortedIndex.
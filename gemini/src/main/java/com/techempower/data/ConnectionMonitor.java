@@ -47,4 +47,47 @@ public interface ConnectionMonitor
   @Override
   void close() throws SQLException;
 
+  /**
+   * Prepares a statement for SQL that is used repeatedly, such as the 
+   * fixed queries issued by EntityGroup.  Implementations may return a
+   * statement cached for the current Connection, in which case closing the 
+   * returned statement returns it to the cache rather than closing it.
+   * The default implementation prepares a new statement.
+   */
+  default PreparedStatement prepareStatement(String sql) throws SQLException
+  {
+    return getConnection().prepareStatement(sql);
+  }
+
+  /**
+   * Prepares a statement for SQL that is used repeatedly, indicating 
+   * whether auto-generated keys should be made available.  See 
+   * {@link #prepareStatement(String)}.
+   */
+  default PreparedStatement prepareStatement(String sql, int autoGeneratedKeys)
+      throws SQLException
+  {
+    return getConnection().prepareStatement(sql, autoGeneratedKeys);
+  }
+
+  /**
+   * Gets the number of calls to prepareStatement that were satisfied by a
+   * cached statement.  Zero if the implementation does not cache 
+   * statements.
+   */
+  default long getStatementCacheHits()
+  {
+    return 0L;
+  }
+
+  /**
+   * Gets the number of calls to prepareStatement that required a new 
+   * statement to be prepared.  Zero if the implementation does not cache
+   * statements.
+   */
+  default long getStatementCacheMisses()
+  {
+    return 0L;
+  }
+
 }
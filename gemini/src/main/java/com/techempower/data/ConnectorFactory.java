@@ -51,6 +51,18 @@ public interface ConnectorFactory
    */
   ConnectionMonitor getConnectionMonitor() throws SQLException;
 
+  /**
+   * Gets a ConnectionMonitor for read-only queries, such as those EntityGroup
+   * issues to fetch entities.  Factories that route reads to replica 
+   * databases return a replica connection here; the default implementation
+   * returns getConnectionMonitor().  Connections obtained this way must not
+   * be used to write.
+   */
+  default ConnectionMonitor getReadConnectionMonitor() throws SQLException
+  {
+    return getConnectionMonitor();
+  }
+
   /**
    * Attempt to communicate with the database to determine the database's 
    * identifier quote string.
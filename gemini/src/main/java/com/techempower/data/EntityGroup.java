@@ -35,6 +35,7 @@ import java.time.*;
 import java.util.*;
 import java.util.Date;
 import java.util.concurrent.*;
+import java.util.function.*;
 
 import com.esotericsoftware.reflectasm.*;
 import com.techempower.cache.*;
@@ -100,6 +101,12 @@ public class EntityGroup<T extends Identifiable>
   // Constants.
   // 
 
+  /**
+   * The largest number of identities bound to a single "IN (...)" query by
+   * map(ids) and list(ids); larger requests are split into several queries.
+   */
+  public static final int MAXIMUM_IDS_PER_QUERY = 500;
+
   /**
    * Compares entities by id.  This is the default comparator used for sorting
    * objects if no other is provided.
@@ -182,13 +189,23 @@ public class EntityGroup<T extends Identifiable>
   private final String quotedIdField;
   private final String getSingleQuery;
   private final String deleteSingleQuery;
+  private final String sizeQuery;
+  private final String listQuery;
+  private final String listAboveQuery;
+  private final String lowestQuery;
+  private final String highestQuery;
+  private final String mapChunkQuery;
   private final boolean readOnly;
   private final boolean distribute;
   
   private DataFieldToMethodMap[] setMethods = null;
+  private volatile EntityRowMapper<T> rowMapper = null;
+  private volatile DataFieldToMethodMap[] rowMapperUnavailable = null;
   private DataFieldToMethodMap[] getMethods = null;
   private DataFieldToMethodMap[] getMethodsWithoutId = null;
-  private String fieldPartsForUpdate = null;
+  private String updateQuery = null;
+  private String insertQuery = null;
+  private String insertQueryWithoutId = null;
   
   /**
    * This maps fields to type adapters.  If a field does not exist as a key in
@@ -293,10 +310,21 @@ public class EntityGroup<T extends Identifiable>
     
     this.quotedIdField = enquote(this.id);
     this.quotedTable = enquote(this.table);
+    // These are computed once so that the same SQL text is used for every 
+    // call, allowing the ConnectionMonitor to reuse prepared statements.
     this.getSingleQuery = "SELECT * FROM " + quotedTable
-        + " WHERE " + quotedIdField + " = ?";
+        + " WHERE " + quotedIdField + " = ?" + getWhereClause(" AND ") + ";";
     this.deleteSingleQuery = "DELETE FROM " + quotedTable
-        + " WHERE " + quotedIdField + " = ?";
+        + " WHERE " + quotedIdField + " = ?" + getWhereClause(" AND ") + ";";
+    this.sizeQuery = "SELECT COUNT(*) FROM " + quotedTable 
+        + getWhereClause(" WHERE ") + ";";
+    this.listQuery = "SELECT * FROM " + quotedTable 
+        + getWhereClause(" WHERE ") + ";";
+    this.listAboveQuery = "SELECT * FROM " + quotedTable 
+        + " WHERE " + quotedIdField + " > ?" + getWhereClause(" AND ") + ";";
+    this.lowestQuery = identityAggregateQuery("MIN");
+    this.highestQuery = identityAggregateQuery("MAX");
+    this.mapChunkQuery = mapQuery(MAXIMUM_IDS_PER_QUERY);
   }
 
   // 
@@ -405,6 +433,15 @@ public class EntityGroup<T extends Identifiable>
     return this.type;
   }
 
+  /**
+   * Returns the ReflectASM MethodAccess used to invoke the entities' get and
+   * set methods.
+   */
+  public MethodAccess methodAccess()
+  {
+    return this.access;
+  }
+
   // 
   // Database operations.
   // 
@@ -417,17 +454,26 @@ public class EntityGroup<T extends Identifiable>
     return rawGet(idToGet);
   }
 
+  /**
+   * Gets a ConnectionMonitor for the read-only queries that fetch entities,
+   * which the ConnectorFactory may direct to a replica database.  
+   * Subclasses that retain what they read, such as caches, may override
+   * this to read from the primary.
+   */
+  protected ConnectionMonitor getReadConnectionMonitor() throws SQLException
+  {
+    return this.cf.getReadConnectionMonitor();
+  }
+
   /**
    * For use by subclasses. Not intended for use by client code.
    */
   protected T rawGet(long idToGet)
   {
     try (
-        ConnectionMonitor monitor = this.cf.getConnectionMonitor();
-        PreparedStatement statement = monitor.getConnection().prepareStatement(
-            this.getSingleQuery + getWhereClause(" AND ") + ";",
-            ResultSet.TYPE_FORWARD_ONLY,
-            ResultSet.CONCUR_READ_ONLY)
+        ConnectionMonitor monitor = getReadConnectionMonitor();
+        PreparedStatement statement = monitor.prepareStatement(
+            this.getSingleQuery)
         )
     {
       statement.setLong(1, idToGet);
@@ -586,8 +632,8 @@ public class EntityGroup<T extends Identifiable>
 
     try (
         ConnectionMonitor monitor = this.cf.getConnectionMonitor();
-        PreparedStatement statement = monitor.getConnection().prepareStatement(
-            this.deleteSingleQuery + getWhereClause(" AND ") + ";")
+        PreparedStatement statement = monitor.prepareStatement(
+            this.deleteSingleQuery)
         )
     {
       statement.setLong(1, idToRemove);
@@ -654,13 +700,9 @@ public class EntityGroup<T extends Identifiable>
   protected int rawSize()
   {
     try (
-        ConnectionMonitor monitor = this.cf.getConnectionMonitor();
-        PreparedStatement statement = monitor.getConnection().prepareStatement(
-            "SELECT COUNT(*) FROM " + quotedTable 
-                + getWhereClause(" WHERE ")
-                + ";",
-            ResultSet.TYPE_FORWARD_ONLY,
-            ResultSet.CONCUR_READ_ONLY)
+        ConnectionMonitor monitor = getReadConnectionMonitor();
+        PreparedStatement statement = monitor.prepareStatement(
+            this.sizeQuery)
         )
     {
       attachWhereArguments(1, statement);
@@ -693,13 +735,9 @@ public class EntityGroup<T extends Identifiable>
   {
     final List<T> objects = new ArrayList<>();
     try (
-        ConnectionMonitor monitor = this.cf.getConnectionMonitor();
-        PreparedStatement statement = monitor.getConnection().prepareStatement(
-            "SELECT * FROM " + quotedTable 
-                + getWhereClause(" WHERE ")
-                + ";",
-            ResultSet.TYPE_FORWARD_ONLY,
-            ResultSet.CONCUR_READ_ONLY)
+        ConnectionMonitor monitor = getReadConnectionMonitor();
+        PreparedStatement statement = monitor.prepareStatement(
+            this.listQuery)
         )
     {
       attachWhereArguments(1, statement);
@@ -725,6 +763,37 @@ public class EntityGroup<T extends Identifiable>
     return objects;
   }
 
+  /**
+   * For use by subclasses. Not intended for use by client code.  Returns the
+   * objects whose identities are greater than the given identity, in no
+   * particular order.
+   */
+  protected List<T> rawListAbove(long identity)
+  {
+    final List<T> objects = new ArrayList<>();
+    try (
+        ConnectionMonitor monitor = getReadConnectionMonitor();
+        PreparedStatement statement = monitor.prepareStatement(
+            this.listAboveQuery)
+        )
+    {
+      statement.setLong(1, identity);
+      attachWhereArguments(2, statement);
+      try (ResultSet resultSet = statement.executeQuery())
+      {
+        while (resultSet.next())
+        {
+          objects.add(make(resultSet));
+        }
+      }
+    }
+    catch (Exception e)
+    {
+      throw new EntityException("Exception during SELECT (list above).", e);
+    }
+    return objects;
+  }
+
   /**
    * Returns a list of objects with the given ids.  The objects are in the
    * order specified by the given ids.  The returned list will not include
@@ -753,6 +822,87 @@ public class EntityGroup<T extends Identifiable>
     return list;
   }
 
+  /**
+   * Returns a page of the objects in the same order as {@link #list()}: at
+   * most limit objects, starting with the object at the given offset.  The
+   * base implementation pages over the result of list(); subclasses that 
+   * hold their objects in memory may do so without materializing the full
+   * list.
+   */
+  public List<T> list(int offset, int limit)
+  {
+    return page(list(), offset, limit);
+  }
+
+  /**
+   * Returns a new list of at most limit objects from the given source, 
+   * starting with the object at the given offset.  An offset beyond the end
+   * of the source yields an empty list.
+   */
+  protected List<T> page(List<T> source, int offset, int limit)
+  {
+    if (offset < 0 || limit < 0)
+    {
+      throw new IllegalArgumentException("Offset and limit must not be negative.");
+    }
+    final int from = Math.min(offset, source.size());
+    final int to = (int)Math.min((long)from + limit, source.size());
+    return new ArrayList<>(source.subList(from, to));
+  }
+
+  /**
+   * Returns a list of the objects for which the given predicate is true, in
+   * the same order as {@link #list()}.  The base implementation filters the
+   * result of list(); subclasses that hold their objects in memory may scan
+   * them in place instead.
+   */
+  public List<T> list(Predicate<? super T> predicate)
+  {
+    return filter(list(), predicate);
+  }
+
+  /**
+   * Returns the first object, in the order of {@link #list()}, for which the
+   * given predicate is true, or null if there is no such object.
+   */
+  public T get(Predicate<? super T> predicate)
+  {
+    return first(list(), predicate);
+  }
+
+  /**
+   * Returns a new list of the objects from the given source for which the
+   * given predicate is true.
+   */
+  protected List<T> filter(Iterable<T> source, Predicate<? super T> predicate)
+  {
+    final List<T> matches = new ArrayList<>();
+    for (T object : source)
+    {
+      if (predicate.test(object))
+      {
+        matches.add(object);
+      }
+    }
+    return matches;
+  }
+
+  /**
+   * Returns the first object from the given source for which the given
+   * predicate is true, or null if there is no such object.
+   */
+  protected T first(Iterable<T> source, Predicate<? super T> predicate)
+  {
+    for (T object : source)
+    {
+      if (predicate.test(object))
+      {
+        return object;
+      }
+    }
+    return null;
+  }
+
   /**
    * Returns a map of all objects in the database (or cache if applicable),
    * mapped by id.
@@ -769,13 +919,9 @@ public class EntityGroup<T extends Identifiable>
   {
     final TLongObjectMap<T> objects = new TLongObjectHashMap<>();
     try (
-        ConnectionMonitor monitor = this.cf.getConnectionMonitor();
-        PreparedStatement statement = monitor.getConnection().prepareStatement(
-            "SELECT * FROM " + quotedTable
-                + getWhereClause(" WHERE ")
-                + ";",
-            ResultSet.TYPE_FORWARD_ONLY,
-            ResultSet.CONCUR_READ_ONLY)
+        ConnectionMonitor monitor = getReadConnectionMonitor();
+        PreparedStatement statement = monitor.prepareStatement(
+            this.listQuery)
         )
     {
       attachWhereArguments(1, statement);
@@ -815,31 +961,38 @@ public class EntityGroup<T extends Identifiable>
     }
     
     final TLongObjectMap<T> objects = new TLongObjectHashMap<>(ids.size());
+    final List<Long> identities = (ids instanceof List)
+        ? (List<Long>)ids
+        : new ArrayList<>(ids);
 
-    try (
-        ConnectionMonitor monitor = this.cf.getConnectionMonitor();
-        PreparedStatement statement = monitor.getConnection().prepareStatement(
-            "SELECT * FROM " + quotedTable
-                + " WHERE " + quotedIdField + " IN ("
-                + StringHelper.join(",", Collections.nCopies(ids.size(), "?"))
-                + ")" + getWhereClause(" AND ") + ";",
-            ResultSet.TYPE_FORWARD_ONLY,
-            ResultSet.CONCUR_READ_ONLY)
-        )
+    try (ConnectionMonitor monitor = getReadConnectionMonitor())
     {
-      int i = 0;
-      for (long idToSet : ids)
-      {
-        statement.setLong(++i, idToSet);
-      }
-      attachWhereArguments(ids.size() + 1, statement);
-      //this.log.debug(statement.toString());
-      try (ResultSet resultSet = statement.executeQuery())
+      for (int start = 0; start < identities.size(); start += MAXIMUM_IDS_PER_QUERY)
       {
-        while (resultSet.next())
+        final List<Long> chunk = identities.subList(start, 
+            Math.min(start + MAXIMUM_IDS_PER_QUERY, identities.size()));
+        
+        // Full chunks share the same SQL and so may reuse a prepared 
+        // statement; the final partial chunk is prepared as a one-off.
+        try (PreparedStatement statement = (chunk.size() == MAXIMUM_IDS_PER_QUERY)
+            ? monitor.prepareStatement(this.mapChunkQuery)
+            : monitor.getConnection().prepareStatement(mapQuery(chunk.size())))
         {
-          T object = make(resultSet);
-          objects.put(object.getId(), object);
+          int i = 0;
+          for (long idToSet : chunk)
+          {
+            statement.setLong(++i, idToSet);
+          }
+          attachWhereArguments(chunk.size() + 1, statement);
+          //this.log.debug(statement.toString());
+          try (ResultSet resultSet = statement.executeQuery())
+          {
+            while (resultSet.next())
+            {
+              T object = make(resultSet);
+              objects.put(object.getId(), object);
+            }
+          }
         }
       }
     }
@@ -849,6 +1002,17 @@ public class EntityGroup<T extends Identifiable>
     }
     return objects;
   }
+
+  /**
+   * Gets the SQL query that selects the objects with a given number of ids.
+   */
+  private String mapQuery(int idCount)
+  {
+    return "SELECT * FROM " + quotedTable
+        + " WHERE " + quotedIdField + " IN ("
+        + StringHelper.join(",", Collections.nCopies(idCount, "?"))
+        + ")" + getWhereClause(" AND ") + ";";
+  }
   
   /**
    * Returns the lowest identity assigned to an entity.  Returns 0 if no
@@ -906,7 +1070,7 @@ public class EntityGroup<T extends Identifiable>
   {
     final List<T> objects = new ArrayList<>();
     try (
-        ConnectionMonitor monitor = this.cf.getConnectionMonitor();
+        ConnectionMonitor monitor = getReadConnectionMonitor();
         PreparedStatement statement = monitor.getConnection().prepareStatement(query)
         )
     {
@@ -945,7 +1109,7 @@ public class EntityGroup<T extends Identifiable>
   {
     T object = null;
     try (
-        ConnectionMonitor monitor = this.cf.getConnectionMonitor();
+        ConnectionMonitor monitor = getReadConnectionMonitor();
         PreparedStatement statement = monitor.getConnection().prepareStatement(query)
         )
     {
@@ -992,24 +1156,15 @@ public class EntityGroup<T extends Identifiable>
   protected int insert(T object)
   {
     // Include the ID field if it has been specified already by the object.
-    final DataFieldToMethodMap[] fields = (object.getId() > 0)
+    final boolean withId = (object.getId() > 0);
+    final DataFieldToMethodMap[] fields = withId
         ? getGetMethodMappingCache()
         : getGetMethodMappingCacheWithoutId();
-    
-    final StringList fieldsPart = new StringList(", ");
-    for (DataFieldToMethodMap field : fields)
-    {
-      fieldsPart.add(enquote(field.getFieldName()));
-    }
 
     try (
         ConnectionMonitor monitor = this.cf.getConnectionMonitor();
-        PreparedStatement statement = monitor.getConnection().prepareStatement(
-           "INSERT INTO " + quotedTable + " ("
-               + fieldsPart.toString() + ") VALUES ("
-               + StringHelper.join(", ", Collections.nCopies(fields.length, "?"))
-               + ");",
-               Statement.RETURN_GENERATED_KEYS)
+        PreparedStatement statement = monitor.prepareStatement(
+            getInsertQuery(withId), Statement.RETURN_GENERATED_KEYS)
         )
     {
       int index = 1;
@@ -1084,45 +1239,17 @@ public class EntityGroup<T extends Identifiable>
       }
     }
     
-    DataFieldToMethodMap[] cache = getGetMethodMappingCache();
-    
-    // Find the list of fields to be included in the update.  The id will be
-    // included if it's greater than zero.
-    List<DataFieldToMethodMap> fieldsWithId = new ArrayList<>();
-    List<DataFieldToMethodMap> fieldsWithoutId = new ArrayList<>();
-    for (DataFieldToMethodMap field : cache)
-    {
-      fieldsWithId.add(field);
-      if (!field.getFieldName().equalsIgnoreCase(this.id))
-      {
-        fieldsWithoutId.add(field);
-      }
-    }
-    StringList fieldsPartWithId = new StringList(", ");
-    for (DataFieldToMethodMap field : fieldsWithId)
-    {
-      fieldsPartWithId.add(enquote(field.getFieldName()));
-    }
-    StringList fieldsPartWithoutId = new StringList(", ");
-    for (DataFieldToMethodMap field : fieldsWithoutId)
-    {
-      fieldsPartWithoutId.add(enquote(field.getFieldName()));
-    }
+    // The id is included in the insert for objects that have one.
+    final DataFieldToMethodMap[] fieldsWithId = getGetMethodMappingCache();
+    final DataFieldToMethodMap[] fieldsWithoutId = getGetMethodMappingCacheWithoutId();
 
     try (ConnectionMonitor monitor = this.cf.getConnectionMonitor())
     {
-      try (PreparedStatement statementWithId = monitor.getConnection().prepareStatement(
-          "INSERT INTO " + quotedTable + " ("
-              + fieldsPartWithId.toString() + ") VALUES ("
-              + StringHelper.join(", ", Collections.nCopies(fieldsWithId.size(), "?"))
-              + ");"))
+      try (PreparedStatement statementWithId = monitor.prepareStatement(
+          getInsertQuery(true)))
       {
-        try (PreparedStatement statementWithoutId = monitor.getConnection().prepareStatement(
-            "INSERT INTO " + quotedTable + " ("
-                + fieldsPartWithoutId.toString() + ") VALUES ("
-                + StringHelper.join(", ", Collections.nCopies(fieldsWithoutId.size(), "?"))
-                + ");",
-            Statement.RETURN_GENERATED_KEYS))
+        try (PreparedStatement statementWithoutId = monitor.prepareStatement(
+            getInsertQuery(false), Statement.RETURN_GENERATED_KEYS))
         {
           for (T object : objectsWithId)
           {
@@ -1209,14 +1336,11 @@ public class EntityGroup<T extends Identifiable>
   {
     // Include every field in the update except the id.
     final DataFieldToMethodMap[] fields = getGetMethodMappingCacheWithoutId();
-    final String fieldParts = getFieldPartsForUpdate();
 
     try (
         ConnectionMonitor monitor = this.cf.getConnectionMonitor();
-        final PreparedStatement statement = monitor.getConnection().prepareStatement(
-            "UPDATE " + quotedTable + " SET " + fieldParts
-                + " WHERE " + quotedIdField + " = ?"
-                + getWhereClause(" AND ") + ";")
+        final PreparedStatement statement = monitor.prepareStatement(
+            getUpdateQuery())
         )
     {
       statement.setLong(fields.length + 1, object.getId());
@@ -1250,14 +1374,11 @@ public class EntityGroup<T extends Identifiable>
     }
 
     final DataFieldToMethodMap[] fields = getGetMethodMappingCacheWithoutId();
-    final String fieldParts = getFieldPartsForUpdate();
 
     try (
         ConnectionMonitor monitor = this.cf.getConnectionMonitor();
-        PreparedStatement statement = monitor.getConnection().prepareStatement(
-            "UPDATE " + quotedTable + " SET " + fieldParts
-                + " WHERE " + quotedIdField + " = ?"
-                + getWhereClause(" AND ") + ";")
+        PreparedStatement statement = monitor.prepareStatement(
+            getUpdateQuery())
         )
     {
       for (T object : objects)
@@ -1306,14 +1427,18 @@ public class EntityGroup<T extends Identifiable>
    */
   protected long identityAggregate(String sqlAggregateFunction)
   {
+    final String query;
+    switch (sqlAggregateFunction)
+    {
+      case "MIN": query = this.lowestQuery; break;
+      case "MAX": query = this.highestQuery; break;
+      default:    query = identityAggregateQuery(sqlAggregateFunction);
+    }
+    
     long result = 0;
     try (
         ConnectionMonitor monitor = this.cf.getConnectionMonitor();
-        PreparedStatement statement = monitor.getConnection().prepareStatement(
-            "SELECT " + sqlAggregateFunction + "(" + quotedIdField + ") " +
-               "AS Result FROM " + quotedTable + ";",
-            ResultSet.TYPE_FORWARD_ONLY,
-            ResultSet.CONCUR_READ_ONLY)
+        PreparedStatement statement = monitor.prepareStatement(query)
         )
     {
       try (ResultSet resultSet = statement.executeQuery())
@@ -1331,6 +1456,15 @@ public class EntityGroup<T extends Identifiable>
     return result;  
   }
 
+  /**
+   * Gets the SQL query for an aggregate function on the identity column.
+   */
+  private String identityAggregateQuery(String sqlAggregateFunction)
+  {
+    return "SELECT " + sqlAggregateFunction + "(" + quotedIdField + ") "
+        + "AS Result FROM " + quotedTable + ";";
+  }
+
   /**
    * Reorder entities within this group.  In the base class, this doesn't
    * do anything, but subclasses such as CacheGroup act differently.
@@ -1437,6 +1571,18 @@ public class EntityGroup<T extends Identifiable>
     return object;
   }
 
+  /**
+   * Creates a new object from a map of persisted field values, such as a 
+   * map generated by {@link #writeMap(Identifiable)}, as though the object
+   * had been read from the database by {@link #make(ResultSet)}.
+   */
+  public T makeFromMap(long identity, Map<String, Object> properties)
+  {
+    final T object = newObjectFromMap(properties);
+    object.setId(identity);
+    return completeMake(object);
+  }
+
   /**
    * Updates an exiting object from the given map of properties.
    */
@@ -1805,13 +1951,14 @@ public class EntityGroup<T extends Identifiable>
   }
 
   /**
-   * Gets the comma-delimited String of "FieldName = ?" field-parts for an
-   * UPDATE statement, not including the ID field. 
+   * Gets the UPDATE statement that sets every field other than the ID field,
+   * with the fields in the order of getGetMethodMappingCacheWithoutId, 
+   * followed by the ID and any WHERE clause arguments.
    */
-  private String getFieldPartsForUpdate() 
+  private String getUpdateQuery() 
   {
     // This method is idempotent so this does not need to be synchronized.
-    if (this.fieldPartsForUpdate == null)
+    if (this.updateQuery == null)
     {
       final StringList fieldParts = new StringList(", ");
       final DataFieldToMethodMap[] fields = getGetMethodMappingCacheWithoutId();
@@ -1819,9 +1966,46 @@ public class EntityGroup<T extends Identifiable>
       {
         fieldParts.add(enquote(field.getFieldName()) + " = ?");
       }
-      this.fieldPartsForUpdate = fieldParts.toString();
+      this.updateQuery = "UPDATE " + quotedTable + " SET " + fieldParts
+          + " WHERE " + quotedIdField + " = ?"
+          + getWhereClause(" AND ") + ";";
     }
-    return this.fieldPartsForUpdate;
+    return this.updateQuery;
+  }
+
+  /**
+   * Gets the INSERT statement for either every field, in the order of 
+   * getGetMethodMappingCache, or every field other than the ID field, in the
+   * order of getGetMethodMappingCacheWithoutId.
+   */
+  private String getInsertQuery(boolean withId)
+  {
+    // This method is idempotent so this does not need to be synchronized.
+    String query = withId ? this.insertQuery : this.insertQueryWithoutId;
+    if (query == null)
+    {
+      final DataFieldToMethodMap[] fields = withId
+          ? getGetMethodMappingCache()
+          : getGetMethodMappingCacheWithoutId();
+      final StringList fieldsPart = new StringList(", ");
+      for (DataFieldToMethodMap field : fields)
+      {
+        fieldsPart.add(enquote(field.getFieldName()));
+      }
+      query = "INSERT INTO " + quotedTable + " ("
+          + fieldsPart.toString() + ") VALUES ("
+          + StringHelper.join(", ", Collections.nCopies(fields.length, "?"))
+          + ");";
+      if (withId)
+      {
+        this.insertQuery = query;
+      }
+      else
+      {
+        this.insertQueryWithoutId = query;
+      }
+    }
+    return query;
   }
 
   /**
@@ -2077,6 +2261,13 @@ public class EntityGroup<T extends Identifiable>
       throw new IllegalStateException("No set method mappings available for " + name());
     }
     
+    final EntityRowMapper<T> mapper = getRowMapper(mappings);
+    if (mapper != null)
+    {
+      mapper.read(object, resultSet);
+      return completeMake(object);
+    }
+    
     // Go through the cache and call the methods as specified by the
     // map objects.
     for (DataFieldToMethodMap map : mappings)
@@ -2092,6 +2283,52 @@ public class EntityGroup<T extends Identifiable>
       }
     }
     
+    return completeMake(object);
+  }
+
+  /**
+   * Gets the generated row mapper for the provided set-method mappings, 
+   * creating it on first use, or returns null if generated row mappers are
+   * disabled or a mapper cannot be generated for this entity type.
+   */
+  private EntityRowMapper<T> getRowMapper(DataFieldToMethodMap[] mappings)
+  {
+    if (!this.entityStore.isGeneratedRowMappersEnabled()
+        || this.rowMapperUnavailable == mappings)
+    {
+      return null;
+    }
+    
+    final EntityRowMapper<T> current = this.rowMapper;
+    if (current != null && current.getMappings() == mappings)
+    {
+      return current;
+    }
+    
+    // Like bindToDatabase, this is idempotent so it need not be synchronized.
+    try
+    {
+      final EntityRowMapper<T> created = EntityRowMapper.create(mappings,
+          map -> getTypeAdapter(map, false) == null,
+          this::deserialize);
+      this.rowMapper = created;
+      return created;
+    }
+    catch (ReflectiveOperationException | RuntimeException e)
+    {
+      this.log.warn("Unable to generate row mapper for {}; using reflection.",
+          name(), e);
+      this.rowMapperUnavailable = mappings;
+      return null;
+    }
+  }
+
+  /**
+   * Completes the construction of an object whose fields have been read 
+   * from a persistence medium.
+   */
+  private T completeMake(T object)
+  {
     // If the entity implements PersistenceAware, let's tell the entity that
     // it is persisted (since we've fetched it from a persistence medium.
     if (object instanceof PersistenceAware)
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.data;
+
+/**
+ * Thread-scoped hints that let a ConnectorFactory which routes reads to
+ * replica databases (see ReplicaRoutingConnectorFactory) keep reads
+ * consistent with writes.  The data layer does not know about requests, so
+ * request dispatchers mark request boundaries here with beginRequest and
+ * endRequest; code that must observe the primary's current state, such as
+ * a cache reloading after a change notification, reads within a
+ * readPrimary scope:
+ * <pre>
+ *   final ReadRouting.Scope primary = ReadRouting.readPrimary();
+ *   try
+ *   {
+ *     ...
+ *   }
+ *   finally
+ *   {
+ *     primary.close();
+ *   }
+ * </pre>
+ * Factories that do not route reads ignore these hints.
+ *   <p>
+ * Reads follow writes only within the request that wrote: each request
+ * starts out reading from replicas.  In particular, the request following
+ * a write, such as the GET after a POST that redirects, may read from a 
+ * replica that has not yet applied the write, since replicas may lag by up
+ * to the routing factory's maximum lag.  Where a user must see their own 
+ * write in such a request, the application should read within a 
+ * readPrimary scope, e.g., for a short time after noting the write in the
+ * user's session.
+ */
+public final class ReadRouting
+{
+
+  private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+  
+  /**
+   * Ends a readPrimary scope when closed.
+   */
+  private static final Scope SCOPE = () -> STATE.get().primaryDepth--;
+
+  /**
+   * Marks the start of a request on the current thread.  Until endRequest
+   * is called, a write by the thread sends its later reads to the primary.
+   * Writes made by earlier requests are not considered.
+   */
+  public static void beginRequest()
+  {
+    final State state = STATE.get();
+    state.inRequest = true;
+    state.written = false;
+  }
+
+  /**
+   * Marks the end of the current thread's request.
+   */
+  public static void endRequest()
+  {
+    final State state = STATE.get();
+    state.inRequest = false;
+    state.written = false;
+  }
+
+  /**
+   * Notes that the current thread may have written to the primary.
+   */
+  public static void markWritten()
+  {
+    final State state = STATE.get();
+    state.written = true;
+    state.lastWrite = System.currentTimeMillis();
+  }
+
+  /**
+   * Begins a scope within which the current thread's reads go to the 
+   * primary.  Scopes may be nested; close the returned Scope to end it.
+   */
+  public static Scope readPrimary()
+  {
+    STATE.get().primaryDepth++;
+    return SCOPE;
+  }
+
+  /**
+   * Must the current thread's reads go to the primary?  True within a
+   * readPrimary scope, after a write within the current request, or, 
+   * outside of a request, within the given window after the thread's last
+   * write.
+   * 
+   * @param window The time in milliseconds after a write, outside of a
+   *     request, during which reads go to the primary.
+   */
+  public static boolean isPrimaryRequired(long window)
+  {
+    final State state = STATE.get();
+    if (state.primaryDepth > 0)
+    {
+      return true;
+    }
+    if (state.inRequest)
+    {
+      return state.written;
+    }
+    return (state.written)
+        && (System.currentTimeMillis() - state.lastWrite < window);
+  }
+
+  /**
+   * No instances.
+   */
+  private ReadRouting()
+  {
+  }
+
+  /**
+   * A readPrimary scope.
+   */
+  @FunctionalInterface
+  public interface Scope
+    extends AutoCloseable
+  {
+    @Override
+    void close();
+  }
+
+  /**
+   * The current thread's routing state.
+   */
+  private static final class State
+  {
+    private boolean inRequest;
+    private boolean written;
+    private long    lastWrite;
+    private int     primaryDepth;
+  }
+
+}   // End ReadRouting.
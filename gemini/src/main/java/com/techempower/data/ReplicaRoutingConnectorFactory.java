@@ -0,0 +1,479 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.data;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import com.techempower.asynchronous.*;
+import com.techempower.helper.*;
+import com.techempower.util.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A ConnectorFactory that composes a primary database's ConnectorFactory
+ * with the ConnectorFactories of one or more read replicas.  Connections
+ * from getConnectionMonitor, which may be used to write, always come from
+ * the primary.  Connections from getReadConnectionMonitor, which
+ * EntityGroup uses to fetch entities (including when a CacheGroup is
+ * initialized) and CachedRelation uses to load relations, are distributed
+ * round-robin across the replicas that are available and not lagging.
+ *   <p>
+ * Reads follow writes: once a request has obtained a connection from
+ * getConnectionMonitor, its subsequent reads go to the primary.  Request
+ * boundaries and writes are tracked per thread by ReadRouting, and code
+ * may force reads to the primary with a ReadRouting.readPrimary scope.
+ * Threads that are not processing a request read from the primary for 
+ * MaximumLagMillis after their last write.  A later request, such as the
+ * redirected GET following a POST, may read from a replica that has not
+ * yet applied the write; see ReadRouting.
+ *   <p>
+ * Replica lag is measured when this factory is configured and then every
+ * LagCheckIntervalMillis by a background thread, until end is called.
+ * A replica whose lag exceeds
+ * MaximumLagMillis, or that fails to provide a connection, is skipped until
+ * a later check finds it healthy; if no replica is usable, reads go to the
+ * primary.  Lag is measured either with a vendor-specific LagQuery run on
+ * each replica, or with a heartbeat row that is written to the primary
+ * and read back from each replica.  The heartbeat table is created by the
+ * application:
+ * <pre>
+ *   CREATE TABLE ReplicaHeartbeat (id INT PRIMARY KEY, beat BIGINT NOT NULL);
+ * </pre>
+ * If neither is configured, replicas are assumed to be current.
+ *   <p>
+ * Typical construction, in an application's constructConnectorFactory:
+ * <pre>
+ *   return new ReplicaRoutingConnectorFactory(
+ *       new HikariCPConnectorFactory("db.Primary."),
+ *       new HikariCPConnectorFactory("db.Replica1."),
+ *       new HikariCPConnectorFactory("db.Replica2."));
+ * </pre>
+ *   <p>
+ * The composed factories are configured by this factory.  Configuration
+ * options:
+ * <ul>
+ * <li>db.Replicas.Enabled - Route reads to replicas.  Default true.</li>
+ * <li>db.Replicas.MaximumLagMillis - Replicas lagging more than this are
+ *     not read from.  Default 5000.</li>
+ * <li>db.Replicas.LagCheckIntervalMillis - Minimum time between lag
+ *     checks.  Default 1000.</li>
+ * <li>db.Replicas.LagQuery - A query run on each replica that returns its
+ *     lag in milliseconds as a single value, with null meaning no lag.
+ *     E.g., for PostgreSQL: SELECT EXTRACT(EPOCH FROM (now() -
+ *     pg_last_xact_replay_timestamp())) * 1000</li>
+ * <li>db.Replicas.HeartbeatTable - The name of a heartbeat table, used if
+ *     no LagQuery is specified.</li>
+ * <li>db.Replicas.HeartbeatId - The heartbeat row written by this
+ *     application instance.  Instances sharing a primary should use
+ *     distinct ids.  Default 1.</li>
+ * </ul>
+ */
+public class ReplicaRoutingConnectorFactory
+  implements ConnectorFactory,
+             Asynchronous
+{
+
+  //
+  // Constants.
+  //
+
+  public static final String PROPERTY_PREFIX = "db.Replicas.";
+  public static final long   DEFAULT_MAXIMUM_LAG = 5 * UtilityConstants.SECOND;
+  public static final long   DEFAULT_LAG_CHECK_INTERVAL = UtilityConstants.SECOND;
+
+  //
+  // Member variables.
+  //
+
+  private final ConnectorFactory     primary;
+  private final Replica[]            replicas;
+  private final AtomicInteger        nextReplica = new AtomicInteger();
+  private final LongAdder            primaryReads = new LongAdder();
+  private final Logger               log = LoggerFactory.getLogger(getClass());
+
+  private boolean                    enabled = true;
+  private long                       maximumLag = DEFAULT_MAXIMUM_LAG;
+  private long                       lagCheckInterval = DEFAULT_LAG_CHECK_INTERVAL;
+  private String                     lagQuery;
+  private String                     heartbeatTable;
+  private int                        heartbeatId = 1;
+  private long                       lastHeartbeat;
+  private ScheduledExecutorService   lagMonitor;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   * 
+   * @param primary The ConnectorFactory for the primary database.
+   * @param replicas The ConnectorFactories for the read replicas.
+   */
+  public ReplicaRoutingConnectorFactory(ConnectorFactory primary, 
+      ConnectorFactory... replicas)
+  {
+    this.primary = Objects.requireNonNull(primary);
+    this.replicas = new Replica[replicas.length];
+    for (int i = 0; i < replicas.length; i++)
+    {
+      this.replicas[i] = new Replica(Objects.requireNonNull(replicas[i]));
+    }
+  }
+
+  @Override
+  public void configure(EnhancedProperties props)
+  {
+    primary.configure(props);
+    for (Replica replica : replicas)
+    {
+      replica.factory.configure(props);
+    }
+    
+    final EnhancedProperties.Focus focus = props.focus(PROPERTY_PREFIX);
+    enabled = focus.getBoolean("Enabled", true);
+    maximumLag = focus.getLong("MaximumLagMillis", DEFAULT_MAXIMUM_LAG, 
+        0L, Long.MAX_VALUE);
+    lagCheckInterval = focus.getLong("LagCheckIntervalMillis", 
+        DEFAULT_LAG_CHECK_INTERVAL, 0L, Long.MAX_VALUE);
+    lagQuery = StringHelper.emptyDefault(focus.get("LagQuery"), null);
+    heartbeatTable = StringHelper.emptyDefault(focus.get("HeartbeatTable"), null);
+    heartbeatId = focus.getInt("HeartbeatId", 1);
+    
+    log.info("Routing reads to {} replica(s){}.", replicas.length,
+        enabled ? "" : " disabled");
+    
+    // Measure lag now and then periodically, restarting the lag monitor
+    // in case the interval has changed.
+    end();
+    if ((enabled) && (replicas.length > 0))
+    {
+      checkReplicas();
+      if (lagCheckInterval > 0L)
+      {
+        begin();
+      }
+    }
+  }
+
+  /**
+   * Starts the background thread that measures replica lag.  Called when
+   * this factory is configured.
+   */
+  @Override
+  public synchronized void begin()
+  {
+    if (lagMonitor == null)
+    {
+      lagMonitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "Replica Lag Monitor");
+        thread.setDaemon(true);
+        return thread;
+      });
+      lagMonitor.scheduleWithFixedDelay(() -> {
+            try
+            {
+              checkReplicas();
+            }
+            catch (RuntimeException exc)
+            {
+              // Keep checking; an exception would cancel the schedule.
+              log.error("Exception while checking replica lag.", exc);
+            }
+          }, lagCheckInterval, lagCheckInterval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Stops the background thread that measures replica lag.
+   */
+  @Override
+  public synchronized void end()
+  {
+    if (lagMonitor != null)
+    {
+      lagMonitor.shutdownNow();
+      lagMonitor = null;
+    }
+  }
+
+  /**
+   * Gets a ConnectionMonitor for the primary database, noting that the
+   * current request or thread may have written so that its reads are also
+   * sent to the primary.
+   */
+  @Override
+  public ConnectionMonitor getConnectionMonitor() throws SQLException
+  {
+    ReadRouting.markWritten();
+    return primary.getConnectionMonitor();
+  }
+
+  /**
+   * Gets a ConnectionMonitor for a replica, or for the primary if no 
+   * replica is usable, the current request has written, or the thread is
+   * within a ReadRouting.readPrimary scope.
+   */
+  @Override
+  public ConnectionMonitor getReadConnectionMonitor() throws SQLException
+  {
+    if ((enabled) && (replicas.length > 0) 
+        && (!ReadRouting.isPrimaryRequired(maximumLag)))
+    {
+      final int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.length);
+      for (int i = 0; i < replicas.length; i++)
+      {
+        final Replica replica = replicas[(start + i) % replicas.length];
+        if (replica.isUsable(maximumLag))
+        {
+          try
+          {
+            final ConnectionMonitor monitor = replica.factory.getConnectionMonitor();
+            replica.reads.increment();
+            return monitor;
+          }
+          catch (SQLException sqlexc)
+          {
+            log.warn("Replica {} unavailable; skipping until next lag check.",
+                replica.factory, sqlexc);
+            replica.available = false;
+          }
+        }
+      }
+    }
+    
+    primaryReads.increment();
+    return primary.getConnectionMonitor();
+  }
+
+  /**
+   * Measures the lag of each replica now, updating which replicas are
+   * read from.  Called periodically by the lag monitor thread.
+   */
+  public synchronized void checkReplicas()
+  {
+    final long now = System.currentTimeMillis();
+    for (Replica replica : replicas)
+    {
+      try
+      {
+        replica.lag = measureLag(replica.factory, now);
+        if (!replica.available)
+        {
+          log.info("Replica {} available; lag {}ms.", replica.factory, replica.lag);
+        }
+        replica.available = true;
+      }
+      catch (SQLException sqlexc)
+      {
+        if (replica.available)
+        {
+          log.warn("Could not measure lag of replica {}.", replica.factory, sqlexc);
+        }
+        replica.available = false;
+      }
+    }
+    
+    if ((lagQuery == null) && (heartbeatTable != null))
+    {
+      try
+      {
+        writeHeartbeat(now);
+        lastHeartbeat = now;
+      }
+      catch (SQLException sqlexc)
+      {
+        log.warn("Could not write replica heartbeat.", sqlexc);
+      }
+    }
+  }
+
+  /**
+   * Measures a replica's lag in milliseconds.  Uses the LagQuery if one is
+   * configured, or else compares the replica's heartbeat row with the
+   * heartbeat last written to the primary: a replica that has the last
+   * heartbeat is considered current, and one that does not is considered
+   * to lag by the age of the newest heartbeat it has.  Returns zero if
+   * neither is configured.
+   * 
+   * @param replica The replica's ConnectorFactory.
+   * @param now The time of this check.
+   */
+  protected long measureLag(ConnectorFactory replica, long now) 
+      throws SQLException
+  {
+    if (lagQuery != null)
+    {
+      try (
+          ConnectionMonitor monitor = replica.getConnectionMonitor();
+          PreparedStatement statement = monitor.prepareStatement(lagQuery);
+          ResultSet resultSet = statement.executeQuery()
+          )
+      {
+        return resultSet.next() ? Math.max(0L, resultSet.getLong(1)) : 0L;
+      }
+    }
+    if (heartbeatTable != null)
+    {
+      try (
+          ConnectionMonitor monitor = replica.getConnectionMonitor();
+          PreparedStatement statement = monitor.prepareStatement(
+              "SELECT beat FROM " + heartbeatTable + " WHERE id = ?")
+          )
+      {
+        statement.setInt(1, heartbeatId);
+        try (ResultSet resultSet = statement.executeQuery())
+        {
+          final long beat = resultSet.next() ? resultSet.getLong(1) : 0L;
+          return beat >= lastHeartbeat ? 0L : Math.max(0L, now - beat);
+        }
+      }
+    }
+    return 0L;
+  }
+
+  /**
+   * Writes a heartbeat to the primary database.
+   */
+  protected void writeHeartbeat(long beat) throws SQLException
+  {
+    try (ConnectionMonitor monitor = primary.getConnectionMonitor())
+    {
+      int updated;
+      try (PreparedStatement statement = monitor.prepareStatement(
+          "UPDATE " + heartbeatTable + " SET beat = ? WHERE id = ?"))
+      {
+        statement.setLong(1, beat);
+        statement.setInt(2, heartbeatId);
+        updated = statement.executeUpdate();
+      }
+      if (updated == 0)
+      {
+        try (PreparedStatement statement = monitor.prepareStatement(
+            "INSERT INTO " + heartbeatTable + " (id, beat) VALUES (?, ?)"))
+        {
+          statement.setInt(1, heartbeatId);
+          statement.setLong(2, beat);
+          statement.executeUpdate();
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the ConnectorFactory for the primary database.
+   */
+  public ConnectorFactory getPrimary()
+  {
+    return primary;
+  }
+
+  /**
+   * Gets the number of replicas.
+   */
+  public int getReplicaCount()
+  {
+    return replicas.length;
+  }
+
+  /**
+   * Gets the most recently measured lag of a replica in milliseconds, or 
+   * -1 if the replica is unavailable.
+   */
+  public long getReplicaLag(int index)
+  {
+    final Replica replica = replicas[index];
+    return replica.available ? replica.lag : -1L;
+  }
+
+  /**
+   * Gets the number of reads sent to a replica.
+   */
+  public long getReplicaReadCount(int index)
+  {
+    return replicas[index].reads.sum();
+  }
+
+  /**
+   * Gets the number of reads sent to the primary.
+   */
+  public long getPrimaryReadCount()
+  {
+    return primaryReads.sum();
+  }
+
+  @Override
+  public void determineIdentifierQuoteString()
+  {
+    primary.determineIdentifierQuoteString();
+  }
+
+  @Override
+  public String getIdentifierQuoteString()
+  {
+    return primary.getIdentifierQuoteString();
+  }
+
+  @Override
+  public DatabaseAffinity getDatabaseAffinity()
+  {
+    return primary.getDatabaseAffinity();
+  }
+
+  @Override
+  public boolean isEnabled()
+  {
+    return primary.isEnabled();
+  }
+
+  /**
+   * A replica's ConnectorFactory and its most recently measured state.
+   */
+  private static final class Replica
+  {
+    private final ConnectorFactory factory;
+    private final LongAdder        reads = new LongAdder();
+    private volatile long          lag;
+    private volatile boolean       available = true;
+
+    private Replica(ConnectorFactory factory)
+    {
+      this.factory = factory;
+    }
+
+    private boolean isUsable(long maximumLag)
+    {
+      return available && lag <= maximumLag;
+    }
+  }
+
+}   // End ReplicaRoutingConnectorFactory.
@@ -28,6 +28,8 @@ package com.techempower.data.annotation;
 
 import java.lang.annotation.*;
 
+import com.techempower.cache.*;
+
 /**
  * This annotation signals an entity class that will be cached with
  * the EntityStore. Using this annotation is equivalent to calling
@@ -81,4 +83,13 @@ public @interface CachedEntity
    * constrain the number of entities retained in memory by the LRU cache.
    */
   int lruSize() default 0;
+
+  /**
+   * The storage engine used by the CacheGroup.  Ignored if lruSize is
+   * non-zero.
+   *
+   * @return the storage engine used by the CacheGroup
+   * @see com.techempower.cache.CacheGroup.Builder#storage(CacheStorage)
+   */
+  CacheStorage storage() default CacheStorage.STANDARD;
 }
@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.data.mapping;
+
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.function.*;
+
+import com.techempower.data.*;
+
+/**
+ * Populates the fields of an entity from the current row of a ResultSet by
+ * way of a single MethodHandle composed from the entity's setters and the
+ * ResultSet's typed getters.  Once the JIT compiler has specialized the
+ * composed handle, primitive column values are passed to primitive setters 
+ * without boxing, and no argument array is allocated per field, unlike a 
+ * call through {@link com.esotericsoftware.reflectasm.MethodAccess#invoke}.
+ *   <p>
+ * Fields of types that require conversion (dates, enums, characters, 
+ * nullable numbers, and so on), and fields with TypeAdapters, are read by a
+ * fallback ValueReader and passed to their setters as objects.
+ *   <p>
+ * Used by {@link EntityGroup#make(ResultSet)} when generated row mappers are
+ * enabled.
+ */
+public class EntityRowMapper<T>
+{
+
+  //
+  // Static variables.
+  //
+
+  private static final MethodType ROW_TYPE = MethodType.methodType(
+      void.class, Object.class, ResultSet.class);
+  private static final MethodHandle READ_VALUE;
+  private static final MethodHandle FAIL;
+  static
+  {
+    try
+    {
+      final MethodHandles.Lookup lookup = MethodHandles.lookup();
+      READ_VALUE = lookup.findVirtual(ValueReader.class, "read", 
+          MethodType.methodType(Object.class, DataFieldToMethodMap.class, 
+              ResultSet.class));
+      FAIL = lookup.findStatic(EntityRowMapper.class, "fail",
+          MethodType.methodType(void.class, String.class, Exception.class));
+    }
+    catch (ReflectiveOperationException e)
+    {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  //
+  // Member variables.
+  //
+
+  private final DataFieldToMethodMap[] mappings;
+  private final MethodHandle row;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   */
+  private EntityRowMapper(DataFieldToMethodMap[] mappings, MethodHandle row)
+  {
+    this.mappings = mappings;
+    this.row = row;
+  }
+
+  /**
+   * Creates a row mapper for the provided set-method mappings.
+   *
+   * @param mappings The set-method mappings of an EntityGroup.
+   * @param direct Whether a mapping's value may be read directly from the 
+   *        ResultSet; false for mappings with TypeAdapters.
+   * @param fallback Reads the value for mappings that are not read
+   *        directly.
+   * @throws ReflectiveOperationException if a setter cannot be accessed.
+   */
+  public static <T> EntityRowMapper<T> create(DataFieldToMethodMap[] mappings,
+      Predicate<DataFieldToMethodMap> direct, ValueReader fallback)
+    throws ReflectiveOperationException
+  {
+    // Fold the fields in reverse so that they are set in column order; each
+    // fold runs the new field's handle before the handle it wraps.
+    MethodHandle row = MethodHandles.empty(ROW_TYPE);
+    for (int i = mappings.length - 1; i >= 0; i--)
+    {
+      row = MethodHandles.foldArguments(row, 
+          field(mappings[i], direct.test(mappings[i]), fallback));
+    }
+    return new EntityRowMapper<>(mappings, row);
+  }
+
+  /**
+   * Gets the mappings from which this row mapper was created.
+   */
+  public DataFieldToMethodMap[] getMappings()
+  {
+    return this.mappings;
+  }
+
+  /**
+   * Populates an entity's fields from the current row of a ResultSet.
+   *
+   * @throws EntityException if any field cannot be read or set.
+   */
+  public void read(T object, ResultSet resultSet)
+  {
+    try
+    {
+      this.row.invokeExact((Object)object, resultSet);
+    }
+    catch (RuntimeException | Error e)
+    {
+      throw e;
+    }
+    catch (Throwable t)
+    {
+      // Field handles wrap their own exceptions, so this is not expected.
+      throw new EntityException("Exception during object initialization.", t);
+    }
+  }
+
+  /**
+   * Creates a handle of type (Object, ResultSet)void that reads and sets a
+   * single field, wrapping any exception in an EntityException that names
+   * the setter.
+   */
+  private static MethodHandle field(DataFieldToMethodMap mapping, 
+      boolean direct, ValueReader fallback)
+    throws ReflectiveOperationException
+  {
+    final Method method = mapping.getMethod();
+    final Class<?> valueType = method.getParameterTypes()[0];
+    
+    // A private lookup allows setters of non-public entity classes.
+    final MethodHandle unreflected = MethodHandles.privateLookupIn(
+        method.getDeclaringClass(), MethodHandles.lookup()).unreflect(method);
+    
+    final String getterName = direct ? getterName(mapping.getType()) : null;
+    final MethodHandle getter;
+    final MethodHandle setter;
+    if (getterName != null)
+    {
+      final int index = mapping.getColumnIndex();
+      getter = index > 0
+          ? MethodHandles.insertArguments(MethodHandles.publicLookup()
+              .findVirtual(ResultSet.class, getterName, 
+                  MethodType.methodType(valueType, int.class)), 1, index)
+          : MethodHandles.insertArguments(MethodHandles.publicLookup()
+              .findVirtual(ResultSet.class, getterName, 
+                  MethodType.methodType(valueType, String.class)), 1, 
+              mapping.getFieldName());
+      setter = unreflected.asType(
+          MethodType.methodType(void.class, Object.class, valueType));
+    }
+    else
+    {
+      getter = MethodHandles.insertArguments(READ_VALUE.bindTo(fallback), 
+          0, mapping);
+      setter = unreflected.asType(
+          MethodType.methodType(void.class, Object.class, Object.class));
+    }
+    
+    final MethodHandle handler = MethodHandles.dropArguments(
+        MethodHandles.insertArguments(FAIL, 0, method.getName()), 
+        1, Object.class, ResultSet.class);
+    return MethodHandles.catchException(
+        MethodHandles.filterArguments(setter, 1, getter), 
+        Exception.class, handler);
+  }
+
+  /**
+   * Gets the name of the ResultSet method that returns values of the 
+   * provided type directly, or null if the type requires conversion.
+   */
+  private static String getterName(DataFieldToMethodMap.Type type)
+  {
+    switch (type)
+    {
+      case BooleanPrimitive: return "getBoolean";
+      case BytePrimitive:    return "getByte";
+      case DoublePrimitive:  return "getDouble";
+      case FloatPrimitive:   return "getFloat";
+      case IntPrimitive:     return "getInt";
+      case LongPrimitive:    return "getLong";
+      case ShortPrimitive:   return "getShort";
+      case String:           return "getString";
+      default:               return null;
+    }
+  }
+
+  /**
+   * Wraps an exception raised while reading or setting a field.
+   */
+  @SuppressWarnings("unused")
+  private static void fail(String methodName, Exception e)
+  {
+    throw new EntityException("Exception during object initialization (" 
+        + methodName + ").", e);
+  }
+
+  //
+  // Inner interfaces.
+  //
+
+  /**
+   * Reads a mapping's value from the current row of a ResultSet.
+   */
+  @FunctionalInterface
+  public interface ValueReader
+  {
+    Object read(DataFieldToMethodMap mapping, ResultSet resultSet) 
+        throws SQLException;
+  }
+
+}  // End EntityRowMapper.
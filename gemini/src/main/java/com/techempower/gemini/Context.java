@@ -66,6 +66,7 @@ public abstract class Context
   private Cookies                     cookies;
   private Headers                     headers;
   private boolean                     contentTypeSet;
+  private ResponseCapture             capture;
 
   public Context(GeminiApplication application, Request request)
   {
@@ -209,6 +210,10 @@ public abstract class Context
   public OutputStream getOutputStream()
       throws IOException
   {
+    if (this.capture != null)
+    {
+      return this.capture.getOutputStream();
+    }
     return this.request.getOutputStream();
   }
 
@@ -427,6 +432,10 @@ public abstract class Context
 
   public PrintWriter getWriter() throws IOException
   {
+    if (this.capture != null)
+    {
+      return this.capture.getWriter();
+    }
     return this.request.getWriter();
   }
 
@@ -611,6 +620,11 @@ public abstract class Context
    */
   public void print(String text)
   {
+    if (this.capture != null)
+    {
+      this.capture.getWriter().println(text);
+      return;
+    }
     try
     {
       this.request.print(text);
@@ -670,6 +684,10 @@ public abstract class Context
   public void setContentType(String contentType)
   {
     this.contentTypeSet = true;
+    if (this.capture != null)
+    {
+      this.capture.setContentType(contentType);
+    }
     this.request.setContentType(contentType);
   }
 
@@ -750,9 +768,46 @@ public abstract class Context
    */
   public void setStatus(int status)
   {
+    if (this.capture != null)
+    {
+      this.capture.setStatus(status);
+    }
     this.request.setStatus(status);
   }
 
+  /**
+   * Begins capturing the response in memory: until endCapture is called,
+   * output written via this Context's output stream, writer and print
+   * methods is collected rather than sent, and the content type and status
+   * set are recorded.  Used to render responses for caching.  Headers and
+   * cookies are not captured.
+   */
+  public void beginCapture()
+  {
+    this.capture = new ResponseCapture(
+        this.application.getDefaultResponseCharset());
+  }
+
+  /**
+   * Gets the active capture, or null if the response is not being
+   * captured.
+   */
+  public ResponseCapture getCapture()
+  {
+    return this.capture;
+  }
+
+  /**
+   * Ends capturing, returning what was captured (null if no capture was
+   * active).  Subsequent output goes to the response again.
+   */
+  public ResponseCapture endCapture()
+  {
+    final ResponseCapture captured = this.capture;
+    this.capture = null;
+    return captured;
+  }
+
   /**
    * Pass through method to get the request's content type from the wrapped request.
    * @return The content type of the request.
@@ -1199,6 +1199,7 @@ public abstract class GeminiApplication
      */
     protected void addLifecycleTasks()
     {
+      final InitEntityStore entityStore = new InitEntityStore();
       final InitRegister register = new InitRegister();
       final InitManageAsynchronous asynchronous = new InitManageAsynchronous(); 
       
@@ -1207,11 +1208,12 @@ public abstract class GeminiApplication
       addInitializationTask(new InitConfigurationCheck());    
       addInitializationTask(new InitDatabaseConnectionTest(app));
       addInitializationTask(new InitDatabaseMigrations(app));
-      addInitializationTask(new InitEntityStore());
+      addInitializationTask(entityStore);
       addInitializationTask(register);
       addInitializationTask(new InitStartupNotification());
       addInitializationTask(asynchronous);
       
+      addShutdownTask(entityStore);
       addShutdownTask(asynchronous);
       addShutdownTask(register);
     }
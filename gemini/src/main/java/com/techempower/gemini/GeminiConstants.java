@@ -105,6 +105,7 @@ public final class GeminiConstants
   //
   
   public static final String   CONTENT_TYPE_JSON       = "application/json";
+  public static final String   CONTENT_TYPE_JSON_UTF8  = "application/json; charset=UTF-8";
   public static final String   CONTENT_TYPE_HTML       = "text/html";
   public static final String   CONTENT_TYPE_TEXT       = "text/plain";
   public static final String   CONTENT_TYPE_MULTIPART  = "mixed/multipart";
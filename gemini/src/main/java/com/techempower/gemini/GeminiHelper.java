@@ -40,6 +40,7 @@ import com.techempower.util.*;
 import gnu.trove.map.*;
 import gnu.trove.map.hash.*;
 import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Provides some static helper functionality for Gemini applications.
@@ -377,23 +378,54 @@ public final class GeminiHelper
         : context.getApplication().getJavaScriptWriter()
         );
     
-    context.setContentType(GeminiConstants.CONTENT_TYPE_JSON);
+    context.setContentType(GeminiConstants.CONTENT_TYPE_JSON_UTF8);
     
     // If a name is provided, wrap the object as a JSON-encoded map with a 
-    // single named entry.
-    if (StringHelper.isNonEmpty(objectName))
+    // single named entry.  Otherwise, encode the object as-is.
+    final Object toWrite = (StringHelper.isNonEmpty(objectName)
+        ? Collections.singletonMap(objectName, object)
+        : object);
+
+    // Encode directly to the response rather than building the full JSON
+    // text (and its encoded copy) in memory first.
+    try
     {
-      context.print('{' + writer.write(objectName) + ':' + writer.write(object) + '}');
+      final OutputStream out = getResponseStream(context);
+      if (out != null)
+      {
+        writer.write(toWrite, out);
+      }
+      else
+      {
+        writer.write(toWrite, context.getWriter());
+      }
     }
-    // Otherwise, encode the object as-is.
-    else 
+    catch (IOException ioexc)
     {
-      context.print(writer.write(object));
+      LoggerFactory.getLogger(GeminiHelper.class)
+          .info("IOException while sending JSON.", ioexc);
     }
     
     return true;
   }
   
+  /**
+   * Gets the response's output stream, or null if the response's Writer
+   * is already in use (in which case the output stream is unavailable).
+   */
+  private static OutputStream getResponseStream(Context context)
+      throws IOException
+  {
+    try
+    {
+      return context.getOutputStream();
+    }
+    catch (IllegalStateException isexc)
+    {
+      return null;
+    }
+  }
+  
   /**
    * Send a plain-text response.
    */
@@ -194,6 +194,17 @@ public interface Request
   void setCookie(String name, String value, String domain, String path, 
       int age, boolean secure);
   
+  /**
+   * Sends a cookie in the response, optionally marked HttpOnly so that it
+   * cannot be read by scripts.  Implementations that cannot mark cookies
+   * HttpOnly send the cookie without the flag.
+   */
+  default void setCookie(String name, String value, String domain, 
+      String path, int age, boolean secure, boolean httpOnly)
+  {
+    setCookie(name, value, domain, path, age, secure);
+  }
+  
   /**
    * Deletes a cookie from the user's browser.  This is achieved by setting
    * the cookie's lifetime to 0.  Uses the Servlet's path as the cookie's 
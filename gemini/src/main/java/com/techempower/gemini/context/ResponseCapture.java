@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package com.techempower.gemini.context;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * Collects a response in memory rather than sending it, so that it can be
+ * cached.  While a capture is active on a Context (see
+ * Context.beginCapture), the Context's output stream, writer, print,
+ * content type and status are directed here.  Renderers may also add tags
+ * naming the entities the response depends on, for use with ResponseCache.
+ */
+public class ResponseCapture
+{
+
+  //
+  // Member variables.
+  //
+
+  private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+  private Charset                     charset;
+  private final Set<String>           tags = new HashSet<>();
+  private PrintWriter                 writer;
+  private String                      contentType;
+  private int                         status = 200;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   *
+   * @param charset The character set used to encode text written via the
+   *        writer.
+   */
+  public ResponseCapture(Charset charset)
+  {
+    this.charset = charset;
+  }
+
+  /**
+   * Gets the stream to which the response body is written.
+   */
+  public OutputStream getOutputStream()
+  {
+    flushWriter();
+    return body;
+  }
+
+  /**
+   * Gets a writer to which the response body is written.  As with a
+   * servlet response, text is encoded with the character set named by the
+   * content type if one has been set, or the default otherwise.
+   */
+  public PrintWriter getWriter()
+  {
+    if (writer == null)
+    {
+      final Charset specified = charsetOf(contentType);
+      if (specified != null)
+      {
+        charset = specified;
+      }
+      writer = new PrintWriter(new OutputStreamWriter(body, charset));
+    }
+    return writer;
+  }
+
+  /**
+   * Gets the character set used by the writer.
+   */
+  public Charset getCharset()
+  {
+    return charset;
+  }
+
+  /**
+   * Gets the content type for replaying the captured body: the content
+   * type set, with the writer's character set added if text was written
+   * and none was named.  Null if no content type was set.
+   */
+  public String getEncodedContentType()
+  {
+    if ((contentType == null) 
+        || (writer == null) 
+        || (charsetOf(contentType) != null))
+    {
+      return contentType;
+    }
+    return contentType + "; charset=" + charset.name();
+  }
+
+  /**
+   * Gets the character set named by a content type, or null if none is
+   * named or it is not supported.
+   */
+  private static Charset charsetOf(String contentType)
+  {
+    if (contentType == null)
+    {
+      return null;
+    }
+    final int index = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+    if (index < 0)
+    {
+      return null;
+    }
+    String name = contentType.substring(index + "charset=".length());
+    final int semicolon = name.indexOf(';');
+    if (semicolon >= 0)
+    {
+      name = name.substring(0, semicolon);
+    }
+    try
+    {
+      return Charset.forName(name.trim().replace("\"", ""));
+    }
+    catch (IllegalArgumentException iaexc)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Sets the captured content type.
+   */
+  public void setContentType(String contentType)
+  {
+    this.contentType = contentType;
+  }
+
+  /**
+   * Gets the captured content type; null if none was set.
+   */
+  public String getContentType()
+  {
+    return contentType;
+  }
+
+  /**
+   * Sets the captured status code.
+   */
+  public void setStatus(int status)
+  {
+    this.status = status;
+  }
+
+  /**
+   * Gets the captured status code; 200 unless set otherwise.
+   */
+  public int getStatus()
+  {
+    return status;
+  }
+
+  /**
+   * Adds a tag naming something the response depends on.
+   */
+  public void addTag(String tag)
+  {
+    tags.add(tag);
+  }
+
+  /**
+   * Gets the tags added.
+   */
+  public Set<String> getTags()
+  {
+    return tags;
+  }
+
+  /**
+   * Gets the captured body.
+   */
+  public byte[] toByteArray()
+  {
+    flushWriter();
+    return body.toByteArray();
+  }
+
+  /**
+   * Flushes any text written via the writer into the body.
+   */
+  private void flushWriter()
+  {
+    if (writer != null)
+    {
+      writer.flush();
+    }
+  }
+
+}  // End ResponseCapture.
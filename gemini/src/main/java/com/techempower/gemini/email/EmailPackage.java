@@ -27,6 +27,8 @@
 
 package com.techempower.gemini.email;
 
+import java.io.*;
+import java.nio.charset.*;
 import java.util.*;
 
 import com.techempower.gemini.*;
@@ -63,7 +65,6 @@ public class EmailPackage
   //
 
   public  static final String JAVAX_MAIL_MESSAGE = "javax.mail.Message";
-  //private static final long   serialVersionUID   = 371890138153L;
   
   //
   // Member variables.
@@ -140,44 +141,167 @@ public class EmailPackage
   }
 
   /**
-   * Reads this object from an ObjectStream.
+   * Can this EmailPackage be written with writeTo?  EmailPackages with 
+   * non-file attachments, non-String custom attributes, or their own 
+   * authenticator cannot be; the latter so that credentials are never 
+   * written to disk.
    */
-  /*
-  @Override
-  public void readExternal(ObjectInput input)
-    throws    IOException
+  public boolean isPersistable()
   {
-    this.authorAddress         = input.readUTF();
-    this.recipientAddress      = input.readUTF();
-    this.subject               = input.readUTF();
-    input.readInt();   // Ignored herein.
-    this.messageBody           = input.readUTF();
-    this.successful            = input.readBoolean();
-    this.hasHtmlBody           = input.readBoolean();
-    this.deliveryAttempts      = input.readInt();
-    this.totalDeliveryAttempts = input.readInt();
+    if (this.authenticator != null)
+    {
+      return false;
+    }
+    if (this.attachments != null)
+    {
+      for (EmailAttachment attachment : this.attachments)
+      {
+        if (attachment.getFile() == null)
+        {
+          return false;
+        }
+      }
+    }
+    if (this.custom != null)
+    {
+      for (Object value : this.custom.values())
+      {
+        if (!(value instanceof String))
+        {
+          return false;
+        }
+      }
+    }
+    return true;
   }
-  */
 
   /**
-   * Writes this object to an ObjectStream.
+   * Writes this EmailPackage to a DataOutput, for instance, to persist it 
+   * in a durable mail queue.  Only EmailPackages for which isPersistable 
+   * returns true can be written.  The sent and successful flags are not
+   * written.
    */
-  /*
-  @Override
-  public void writeExternal(ObjectOutput output)
+  public void writeTo(DataOutput output)
     throws    IOException
   {
-    output.writeUTF(this.authorAddress);
-    output.writeUTF(this.recipientAddress);
-    output.writeUTF(this.subject);
-    output.writeInt(this.attachments.size());         // Write just the number of attachments
-    output.writeUTF(this.messageBody);
-    output.writeBoolean(this.successful);
+    if (!isPersistable())
+    {
+      throw new NotSerializableException("EmailPackage is not persistable: " + this);
+    }
+    writeString(output, this.recipientAddress);
+    writeString(output, this.recipientSource);
+    writeString(output, this.mailServer);
+    writeString(output, this.messageBody);
+    writeString(output, this.htmlMessageBody);
+    writeString(output, this.authorAddress);
+    writeString(output, this.bccRecipientAddress);
+    writeString(output, this.subject);
+    writeString(output, this.charset);
     output.writeBoolean(this.hasHtmlBody);
+    output.writeBoolean(this.hasTextBody);
     output.writeInt(this.deliveryAttempts);
-    output.writeInt(this.totalDeliveryAttempts);
+    
+    output.writeInt(this.attachments == null ? 0 : this.attachments.size());
+    if (this.attachments != null)
+    {
+      for (EmailAttachment attachment : this.attachments)
+      {
+        writeString(output, attachment.getFile().getPath());
+        writeString(output, attachment.getName());
+      }
+    }
+    output.writeInt(this.custom == null ? 0 : this.custom.size());
+    if (this.custom != null)
+    {
+      for (Map.Entry<String,Object> entry : this.custom.entrySet())
+      {
+        writeString(output, entry.getKey());
+        writeString(output, (String)entry.getValue());
+      }
+    }
+    output.writeInt(this.headers == null ? 0 : this.headers.size());
+    if (this.headers != null)
+    {
+      for (EmailHeader header : this.headers)
+      {
+        writeString(output, header.getHeaderName());
+        writeString(output, header.getHeaderValue());
+      }
+    }
+  }
+
+  /**
+   * Reads an EmailPackage written by writeTo.
+   */
+  public static EmailPackage readFrom(DataInput input)
+    throws    IOException
+  {
+    final EmailPackage email = new EmailPackage(readString(input));
+    email.recipientSource     = readString(input);
+    email.mailServer          = readString(input);
+    email.messageBody         = readString(input);
+    email.htmlMessageBody     = readString(input);
+    email.authorAddress       = readString(input);
+    email.bccRecipientAddress = readString(input);
+    email.subject             = readString(input);
+    email.charset             = readString(input);
+    email.hasHtmlBody         = input.readBoolean();
+    email.hasTextBody         = input.readBoolean();
+    email.deliveryAttempts    = input.readInt();
+    
+    final int attachmentCount = input.readInt();
+    for (int i = 0; i < attachmentCount; i++)
+    {
+      final File file = new File(readString(input));
+      email.addAttachment(new EmailAttachment(file, readString(input)));
+    }
+    final int customCount = input.readInt();
+    for (int i = 0; i < customCount; i++)
+    {
+      email.setCustomAttribute(readString(input), readString(input));
+    }
+    final int headerCount = input.readInt();
+    for (int i = 0; i < headerCount; i++)
+    {
+      email.addHeader(new EmailHeader(readString(input), readString(input)));
+    }
+    return email;
+  }
+
+  /**
+   * Writes a nullable String of any length; writeUTF is limited to 64KB,
+   * which message bodies may exceed.
+   */
+  private static void writeString(DataOutput output, String value)
+    throws    IOException
+  {
+    if (value == null)
+    {
+      output.writeInt(-1);
+    }
+    else
+    {
+      final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+  }
+
+  /**
+   * Reads a String written by writeString.
+   */
+  private static String readString(DataInput input)
+    throws    IOException
+  {
+    final int length = input.readInt();
+    if (length < 0)
+    {
+      return null;
+    }
+    final byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
   }
-  */
 
   /**
    * Sets a custom attribute, for instance, username.  Custom attributes do 
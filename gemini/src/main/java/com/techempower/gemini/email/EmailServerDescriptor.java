@@ -69,6 +69,7 @@ public class EmailServerDescriptor
   private final boolean       outbound;
   private final boolean       inbound;
   private final String        inboundProtocol;
+  private volatile Session    session;
 
   //
   // Member methods.
@@ -188,11 +189,19 @@ public class EmailServerDescriptor
   }
 
   /**
-   * Gets the JavaMail Session object associated with this mail server.
+   * Gets the JavaMail Session object associated with this mail server.  The
+   * Session is created once and reused so that outbound connections made
+   * through it can be pooled by the EmailTransport.
    */
   protected Session getSession()
   {
-    return Session.getInstance(getProperties(), authenticator);
+    Session current = session;
+    if (current == null)
+    {
+      current = Session.getInstance(getProperties(), authenticator);
+      session = current;
+    }
+    return current;
   }
 
   /**
@@ -29,6 +29,7 @@ package com.techempower.gemini.email;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import javax.activation.*;
 import javax.mail.*;
@@ -102,6 +103,14 @@ import org.slf4j.LoggerFactory;
  * <li>MailDefaultPassword - The password to use for SMTP-Auth when an 
  *     EmailPackage defines its own mail server (uncommon usage scenario).  
  *     Only used if a username is also provided. 
+ * <li>OutboundEmail.PooledConnectionsPerServer - The number of idle SMTP
+ *     connections to keep open per outbound mail server for reuse by
+ *     subsequent deliveries.  Set to 0 to open a new connection for every
+ *     e-mail.  Default: 4.
+ * <li>OutboundEmail.MessagesPerConnection - The number of e-mails to 
+ *     deliver over a pooled connection before closing it.  Default: 100.
+ * <li>OutboundEmail.ConnectionIdleSeconds - Pooled connections idle for
+ *     longer than this are closed rather than reused.  Default: 30.
  *   </ul>
  *    <p>
  * Note that the timeout parameters and SMTP-Auth functionality only function
@@ -140,6 +149,9 @@ public class EmailTransport
   private String              defaultPassword       = null;
   private Authenticator       defaultAuthenticator  = null;
   private Logger              log                   = LoggerFactory.getLogger(getClass());
+  private final SmtpTransportPool transportPool     = new SmtpTransportPool();
+  private final LatencyStats      deliveryLatency   = new LatencyStats("SMTP deliveries");
+  private final AtomicLong        deliveryFailures  = new AtomicLong();
   
   //
   // Member methods.
@@ -193,6 +205,14 @@ public class EmailTransport
       log.info("OutboundMailEnabled is deprecated.  Use OutboundEmail.Enabled instead.");
     }
     outboundMailEnabled = outboundFocus.getBoolean("Enabled", outboundMailEnabled);
+    
+    transportPool.setMaximumIdle(outboundFocus.getInt("PooledConnectionsPerServer", 
+        SmtpTransportPool.DEFAULT_MAXIMUM_IDLE));
+    transportPool.setMaximumMessages(outboundFocus.getInt("MessagesPerConnection",
+        SmtpTransportPool.DEFAULT_MAXIMUM_MESSAGES));
+    transportPool.setMaximumIdleMillis(UtilityConstants.SECOND * outboundFocus.getInt(
+        "ConnectionIdleSeconds", 
+        (int)(SmtpTransportPool.DEFAULT_MAXIMUM_IDLE_MILLIS / UtilityConstants.SECOND)));
 
     if (!outboundMailEnabled)
     {
@@ -257,6 +277,10 @@ public class EmailTransport
       // Cache references to outbound and inbound servers.
       deriveServerReferenceCaches(mailServers);
       
+      // Connections pooled for the previous server definitions will not be
+      // used again.
+      transportPool.closeIdle();
+      
       // Show a little summary report.
       log.info("{} mail server{} specified{}", serverCount,
           StringHelper.pluralize(serverCount),
@@ -394,6 +418,10 @@ public class EmailTransport
       // A reference to the mail session, set by finding the mail server
       // below.
       Session mailSession = null;
+      
+      // Only Sessions belonging to configured servers are long-lived enough
+      // for their connections to be pooled.
+      boolean pooled = true;
 
       // Use the default mail server if none is specified in the
       // EmailPackage.
@@ -452,6 +480,7 @@ public class EmailTransport
         // we'll use that.  Note that this is not very common.
         if (mailSession == null)
         {
+          pooled = false;
           Properties props = new Properties();
           props.put("mail.smtp.host", email.getMailServer());
           props.put("mail.smtp.connectiontimeout", "" + (UtilityConstants.SECOND 
@@ -669,7 +698,7 @@ public class EmailTransport
           // This method -should- return either very quickly or within the
           // timeout period specified in the Properties file provided
           // during the construction of the Session object.
-          Transport.send(message);
+          deliver(mailSession, message, pooled);
 
           // Set the sent flag.
           email.setSent(true);
@@ -679,6 +708,7 @@ public class EmailTransport
         catch (MessagingException exc)
         {
           email.setSent(false);
+          deliveryFailures.incrementAndGet();
           log.warn("Exception during JavaMail transport.", exc);
         }
       } 
@@ -703,6 +733,93 @@ public class EmailTransport
     return false;
   }
 
+  /**
+   * Delivers a message, using a pooled connection for the Session if 
+   * pooling is permitted.
+   */
+  protected void deliver(Session mailSession, MimeMessage message, 
+      boolean pooled)
+      throws MessagingException
+  {
+    final long start = System.nanoTime();
+    if (!pooled)
+    {
+      Transport.send(message);
+      deliveryLatency.recordSince(start);
+      return;
+    }
+    
+    // Transport.send would do this for us.
+    message.saveChanges();
+    
+    SmtpTransportPool.PooledTransport transport = transportPool.borrow(mailSession);
+    try
+    {
+      transport.send(message);
+    }
+    catch (SendFailedException exc)
+    {
+      // The server rejected the message or some of its recipients, but the
+      // connection remains usable.
+      transportPool.release(transport);
+      throw exc;
+    }
+    catch (MessagingException exc)
+    {
+      transportPool.discard(transport);
+      if (!transport.isReused())
+      {
+        throw exc;
+      }
+      
+      // The server may have closed the idle connection; retry once with a
+      // new connection.
+      log.debug("Pooled SMTP connection failed; retrying with a new connection.", exc);
+      transport = transportPool.borrow(mailSession);
+      try
+      {
+        transport.send(message);
+      }
+      catch (SendFailedException sfexc)
+      {
+        transportPool.release(transport);
+        throw sfexc;
+      }
+      catch (MessagingException retryexc)
+      {
+        transportPool.discard(transport);
+        throw retryexc;
+      }
+    }
+    transportPool.release(transport);
+    deliveryLatency.recordSince(start);
+  }
+  
+  /**
+   * Gets the pool of outbound SMTP connections.
+   */
+  public SmtpTransportPool getTransportPool()
+  {
+    return transportPool;
+  }
+  
+  /**
+   * Gets latency statistics for successful deliveries to the mail server.
+   */
+  public LatencyStats getDeliveryLatency()
+  {
+    return deliveryLatency;
+  }
+  
+  /**
+   * Gets the number of deliveries that failed with an exception from the
+   * mail server or the connection to it.
+   */
+  public long getDeliveryFailureCount()
+  {
+    return deliveryFailures.get();
+  }
+
   /**
    * Checks for new messages on a given server.  Returns a collection of
    * EmailPackage objects or null if no new messages have been received.
@@ -1005,7 +1122,8 @@ public class EmailTransport
   @Override
   public String toString()
   {
-    return "EmailTransport [" + mailServers.length + " servers; " + hashCode() + "]";
+    return "EmailTransport [" + mailServers.length + " servers; " 
+        + transportPool + "; " + hashCode() + "]";
   }
 
   /**
@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.email;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.mail.*;
+import javax.mail.internet.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maintains pools of connected SMTP Transports, one pool per JavaMail 
+ * Session, so that consecutive deliveries through the same mail server do
+ * not each pay for a TCP connection, greeting, EHLO, STARTTLS, and 
+ * authentication.  Transports are borrowed by EmailServicer worker threads
+ * for the duration of a single delivery and returned afterward.
+ *   <p>
+ * Idle transports are reused most-recently-used first, so that a burst of
+ * deliveries reuses warm connections while surplus connections age out.
+ * A transport is closed rather than returned if the pool for its Session
+ * already holds the maximum number of idle transports, if it has delivered
+ * the maximum number of messages, or if it has been idle longer than the
+ * idle timeout (most servers drop idle clients after a few minutes).
+ *   <p>
+ * Because a pooled connection may have been closed by the server since it
+ * was last used, callers should retry a failed delivery once on a new 
+ * connection when the failed transport was reused; see 
+ * PooledTransport.isReused.
+ */
+public class SmtpTransportPool
+{
+
+  //
+  // Constants.
+  //
+
+  public static final int  DEFAULT_MAXIMUM_IDLE        = 4;
+  public static final int  DEFAULT_MAXIMUM_MESSAGES    = 100;
+  public static final long DEFAULT_MAXIMUM_IDLE_MILLIS = 30_000L;
+
+  //
+  // Member variables.
+  //
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+  private final ConcurrentMap<Session, Deque<PooledTransport>> idle = 
+      new ConcurrentHashMap<>();
+  private final AtomicLong opened = new AtomicLong();
+  private final AtomicLong reused = new AtomicLong();
+  private final AtomicLong closed = new AtomicLong();
+  private volatile int     maximumIdle = DEFAULT_MAXIMUM_IDLE;
+  private volatile int     maximumMessages = DEFAULT_MAXIMUM_MESSAGES;
+  private volatile long    maximumIdleMillis = DEFAULT_MAXIMUM_IDLE_MILLIS;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Sets the maximum number of idle transports retained per Session.  Zero
+   * disables pooling; each transport is closed after use.
+   */
+  public void setMaximumIdle(int maximumIdle)
+  {
+    this.maximumIdle = Math.max(0, maximumIdle);
+  }
+
+  /**
+   * Sets the number of messages after which a transport is closed rather
+   * than being returned to the pool.
+   */
+  public void setMaximumMessages(int maximumMessages)
+  {
+    this.maximumMessages = Math.max(1, maximumMessages);
+  }
+
+  /**
+   * Sets the time, in milliseconds, after which an idle transport is 
+   * closed rather than reused.
+   */
+  public void setMaximumIdleMillis(long maximumIdleMillis)
+  {
+    this.maximumIdleMillis = Math.max(0L, maximumIdleMillis);
+  }
+
+  /**
+   * Borrows a connected transport for the Session, reusing an idle one if
+   * available.  The transport must be returned with release or discard.
+   */
+  public PooledTransport borrow(Session session)
+      throws MessagingException
+  {
+    final Deque<PooledTransport> pool = idle.get(session);
+    if (pool != null)
+    {
+      final long now = System.currentTimeMillis();
+      PooledTransport pooled;
+      while ((pooled = pool.pollFirst()) != null)
+      {
+        // Transport.isConnected would cost a NOOP round trip, so rely on
+        // the idle timeout and the caller's retry instead.
+        if (now - pooled.lastUsed <= maximumIdleMillis)
+        {
+          reused.incrementAndGet();
+          pooled.reused = true;
+          return pooled;
+        }
+        close(pooled);
+      }
+    }
+    
+    final Transport transport = session.getTransport("smtp");
+    transport.connect();
+    opened.incrementAndGet();
+    return new PooledTransport(session, transport);
+  }
+
+  /**
+   * Returns a transport after a delivery that left its connection usable,
+   * including deliveries rejected by the server for specific recipients.
+   */
+  public void release(PooledTransport pooled)
+  {
+    if (pooled.messages < maximumMessages)
+    {
+      final Deque<PooledTransport> pool = idle.computeIfAbsent(
+          pooled.session, key -> new ConcurrentLinkedDeque<>());
+      // The size check is approximate under contention, which is harmless.
+      if (pool.size() < maximumIdle)
+      {
+        pooled.lastUsed = System.currentTimeMillis();
+        pooled.reused = false;
+        pool.offerFirst(pooled);
+        return;
+      }
+    }
+    close(pooled);
+  }
+
+  /**
+   * Closes a transport whose connection may no longer be usable.
+   */
+  public void discard(PooledTransport pooled)
+  {
+    close(pooled);
+  }
+
+  /**
+   * Closes all idle transports.  Transports currently borrowed are closed
+   * when they are released if the pool has been disabled in the meantime;
+   * otherwise they return to the pool as usual.
+   */
+  public void closeIdle()
+  {
+    for (Deque<PooledTransport> pool : idle.values())
+    {
+      PooledTransport pooled;
+      while ((pooled = pool.pollFirst()) != null)
+      {
+        close(pooled);
+      }
+    }
+    idle.clear();
+  }
+
+  private void close(PooledTransport pooled)
+  {
+    closed.incrementAndGet();
+    try
+    {
+      pooled.transport.close();
+    }
+    catch (MessagingException exc)
+    {
+      log.debug("Exception while closing SMTP transport.", exc);
+    }
+  }
+
+  /**
+   * Gets the number of connections opened.
+   */
+  public long getOpenedCount()
+  {
+    return opened.get();
+  }
+
+  /**
+   * Gets the number of times an idle connection was reused.
+   */
+  public long getReusedCount()
+  {
+    return reused.get();
+  }
+
+  /**
+   * Gets the number of connections closed.
+   */
+  public long getClosedCount()
+  {
+    return closed.get();
+  }
+
+  /**
+   * Gets the number of idle connections across all Sessions.
+   */
+  public int getIdleCount()
+  {
+    int count = 0;
+    for (Deque<PooledTransport> pool : idle.values())
+    {
+      count += pool.size();
+    }
+    return count;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "SmtpTransportPool [" + getOpenedCount() + " opened; "
+        + getReusedCount() + " reused; " + getClosedCount() + " closed; "
+        + getIdleCount() + " idle]";
+  }
+
+  /**
+   * A connected Transport borrowed from the pool.
+   */
+  public static final class PooledTransport
+  {
+    private final Session   session;
+    private final Transport transport;
+    private       int       messages;
+    private       long      lastUsed;
+    private       boolean   reused;
+
+    private PooledTransport(Session session, Transport transport)
+    {
+      this.session = session;
+      this.transport = transport;
+    }
+
+    /**
+     * Sends a message to all of its recipients over this connection.
+     */
+    public void send(MimeMessage message)
+        throws MessagingException
+    {
+      messages++;
+      transport.sendMessage(message, message.getAllRecipients());
+    }
+
+    /**
+     * Was this transport reused from the pool rather than newly connected?
+     */
+    public boolean isReused()
+    {
+      return reused;
+    }
+  }  // End PooledTransport.
+
+}  // End SmtpTransportPool.
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.email.outbound;
+
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Paces outbound deliveries to a target rate that adapts to how the mail
+ * server is coping, using additive-increase/multiplicative-decrease as TCP
+ * congestion control does.  Each failure halves the rate (at most once per
+ * second, so that a burst of failures from concurrent senders counts 
+ * once), down to the minimum.  Each success raises the rate by roughly one
+ * message per second for every second of successful sending, up to the 
+ * maximum.
+ *   <p>
+ * Callers reserve a slot before each delivery and wait the returned number
+ * of nanoseconds before delivering.  Reservations are spaced evenly at the
+ * current rate, so bursts are smoothed rather than sent all at once.
+ */
+public class AdaptiveRateLimiter
+{
+
+  //
+  // Constants.
+  //
+
+  private static final long DECREASE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+  //
+  // Member variables.
+  //
+
+  private final double       minimumRate;
+  private final double       maximumRate;
+  private final LongSupplier clock;
+  private double             rate;
+  private long               nextFree;
+  private long               lastDecrease;
+  private long               decreases;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   *
+   * @param minimumRate the lowest rate, in messages per second.
+   * @param maximumRate the highest rate, in messages per second, which is
+   *        also the starting rate.
+   */
+  public AdaptiveRateLimiter(double minimumRate, double maximumRate)
+  {
+    this(minimumRate, maximumRate, System::nanoTime);
+  }
+
+  /**
+   * Constructor with a nanosecond clock, for testing.
+   */
+  AdaptiveRateLimiter(double minimumRate, double maximumRate, 
+      LongSupplier clock)
+  {
+    if (minimumRate <= 0 || maximumRate < minimumRate)
+    {
+      throw new IllegalArgumentException("Invalid rates: " + minimumRate 
+          + ", " + maximumRate);
+    }
+    this.minimumRate = minimumRate;
+    this.maximumRate = maximumRate;
+    this.rate = maximumRate;
+    this.clock = clock;
+    this.nextFree = clock.getAsLong();
+    this.lastDecrease = nextFree - DECREASE_INTERVAL;
+  }
+
+  /**
+   * Reserves the next delivery slot, returning the number of nanoseconds to
+   * wait before delivering.
+   */
+  public synchronized long reserve()
+  {
+    final long now = clock.getAsLong();
+    final long wait = Math.max(0L, nextFree - now);
+    nextFree = Math.max(nextFree, now) + (long)(TimeUnit.SECONDS.toNanos(1) / rate);
+    return wait;
+  }
+
+  /**
+   * Reports a successful delivery.
+   */
+  public synchronized void onSuccess()
+  {
+    rate = Math.min(maximumRate, rate + 1.0 / rate);
+  }
+
+  /**
+   * Reports a failed delivery.
+   */
+  public synchronized void onFailure()
+  {
+    final long now = clock.getAsLong();
+    if (now - lastDecrease >= DECREASE_INTERVAL)
+    {
+      lastDecrease = now;
+      rate = Math.max(minimumRate, rate / 2.0);
+      decreases++;
+    }
+  }
+
+  /**
+   * Gets the current rate, in messages per second.
+   */
+  public synchronized double getRate()
+  {
+    return rate;
+  }
+
+  /**
+   * Gets the number of times the rate has been decreased.
+   */
+  public synchronized long getDecreaseCount()
+  {
+    return decreases;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("AdaptiveRateLimiter [%.1f/s; %.1f-%.1f/s]", 
+        getRate(), minimumRate, maximumRate);
+  }
+
+}  // End AdaptiveRateLimiter.
@@ -0,0 +1,525 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.email.outbound;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+import com.techempower.gemini.email.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent queue of EmailPackages backed by an append-only log of
+ * memory-mapped segment files, allowing queued mail to survive a restart 
+ * without holding message bodies on the heap.
+ *   <p>
+ * Each segment is a fixed-size file named mail-NNNNNNNNNNNNNNNN.log in the
+ * queue directory.  Records are appended to the newest segment; when a
+ * record does not fit, that segment is sealed and a new one is created.
+ * Each record consists of a 4-byte payload length, a 4-byte CRC32 of the
+ * payload, a 1-byte state, and the payload (an EmailPackage written by
+ * EmailPackage.writeTo).  Unused space in a segment is zero-filled, so a
+ * zero length marks the end of a segment's records.
+ *   <p>
+ * Records are read in order with poll and remain in the log until they are
+ * acknowledged, which flips the record's state byte in place.  A sealed
+ * segment whose records have all been acknowledged is deleted.  On 
+ * construction, existing segments are scanned and every unacknowledged 
+ * record is queued again, so delivery is at-least-once: mail being 
+ * delivered during a crash may be sent twice.  Scanning stops at the first 
+ * record with an invalid length or checksum, which is how a record torn by
+ * a crash is discarded.
+ *   <p>
+ * Writes to a mapped segment reach the operating system immediately, so
+ * they survive the JVM exiting.  They reach the disk when the segment is
+ * sealed, when force is called, or when the queue is closed.
+ */
+public class DurableMailQueue
+  implements Closeable
+{
+
+  //
+  // Constants.
+  //
+
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+  
+  private static final int    HEADER_SIZE    = 9;
+  private static final byte   STATE_PENDING  = 1;
+  private static final byte   STATE_ACKED    = 2;
+  private static final String SEGMENT_PREFIX = "mail-";
+  private static final String SEGMENT_SUFFIX = ".log";
+
+  //
+  // Member variables.
+  //
+
+  private final Logger   log = LoggerFactory.getLogger(getClass());
+  private final File     directory;
+  private final int      segmentSize;
+  private final Deque<Segment> segments = new ArrayDeque<>();
+  private       Segment  readSegment;
+  private       int      readPosition;
+  private       int      pending;
+  private       long     appended;
+  private       long     acknowledged;
+  private       boolean  closed;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Opens or creates a queue in the given directory, recovering any 
+   * unacknowledged records.
+   *
+   * @param segmentSize the size of each segment file, which is also the 
+   *        upper bound on the size of a single queued e-mail.
+   */
+  public DurableMailQueue(File directory, int segmentSize)
+    throws IOException
+  {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    Files.createDirectories(directory.toPath());
+    
+    final File[] files = directory.listFiles((dir, name) -> 
+        name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+    Arrays.sort(files);
+    for (File file : files)
+    {
+      final Segment segment = new Segment(file, parseSequence(file), 
+          Math.max(segmentSize, (int)Math.min(Integer.MAX_VALUE, file.length())));
+      segment.recover();
+      if (segment.pending == 0)
+      {
+        segment.delete();
+      }
+      else
+      {
+        // Recovered segments are never appended to.
+        segment.sealed = true;
+        segments.addLast(segment);
+        pending += segment.pending;
+      }
+    }
+    if (!segments.isEmpty())
+    {
+      log.info("Recovered {} queued e-mail{} in {} segment{}.", pending,
+          pending == 1 ? "" : "s", segments.size(), 
+          segments.size() == 1 ? "" : "s");
+    }
+    
+    final long nextSequence = segments.isEmpty() ? 0L : segments.peekLast().sequence + 1;
+    segments.addLast(new Segment(segmentFile(nextSequence), nextSequence, segmentSize));
+    readSegment = segments.peekFirst();
+    readPosition = 0;
+  }
+
+  /**
+   * Opens or creates a queue using the default segment size.
+   */
+  public DurableMailQueue(File directory)
+    throws IOException
+  {
+    this(directory, DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * Appends an EmailPackage to the queue.  The EmailPackage must be 
+   * persistable (see EmailPackage.isPersistable); the caller need not retain
+   * it after this method returns.
+   */
+  public void append(EmailPackage email)
+    throws IOException
+  {
+    // Serialize outside of the lock.
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+    try (DataOutputStream out = new DataOutputStream(bytes))
+    {
+      email.writeTo(out);
+    }
+    final byte[] payload = bytes.toByteArray();
+    if (payload.length + HEADER_SIZE > segmentSize)
+    {
+      throw new IOException("E-mail of " + payload.length 
+          + " bytes exceeds segment size of " + segmentSize + " bytes.");
+    }
+    final CRC32 crc = new CRC32();
+    crc.update(payload);
+    
+    synchronized (this)
+    {
+      ensureOpen();
+      Segment segment = segments.peekLast();
+      if (segment.writePosition + HEADER_SIZE + payload.length > segment.capacity)
+      {
+        segment.seal();
+        segment = new Segment(segmentFile(segment.sequence + 1), 
+            segment.sequence + 1, segmentSize);
+        segments.addLast(segment);
+      }
+      
+      final int position = segment.writePosition;
+      final ByteBuffer buffer = segment.buffer;
+      buffer.putInt(position + 4, (int)crc.getValue());
+      buffer.put(position + 8, STATE_PENDING);
+      final ByteBuffer view = buffer.duplicate();
+      view.position(position + HEADER_SIZE);
+      view.put(payload);
+      // Write the length last so that a partially written record is never
+      // mistaken for a complete one.
+      buffer.putInt(position, payload.length);
+      segment.writePosition = position + HEADER_SIZE + payload.length;
+      segment.pending++;
+      pending++;
+      appended++;
+    }
+  }
+
+  /**
+   * Reads the next unread, unacknowledged record, or returns null if there
+   * is none.  The record must later be acknowledged, unless the caller is
+   * content for it to be queued again after a restart.
+   */
+  public Entry poll()
+  {
+    while (true)
+    {
+      final int position;
+      final Segment segment;
+      final byte[] payload;
+      synchronized (this)
+      {
+        if (closed)
+        {
+          return null;
+        }
+        if (readPosition >= readSegment.writePosition)
+        {
+          if (readSegment.sealed && readSegment != segments.peekLast())
+          {
+            readSegment = nextSegment(readSegment);
+            readPosition = 0;
+            continue;
+          }
+          return null;
+        }
+        
+        segment = readSegment;
+        position = readPosition;
+        final ByteBuffer buffer = segment.buffer;
+        final int length = buffer.getInt(position);
+        readPosition = position + HEADER_SIZE + length;
+        if (buffer.get(position + 8) != STATE_PENDING)
+        {
+          continue;
+        }
+        payload = new byte[length];
+        final ByteBuffer view = buffer.duplicate();
+        view.position(position + HEADER_SIZE);
+        view.get(payload);
+      }
+      
+      try
+      {
+        final EmailPackage email = EmailPackage.readFrom(
+            new DataInputStream(new ByteArrayInputStream(payload)));
+        return new Entry(email, segment, position);
+      }
+      catch (IOException ioexc)
+      {
+        log.error("Discarding unreadable queued e-mail in {} at {}.", 
+            segment.file, position, ioexc);
+        acknowledge(segment, position);
+      }
+    }
+  }
+
+  /**
+   * Acknowledges a record returned by poll, so that it will not be queued
+   * again.  Acknowledging after the queue is closed has no effect.
+   */
+  public void acknowledge(Entry entry)
+  {
+    acknowledge(entry.segment, entry.position);
+  }
+
+  private synchronized void acknowledge(Segment segment, int position)
+  {
+    if (closed || segment.buffer.get(position + 8) != STATE_PENDING)
+    {
+      return;
+    }
+    segment.buffer.put(position + 8, STATE_ACKED);
+    segment.pending--;
+    pending--;
+    acknowledged++;
+    
+    // Delete sealed segments that have been fully read and acknowledged.
+    if (segment.pending == 0 && segment.sealed && segment != readSegment)
+    {
+      segments.remove(segment);
+      segment.delete();
+    }
+  }
+
+  /**
+   * Gets the segment after the given one.
+   */
+  private Segment nextSegment(Segment segment)
+  {
+    final Iterator<Segment> iterator = segments.iterator();
+    while (iterator.hasNext())
+    {
+      if (iterator.next() == segment)
+      {
+        final Segment next = iterator.next();
+        // The segment being left may already be fully acknowledged.
+        if (segment.pending == 0)
+        {
+          segments.remove(segment);
+          segment.delete();
+        }
+        return next;
+      }
+    }
+    throw new IllegalStateException("Segment not in queue: " + segment.file);
+  }
+
+  /**
+   * Forces written records to disk.
+   */
+  public synchronized void force()
+  {
+    if (!closed)
+    {
+      segments.peekLast().buffer.force();
+    }
+  }
+
+  /**
+   * Forces written records to disk and closes the segment files.  Records
+   * that have not been acknowledged will be recovered when the queue is
+   * next opened.
+   */
+  @Override
+  public synchronized void close()
+    throws IOException
+  {
+    if (!closed)
+    {
+      closed = true;
+      for (Segment segment : segments)
+      {
+        segment.buffer.force();
+        segment.channel.close();
+      }
+    }
+  }
+
+  private void ensureOpen()
+    throws IOException
+  {
+    if (closed)
+    {
+      throw new IOException("Mail queue is closed.");
+    }
+  }
+
+  /**
+   * Gets the number of records that have not been acknowledged, including
+   * records that have been read but are still being delivered.
+   */
+  public synchronized int getPendingCount()
+  {
+    return pending;
+  }
+
+  /**
+   * Gets the number of records appended since the queue was opened.
+   */
+  public synchronized long getAppendedCount()
+  {
+    return appended;
+  }
+
+  /**
+   * Gets the number of records acknowledged since the queue was opened.
+   */
+  public synchronized long getAcknowledgedCount()
+  {
+    return acknowledged;
+  }
+
+  /**
+   * Gets the number of segment files.
+   */
+  public synchronized int getSegmentCount()
+  {
+    return segments.size();
+  }
+
+  /**
+   * Gets the queue directory.
+   */
+  public File getDirectory()
+  {
+    return directory;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "DurableMailQueue [" + directory + "; " + getPendingCount() 
+        + " pending; " + getSegmentCount() + " segments]";
+  }
+
+  private File segmentFile(long sequence)
+  {
+    return new File(directory, 
+        SEGMENT_PREFIX + String.format("%016d", sequence) + SEGMENT_SUFFIX);
+  }
+
+  private static long parseSequence(File file)
+  {
+    final String name = file.getName();
+    return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), 
+        name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  /**
+   * A queued EmailPackage and the location of its record.
+   */
+  public static final class Entry
+  {
+    private final EmailPackage email;
+    private final Segment      segment;
+    private final int          position;
+
+    private Entry(EmailPackage email, Segment segment, int position)
+    {
+      this.email = email;
+      this.segment = segment;
+      this.position = position;
+    }
+
+    public EmailPackage getEmail()
+    {
+      return email;
+    }
+  }  // End Entry.
+
+  /**
+   * A memory-mapped segment file.
+   */
+  private final class Segment
+  {
+    private final File             file;
+    private final long             sequence;
+    private final FileChannel      channel;
+    private final MappedByteBuffer buffer;
+    private final int              capacity;
+    private       int              writePosition;
+    private       int              pending;
+    private       boolean          sealed;
+
+    private Segment(File file, long sequence, int capacity)
+      throws IOException
+    {
+      this.file = file;
+      this.sequence = sequence;
+      this.capacity = capacity;
+      this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, 
+          StandardOpenOption.READ, StandardOpenOption.WRITE);
+      this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * Scans the records in an existing segment, counting the pending 
+     * records and positioning writes at the end.
+     */
+    private void recover()
+    {
+      int position = 0;
+      final CRC32 crc = new CRC32();
+      while (position + HEADER_SIZE <= capacity)
+      {
+        final int length = buffer.getInt(position);
+        final byte state = buffer.get(position + 8);
+        if (length <= 0 || position + HEADER_SIZE + length > capacity
+            || (state != STATE_PENDING && state != STATE_ACKED))
+        {
+          break;
+        }
+        final byte[] payload = new byte[length];
+        final ByteBuffer view = buffer.duplicate();
+        view.position(position + HEADER_SIZE);
+        view.get(payload);
+        crc.reset();
+        crc.update(payload);
+        if ((int)crc.getValue() != buffer.getInt(position + 4))
+        {
+          log.warn("Discarding torn record in {} at {}.", file, position);
+          break;
+        }
+        if (state == STATE_PENDING)
+        {
+          pending++;
+        }
+        position += HEADER_SIZE + length;
+      }
+      writePosition = position;
+    }
+
+    private void seal()
+    {
+      sealed = true;
+      buffer.force();
+    }
+
+    private void delete()
+    {
+      try
+      {
+        channel.close();
+        Files.deleteIfExists(file.toPath());
+      }
+      catch (IOException ioexc)
+      {
+        log.warn("Unable to delete mail queue segment {}.", file, ioexc);
+      }
+    }
+  }  // End Segment.
+
+}  // End DurableMailQueue.
@@ -27,6 +27,8 @@
 
 package com.techempower.gemini.email.outbound;
 
+import java.io.*;
+import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
 
@@ -58,7 +60,31 @@ import org.slf4j.LoggerFactory;
  *     affect other mail deliveries.
  * <li>OutboundEmail.AfterDeliverySleepMillis - A number of milliseconds to
  *     sleep after sending an outbound e-mail.  This sleep <b>may</b> affect
- *     other mail deliveries.
+ *     other mail deliveries.  Deprecated in favor of 
+ *     MaximumMessagesPerSecond, which paces deliveries without occupying 
+ *     sender threads.
+ * <li>OutboundEmail.MaximumMessagesPerSecond - If greater than zero, 
+ *     deliveries are paced to at most this rate.  The rate is halved when
+ *     deliveries fail and recovers gradually as they succeed; see 
+ *     AdaptiveRateLimiter.  Default: 0 (unlimited).
+ * <li>OutboundEmail.MinimumMessagesPerSecond - The rate below which 
+ *     failures will not reduce the delivery rate.  Default: 1.
+ * <li>OutboundEmail.MaximumConcurrentPerDomain - If greater than zero, the
+ *     number of e-mails that may be in delivery at once to any one 
+ *     recipient domain.  E-mails beyond the limit wait in a queue for their
+ *     domain, without occupying a sender thread, and each delivery that 
+ *     completes hands its place to the next.  Default: 0 (unlimited).
+ * <li>OutboundEmail.QueueDirectory - If provided, queued e-mails are written
+ *     to a DurableMailQueue in this directory rather than being held in
+ *     memory, and e-mails still queued when the application stops are 
+ *     delivered after it restarts.  E-mails that cannot be persisted (see
+ *     EmailPackage.isPersistable) are queued in memory as usual.  Changes
+ *     take effect after a restart.  Default: none.
+ * <li>OutboundEmail.QueueSegmentMegabytes - The size of each durable queue
+ *     segment file, which bounds the size of a single e-mail.  Default: 64.
+ * <li>OutboundEmail.QueueReadAhead - The number of e-mails read from the
+ *     durable queue and held in memory for delivery at once.  Default: 
+ *     twice the number of threads.
  *   </ul>
  *
  * @see EmailTransport
@@ -91,6 +117,17 @@ public class EmailServicer
   private          int                   senderThreads = DEFAULT_SENDER_THREADS;
   private          long                  beforeDeliveryDelayMillis = DEFAULT_DELAY_MILLIS;
   private          long                  afterDeliverySleepMillis  = DEFAULT_DELAY_MILLIS; 
+  private volatile AdaptiveRateLimiter   rateLimiter;
+  private volatile int                   maximumConcurrentPerDomain;
+  private final    ConcurrentMap<String, DomainDeliveries> inFlightByDomain = 
+      new ConcurrentHashMap<>();
+  private final    LatencyStats          deliveryLatency = new LatencyStats("Email deliveries");
+  private final    long                  startTime = System.currentTimeMillis();
+  private volatile DurableMailQueue      durableQueue;
+  private volatile int                   queueReadAhead;
+  private final    AtomicInteger         durableInFlight = new AtomicInteger();
+  private final    Object                queueSignal = new Object();
+  private          QueueReaderThread     queueReader;
 
   //
   // Member methods.
@@ -129,6 +166,23 @@ public class EmailServicer
     setAfterDeliverySleepMillis(focus.getLong("AfterDeliverySleepMillis", getAfterDeliverySleepMillis()));
     log.info("Outbound email threads will sleep for {}ms after each delivery.", getAfterDeliverySleepMillis());
     
+    // Set the adaptive rate limit.
+    final int maximumRate = focus.getInt("MaximumMessagesPerSecond", 0);
+    if (maximumRate > 0)
+    {
+      final int minimumRate = focus.getInt("MinimumMessagesPerSecond", 1, 1, maximumRate);
+      rateLimiter = new AdaptiveRateLimiter(minimumRate, maximumRate);
+      log.info("Outbound email will be limited to {} to {} messages per second.", 
+          minimumRate, maximumRate);
+    }
+    else
+    {
+      rateLimiter = null;
+    }
+    maximumConcurrentPerDomain = focus.getInt("MaximumConcurrentPerDomain", 0);
+    
+    configureDurableQueue(focus);
+    
     // Get the number of threads.
     int newSenderThreads = this.senderThreads;
     if (props.has("OutboundEmailThreads"))
@@ -167,16 +221,78 @@ public class EmailServicer
     }
   }
 
+  /**
+   * Opens the durable queue, if one is configured.
+   */
+  protected void configureDurableQueue(EnhancedProperties.Focus focus)
+  {
+    queueReadAhead = focus.getInt("QueueReadAhead", senderThreads * 2, 1, Integer.MAX_VALUE);
+    final String directory = focus.get("QueueDirectory", "");
+    if (durableQueue != null)
+    {
+      if (!durableQueue.getDirectory().equals(new File(directory)))
+      {
+        log.info("Durable mail queue directory will change after a restart.");
+      }
+    }
+    else if (StringHelper.isNonEmpty(directory))
+    {
+      try
+      {
+        durableQueue = new DurableMailQueue(new File(directory), 
+            focus.getInt("QueueSegmentMegabytes", 
+                DurableMailQueue.DEFAULT_SEGMENT_SIZE / 1024 / 1024, 1, 1024) 
+            * 1024 * 1024);
+        queued.addAndGet(durableQueue.getPendingCount());
+        log.info("Queueing outbound email in {}.", durableQueue);
+      }
+      catch (IOException ioexc)
+      {
+        log.error("Unable to open durable mail queue in {}; queueing in memory.", 
+            directory, ioexc);
+      }
+    }
+  }
+
   @Override
   public void begin()
   {
+    if (durableQueue != null && queueReader == null)
+    {
+      queueReader = new QueueReaderThread();
+      queueReader.begin();
+    }
   }
 
   @Override
   public void end()
   {
+    // Stop reading from the durable queue.
+    if (queueReader != null)
+    {
+      queueReader.end();
+      queueReader = null;
+    }
+    
     // Terminate e-mail servicer threads.
     executor.shutdown();
+    
+    // Close pooled connections to mail servers.
+    transport.getTransportPool().closeIdle();
+    
+    // E-mails that have not been delivered remain in the durable queue for
+    // delivery after a restart.
+    if (durableQueue != null)
+    {
+      try
+      {
+        durableQueue.close();
+      }
+      catch (IOException ioexc)
+      {
+        log.warn("Exception while closing durable mail queue.", ioexc);
+      }
+    }
   }
   
   /**
@@ -239,6 +355,41 @@ public class EmailServicer
     return sent.get();
   }
   
+  /**
+   * Gets the average number of e-mails sent per second since this servicer
+   * was constructed.
+   */
+  public double getSentPerSecond()
+  {
+    final long elapsed = Math.max(1L, System.currentTimeMillis() - startTime);
+    return getSentCount() * (double)UtilityConstants.SECOND / elapsed;
+  }
+  
+  /**
+   * Gets latency statistics for delivery attempts, successful or not.
+   */
+  public LatencyStats getDeliveryLatency()
+  {
+    return deliveryLatency;
+  }
+  
+  /**
+   * Gets the adaptive rate limiter, or null if delivery is not rate limited.
+   */
+  public AdaptiveRateLimiter getRateLimiter()
+  {
+    return rateLimiter;
+  }
+  
+  /**
+   * Gets the number of e-mails in delivery to a recipient domain.
+   */
+  public int getInFlightCount(String domain)
+  {
+    final DomainDeliveries deliveries = inFlightByDomain.get(domain);
+    return deliveries == null ? 0 : deliveries.inFlight;
+  }
+
   /**
    * Gets the number of Sender threads.
    */
@@ -368,8 +519,12 @@ public class EmailServicer
           && (StringHelper.isNonEmpty(email.getAuthor()))
           )
         {
-          // Queue for sending.
-          scheduleSender(email);
+          // Queue for sending.  E-mails being requeued for another attempt
+          // are not in the durable queue, so they remain in memory.
+          if (!incrementQueued || !appendToDurableQueue(email))
+          {
+            scheduleSender(email);
+          }
           if (incrementQueued)
           {
             incrementQueued();
@@ -399,10 +554,193 @@ public class EmailServicer
    */
   protected void scheduleSender(final EmailPackage email)
   {
-    executor.schedule(new Sender(this, email), getBeforeDeliveryDelayMillis(), 
+    executor.schedule(new Sender(this, email, null), getBeforeDeliveryDelayMillis(), 
         TimeUnit.MILLISECONDS);
   }
   
+  /**
+   * Appends an e-mail to the durable queue, if one is in use and the e-mail
+   * can be persisted.  Returns false if the e-mail was not appended.
+   */
+  private boolean appendToDurableQueue(EmailPackage email)
+  {
+    final DurableMailQueue queue = durableQueue;
+    if (queue == null || !email.isPersistable())
+    {
+      return false;
+    }
+    try
+    {
+      queue.append(email);
+    }
+    catch (IOException ioexc)
+    {
+      log.warn("Unable to append to durable mail queue; queueing in memory.", ioexc);
+      return false;
+    }
+    synchronized (queueSignal)
+    {
+      queueSignal.notifyAll();
+    }
+    return true;
+  }
+  
+  /**
+   * Marks an e-mail read from the durable queue as finished, whether 
+   * delivered or removed after exhausting its retries.
+   */
+  private void completeDurable(DurableMailQueue.Entry entry)
+  {
+    durableQueue.acknowledge(entry);
+    durableInFlight.decrementAndGet();
+    synchronized (queueSignal)
+    {
+      queueSignal.notifyAll();
+    }
+  }
+  
+  /**
+   * Gets the durable mail queue, or null if e-mails are queued in memory.
+   */
+  public DurableMailQueue getDurableQueue()
+  {
+    return durableQueue;
+  }
+  
+  /**
+   * Reads e-mails from the durable queue and schedules them for delivery,
+   * keeping at most queueReadAhead of them in memory at once.
+   */
+  class QueueReaderThread
+    extends EndableThread
+  {
+    QueueReaderThread()
+    {
+      super("Durable Mail Queue Reader");
+      setDaemon(true);
+    }
+    
+    @Override
+    public void run()
+    {
+      setStartTime();
+      
+      final DurableMailQueue queue = durableQueue;
+      while (isRunning())
+      {
+        if (durableInFlight.get() < queueReadAhead)
+        {
+          final DurableMailQueue.Entry entry = queue.poll();
+          if (entry != null)
+          {
+            durableInFlight.incrementAndGet();
+            executor.schedule(new Sender(EmailServicer.this, entry.getEmail(), entry),
+                getBeforeDeliveryDelayMillis(), TimeUnit.MILLISECONDS);
+            continue;
+          }
+        }
+        
+        // Nothing to do for now; write recent appends to disk and wait.
+        queue.force();
+        synchronized (queueSignal)
+        {
+          try
+          {
+            queueSignal.wait(UtilityConstants.SECOND);
+          }
+          catch (InterruptedException iexc)
+          {
+            // Interrupted by end(); the loop condition handles stopping.
+          }
+        }
+      }
+    }
+  }  // End QueueReaderThread.
+  
+  /**
+   * Reschedules a Sender that could not deliver yet.
+   */
+  private void reschedule(Sender sender, long delay, TimeUnit unit)
+  {
+    executor.schedule(sender, delay, unit);
+  }
+  
+  /**
+   * Gets the recipient domain used for per-domain concurrency limits.
+   */
+  private static String getDomain(EmailPackage email)
+  {
+    final String recipient = email.getRecipient();
+    final int at = recipient.lastIndexOf('@');
+    return (at >= 0 ? recipient.substring(at + 1) : recipient).trim().toLowerCase();
+  }
+  
+  /**
+   * Attempts to claim one of the domain's concurrent deliveries.  If none
+   * is free, the Sender is queued for the domain and will be scheduled 
+   * when releaseDomain hands it a delivery.
+   */
+  private boolean acquireDomain(String domain, Sender sender)
+  {
+    final int maximum = maximumConcurrentPerDomain;
+    if (maximum <= 0)
+    {
+      return true;
+    }
+    final boolean[] acquired = new boolean[1];
+    inFlightByDomain.compute(domain, (key, deliveries) -> {
+      final DomainDeliveries result = (deliveries != null 
+          ? deliveries 
+          : new DomainDeliveries());
+      if (result.inFlight < maximum)
+      {
+        result.inFlight++;
+        acquired[0] = true;
+      }
+      else
+      {
+        result.waiting.add(sender);
+      }
+      return result;
+    });
+    return acquired[0];
+  }
+  
+  /**
+   * Releases a concurrent delivery claimed by acquireDomain, handing it to
+   * the next Sender waiting for the domain if there is one.  A domain with
+   * nothing in flight or waiting is removed.
+   */
+  private void releaseDomain(String domain)
+  {
+    final Sender[] next = new Sender[1];
+    inFlightByDomain.computeIfPresent(domain, (key, deliveries) -> {
+      next[0] = deliveries.waiting.poll();
+      if (next[0] == null)
+      {
+        deliveries.inFlight--;
+      }
+      return (deliveries.inFlight <= 0 && deliveries.waiting.isEmpty()
+          ? null
+          : deliveries);
+    });
+    if (next[0] != null)
+    {
+      next[0].domainAcquired = true;
+      reschedule(next[0], 0L, TimeUnit.MILLISECONDS);
+    }
+  }
+  
+  /**
+   * The deliveries in flight to a domain and the Senders waiting for one.
+   * Only modified within the map's compute methods.
+   */
+  private static class DomainDeliveries
+  {
+    private volatile int          inFlight;
+    private final    Queue<Sender> waiting = new ArrayDeque<>();
+  }
+  
   /**
    * A Runnable responsible for sending an e-mail via the Transport.
    */
@@ -412,23 +750,76 @@ public class EmailServicer
     private final EmailServicer  servicer;
     private final EmailPackage   email;
     private final Logger log = LoggerFactory.getLogger(getClass());
+    private final DurableMailQueue.Entry entry;
+    private       boolean rateReserved;
+    private volatile boolean domainAcquired;
     
-    public Sender(EmailServicer servicer, EmailPackage email)
+    public Sender(EmailServicer servicer, EmailPackage email, 
+        DurableMailQueue.Entry entry)
     {
       this.servicer = servicer;
       this.email = email;
+      this.entry = entry;
     }
     
     @Override
     public void run()
     {
+      final String domain = getDomain(email);
+      if (!domainAcquired && !servicer.acquireDomain(domain, this))
+      {
+        // Queued for the domain; releaseDomain will schedule this again.
+        return;
+      }
+      domainAcquired = false;
+      
+      final AdaptiveRateLimiter limiter = servicer.getRateLimiter();
+      if (limiter != null && !rateReserved)
+      {
+        rateReserved = true;
+        final long wait = limiter.reserve();
+        if (wait > 0L)
+        {
+          servicer.releaseDomain(domain);
+          servicer.reschedule(this, wait, TimeUnit.NANOSECONDS);
+          return;
+        }
+      }
+      rateReserved = false;
+      
       //debug("Attempting to send email to " + email.getRecipient());
-      boolean success = servicer.getTransport().sendEmail(email);
+      final long start = System.nanoTime();
+      final boolean success;
+      try
+      {
+        success = servicer.getTransport().sendEmail(email);
+      }
+      finally
+      {
+        servicer.releaseDomain(domain);
+        servicer.getDeliveryLatency().recordSince(start);
+      }
+      
+      if (limiter != null)
+      {
+        if (success)
+        {
+          limiter.onSuccess();
+        }
+        else
+        {
+          limiter.onFailure();
+        }
+      }
 
       // If we were successful, increment the sent count.
       if (success)
       {
         servicer.incrementSent();
+        if (entry != null)
+        {
+          servicer.completeDurable(entry);
+        }
       }
       // If we were not successful, either kill the e-mail or requeue it.
       else
@@ -445,6 +836,18 @@ public class EmailServicer
         {
           log.info("Mail removed from queue.");
           servicer.incrementRemoved();
+          if (entry != null)
+          {
+            servicer.completeDurable(entry);
+          }
+        }
+
+        // E-mails from the durable queue are retried without leaving it.
+        else if (entry != null)
+        {
+          servicer.reschedule(this, servicer.getBeforeDeliveryDelayMillis(), 
+              TimeUnit.MILLISECONDS);
+          log.info("Mail rescheduled.");
         }
 
         // Otherwise, re-queue the email at the end of the queue.
@@ -481,9 +884,11 @@ public class EmailServicer
     int currentPending = getPendingCount();
     return "EmailServicer "
         + "[" + currentSent + " sent" 
+        + String.format(" (%.1f/s)", getSentPerSecond())
         + "; " + currentQueued + " queued" 
         + "; " + currentRemoved + " removed"
         + "; " + currentPending + " pending"
+        + (durableQueue != null ? "; " + durableQueue.getPendingCount() + " durable" : "")
         + pausedString
         + "]";
   }
@@ -26,16 +26,23 @@
  *******************************************************************************/
 package com.techempower.gemini.lifecycle;
 
+import java.util.*;
+import java.util.concurrent.*;
+
 import com.techempower.cache.*;
 import com.techempower.gemini.*;
+import com.techempower.helper.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Initialize the EntityStore, if one is enabled within the application.
+ * Initialize the EntityStore, if one is enabled within the application.  If
+ * a cache snapshot is configured, the caches are restored from it at 
+ * startup and it is written at shutdown (and optionally on an interval).
  */
 public class   InitEntityStore
-    implements InitializationTask 
+    implements InitializationTask,
+               ShutdownTask
 {
   private Logger log = LoggerFactory.getLogger(getClass());
 
@@ -47,7 +54,67 @@ public class   InitEntityStore
     {
       log.info("Initializing entity store.");
       store.initialize();
+      
+      if (store.isSnapshotEnabled())
+      {
+        store.loadSnapshot();
+        
+        final int interval = store.getSnapshotIntervalSeconds();
+        if (interval > 0)
+        {
+          ThreadHelper.scheduleWithFixedDelay(store::writeSnapshot, 
+              interval, interval, TimeUnit.SECONDS);
+        }
+      }
+      
+      if (store.isPreloadEnabled())
+      {
+        preload(store);
+      }
+    }
+  }
+  
+  @Override
+  public void taskShutdown(GeminiApplication application)
+  {
+    final EntityStore store = application.getStore();
+    if (store != null
+        && store.isInitialized()
+        && store.isSnapshotEnabled())
+    {
+      log.info("Writing cache snapshot.");
+      store.writeSnapshot();
+    }
+  }
+  
+  /**
+   * Preloads the entity store's cache groups and relations and reports the
+   * load time and row count of each, slowest first.
+   */
+  protected void preload(EntityStore store)
+  {
+    final long start = System.currentTimeMillis();
+    final List<PreloadResult> results = store.preload();
+    final long elapsed = System.currentTimeMillis() - start;
+
+    results.sort(Comparator.comparingLong(PreloadResult::millis).reversed());
+    long rows = 0;
+    int failures = 0;
+    for (PreloadResult result : results)
+    {
+      rows += result.rows();
+      if (result.isSuccessful())
+      {
+        log.info("  {}: {} rows in {}ms", result.name(), result.rows(), result.millis());
+      }
+      else
+      {
+        failures++;
+        log.warn("  {}: failed after {}ms: {}", result.name(), result.millis(), result.error().toString());
+      }
     }
+    log.info("Preloaded {} cache groups and relations ({} failed), {} rows, in {}ms.",
+        results.size(), failures, rows, elapsed);
   }
 
 }
@@ -29,6 +29,7 @@ package com.techempower.gemini.monitor;
 
 import java.lang.management.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
 
 import com.techempower.asynchronous.*;
@@ -128,6 +129,15 @@ public abstract class GeminiMonitor
   private final AtomicInteger     concurrentPages = new AtomicInteger(0);
   private final AtomicInteger     concurrentQueries = new AtomicInteger(0);
   
+  // Response compression
+  private final LongAdder         compressedResponses = new LongAdder();
+  private final LongAdder         compressionBytesIn = new LongAdder();
+  private final LongAdder         compressionBytesOut = new LongAdder();
+  private final LongAdder         compressionNanos = new LongAdder();
+  private final LongAdder         precompressedResponses = new LongAdder();
+  private final LongAdder         precompressedBytesSaved = new LongAdder();
+  private final ConcurrentMap<String, LatencyStats> templateRenders = new ConcurrentHashMap<>();
+  
   private final GeminiMonitorThread thread;
   private GeminiMonitorListener[] monitorListeners;  // Components listening to the GeminiMonitor.
 
@@ -893,6 +903,104 @@ public abstract class GeminiMonitor
     }
   }
   
+  /**
+   * Compression: Records a response that was compressed as it was sent.
+   * 
+   * @param bytesIn The uncompressed size of the response body.
+   * @param bytesOut The compressed size of the response body.
+   * @param nanos The time spent compressing.
+   */
+  public void responseCompressed(long bytesIn, long bytesOut, long nanos)
+  {
+    compressedResponses.increment();
+    compressionBytesIn.add(bytesIn);
+    compressionBytesOut.add(bytesOut);
+    compressionNanos.add(nanos);
+  }
+  
+  /**
+   * Compression: Records a response served from a precompressed file.
+   * 
+   * @param originalLength The size of the uncompressed file.
+   * @param compressedLength The size of the precompressed file sent.
+   */
+  public void precompressedDelivered(long originalLength, long compressedLength)
+  {
+    precompressedResponses.increment();
+    precompressedBytesSaved.add(originalLength - compressedLength);
+  }
+  
+  /**
+   * Gets the number of responses compressed as they were sent.
+   */
+  public long getCompressedResponseCount()
+  {
+    return compressedResponses.sum();
+  }
+  
+  /**
+   * Gets the total time, in nanoseconds, spent compressing responses.
+   */
+  public long getCompressionNanos()
+  {
+    return compressionNanos.sum();
+  }
+  
+  /**
+   * Gets the number of bytes saved by compressing responses as they were
+   * sent.
+   */
+  public long getCompressionBytesSaved()
+  {
+    return compressionBytesIn.sum() - compressionBytesOut.sum();
+  }
+  
+  /**
+   * Gets the overall ratio of compressed to uncompressed size for responses
+   * compressed as they were sent; 1.0 if none have been.
+   */
+  public double getCompressionRatio()
+  {
+    final long in = compressionBytesIn.sum();
+    return (in == 0L ? 1.0 : (double)compressionBytesOut.sum() / in);
+  }
+  
+  /**
+   * Gets the number of responses served from precompressed files.
+   */
+  public long getPrecompressedResponseCount()
+  {
+    return precompressedResponses.sum();
+  }
+  
+  /**
+   * Gets the number of bytes saved by serving precompressed files.
+   */
+  public long getPrecompressedBytesSaved()
+  {
+    return precompressedBytesSaved.sum();
+  }
+  
+  /**
+   * Templates: Records the time taken to render a template.
+   * 
+   * @param template The template's filename.
+   * @param nanos The time spent rendering.
+   */
+  public void templateRendered(String template, long nanos)
+  {
+    templateRenders.computeIfAbsent(template, LatencyStats::new).record(nanos);
+  }
+  
+  /**
+   * Gets render time statistics for each template rendered, keyed by 
+   * template filename.
+   */
+  public Map<String, LatencyStats> getTemplateRenderStats()
+  {
+    return Collections.unmodifiableMap(templateRenders);
+  }
+  
   /**
    * Gets the current OVERALL dispatch load.
    */
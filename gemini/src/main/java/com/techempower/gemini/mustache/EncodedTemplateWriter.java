@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.mustache;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * A Writer that encodes Mustache output as UTF-8 directly into a byte
+ * buffer, writing the buffer to an OutputStream as it fills.  This avoids
+ * the per-request character encoding a servlet response's PrintWriter
+ * would otherwise perform on every byte of a template.
+ *   <p>
+ * Mustache.java writes each literal segment of a compiled template as the
+ * same char[] on every execution.  When given a segment map, this writer
+ * keeps the UTF-8 encoding of each such array (keyed by identity, since
+ * arrays do not override equals) so that static markup is encoded once
+ * per compiled template rather than once per request.  Values are encoded
+ * as they are written.
+ *   <p>
+ * Not thread-safe; use one instance per rendering.  Closing this writer
+ * writes out any buffered bytes but does not close the underlying stream.
+ */
+public class EncodedTemplateWriter
+     extends Writer
+{
+
+  //
+  // Constants.
+  //
+  
+  /**
+   * The maximum number of segments retained in a segment map, protecting
+   * against unbounded growth if arrays other than template literals are
+   * written.
+   */
+  public static final int MAXIMUM_SEGMENTS = 16384;
+  
+  private static final int MINIMUM_BUFFER_SIZE = 16;
+
+  //
+  // Member variables.
+  //
+
+  private final OutputStream         out;
+  private final byte[]               buffer;
+  private final Map<char[], byte[]>  segments;
+  private int                        count;
+  private char                       pendingHighSurrogate;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   * 
+   * @param out The stream to which encoded bytes are written.
+   * @param buffer A buffer to encode into, of at least 16 bytes.  The
+   *     buffer may be reused once this writer is no longer in use.
+   * @param segments A map in which pre-encoded literal segments are kept,
+   *     shared across renderings of the same compiled templates; or null
+   *     to encode everything as it is written.  The map must be safe for
+   *     concurrent use if shared between threads.
+   */
+  public EncodedTemplateWriter(OutputStream out, byte[] buffer, 
+      Map<char[], byte[]> segments)
+  {
+    if (buffer.length < MINIMUM_BUFFER_SIZE)
+    {
+      throw new IllegalArgumentException("Buffer must be at least " 
+          + MINIMUM_BUFFER_SIZE + " bytes.");
+    }
+    this.out = out;
+    this.buffer = buffer;
+    this.segments = segments;
+  }
+
+  /**
+   * Writes a whole array, which Mustache.java does only for literal 
+   * template segments, using its pre-encoded bytes when available.
+   */
+  @Override
+  public void write(char[] cbuf) throws IOException
+  {
+    if (segments == null)
+    {
+      write(cbuf, 0, cbuf.length);
+      return;
+    }
+    
+    byte[] encoded = segments.get(cbuf);
+    if (encoded == null)
+    {
+      encoded = new String(cbuf).getBytes(StandardCharsets.UTF_8);
+      if (segments.size() < MAXIMUM_SEGMENTS)
+      {
+        segments.put(cbuf, encoded);
+      }
+    }
+    writeEncoded(encoded);
+  }
+
+  @Override
+  public void write(char[] cbuf, int off, int len) throws IOException
+  {
+    final int end = off + len;
+    for (int i = off; i < end; i++)
+    {
+      encode(cbuf[i]);
+    }
+  }
+
+  @Override
+  public void write(String str, int off, int len) throws IOException
+  {
+    final int end = off + len;
+    for (int i = off; i < end; i++)
+    {
+      encode(str.charAt(i));
+    }
+  }
+
+  @Override
+  public void write(int c) throws IOException
+  {
+    encode((char)c);
+  }
+
+  /**
+   * Writes already-encoded UTF-8 bytes.
+   */
+  public void writeEncoded(byte[] encoded) throws IOException
+  {
+    completeSurrogate();
+    if (encoded.length > buffer.length - count)
+    {
+      flushBuffer();
+      if (encoded.length >= buffer.length)
+      {
+        out.write(encoded);
+        return;
+      }
+    }
+    System.arraycopy(encoded, 0, buffer, count, encoded.length);
+    count += encoded.length;
+  }
+
+  /**
+   * Writes any buffered bytes to the underlying stream without flushing
+   * the stream itself.
+   */
+  public void flushBuffer() throws IOException
+  {
+    if (count > 0)
+    {
+      out.write(buffer, 0, count);
+      count = 0;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException
+  {
+    flushBuffer();
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    completeSurrogate();
+    flushBuffer();
+  }
+  
+  /**
+   * Encodes a single character into the buffer.  A high surrogate is held
+   * until the next character so that pairs split across writes are encoded
+   * as one code point.  Unpaired surrogates are written as '?', matching
+   * String.getBytes.
+   */
+  private void encode(char c) throws IOException
+  {
+    if (buffer.length - count < 4)
+    {
+      flushBuffer();
+    }
+    if (pendingHighSurrogate != 0)
+    {
+      final char high = pendingHighSurrogate;
+      pendingHighSurrogate = 0;
+      if (Character.isLowSurrogate(c))
+      {
+        final int codePoint = Character.toCodePoint(high, c);
+        buffer[count++] = (byte)(0xF0 | (codePoint >> 18));
+        buffer[count++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+        buffer[count++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+        buffer[count++] = (byte)(0x80 | (codePoint & 0x3F));
+        return;
+      }
+      buffer[count++] = '?';
+      if (buffer.length - count < 3)
+      {
+        flushBuffer();
+      }
+    }
+    
+    if (c < 0x80)
+    {
+      buffer[count++] = (byte)c;
+    }
+    else if (c < 0x800)
+    {
+      buffer[count++] = (byte)(0xC0 | (c >> 6));
+      buffer[count++] = (byte)(0x80 | (c & 0x3F));
+    }
+    else if (Character.isHighSurrogate(c))
+    {
+      pendingHighSurrogate = c;
+    }
+    else if (Character.isLowSurrogate(c))
+    {
+      buffer[count++] = '?';
+    }
+    else
+    {
+      buffer[count++] = (byte)(0xE0 | (c >> 12));
+      buffer[count++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+      buffer[count++] = (byte)(0x80 | (c & 0x3F));
+    }
+  }
+  
+  /**
+   * Writes a held high surrogate that was not followed by a low surrogate.
+   */
+  private void completeSurrogate() throws IOException
+  {
+    if (pendingHighSurrogate != 0)
+    {
+      pendingHighSurrogate = 0;
+      if (count == buffer.length)
+      {
+        flushBuffer();
+      }
+      buffer[count++] = '?';
+    }
+  }
+}
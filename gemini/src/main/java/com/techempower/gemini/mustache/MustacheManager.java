@@ -27,10 +27,13 @@
 package com.techempower.gemini.mustache;
 
 import java.io.*;
+import java.nio.charset.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import com.github.mustachejava.*;
 import com.techempower.gemini.*;
+import com.techempower.gemini.monitor.*;
 import com.techempower.helper.*;
 import com.techempower.scheduler.*;
 import com.techempower.util.*;
@@ -63,13 +66,26 @@ import org.slf4j.LoggerFactory;
  *     environment sees templates updated via sftp, for example, an interval
  *     of 120 seconds may be fair.  Default is 0, which means do not ever
  *     reset.</li>
+ * <li>Mustache.EncodedRendering - When enabled (the default) and the
+ *     application's default response character set is UTF-8, templates
+ *     rendered to a Context are written to the response's output stream
+ *     through an EncodedTemplateWriter, with static template segments
+ *     encoded once rather than on every request.</li>
+ * <li>Mustache.OutputBufferSize - The size, in bytes, of the pooled buffers
+ *     used by encoded rendering.  Default is 8192.</li>
  * </ul>
+ *
+ * <p>When the template cache is enabled, compiled templates are kept by
+ * name and reused until the template cache is reset.  Render times are
+ * recorded per template by the application's GeminiMonitor.</p>
  */
 public abstract class MustacheManager
     implements Configurable
 {
   
   public static final String DEFAULT_MUSTACHE_EXTENSION = ".mustache"; 
+  public static final int    DEFAULT_OUTPUT_BUFFER_SIZE = 8192;
+  public static final int    MAXIMUM_POOLED_BUFFERS     = 64;
 
   protected final GeminiApplication application;
   private final TemplateAppReferences applicationReferences;
@@ -80,6 +96,11 @@ public abstract class MustacheManager
   protected boolean useTemplateCache = true;
   protected long resetTemplateCacheInterval = 0L;
   protected final CacheResetEvent cacheResetEvent;
+  protected boolean encodedRendering = true;
+  private int outputBufferSize = DEFAULT_OUTPUT_BUFFER_SIZE;
+  private final ConcurrentMap<String, Mustache> compiledTemplates = new ConcurrentHashMap<>();
+  private final Map<char[], byte[]> encodedSegments = new ConcurrentHashMap<>();
+  private final BlockingQueue<byte[]> outputBuffers = new ArrayBlockingQueue<>(MAXIMUM_POOLED_BUFFERS);
 
   /**
    * Constructor.
@@ -111,6 +132,14 @@ public abstract class MustacheManager
         this.useTemplateCache ? "" : "not ");
     final int resetSeconds = focus.getInt("TemplateCacheResetInterval", 0);
     this.resetTemplateCacheInterval = resetSeconds * UtilityConstants.SECOND;
+    this.encodedRendering = focus.getBoolean("EncodedRendering", true);
+    final int bufferSize = focus.getInt("OutputBufferSize", 
+        DEFAULT_OUTPUT_BUFFER_SIZE, 512, Integer.MAX_VALUE);
+    if (bufferSize != this.outputBufferSize)
+    {
+      this.outputBufferSize = bufferSize;
+      this.outputBuffers.clear();
+    }
 
     // Warn about deprecated "MustacheDirectory" configuration directive.
     if (props.has("MustacheDirectory"))
@@ -129,10 +158,36 @@ public abstract class MustacheManager
   }
   
   /**
-   * Construct the MustacheFactory.
+   * Construct the MustacheFactory.  Implementations should also call
+   * resetCompiledTemplates so that templates compiled by the previous
+   * factory are discarded.
    */
   public abstract void resetTemplateCache();
   
+  /**
+   * Discards the compiled templates and pre-encoded template segments kept
+   * by this manager.
+   */
+  protected void resetCompiledTemplates()
+  {
+    compiledTemplates.clear();
+    encodedSegments.clear();
+  }
+  
+  /**
+   * Gets the compiled template for a filename, compiling it only once while
+   * the template cache is enabled.
+   */
+  protected Mustache getTemplate(String filename)
+  {
+    if (useTemplateCache)
+    {
+      return compiledTemplates.computeIfAbsent(filename, 
+          name -> getMustacheFactory().compile(name));
+    }
+    return getMustacheFactory().compile(filename);
+  }
+  
   /**
    * Gets a TemplateReferences object containing a reference to the
    * MustacheApplicationReferences and the provided request-scope object.
@@ -215,8 +270,15 @@ public abstract class MustacheManager
           + filename + " " + writer + " " + Arrays.toString(scope));
     }
     
-    final Mustache mustache = this.getMustacheFactory().compile(filename);
+    final long start = System.nanoTime();
+    final Mustache mustache = getTemplate(filename);
     mustache.execute(writer, scope);
+    
+    final GeminiMonitor monitor = application.getMonitor();
+    if (monitor != null)
+    {
+      monitor.templateRendered(filename, System.nanoTime() - start);
+    }
   }
   
   /**
@@ -232,9 +294,16 @@ public abstract class MustacheManager
   {
     try
     {
-      final Writer writer = context.getWriter();
       final TemplateReferences refs = getTemplateReferences(context, scope);
-      render(filename, writer, refs);
+      final OutputStream out = getEncodedOutputStream(context);
+      if (out != null)
+      {
+        renderEncoded(filename, out, refs);
+      }
+      else
+      {
+        render(filename, context.getWriter(), refs);
+      }
       return true;
     }
     catch (IOException ioexc)
@@ -243,6 +312,57 @@ public abstract class MustacheManager
     }
   }
   
+  /**
+   * Renders a template to an OutputStream as UTF-8, using a pooled buffer
+   * and the pre-encoded static segments of the compiled template.  The
+   * stream itself is not flushed.
+   */
+  protected void renderEncoded(String filename, OutputStream out, 
+      Object... scope) throws IOException
+  {
+    byte[] buffer = outputBuffers.poll();
+    if (buffer == null || buffer.length != outputBufferSize)
+    {
+      buffer = new byte[outputBufferSize];
+    }
+    try
+    {
+      final EncodedTemplateWriter writer = new EncodedTemplateWriter(out, 
+          buffer, useTemplateCache ? encodedSegments : null);
+      render(filename, writer, scope);
+      writer.close();
+    }
+    finally
+    {
+      outputBuffers.offer(buffer);
+    }
+  }
+  
+  /**
+   * Gets the response output stream for encoded rendering, or null if the
+   * template should instead be rendered through the Context's writer:
+   * encoded rendering is disabled, the response character set is not
+   * UTF-8, or the response's writer is already in use.
+   */
+  private OutputStream getEncodedOutputStream(Context context) 
+      throws IOException
+  {
+    if ( (!encodedRendering)
+      || (!StandardCharsets.UTF_8.equals(application.getDefaultResponseCharset()))
+      )
+    {
+      return null;
+    }
+    try
+    {
+      return context.getOutputStream();
+    }
+    catch (IllegalStateException isexc)
+    {
+      return null;
+    }
+  }
+  
   /**
    * Cache reset event.
    */
@@ -274,6 +394,7 @@ public abstract class MustacheManager
       if (resetTemplateCacheInterval > 0L)
       {
         resetTemplateCache();
+        resetCompiledTemplates();
         scheduler.scheduleEvent(this, getDefaultScheduledTime());
       }
     }
@@ -282,6 +403,7 @@ public abstract class MustacheManager
   protected void setupTemplateCache()
   {
     resetTemplateCache();
+    resetCompiledTemplates();
     
     if (this.resetTemplateCacheInterval > 0L)
     {
@@ -26,10 +26,13 @@
  *******************************************************************************/
 package com.techempower.gemini.path;
 
+import java.io.*;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
 
 import com.techempower.cache.*;
 import com.techempower.collection.*;
@@ -39,8 +42,10 @@ import com.techempower.gemini.context.*;
 import com.techempower.gemini.input.*;
 import com.techempower.gemini.mustache.*;
 import com.techempower.gemini.path.annotation.Body;
+import com.techempower.gemini.path.annotation.CachedResponse;
 import com.techempower.helper.*;
 import com.techempower.js.*;
+import com.techempower.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -431,6 +436,136 @@ public abstract class BasicPathHandler<C extends Context>
   {
     return javaScriptWriter;
   }
+
+  /**
+   * Invokes a handler method, serving its response from the EntityStore's
+   * ResponseCache if the method is annotated with @CachedResponse.  Only
+   * GET and HEAD requests are cached; concurrent requests for the same
+   * uncached response wait for a single rendering rather than each
+   * rendering their own.  A response is cached only if the method returns
+   * true with a 200 status.
+   *
+   * @param method The handler method being dispatched to.
+   * @param context The current request Context.
+   * @param invocation Invokes the handler method, returning its result.
+   */
+  protected boolean dispatchCached(BasicPathHandlerMethod method, C context,
+      BooleanSupplier invocation)
+  {
+    final CachedResponse cached = method.cachedResponse;
+    if ( (cached == null)
+      || (!(context.isGet() || context.isHead()))
+      || (context.getCapture() != null)
+      )
+    {
+      return invocation.getAsBoolean();
+    }
+    
+    final ResponseCache cache = store.getResponseCache();
+    final long ttl = cached.seconds() >= 0
+        ? cached.seconds() * UtilityConstants.SECOND
+        : cache.getDefaultTtlMillis();
+    final boolean[] result = { true };
+    final ResponseCache.Entry entry;
+    try
+    {
+      entry = cache.get(responseCacheKey(method, context), () -> {
+        context.beginCapture();
+        final ResponseCapture capture;
+        try
+        {
+          result[0] = invocation.getAsBoolean();
+        }
+        finally
+        {
+          capture = context.endCapture();
+        }
+        for (Class<?> type : cached.dependsOn())
+        {
+          capture.addTag(ResponseCache.tagFor(type));
+        }
+        return new ResponseCache.Entry(capture.toByteArray(),
+            capture.getEncodedContentType(), ttl, capture.getTags(),
+            result[0] && capture.getStatus() == 200);
+      });
+    }
+    catch (ExecutionException exc)
+    {
+      if (exc.getCause() instanceof RuntimeException)
+      {
+        throw (RuntimeException)exc.getCause();
+      }
+      throw new IllegalStateException(exc.getCause());
+    }
+    
+    // The render we were waiting on was not cacheable; render our own.
+    if (entry == null)
+    {
+      return invocation.getAsBoolean();
+    }
+    
+    sendCachedResponse(entry, context);
+    return result[0];
+  }
+  
+  /**
+   * Declares that the response currently being rendered for caching
+   * depends on an entity, so that it is invalidated when the EntityStore
+   * reports that entity changed.  Has no effect when the response is not
+   * being cached.
+   */
+  protected void cacheDependsOn(Class<? extends Identifiable> type, long id)
+  {
+    final ResponseCapture capture = context().getCapture();
+    if (capture != null)
+    {
+      capture.addTag(ResponseCache.tagFor(type, id));
+    }
+  }
+  
+  /**
+   * Gets the ResponseCache key for a request to a handler method.  The key
+   * distinguishes JSON from HTML renderings of the same URI, and GET from
+   * HEAD, since a HEAD rendering may have no body to serve to a GET.
+   */
+  protected String responseCacheKey(BasicPathHandlerMethod method, C context)
+  {
+    final StringBuilder key = new StringBuilder(128)
+        .append(getClass().getName())
+        .append('.')
+        .append(method.method.getName())
+        .append(':')
+        .append(context.getRequestMethod())
+        .append(GeminiHelper.isJsonRequest(context) ? ":json:" : ":html:")
+        .append(context.getRequestUri());
+    final String query = context.getQueryString();
+    if (StringHelper.isNonEmpty(query))
+    {
+      key.append('?').append(query);
+    }
+    return key.toString();
+  }
+  
+  /**
+   * Writes a cached response to the client.
+   */
+  private void sendCachedResponse(ResponseCache.Entry entry, C context)
+  {
+    if (entry.getContentType() != null)
+    {
+      context.setContentType(entry.getContentType());
+    }
+    try
+    {
+      final OutputStream out = context.getOutputStream();
+      out.write(entry.getBody());
+      out.flush();
+    }
+    catch (IOException ioexc)
+    {
+      log.debug("IOException while sending cached response.", ioexc);
+    }
+  }
   
   /**
    * Send a basic message as a response (Mustache template or JSON depending
@@ -716,11 +851,13 @@ public abstract class BasicPathHandler<C extends Context>
     public final Method method;
     public final HttpMethod httpMethod;
     public final RequestBodyParameter bodyParameter;
+    public final CachedResponse cachedResponse;
 
     BasicPathHandlerMethod(Method method, HttpMethod httpMethod)
     {
       this.method = method;
       this.httpMethod = httpMethod;
+      this.cachedResponse = method.getAnnotation(CachedResponse.class);
 
       Body body = method.getAnnotation(Body.class);
       // We allow users to create their own annotations (that must be annotated
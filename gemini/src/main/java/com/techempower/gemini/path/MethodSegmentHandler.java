@@ -445,20 +445,29 @@ public class MethodSegmentHandler<C extends Context>
       // rendering a response.
       defaultTemplate(method.name);
 
-      try
-      {
-        return (Boolean)methodAccess.invoke(this, method.index,
-            this.getVariableArguments(method, context));
-      }
-      catch (RequestBodyException e)
-      {
-        log.debug("Got RequestBodyException.", e);
-        return this.error(e.getStatusCode(), e.getMessage());
-      }
+      return dispatchCached(method, context, 
+          () -> invokeAnnotatedMethod(method, context));
     }
 
     return false;
   }
+  
+  /**
+   * Invokes an annotated method with the arguments it declares.
+   */
+  private boolean invokeAnnotatedMethod(PathSegmentMethod method, C context)
+  {
+    try
+    {
+      return (Boolean)methodAccess.invoke(this, method.index,
+          this.getVariableArguments(method, context));
+    }
+    catch (RequestBodyException e)
+    {
+      log.debug("Got RequestBodyException.", e);
+      return this.error(e.getStatusCode(), e.getMessage());
+    }
+  }
 
   private Object[] getVariableArguments(PathSegmentMethod method, C context)
       throws RequestBodyException
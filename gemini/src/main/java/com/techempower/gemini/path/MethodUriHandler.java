@@ -46,10 +46,14 @@ import org.slf4j.LoggerFactory;
 public class MethodUriHandler<C extends Context>
      extends BasicPathHandler<C>  
 {
-  private final PathUriTree    getRequestHandleMethods;
-  private final PathUriTree    putRequestHandleMethods;
-  private final PathUriTree    postRequestHandleMethods;
-  private final PathUriTree    deleteRequestHandleMethods;
+  /**
+   * The HTTP methods that may be routed to annotated methods, in the order
+   * in which they are listed by getAccessControlAllowMethods.
+   */
+  private static final HttpMethod[] ROUTED_METHODS = { 
+      HttpMethod.PUT, HttpMethod.POST, HttpMethod.DELETE, HttpMethod.GET };
+  
+  private final Map<HttpMethod, PathUriTree> requestHandleMethods;
   protected final MethodAccess methodAccess;
   private         Logger       log = LoggerFactory.getLogger(getClass());
   
@@ -65,10 +69,11 @@ public class MethodUriHandler<C extends Context>
   {
     super(app, jsw);
 
-    getRequestHandleMethods = new PathUriTree();
-    putRequestHandleMethods = new PathUriTree();
-    postRequestHandleMethods = new PathUriTree();
-    deleteRequestHandleMethods = new PathUriTree();
+    requestHandleMethods = new EnumMap<>(HttpMethod.class);
+    for (HttpMethod httpMethod : ROUTED_METHODS)
+    {
+      requestHandleMethods.put(httpMethod, new PathUriTree());
+    }
     
     methodAccess = MethodAccess.get(getClass());    
     discoverAnnotatedMethods();
@@ -91,22 +96,10 @@ public class MethodUriHandler<C extends Context>
    */
   private void addAnnotatedHandleMethod(PathUriMethod method)
   {
-    switch (method.httpMethod)
+    final PathUriTree tree = this.requestHandleMethods.get(method.httpMethod);
+    if (tree != null)
     {
-      case PUT:
-        this.putRequestHandleMethods.addMethod(method);
-        break;
-      case POST:
-        this.postRequestHandleMethods.addMethod(method);
-        break;
-      case DELETE:
-        this.deleteRequestHandleMethods.addMethod(method);
-        break;
-      case GET:
-        this.getRequestHandleMethods.addMethod(method);
-        break;
-      default:
-        break;
+      tree.addMethod(method);
     }
   }
   
@@ -214,27 +207,13 @@ public class MethodUriHandler<C extends Context>
   protected PathUriMethod getAnnotatedMethod(PathSegments segments, 
       C context) 
   { 
-    final PathUriTree tree;
-    switch (context.getRequest().getRequestMethod())
-    {
-      case PUT:
-        tree = this.putRequestHandleMethods;
-        break;
-      case POST:
-        tree = this.postRequestHandleMethods;
-        break;
-      case DELETE:
-        tree = this.deleteRequestHandleMethods;
-        break;
-      case GET:
-        tree = this.getRequestHandleMethods;
-        break;
-      default:
-        // We do not want to handle this
-        return null;
-    }
+    final PathUriTree tree = this.requestHandleMethods.get(
+        context.getRequest().getRequestMethod());
     
-    return tree.search(segments);
+    // We do not want to handle other request methods.
+    return (tree != null)
+        ? tree.search(segments)
+        : null;
   }
 
   @Override
@@ -245,25 +224,14 @@ public class MethodUriHandler<C extends Context>
     
     if(context.headers().get(Request.HEADER_ACCESS_CONTROL_REQUEST_METHOD) != null)
     {
-      final PathUriMethod put = this.putRequestHandleMethods.search(segments);
-      if (put != null)
+      for (HttpMethod httpMethod : ROUTED_METHODS)
       {
-        methods.add(put);
-      }
-      final PathUriMethod post = this.postRequestHandleMethods.search(segments);
-      if (post != null)
-      {
-        methods.add(this.postRequestHandleMethods.search(segments));
-      }
-      final PathUriMethod delete = this.deleteRequestHandleMethods.search(segments);
-      if (delete != null)
-      {
-        methods.add(this.deleteRequestHandleMethods.search(segments));
-      }
-      final PathUriMethod get = this.getRequestHandleMethods.search(segments);
-      if (get != null)
-      {
-        methods.add(this.getRequestHandleMethods.search(segments));
+        final PathUriMethod method = 
+            this.requestHandleMethods.get(httpMethod).search(segments);
+        if (method != null)
+        {
+          methods.add(method);
+        }
       }
       
       boolean first = true;
@@ -299,31 +267,40 @@ public class MethodUriHandler<C extends Context>
       // rendering a response.
       defaultTemplate(method.method.getName());
       
-      if (method.method.getParameterTypes().length == 0)
+      return dispatchCached(method, context, 
+          () -> invokeAnnotatedMethod(method, context));
+    }
+
+    return false;
+  }
+  
+  /**
+   * Invokes an annotated method with the arguments it declares.
+   */
+  private boolean invokeAnnotatedMethod(PathUriMethod method, C context)
+  {
+    if (method.method.getParameterTypes().length == 0)
+    {
+      return (Boolean)methodAccess.invoke(this, method.index, 
+          ReflectionHelper.NO_VALUES);
+    }
+    else
+    {
+      // We have already enforced that the @Path annotations have the correct
+      // number of args in their declarations to match the variable count
+      // in the respective URI. So, create an array of values and try to set
+      // them via retrieving them as segments.
+      try
       {
-        return (Boolean)methodAccess.invoke(this, method.index, 
-            ReflectionHelper.NO_VALUES);
+        return (Boolean)methodAccess.invoke(this, method.index,
+                this.getVariableArguments(method, context));
       }
-      else
+      catch (RequestBodyException e)
       {
-        // We have already enforced that the @Path annotations have the correct
-        // number of args in their declarations to match the variable count
-        // in the respective URI. So, create an array of values and try to set
-        // them via retrieving them as segments.
-        try
-        {
-          return (Boolean)methodAccess.invoke(this, method.index,
-                  this.getVariableArguments(method, context));
-        }
-        catch (RequestBodyException e)
-        {
-          log.debug("Got RequestBodyException.", e);
-          return this.error(e.getStatusCode(), e.getMessage());
-        }
+        log.debug("Got RequestBodyException.", e);
+        return this.error(e.getStatusCode(), e.getMessage());
       }
     }
-
-    return false;
   }
 
   /**
@@ -488,6 +465,16 @@ public class MethodUriHandler<C extends Context>
     return false;
   }
   
+  /**
+   * A route table of the PathUriMethods for one HTTP method.  Each node maps
+   * the static segments that may follow it to child nodes by hash, and has
+   * at most one variable child (all variables at a depth share a node; see
+   * UriSegment) and one wildcard child, so a request is matched with one 
+   * lookup per segment unless a static branch dead-ends and the search 
+   * must fall back to a variable or wildcard at an earlier depth.
+   *   <p>
+   * Precedence at each depth is exact match, then variable, then wildcard.
+   */
   protected static class PathUriTree
   {
     private final Node root;
@@ -507,67 +494,42 @@ public class MethodUriHandler<C extends Context>
 
     /**
      * Searches the given segments at the given offset with the given node
-     * in the tree. If this node is a leaf node and matches the segment
-     * stack perfectly, it is returned. If this node is a leaf node and
-     * either a variable or a wildcard node and the segment stack has run
-     * out of segments to check, return that if we have not found a true
-     * match.
+     * in the tree. If the segments are exhausted, the node's method (which
+     * may be null) is returned.  Otherwise the exact child for the next 
+     * segment is searched first, then the variable child, and finally the
+     * method of the wildcard child, which matches all remaining segments.
      */
-    private final PathUriMethod search(Node node, PathSegments segments, int offset)
+    private PathUriMethod search(Node node, PathSegments segments, int offset)
     {
       if (node != this.root && 
           offset >= segments.getCount())
       {
         // Last possible depth; must be a leaf node
-        if (node.method != null)
-        {
-          return node.method;
-        }
-        return null;
+        return node.method;
       }
-      else
+      
+      final Node exact = node.children.get(segments.get(offset, ""));
+      if (exact != null)
       {
-        // Not yet at a leaf node
-        PathUriMethod bestVariable = null; // Best at this depth
-        PathUriMethod bestWildcard = null; // Best at this depth
-        PathUriMethod toReturn     = null;
-        for (Node child : node.children)
+        final PathUriMethod method = search(exact, segments, offset + 1);
+        if (method != null)
         {
-          // Only walk the path that can handle the new segment.
-          if (child.segment.segment.equals(segments.get(offset,"")))
-          {
-            // Direct hits only happen here.
-            toReturn = search(child, segments, offset + 1);
-          }
-          else if (child.segment.isVariable)
-          {
-            // Variables are not necessarily leaf nodes.
-            PathUriMethod temp = search(child, segments, offset + 1);
-            // We may be at a variable node, but not the variable
-            // path segment handler method. Don't set it in this case.
-            if (temp != null)
-            {
-              bestVariable = temp;
-            }
-          }
-          else if (child.segment.isWildcard)
-          {
-            // Wildcards are leaf nodes by design.
-            bestWildcard = child.method;
-          }
-        }
-        // By here, we are as deep as we can be.
-        if (toReturn == null && bestVariable != null)
-        {
-          // Could not find a direct route
-          toReturn = bestVariable;
+          return method;
         }
-        else if (toReturn == null && bestWildcard != null)
+      }
+      if (node.variable != null)
+      {
+        // Variables are not necessarily leaf nodes.
+        final PathUriMethod method = search(node.variable, segments, offset + 1);
+        if (method != null)
         {
-          toReturn = bestWildcard;
+          return method;
         }
-        return toReturn;
       }
+      // Wildcards are leaf nodes by design.
+      return (node.wildcard != null)
+          ? node.wildcard.method
+          : null;
     }
     
     /**
@@ -586,12 +548,14 @@ public class MethodUriHandler<C extends Context>
     {
       private PathUriMethod method;
       private final UriSegment segment;
-      private final List<Node> children;
+      private final Map<String, Node> children;
+      private Node variable;
+      private Node wildcard;
       
       public Node(UriSegment segment)
       {
         this.segment = segment;
-        this.children = new ArrayList<>();
+        this.children = new HashMap<>(4);
       }
       
       @Override
@@ -604,7 +568,9 @@ public class MethodUriHandler<C extends Context>
           .append(", segment: ")
           .append(segment)
           .append(", childrenCount: ")
-          .append(this.children.size())
+          .append(this.children.size() 
+              + (this.variable != null ? 1 : 0)
+              + (this.wildcard != null ? 1 : 0))
           .append("}");
         
         return sb.toString();
@@ -614,31 +580,37 @@ public class MethodUriHandler<C extends Context>
        * Returns the immediate child node for the given segment and creates
        * if it does not exist.
        */
-      private final Node getChildForSegment(Node node, UriSegment[] segments, int offset)
+      private Node getChildForSegment(Node node, UriSegment[] segments, int offset)
       {
-        Node toRet = null;
-        for(Node child : node.children)
+        final UriSegment segment = segments[offset];
+        if (segment.isVariable)
         {
-          if (child.segment.segment.equals(segments[offset].segment))
+          if (node.variable == null)
           {
-            toRet = child;
-            break;
+            node.variable = new Node(segment);
           }
+          return node.variable;
         }
-        if (toRet == null)
+        else if (segment.isWildcard)
+        {
+          if (node.wildcard == null)
+          {
+            node.wildcard = new Node(segment);
+          }
+          return node.wildcard;
+        }
+        else
         {
-          // Add a new node at this segment to return.
-          toRet = new Node(segments[offset]);
-          node.children.add(toRet);
+          return node.children.computeIfAbsent(segment.segment, 
+              key -> new Node(segment));
         }
-        return toRet;
       }
       
       /**
        * Recursively adds the given PathUriMethod to this tree at the 
        * appropriate depth.
        */
-      private final void addChild(Node node, PathUriMethod uriMethod, int offset)
+      private void addChild(Node node, PathUriMethod uriMethod, int offset)
       {
         if (uriMethod.segments.length > offset)
         {
@@ -28,6 +28,7 @@ package com.techempower.gemini.path;
 
 import java.util.*;
 
+import com.techempower.data.*;
 import com.techempower.gemini.*;
 import com.techempower.gemini.exceptionhandler.*;
 import com.techempower.gemini.prehandler.*;
@@ -181,6 +182,7 @@ public class   PathDispatcher<A extends GeminiApplication, C extends Context>
       
       // Make these references available thread-locally.
       RequestReferences.set(context, segments);
+      ReadRouting.beginRequest();
       
       // Notify listeners.
       notifyListenersDispatchStarting(plainContext, segments.getUriFromRoot());
@@ -280,6 +282,7 @@ public class   PathDispatcher<A extends GeminiApplication, C extends Context>
     finally
     {
       RequestReferences.remove();
+      ReadRouting.endRequest();
     }
     
     return success;
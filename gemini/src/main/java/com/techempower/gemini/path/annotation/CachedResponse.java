@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package com.techempower.gemini.path.annotation;
+
+import java.lang.annotation.*;
+
+import com.techempower.util.*;
+
+/**
+ * Marks a handler method of a MethodUriHandler or MethodSegmentHandler
+ * whose GET responses may be served from the application's ResponseCache
+ * (see EntityStore.getResponseCache).  The response is rendered once per
+ * distinct URI, query string and response format (JSON or HTML), kept as
+ * encoded bytes, and replayed to subsequent requests until it expires or
+ * an entity it depends on changes.
+ *   <p>
+ * Only annotate methods whose responses are the same for every user; the
+ * session, cookies and headers are not part of the cache key, and headers
+ * and cookies set by the method are not replayed.  Responses with a status
+ * other than 200 are not cached.
+ *   <p>
+ * Example:
+ * <pre>
+ * &#64;Path("products")
+ * &#64;CachedResponse(seconds = 60, dependsOn = { Product.class })
+ * public boolean listProducts()
+ * </pre>
+ *   <p>
+ * A method that depends on specific entities rather than a whole type can
+ * declare them while rendering with BasicPathHandler.cacheDependsOn.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CachedResponse
+{
+  /**
+   * The time-to-live of cached responses, in seconds.  Negative values use
+   * the cache's default.
+   */
+  int seconds() default -1;
+  
+  /**
+   * Entity types whose changes invalidate the cached responses.
+   */
+  Class<? extends Identifiable>[] dependsOn() default {};
+}
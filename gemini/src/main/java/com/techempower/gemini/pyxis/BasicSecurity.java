@@ -68,6 +68,20 @@ import org.slf4j.LoggerFactory;
  * <li>BasicSecurity.StoreUserAsID - If set to yes, the current user will 
  *     be stored in the session as an integer (the user ID) rather than 
  *     as a user object.  The default is 'no'.</li>
+ * <li>BasicSecurity.FailedAttemptLimit - The number of failed login 
+ *     attempts from one client within the window after which the client
+ *     is locked out.  The default is 0, meaning unlimited attempts.</li>
+ * <li>BasicSecurity.FailedUsernameLimit - As above, but counting failed
+ *     attempts for one username from any client.  Note that this lets a
+ *     third party lock out a user.  The default is 0, meaning unlimited
+ *     attempts.</li>
+ * <li>BasicSecurity.FailedAttemptWindowSeconds - The window within which
+ *     failed attempts are counted.  The default is 900 (15 minutes).</li>
+ * <li>BasicSecurity.FailedResetSeconds - How long a lockout lasts.  The
+ *     default is 300 (5 minutes).</li>
+ * <li>BasicSecurity.FailedAttemptMemoryKB - The memory used to track 
+ *     failed attempts, which is fixed regardless of the number of clients;
+ *     see FailedAttemptTracker.  The default is 256.</li>
  * </ul>
  * The implementation of BasicSecurity assumes that the application's User
  * class is a subclass of BasicUser and not a custom implementation of
@@ -91,6 +105,7 @@ public class BasicSecurity<U extends PyxisUser, G extends PyxisUserGroup>
   //
 
   public static final int    DEFAULT_FAILED_RESET_SECONDS = 300;  // 5 minutes.
+  public static final int    DEFAULT_FAILED_WINDOW_SECONDS = 900; // 15 minutes.
   public static final String PROPS_PREFIX                 = "BasicSecurity.";
 
   //
@@ -117,13 +132,13 @@ public class BasicSecurity<U extends PyxisUser, G extends PyxisUserGroup>
   private boolean        requireHttpsForm      = true;
   private boolean        exitHttpsPostLogin    = false;
   private int            failedAttemptLimit    = 0;       // unlimited attempts.
+  private int            failedUsernameLimit   = 0;       // unlimited attempts.
   private int            failedResetSeconds    = DEFAULT_FAILED_RESET_SECONDS;
-  private long           nextAutoReset         = 0L;
   private List<SecurityListener<Context>> 
                          listeners             = null;
-  // unused unless failed attempt limiting is enabled.
-  private Map<String,LoginAttempt> 
-                         ipToAttempts          = null;
+  // null unless failed attempt limiting is enabled.
+  private volatile FailedAttemptTracker 
+                         failedAttempts        = null;
 
   /**
    * Constructor.
@@ -221,6 +236,7 @@ public class BasicSecurity<U extends PyxisUser, G extends PyxisUserGroup>
     requireHttpsForm      = focus.getBoolean("RequireHTTPS", requireHttpsForm);
     exitHttpsPostLogin    = focus.getBoolean("ExitHTTPS", exitHttpsPostLogin);
     failedAttemptLimit    = focus.getInt("FailedAttemptLimit", failedAttemptLimit);
+    failedUsernameLimit   = focus.getInt("FailedUsernameLimit", failedUsernameLimit);
     failedResetSeconds    = focus.getInt("FailedResetSeconds", failedResetSeconds);
     
     // Strip leading slash from the login URI since we append that later.
@@ -229,9 +245,28 @@ public class BasicSecurity<U extends PyxisUser, G extends PyxisUserGroup>
       loginUri = loginUri.substring(1);
     }
     
-    if (isFailedAttemptLimiting())
+    if (isFailedAttemptLimiting() || failedUsernameLimit > 0)
     {
-      nextAutoReset = DateHelper.getEndOfDay().getTime().getTime();
+      final long window = focus.getInt("FailedAttemptWindowSeconds", 
+          DEFAULT_FAILED_WINDOW_SECONDS, 1, Integer.MAX_VALUE) 
+          * UtilityConstants.SECOND;
+      final int memory = focus.getInt("FailedAttemptMemoryKB", 
+          FailedAttemptTracker.DEFAULT_MEMORY_BYTES / 1024, 1, 
+          Integer.MAX_VALUE / 1024) * 1024;
+      
+      // Keep the existing tracker, and the failures and lockouts it holds,
+      // across a reconfiguration that leaves its dimensions unchanged.
+      final FailedAttemptTracker current = failedAttempts;
+      if (current == null
+          || current.getWindowMillis() != window
+          || current.getMemoryBytes() != memory)
+      {
+        failedAttempts = new FailedAttemptTracker(window, memory);
+      }
+    }
+    else
+    {
+      failedAttempts = null;
     }
 
     final String hashingAlgorithm = focus.get("HashingAlgorithm", "bcrypt");
@@ -447,15 +482,22 @@ public class BasicSecurity<U extends PyxisUser, G extends PyxisUserGroup>
   @Override
   public boolean isLoginAttemptPermitted(Context context)
   {
-    if (isFailedAttemptLimiting())
-    {
-      final Map<String, LoginAttempt> map = getIpToAttempts();
-      final LoginAttempt attempt = map.get(context.getClientId());
+    return isLoginAttemptPermitted(context, null);
+  }
 
-      // Allow for login attempts under two scenarios:
-      // 1) No previous attempts
-      // 2) Previous attempts have not yet resulted in a lock out
-      return attempt == null || attempt.isGood();
+  @Override
+  public boolean isLoginAttemptPermitted(Context context, String username)
+  {
+    final FailedAttemptTracker tracker = failedAttempts;
+    if (tracker != null)
+    {
+      // Allow login attempts unless the client or username has been locked
+      // out by too many recent failures.
+      return !(isFailedAttemptLimiting() 
+              && tracker.isLockedOut(clientKey(context)))
+          && !(failedUsernameLimit > 0 
+              && username != null 
+              && tracker.isLockedOut(usernameKey(username)));
     }
     
     // Default: Allow logins.
@@ -471,36 +513,93 @@ public class BasicSecurity<U extends PyxisUser, G extends PyxisUserGroup>
   @Override
   public void captureFailedLoginAttempt(Context context)
   {
-    if (isFailedAttemptLimiting())
+    captureFailedLoginAttempt(context, null);
+  }
+
+  @Override
+  public void captureFailedLoginAttempt(Context context, String username)
+  {
+    final FailedAttemptTracker tracker = failedAttempts;
+    if (tracker != null)
     {
-      // Track a failed attempt.
-      final Map<String, LoginAttempt> map = getIpToAttempts();
-      LoginAttempt attempt; 
-      synchronized (map)
+      final long lockOutUntil = System.currentTimeMillis() 
+          + (failedResetSeconds * UtilityConstants.SECOND);
+      if (isFailedAttemptLimiting())
       {
-        attempt = map.get(context.getClientId());
-        if (attempt == null)
+        final String key = clientKey(context);
+        if (tracker.recordFailure(key) >= failedAttemptLimit)
         {
-          attempt = new LoginAttempt();
-          map.put(context.getClientId(), attempt);
+          tracker.lockOut(key, lockOutUntil);
+          tracker.clear(key);
+          log.info("Too many failed login attempts from {}; locked out.", 
+              context.getClientId());
         }
       }
-      
-      attempt.attempt();
+      captureFailedUsernameAttempt(tracker, username, lockOutUntil);
+    }
+  }
+
+  /**
+   * Counts a failed login attempt for a username, if username limiting is
+   * enabled, locking out the username if the limit is reached.
+   */
+  private void captureFailedUsernameAttempt(FailedAttemptTracker tracker, 
+      String username, long lockOutUntil)
+  {
+    if (failedUsernameLimit > 0 && username != null)
+    {
+      final String key = usernameKey(username);
+      if (tracker.recordFailure(key) >= failedUsernameLimit)
+      {
+        tracker.lockOut(key, lockOutUntil);
+        tracker.clear(key);
+        log.info("Too many failed login attempts for {}; locked out.", 
+            username);
+      }
     }
   }
   
   @Override
   public void captureSuccessfulLoginAttempt(Context context)
   {
-    if (isFailedAttemptLimiting())
+    final FailedAttemptTracker tracker = failedAttempts;
+    if (tracker != null)
     {
-      // Remove the entry from the IP-to-Attempts map if it exists.
-      final Map<String, LoginAttempt> map = getIpToAttempts();
-      map.remove(context.getClientId());
+      // Forget the client's failed attempts.
+      tracker.clear(clientKey(context));
+      final PyxisUser user = getUser(context);
+      if (user != null && user.getUserUsername() != null)
+      {
+        tracker.clear(usernameKey(user.getUserUsername()));
+      }
     }
   }
 
+  /**
+   * Gets the key under which a client's failed attempts are tracked.
+   */
+  private static String clientKey(Context context)
+  {
+    return "client:" + context.getClientId();
+  }
+
+  /**
+   * Gets the key under which a username's failed attempts are tracked.
+   */
+  private String usernameKey(String username)
+  {
+    return "user:" + sanitizeUsername(username).toLowerCase();
+  }
+
+  /**
+   * Gets the failed login attempt tracker, which provides counts of 
+   * failures and lockouts, or null if failed attempt limiting is disabled.
+   */
+  public FailedAttemptTracker getFailedAttemptTracker()
+  {
+    return failedAttempts;
+  }
+
   /**
    * Gets a reference to the Application.
    */
@@ -835,7 +934,19 @@ public class BasicSecurity<U extends PyxisUser, G extends PyxisUserGroup>
       user = getUserByEmail(username, password);
     }
 
-    return login(context, user, save);
+    if (login(context, user, save))
+    {
+      return true;
+    }
+    
+    // The client's failure was counted by login; also count the username's.
+    final FailedAttemptTracker tracker = failedAttempts;
+    if (tracker != null)
+    {
+      captureFailedUsernameAttempt(tracker, username, System.currentTimeMillis() 
+          + (failedResetSeconds * UtilityConstants.SECOND));
+    }
+    return false;
   }
 
   @Override
@@ -1008,75 +1119,14 @@ public class BasicSecurity<U extends PyxisUser, G extends PyxisUserGroup>
   }
 
   /**
-   * Gets the IP-to-Attempts map, creating it if necessary.
+   * Resets the failed login attempt counts and lockouts.
    */
-  protected synchronized Map<String,LoginAttempt> getIpToAttempts()
+  protected void resetLoginAttempts()
   {
-    // Every day, we'll reset this map to clean up orphaned entries. 
-    autoResetAttemptsIfNeeded();
-
-    if (ipToAttempts == null)
+    final FailedAttemptTracker tracker = failedAttempts;
+    if (tracker != null)
     {
-      ipToAttempts = new HashMap<>();
-    }
-    
-    return ipToAttempts;
-  }
-  
-  /**
-   * Performs an automatic clear/reset of the IP-to-attempts map on a daily
-   * basis.
-   */
-  protected void autoResetAttemptsIfNeeded()
-  {
-    if (System.currentTimeMillis() > nextAutoReset)
-    {
-      resetLoginAttempts();
-      
-      // Reset at the next end of day.
-      nextAutoReset = DateHelper.getEndOfDay().getTime().getTime();
-    }
-  }
-  
-  /**
-   * Resets the IP-to-Attempts map.
-   */
-  protected synchronized void resetLoginAttempts()
-  {
-    ipToAttempts = null;
-  }
-
-  /**
-   * A simple data structure class for tracking login attempts.
-   */
-  protected class LoginAttempt
-  {
-    private int count = 0;
-    private long resetTime = 0L;
-    
-    public LoginAttempt()
-    {
-    }
-    
-    public void setFailState()
-    {
-      count = 0;
-      resetTime = System.currentTimeMillis() 
-          + (BasicSecurity.this.failedResetSeconds * UtilityConstants.SECOND);
-    }
-    
-    public boolean isGood()
-    {
-      return (resetTime < System.currentTimeMillis());
-    }
-    
-    public void attempt()
-    {
-      count++;
-      if (count >= BasicSecurity.this.failedAttemptLimit)
-      {
-        setFailState();
-      }
+      tracker.reset();
     }
   }
 
@@ -0,0 +1,420 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.pyxis;
+
+import java.security.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * Counts failed login attempts per key (e.g., a client IP address or a
+ * username) in a fixed amount of memory without locks, and locks out keys
+ * that reach a limit within a sliding window.
+ *   <p>
+ * Counts are kept in a count-min sketch: each key is hashed to one counter
+ * in each of several rows, each failure increments those counters, and a
+ * key's count is estimated as the minimum of its counters.  Collisions can
+ * only overestimate a count, and only when they occur in every row.  Each
+ * row hashes the key's characters with MurmurHash3 under its own seed, 
+ * chosen randomly per instance, so keys cannot be crafted to collide in 
+ * every row (as keys with equal String hash codes would).  The
+ * window is divided into time buckets, each with its own sketch; a bucket
+ * is cleared and reused when its time comes around again, so old failures
+ * age out without any per-key bookkeeping.
+ *   <p>
+ * Lockouts are kept the same way: each key maps to one expiration time per
+ * row, and a key is locked out until the minimum of those times.
+ */
+public class FailedAttemptTracker
+{
+
+  //
+  // Constants.
+  //
+
+  public static final int    DEFAULT_MEMORY_BYTES = 256 * 1024;
+  
+  private static final int   DEPTH   = 4;
+  private static final int   BUCKETS = 6;
+
+  //
+  // Member variables.
+  //
+
+  private final long         windowMillis;
+  private final int          memoryBytes;
+  private final int[]        seeds;
+  private final int          width;
+  private final int          mask;
+  private final long         bucketMillis;
+  private final Bucket[]     buckets;
+  private final AtomicLongArray lockouts;
+  private final LongSupplier clock;
+  private final AtomicLong   failureCount = new AtomicLong();
+  private final AtomicLong   lockoutCount = new AtomicLong();
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   * 
+   * @param windowMillis The window within which failures are counted.
+   * @param memoryBytes The approximate memory to use; determines the 
+   *        number of counters per row and thus the accuracy.
+   */
+  public FailedAttemptTracker(long windowMillis, int memoryBytes)
+  {
+    this(windowMillis, memoryBytes, System::currentTimeMillis);
+  }
+
+  /**
+   * Constructor with a specified millisecond clock, for testing.
+   */
+  FailedAttemptTracker(long windowMillis, int memoryBytes, LongSupplier clock)
+  {
+    // Each column costs one int counter per row per bucket, plus one long
+    // lockout time per row.
+    final int columnBytes = DEPTH * (BUCKETS * 4 + 8);
+    this.windowMillis = windowMillis;
+    this.memoryBytes = memoryBytes;
+    this.seeds = new int[DEPTH];
+    final SecureRandom random = new SecureRandom();
+    for (int row = 0; row < DEPTH; row++)
+    {
+      this.seeds[row] = random.nextInt();
+    }
+    this.width = Integer.highestOneBit(Math.max(16, memoryBytes / columnBytes));
+    this.mask = width - 1;
+    this.bucketMillis = Math.max(1L, windowMillis / BUCKETS);
+    this.clock = clock;
+    this.buckets = new Bucket[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++)
+    {
+      this.buckets[i] = new Bucket(DEPTH * width);
+    }
+    this.lockouts = new AtomicLongArray(DEPTH * width);
+  }
+
+  /**
+   * Records a failure for a key and returns the estimated number of 
+   * failures for the key within the window, including this one.
+   */
+  public int recordFailure(String key)
+  {
+    final long period = clock.getAsLong() / bucketMillis;
+    final Bucket bucket = current(period);
+    final int[] indexes = indexes(key);
+    for (int index : indexes)
+    {
+      bucket.counts.incrementAndGet(index);
+    }
+    failureCount.incrementAndGet();
+    return estimate(indexes, period);
+  }
+
+  /**
+   * Gets the estimated number of failures for a key within the window.
+   */
+  public int getFailures(String key)
+  {
+    return estimate(indexes(key), clock.getAsLong() / bucketMillis);
+  }
+
+  /**
+   * Forgets a key's failures, e.g., after a successful login.  Because 
+   * counters may be shared with other keys, the key's estimated count is
+   * subtracted from each of its counters; this can only reduce, never
+   * inflate, other keys' counts.
+   */
+  public void clear(String key)
+  {
+    final long period = clock.getAsLong() / bucketMillis;
+    final int[] indexes = indexes(key);
+    for (Bucket bucket : buckets)
+    {
+      if (isLive(bucket, period))
+      {
+        int count = Integer.MAX_VALUE;
+        for (int index : indexes)
+        {
+          count = Math.min(count, bucket.counts.get(index));
+        }
+        if (count > 0)
+        {
+          for (int index : indexes)
+          {
+            final int subtract = count;
+            bucket.counts.getAndUpdate(index, 
+                value -> Math.max(0, value - subtract));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Locks out a key until the given time.
+   */
+  public void lockOut(String key, long until)
+  {
+    for (int index : indexes(key))
+    {
+      lockouts.accumulateAndGet(index, until, Math::max);
+    }
+    lockoutCount.incrementAndGet();
+  }
+
+  /**
+   * Determines whether a key is currently locked out.
+   */
+  public boolean isLockedOut(String key)
+  {
+    final long now = clock.getAsLong();
+    for (int index : indexes(key))
+    {
+      if (lockouts.get(index) <= now)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Forgets all failures and lockouts.
+   */
+  public void reset()
+  {
+    for (Bucket bucket : buckets)
+    {
+      bucket.period.set(-1L);
+      bucket.clear();
+    }
+    for (int i = 0; i < lockouts.length(); i++)
+    {
+      lockouts.set(i, 0L);
+    }
+  }
+
+  /**
+   * Gets the total number of failures recorded.
+   */
+  public long getFailureCount()
+  {
+    return failureCount.get();
+  }
+
+  /**
+   * Gets the total number of lockouts.
+   */
+  public long getLockoutCount()
+  {
+    return lockoutCount.get();
+  }
+
+  /**
+   * Estimates the number of distinct keys with failures within the window,
+   * by linear counting over the first row of counters.
+   */
+  public int getEstimatedTrackedKeys()
+  {
+    final long period = clock.getAsLong() / bucketMillis;
+    int empty = 0;
+    for (int column = 0; column < width; column++)
+    {
+      boolean used = false;
+      for (Bucket bucket : buckets)
+      {
+        if (isLive(bucket, period) && bucket.counts.get(column) > 0)
+        {
+          used = true;
+          break;
+        }
+      }
+      if (!used)
+      {
+        empty++;
+      }
+    }
+    if (empty == 0)
+    {
+      return width;
+    }
+    return (int)Math.round(-width * Math.log((double)empty / width));
+  }
+
+  /**
+   * Gets the window within which failures are counted.
+   */
+  public long getWindowMillis()
+  {
+    return windowMillis;
+  }
+
+  /**
+   * Gets the approximate memory requested at construction.
+   */
+  public int getMemoryBytes()
+  {
+    return memoryBytes;
+  }
+
+  /**
+   * Gets the number of counters per row.
+   */
+  public int getWidth()
+  {
+    return width;
+  }
+
+  /**
+   * Gets the bucket for a period, clearing it first if it was last used 
+   * for an earlier period.
+   */
+  private Bucket current(long period)
+  {
+    final Bucket bucket = buckets[(int)(period % BUCKETS)];
+    final long previous = bucket.period.get();
+    if (previous != period 
+        && previous < period 
+        && bucket.period.compareAndSet(previous, period))
+    {
+      // Increments racing with the clear may be lost; the counts are 
+      // approximate regardless.
+      bucket.clear();
+    }
+    return bucket;
+  }
+
+  /**
+   * Is a bucket's data within the window ending with the given period?
+   */
+  private static boolean isLive(Bucket bucket, long period)
+  {
+    final long bucketPeriod = bucket.period.get();
+    return bucketPeriod > period - BUCKETS && bucketPeriod <= period;
+  }
+
+  /**
+   * Estimates a key's count: the minimum across rows of the sum across
+   * live buckets.
+   */
+  private int estimate(int[] indexes, long period)
+  {
+    int estimate = Integer.MAX_VALUE;
+    for (int index : indexes)
+    {
+      int sum = 0;
+      for (Bucket bucket : buckets)
+      {
+        if (isLive(bucket, period))
+        {
+          sum += bucket.counts.get(index);
+        }
+      }
+      estimate = Math.min(estimate, sum);
+    }
+    return estimate;
+  }
+
+  /**
+   * Gets the indexes of a key's counters, one per row.
+   */
+  private int[] indexes(String key)
+  {
+    final int[] indexes = new int[DEPTH];
+    for (int row = 0; row < DEPTH; row++)
+    {
+      indexes[row] = row * width + (murmur3(key, seeds[row]) & mask);
+    }
+    return indexes;
+  }
+
+  /**
+   * Hashes the UTF-16 code units of a string with 32-bit MurmurHash3.
+   */
+  private static int murmur3(String key, int seed)
+  {
+    final int length = key.length();
+    int h = seed;
+    for (int i = 1; i < length; i += 2)
+    {
+      h = mixH(h, mixK(key.charAt(i - 1) | (key.charAt(i) << 16)));
+    }
+    if ((length & 1) == 1)
+    {
+      h ^= mixK(key.charAt(length - 1));
+    }
+    h ^= length * 2;
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    h *= 0xC2B2AE35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  private static int mixK(int k)
+  {
+    return Integer.rotateLeft(k * 0xCC9E2D51, 15) * 0x1B873593;
+  }
+
+  private static int mixH(int h, int k)
+  {
+    return Integer.rotateLeft(h ^ k, 13) * 5 + 0xE6546B64;
+  }
+
+  //
+  // Inner classes.
+  //
+
+  /**
+   * The counters for one period of time.
+   */
+  private static final class Bucket
+  {
+    private final AtomicLong         period = new AtomicLong(-1L);
+    private final AtomicIntegerArray counts;
+
+    private Bucket(int size)
+    {
+      this.counts = new AtomicIntegerArray(size);
+    }
+
+    private void clear()
+    {
+      for (int i = 0; i < counts.length(); i++)
+      {
+        counts.set(i, 0);
+      }
+    }
+  }
+
+}  // End FailedAttemptTracker.
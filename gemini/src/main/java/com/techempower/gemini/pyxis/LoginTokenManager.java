@@ -63,6 +63,9 @@ import org.slf4j.LoggerFactory;
  *   <dd>string, never null, 100 characters should be enough</dd>
  *   <dt>created</dt>
  *   <dd>datetime, never null</dd>
+ *   <dt>selector</dt>
+ *   <dd>string, nullable, 16 characters; only required if the SelectorColumn
+ *   option is enabled, and should be indexed along with username</dd>
  * </dl>
  *
  * <p>Here is an example SQL statement for creating this table in MySQL:
@@ -72,10 +75,34 @@ import org.slf4j.LoggerFactory;
  *   `username` VARCHAR(100) NOT NULL ,
  *   `tokenhash` VARCHAR(100) NOT NULL ,
  *   `created` DATETIME NOT NULL ,
- *   PRIMARY KEY (`id`)
+ *   `selector` VARCHAR(16) NULL ,
+ *   PRIMARY KEY (`id`) ,
+ *   INDEX `username_selector` (`username`, `selector`)
  * );
  * </pre>
  *
+ * <h2>Validation performance</h2>
+ *
+ * <p>Validating a token requires a BCrypt check, which is deliberately slow.
+ * Without a selector, every token row for the user must be checked until 
+ * one matches.  With the SelectorColumn option enabled, new tokens begin 
+ * with a random selector that is stored in plain text, so validation 
+ * fetches only the one candidate row.  Tokens issued before the option was
+ * enabled continue to work via the slower path.
+ *
+ * <p>Additionally, validation results are cached briefly, keyed by a SHA-256
+ * hash of the cookie value, so that repeated requests presenting the same 
+ * cookie (e.g., concurrent requests from a browser without a session) do 
+ * not each pay for BCrypt.  Successful validations are only cached when
+ * tokens are multiple-use, since one-time-use tokens are replaced when
+ * validated.  A cached successful validation is only used after checking
+ * that its token's row still exists, so tokens revoked by any means (the
+ * purge event, trimming, clearAllTokensForUser, a password change, or 
+ * another application instance) stop validating immediately; see 
+ * TokenValidationCache.
+ * Validation latencies are recorded separately for cached and uncached
+ * validations; see getColdValidationStats and getCachedValidationStats.
+ *
  * <p>There is a configurable maximum number of tokens that may exist at one 
  * time per user.  Also, by default, a scheduled event that purges stale
  * authentication tokens from the database is enabled.
@@ -118,6 +145,15 @@ import org.slf4j.LoggerFactory;
  *     <dd>boolean - default {@value #DEFAULT_ONE_TIME_USE_TOKENS}.  If true,
  *     when a token is used, it will be replaced with a newly-generated token.
  *     That is, a single token cannot be used to login twice.</dd>
+ *   <dt>LoginTokenManager.SelectorColumn</dt>
+ *     <dd>boolean - default {@value #DEFAULT_SELECTOR_COLUMN}.  Whether the
+ *     table has a selector column (see above).</dd>
+ *   <dt>LoginTokenManager.ValidationCacheSeconds</dt>
+ *     <dd>integer - default {@value #DEFAULT_VALIDATION_CACHE_SECONDS}.  How
+ *     long validation results are cached; 0 disables caching.</dd>
+ *   <dt>LoginTokenManager.ValidationCacheSize</dt>
+ *     <dd>integer - default {@value #DEFAULT_VALIDATION_CACHE_SIZE}.  The
+ *     maximum number of cached validation results.</dd>
  * </dl>
  *
  * <p>Here is an example configuration:
@@ -139,6 +175,8 @@ public class LoginTokenManager
   // Constants
 
   private static final int TOKEN_DIGITS = 30;
+  private static final int SELECTOR_DIGITS = 16;
+  private static final char SELECTOR_SEPARATOR = '-';
 
   // Defaults for configurable properties
 
@@ -152,6 +190,9 @@ public class LoginTokenManager
   private static final int     DEFAULT_PURGE_EVENT_HOUR = 5;
   private static final int     DEFAULT_PURGE_EVENT_MINUTE = 30;
   private static final boolean DEFAULT_ONE_TIME_USE_TOKENS = true;
+  private static final boolean DEFAULT_SELECTOR_COLUMN = false;
+  private static final int     DEFAULT_VALIDATION_CACHE_SECONDS = 60;
+  private static final int     DEFAULT_VALIDATION_CACHE_SIZE = 10000;
 
   // Configurable properties
 
@@ -165,12 +206,16 @@ public class LoginTokenManager
   private int     purgeEventHour = DEFAULT_PURGE_EVENT_HOUR;
   private int     purgeEventMinute = DEFAULT_PURGE_EVENT_MINUTE;
   private boolean oneTimeUseTokens = DEFAULT_ONE_TIME_USE_TOKENS;
+  private boolean selectorColumn = DEFAULT_SELECTOR_COLUMN;
+  private volatile TokenValidationCache validationCache = null;
 
   // Assigned in the constructor
 
   private final PurgeEvent purgeEvent;
   private final ClearTokensOnPasswordChange clearTokenListener;
   private final Logger                      log = LoggerFactory.getLogger(getClass());
+  private final LatencyStats coldValidations = new LatencyStats("Cold token validations");
+  private final LatencyStats cachedValidations = new LatencyStats("Cached token validations");
 
   public LoginTokenManager(GeminiApplication application)
   {
@@ -216,6 +261,14 @@ public class LoginTokenManager
         DEFAULT_PURGE_EVENT_MINUTE, 0, 59);
     oneTimeUseTokens = focus.getBoolean("OneTimeUseTokens", 
         DEFAULT_ONE_TIME_USE_TOKENS);
+    selectorColumn = focus.getBoolean("SelectorColumn", 
+        DEFAULT_SELECTOR_COLUMN);
+    final int cacheSeconds = focus.getInt("ValidationCacheSeconds", 
+        DEFAULT_VALIDATION_CACHE_SECONDS, 0, Integer.MAX_VALUE);
+    validationCache = cacheSeconds > 0
+        ? new TokenValidationCache(focus.getInt("ValidationCacheSize", 
+            DEFAULT_VALIDATION_CACHE_SIZE, 1, Integer.MAX_VALUE), cacheSeconds)
+        : null;
     app().getScheduler().removeEvent(purgeEvent);
     if (purgeEventEnabled)
     {
@@ -232,6 +285,8 @@ public class LoginTokenManager
             + "databaseTableName=%s, "
             + "cookieSecure=%s, "
             + "oneTimeUseTokens=%s, "
+            + "selectorColumn=%s, "
+            + "validationCache=%s, "
             + "tokenExpirationInDays=%s, "
             + "maxTokensPerUser=%s, "
             + "purgeEventEnabled=%s, "
@@ -243,6 +298,8 @@ public class LoginTokenManager
         databaseTableName,
         cookieSecure,
         oneTimeUseTokens,
+        selectorColumn,
+        validationCache != null,
         tokenExpirationInDays,
         maxTokensPerUser,
         purgeEventEnabled,
@@ -280,7 +337,23 @@ public class LoginTokenManager
    */
   private String generateToken()
   {
-    return StringHelper.secureRandomString.alphanumeric(TOKEN_DIGITS);
+    final String token = StringHelper.secureRandomString.alphanumeric(TOKEN_DIGITS);
+    return selectorColumn
+        ? StringHelper.secureRandomString.alphanumeric(SELECTOR_DIGITS) 
+            + SELECTOR_SEPARATOR + token
+        : token;
+  }
+
+  /**
+   * Returns the selector portion of a token, or null if the token has no
+   * selector (e.g., because it was generated before selectors were enabled).
+   */
+  private static String getSelector(String token)
+  {
+    return token.length() > SELECTOR_DIGITS 
+        && token.charAt(SELECTOR_DIGITS) == SELECTOR_SEPARATOR
+        ? token.substring(0, SELECTOR_DIGITS)
+        : null;
   }
 
   /**
@@ -427,12 +500,19 @@ public class LoginTokenManager
                  "INSERT INTO " + enquote(databaseTableName)
                      + " (" + enquote("username")
                      + ", " + enquote("tokenhash")
-                     + ", " + enquote("created") + ")"
-                     + " VALUES (?, ?, ?);"))
+                     + ", " + enquote("created") 
+                     + (selectorColumn ? ", " + enquote("selector") + ")" 
+                                            + " VALUES (?, ?, ?, ?);"
+                                       : ")" 
+                                            + " VALUES (?, ?, ?);")))
         {
           statement.setString(1, username);
           statement.setString(2, generateTokenHash(username, token));
           statement.setString(3, generateTimestamp());
+          if (selectorColumn)
+          {
+            statement.setString(4, getSelector(token));
+          }
           statement.executeUpdate();
         }
         catch (SQLException e)
@@ -509,6 +589,11 @@ public class LoginTokenManager
   public void clearAllTokensForUser(String username)
   {
     Objects.requireNonNull(username);
+    final TokenValidationCache cache = validationCache;
+    if (cache != null)
+    {
+      cache.invalidateUser(username);
+    }
     ThreadHelper.submit(new Runnable() {
       @Override
       public void run()
@@ -571,18 +656,65 @@ public class LoginTokenManager
       return TokenValidation.FAILURE;
     }
     final String username = cookieValue.substring(0, pipeIndex);
+    
+    final TokenValidationCache cache = validationCache;
+    if (cache != null)
+    {
+      final long start = System.nanoTime();
+      final TokenValidation cached = cache.get(cookieValue, this::tokenExists);
+      if (cached != null)
+      {
+        if (!cached.isValid())
+        {
+          context.cookies().remove(cookieName);
+        }
+        cachedValidations.recordSince(start);
+        return cached;
+      }
+    }
+    
+    final long start = System.nanoTime();
+    final TokenValidation validation = validateToken(context, cookieName, 
+        cookieValue, username);
+    coldValidations.recordSince(start);
+    
+    // A valid one-time-use token has been replaced, so it must not be
+    // accepted again from the cache.
+    if (cache != null && !(validation.isValid() && oneTimeUseTokens))
+    {
+      cache.put(cookieValue, validation);
+    }
+    return validation;
+  }
+
+  /**
+   * Validates a login cookie against the database, replacing the token if 
+   * tokens are one-time-use.
+   */
+  private TokenValidation validateToken(Context context, String cookieName,
+      String cookieValue, String username) throws SQLException
+  {
+    final String selector = selectorColumn 
+        ? getSelector(cookieValue.substring(username.length() + 1))
+        : null;
     try (ConnectionMonitor monitor = app().getConnectorFactory().getConnectionMonitor();
          PreparedStatement statement = monitor.getConnection().prepareStatement(
              "SELECT " + enquote("id")
                  + ", " + enquote("username")
                  + ", " + enquote("tokenhash")
                  + ", " + enquote("created")
+                 + (selectorColumn ? ", " + enquote("selector") : "")
                  + " FROM " + enquote(databaseTableName)
-                 + " WHERE " + enquote("username") + " = ?;",
+                 + " WHERE " + enquote("username") + " = ?"
+                 + (selector != null ? " AND " + enquote("selector") + " = ?;" : ";"),
              ResultSet.TYPE_FORWARD_ONLY,
              ResultSet.CONCUR_UPDATABLE))
     {
       statement.setString(1, username);
+      if (selector != null)
+      {
+        statement.setString(2, selector);
+      }
       try (ResultSet resultSet = statement.executeQuery())
       {
         while (resultSet.next())
@@ -593,13 +725,18 @@ public class LoginTokenManager
             if (oneTimeUseTokens)
             {
               final String newToken = generateToken();
-              resultSet.updateString(3, generateTokenHash(username, newToken));
-              resultSet.updateString(4, generateTimestamp());
+              resultSet.updateString("tokenhash", generateTokenHash(username, newToken));
+              resultSet.updateString("created", generateTimestamp());
+              if (selectorColumn)
+              {
+                resultSet.updateString("selector", getSelector(newToken));
+              }
               resultSet.updateRow();
               final String newCookieValue = generateCookieValue(username, newToken);
               context.cookies().put(generateCookie(cookieName, newCookieValue));
             }
-            return new TokenValidation(true, username);
+            return new TokenValidation(true, username, 
+                resultSet.getLong("id"));
           }
         }
       }
@@ -609,6 +746,43 @@ public class LoginTokenManager
     return new TokenValidation(false, username);
   }
 
+  /**
+   * Determines whether a token's row still exists, i.e., the token has not
+   * been revoked since it was validated.
+   */
+  private boolean tokenExists(long tokenId) throws SQLException
+  {
+    try (ConnectionMonitor monitor = app().getConnectorFactory().getConnectionMonitor();
+         PreparedStatement statement = monitor.getConnection().prepareStatement(
+             "SELECT " + enquote("id")
+                 + " FROM " + enquote(databaseTableName)
+                 + " WHERE " + enquote("id") + " = ?;"))
+    {
+      statement.setLong(1, tokenId);
+      try (ResultSet resultSet = statement.executeQuery())
+      {
+        return resultSet.next();
+      }
+    }
+  }
+
+  /**
+   * Gets latency statistics for validations that required the database and
+   * BCrypt.
+   */
+  public LatencyStats getColdValidationStats()
+  {
+    return coldValidations;
+  }
+
+  /**
+   * Gets latency statistics for validations answered from the cache.
+   */
+  public LatencyStats getCachedValidationStats()
+  {
+    return cachedValidations;
+  }
+
   // Inner classes
 
   /**
@@ -682,11 +856,18 @@ public class LoginTokenManager
 
     private final boolean valid;
     private final String username;
+    private final long tokenId;
 
     private TokenValidation(boolean valid, String username)
+    {
+      this(valid, username, 0L);
+    }
+
+    TokenValidation(boolean valid, String username, long tokenId)
     {
       this.valid = valid;
       this.username = username;
+      this.tokenId = tokenId;
     }
 
     /**
@@ -709,6 +890,15 @@ public class LoginTokenManager
     {
       return username;
     }
+
+    /**
+     * Returns the identity of the validated token's row, or 0 if the login
+     * attempt was not valid.
+     */
+    long getTokenId()
+    {
+      return tokenId;
+    }
     
     /**
      * Returns {@code true} if the cookie provided a login attempt that was
@@ -51,6 +51,15 @@ public interface PyxisSecurity
    */
   void captureFailedLoginAttempt(Context context);
 
+  /**
+   * React to a failed login attempt for a username.  The default 
+   * functionality ignores the username.
+   */
+  default void captureFailedLoginAttempt(Context context, String username)
+  {
+    captureFailedLoginAttempt(context);
+  }
+
   /**
    * React to a successful login attempt.  The default functionality will
    * clear any failed-attempt counting if failed-attempt limiting is enabled. 
@@ -174,6 +183,15 @@ public interface PyxisSecurity
    * Is a login attempt permitted for the current COntext?
    */
   boolean isLoginAttemptPermitted(Context context);
+
+  /**
+   * Is a login attempt for a username permitted for the current Context?
+   * The default functionality ignores the username.
+   */
+  default boolean isLoginAttemptPermitted(Context context, String username)
+  {
+    return isLoginAttemptPermitted(context);
+  }
   
   /**
    * Validate a proposed password for a User.  Returns a list of String error
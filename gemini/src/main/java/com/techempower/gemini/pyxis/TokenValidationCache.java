@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.pyxis;
+
+import java.nio.charset.*;
+import java.security.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.google.common.cache.*;
+
+import com.techempower.gemini.pyxis.LoginTokenManager.*;
+
+/**
+ * Briefly caches the results of validating login cookies for 
+ * LoginTokenManager, keyed by a SHA-256 hash of the cookie value so that
+ * raw tokens are not retained in memory.
+ *   <p>
+ * A token can be revoked by paths this cache does not see: the purge 
+ * event, trimming a user's excess tokens, or another application instance
+ * clearing a user's tokens.  A validation can also be re-cached by a
+ * request that read the token just before it was revoked.  So a cached
+ * successful validation is only served after confirming that its token's
+ * row still exists, a primary-key lookup that is far cheaper than the 
+ * BCrypt check it saves.  Failed validations are served without a check,
+ * since a rejected token cannot become valid.
+ */
+class TokenValidationCache
+{
+
+  //
+  // Member variables.
+  //
+
+  private final Cache<String, TokenValidation> cache;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   *
+   * @param maximumSize The maximum number of cached validations.
+   * @param seconds How long a validation is cached.
+   */
+  TokenValidationCache(int maximumSize, int seconds)
+  {
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(seconds, TimeUnit.SECONDS)
+        .build();
+  }
+
+  /**
+   * Gets the cached validation of a cookie value, or null if there is none
+   * or its token no longer exists.
+   *
+   * @param cookieValue The login cookie's value.
+   * @param tokens Determines whether a token's row still exists.
+   */
+  TokenValidation get(String cookieValue, TokenCheck tokens) 
+      throws SQLException
+  {
+    final String key = generateKey(cookieValue);
+    final TokenValidation cached = cache.getIfPresent(key);
+    if ((cached != null)
+        && (cached.isValid())
+        && (!tokens.exists(cached.getTokenId())))
+    {
+      cache.asMap().remove(key, cached);
+      return null;
+    }
+    return cached;
+  }
+
+  /**
+   * Caches the validation of a cookie value.
+   */
+  void put(String cookieValue, TokenValidation validation)
+  {
+    cache.put(generateKey(cookieValue), validation);
+  }
+
+  /**
+   * Removes all cached validations for a user.
+   */
+  void invalidateUser(String username)
+  {
+    cache.asMap().values().removeIf(
+        validation -> username.equals(validation.getUsername()));
+  }
+
+  /**
+   * Removes all cached validations.
+   */
+  void invalidateAll()
+  {
+    cache.invalidateAll();
+  }
+
+  /**
+   * Returns a fast, non-reversible hash of a cookie value.
+   */
+  private static String generateKey(String cookieValue)
+  {
+    try
+    {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return Base64.getEncoder().encodeToString(
+          digest.digest(cookieValue.getBytes(StandardCharsets.UTF_8)));
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      // SHA-256 is required of every Java platform.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  //
+  // Inner classes.
+  //
+
+  /**
+   * Determines whether a login token's row still exists.
+   */
+  @FunctionalInterface
+  interface TokenCheck
+  {
+    boolean exists(long tokenId) throws SQLException;
+  }
+
+}  // End TokenValidationCache.
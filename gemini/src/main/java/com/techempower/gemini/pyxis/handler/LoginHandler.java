@@ -181,7 +181,7 @@ public class LoginHandler<C extends Context>
       final boolean saveCookie = values.has("lhremember");
 
       // Determine if the current IP address can login right now. 
-      boolean success = security.isLoginAttemptPermitted(context);
+      boolean success = security.isLoginAttemptPermitted(context, username);
       
       // If the IP address is permitted to attempt a login, let's proceed.
       if (success)
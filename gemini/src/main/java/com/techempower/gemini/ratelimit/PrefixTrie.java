@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.ratelimit;
+
+import java.util.*;
+
+/**
+ * A character trie mapping string prefixes to values, for matching strings
+ * such as IP addresses and request URIs against a set of prefix patterns
+ * (e.g., "10.0." or "/api/") in time proportional to the length of the
+ * string rather than the number of patterns.
+ *   <p>
+ * A PrefixTrie is not safe for concurrent modification.  Build it fully
+ * and then publish it (e.g., via a volatile or final field); concurrent
+ * reads are safe thereafter.
+ */
+public class PrefixTrie<V>
+{
+
+  //
+  // Member variables.
+  //
+
+  private final Node<V> root = new Node<>();
+  private int           size = 0;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructs a PrefixTrie from an array of prefixes, each mapped to itself.
+   * Null and empty prefixes are ignored.
+   */
+  public static PrefixTrie<String> of(String... prefixes)
+  {
+    final PrefixTrie<String> trie = new PrefixTrie<>();
+    if (prefixes != null)
+    {
+      for (String prefix : prefixes)
+      {
+        if (prefix != null && !prefix.isEmpty())
+        {
+          trie.put(prefix, prefix);
+        }
+      }
+    }
+    return trie;
+  }
+
+  /**
+   * Maps a prefix to a value, replacing any value previously mapped to the
+   * same prefix.
+   */
+  public PrefixTrie<V> put(String prefix, V value)
+  {
+    Node<V> node = root;
+    for (int i = 0; i < prefix.length(); i++)
+    {
+      node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Node<>());
+    }
+    if (node.value == null)
+    {
+      size++;
+    }
+    node.value = value;
+    return this;
+  }
+
+  /**
+   * Gets the value mapped to the longest prefix of the given string, or null
+   * if no prefix of the string has been added.
+   */
+  public V longestMatch(String string)
+  {
+    if (string == null)
+    {
+      return null;
+    }
+    Node<V> node = root;
+    V match = root.value;
+    for (int i = 0; i < string.length() && node != null; i++)
+    {
+      node = node.children.get(string.charAt(i));
+      if (node != null && node.value != null)
+      {
+        match = node.value;
+      }
+    }
+    return match;
+  }
+
+  /**
+   * Determines whether any prefix of the given string has been added.
+   */
+  public boolean matches(String string)
+  {
+    return longestMatch(string) != null;
+  }
+
+  /**
+   * Gets the number of prefixes added.
+   */
+  public int size()
+  {
+    return size;
+  }
+
+  /**
+   * Determines whether no prefixes have been added.
+   */
+  public boolean isEmpty()
+  {
+    return size == 0;
+  }
+
+  //
+  // Inner classes.
+  //
+
+  /**
+   * A node of the trie; the value is non-null if a prefix ends here.
+   */
+  private static final class Node<V>
+  {
+    private final Map<Character, Node<V>> children = new HashMap<>(4);
+    private V value;
+  }
+
+}  // End PrefixTrie.
@@ -0,0 +1,280 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.ratelimit;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import com.techempower.gemini.*;
+import com.techempower.gemini.prehandler.*;
+import com.techempower.gemini.pyxis.*;
+import com.techempower.helper.*;
+import com.techempower.util.*;
+import org.slf4j.*;
+
+/**
+ * Rejects requests exceeding configured rate limits with a 429 (Too Many
+ * Requests) response and a Retry-After header.  Limits may be set per 
+ * client IP address, per logged-in user, and per route; requests from 
+ * logged-in users count against the user limit rather than the IP limit, 
+ * so that users sharing an address are not limited together.  Route limits
+ * apply per client (user or IP address) to requests whose URI begins with
+ * the route's prefix, using the longest matching prefix.
+ *   <p>
+ * Reads the following configuration options from the .conf file:
+ *   <ul>
+ * <li>RateLimit.Enabled - Enable rate limiting?  Default is yes, though no
+ *     limits are enforced unless at least one limit is configured.</li>
+ * <li>RateLimit.WindowSeconds - The length of the sliding window in 
+ *     seconds.  Default is 60.</li>
+ * <li>RateLimit.MaximumKeys - The maximum number of clients tracked per
+ *     limit; see RateLimiter.  Default is 100,000.</li>
+ * <li>RateLimit.PerIp - Requests permitted per IP address per window; 0
+ *     for no limit.  Default is 0.</li>
+ * <li>RateLimit.PerUser - Requests permitted per logged-in user per window;
+ *     0 for no limit.  Default is 0.</li>
+ * <li>RateLimit.Routes - A comma-separated list of URI prefixes and limits
+ *     in the form prefix:limit, e.g., "/login:10, /api/search:120".</li>
+ * <li>RateLimit.UnlimitedIpAddressPatterns - A comma-separated list of IP
+ *     address prefixes that are never limited.</li>
+ * <li>RateLimit.BannedIpAddressPatterns - A comma-separated list of IP
+ *     address prefixes whose requests are always rejected.</li>
+ *   </ul>
+ */
+public class RateLimitPrehandler
+  implements Prehandler,
+             Configurable
+{
+
+  //
+  // Constants.
+  //
+
+  public static final int    SC_TOO_MANY_REQUESTS = 429;
+  public static final int    DEFAULT_WINDOW_SECONDS = 60;
+
+  //
+  // Member variables.
+  //
+
+  private final GeminiApplication application;
+  private final Logger            log = LoggerFactory.getLogger(getClass());
+  private final AtomicLong        bannedCount = new AtomicLong();
+  private volatile Limits         limits = new Limits();
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   */
+  public RateLimitPrehandler(GeminiApplication application)
+  {
+    this.application = application;
+    application.getConfigurator().addConfigurable(this);
+  }
+
+  @Override
+  public void configure(EnhancedProperties props)
+  {
+    final EnhancedProperties.Focus focus = props.focus("RateLimit.");
+    final Limits newLimits = new Limits();
+    newLimits.enabled = focus.getBoolean("Enabled", true);
+    newLimits.windowSeconds = focus.getInt("WindowSeconds", 
+        DEFAULT_WINDOW_SECONDS, 1, Integer.MAX_VALUE);
+    final long windowMillis = newLimits.windowSeconds * 1000L;
+    final int maximumKeys = focus.getInt("MaximumKeys", 
+        RateLimiter.DEFAULT_MAXIMUM_KEYS, 1, Integer.MAX_VALUE);
+    
+    final int perIp = focus.getInt("PerIp", 0);
+    if (perIp > 0)
+    {
+      newLimits.perIp = new RateLimiter(perIp, windowMillis, maximumKeys);
+    }
+    final int perUser = focus.getInt("PerUser", 0);
+    if (perUser > 0)
+    {
+      newLimits.perUser = new RateLimiter(perUser, windowMillis, maximumKeys);
+    }
+    for (String route : StringHelper.splitAndTrim(focus.get("Routes"), ","))
+    {
+      final int colon = route.lastIndexOf(':');
+      final int limit = colon > 0 
+          ? NumberHelper.parseInt(route.substring(colon + 1).trim(), 0) 
+          : 0;
+      if (limit > 0)
+      {
+        final RateLimiter limiter = new RateLimiter(limit, windowMillis, maximumKeys);
+        newLimits.perRoute.put(route.substring(0, colon).trim(), limiter);
+        newLimits.routeLimiters.add(limiter);
+      }
+      else
+      {
+        log.warn("Ignoring malformed RateLimit.Routes entry: {}", route);
+      }
+    }
+    newLimits.unlimited = PrefixTrie.of(StringHelper.splitTrimAndLower(
+        focus.get("UnlimitedIpAddressPatterns"), ","));
+    newLimits.banned = PrefixTrie.of(StringHelper.splitTrimAndLower(
+        focus.get("BannedIpAddressPatterns"), ","));
+    
+    limits = newLimits;
+    log.info("Rate limits: {}/ip, {}/user, {} route(s) per {}s.",
+        perIp, perUser, newLimits.perRoute.size(), newLimits.windowSeconds);
+  }
+
+  @Override
+  public boolean prehandle(Context context)
+  {
+    final Limits current = limits;
+    if (!current.enabled)
+    {
+      return false;
+    }
+    
+    final String ip = context.getClientId();
+    final String address = (ip == null) ? "" : ip.toLowerCase();
+    if (current.unlimited.matches(address))
+    {
+      return false;
+    }
+    if (current.banned.matches(address))
+    {
+      bannedCount.incrementAndGet();
+      return reject(context, current, "banned address");
+    }
+    
+    String client = address;
+    RateLimiter clientLimiter = current.perIp;
+    if (current.perUser != null)
+    {
+      final PyxisSecurity security = application.getSecurity();
+      final PyxisUser user = (security == null) ? null : security.getUser(context);
+      if (user != null)
+      {
+        client = "user:" + user.getId();
+        clientLimiter = current.perUser;
+      }
+    }
+    if (clientLimiter != null && !clientLimiter.tryAcquire(client))
+    {
+      return reject(context, current, client);
+    }
+    
+    if (!current.perRoute.isEmpty())
+    {
+      final RateLimiter routeLimiter = current.perRoute.longestMatch(
+          context.getRequestUri());
+      if (routeLimiter != null && !routeLimiter.tryAcquire(client))
+      {
+        return reject(context, current, client + " on " + context.getRequestUri());
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Sends a 429 response.
+   */
+  private boolean reject(Context context, Limits current, String reason)
+  {
+    log.debug("Rate limited request from {}: {}", context.getClientId(), reason);
+    context.headers().put("Retry-After", Integer.toString(current.windowSeconds));
+    context.setStatus(SC_TOO_MANY_REQUESTS);
+    return true;
+  }
+
+  /**
+   * Gets the per-IP-address limiter, or null if there is no per-IP limit.
+   */
+  public RateLimiter getIpLimiter()
+  {
+    return limits.perIp;
+  }
+
+  /**
+   * Gets the per-user limiter, or null if there is no per-user limit.
+   */
+  public RateLimiter getUserLimiter()
+  {
+    return limits.perUser;
+  }
+
+  /**
+   * Gets the number of requests rejected since the most recent 
+   * configuration, including requests from banned addresses.
+   */
+  public long getRejectedCount()
+  {
+    final Limits current = limits;
+    long total = bannedCount.get();
+    if (current.perIp != null)
+    {
+      total += current.perIp.getRejectedCount();
+    }
+    if (current.perUser != null)
+    {
+      total += current.perUser.getRejectedCount();
+    }
+    for (RateLimiter limiter : current.routeLimiters)
+    {
+      total += limiter.getRejectedCount();
+    }
+    return total;
+  }
+
+  /**
+   * Gets the number of requests rejected because they came from banned
+   * addresses.
+   */
+  public long getBannedCount()
+  {
+    return bannedCount.get();
+  }
+
+  //
+  // Inner classes.
+  //
+
+  /**
+   * A configured set of limits, replaced as a whole on reconfiguration.
+   */
+  private static final class Limits
+  {
+    private boolean                 enabled = false;
+    private int                     windowSeconds = DEFAULT_WINDOW_SECONDS;
+    private RateLimiter             perIp;
+    private RateLimiter             perUser;
+    private final List<RateLimiter> routeLimiters = new ArrayList<>();
+    private final PrefixTrie<RateLimiter> perRoute = new PrefixTrie<>();
+    private PrefixTrie<String>      unlimited = new PrefixTrie<>();
+    private PrefixTrie<String>      banned = new PrefixTrie<>();
+  }
+
+}  // End RateLimitPrehandler.
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.ratelimit;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * Limits the rate of events per key (such as a client IP address, a user
+ * ID, or a route) to a number of events per window of time.  Counts are
+ * kept with the sliding-window-counter approximation: the count for the
+ * current fixed window plus the previous window's count weighted by how
+ * much of it still overlaps the sliding window.  This smooths the bursts 
+ * permitted at fixed window boundaries while keeping just two counters per
+ * key.
+ *   <p>
+ * Keys are hashed into a fixed number of stripes, each a small 
+ * least-recently-used map guarded by its own lock, so the memory used is
+ * bounded by maximumKeys regardless of how many distinct keys are seen and
+ * contention is limited to keys sharing a stripe.  When a stripe is full,
+ * its least-recently-used key is forgotten, which at worst allows that key
+ * a fresh window.
+ */
+public class RateLimiter
+{
+
+  //
+  // Constants.
+  //
+
+  public static final int    DEFAULT_MAXIMUM_KEYS = 100_000;
+  
+  private static final int   STRIPES = 64;
+
+  //
+  // Member variables.
+  //
+
+  private final int          limit;
+  private final long         windowNanos;
+  private final Stripe[]     stripes;
+  private final LongSupplier clock;
+  private final AtomicLong   accepted = new AtomicLong();
+  private final AtomicLong   rejected = new AtomicLong();
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   * 
+   * @param limit The number of events permitted per key per window.
+   * @param windowMillis The length of the window in milliseconds.
+   * @param maximumKeys The maximum number of keys to track.
+   */
+  public RateLimiter(int limit, long windowMillis, int maximumKeys)
+  {
+    this(limit, windowMillis, maximumKeys, System::nanoTime);
+  }
+
+  /**
+   * Constructor.  Tracks up to DEFAULT_MAXIMUM_KEYS keys.
+   */
+  public RateLimiter(int limit, long windowMillis)
+  {
+    this(limit, windowMillis, DEFAULT_MAXIMUM_KEYS);
+  }
+
+  /**
+   * Constructor with a specified nanosecond clock, for testing.
+   */
+  RateLimiter(int limit, long windowMillis, int maximumKeys, LongSupplier clock)
+  {
+    if (limit < 1 || windowMillis < 1 || maximumKeys < 1)
+    {
+      throw new IllegalArgumentException(
+          "Limit, window, and maximum keys must be positive.");
+    }
+    this.limit = limit;
+    this.windowNanos = windowMillis * 1_000_000L;
+    this.clock = clock;
+    this.stripes = new Stripe[STRIPES];
+    final int perStripe = Math.max(1, maximumKeys / STRIPES);
+    for (int i = 0; i < STRIPES; i++)
+    {
+      this.stripes[i] = new Stripe(perStripe);
+    }
+  }
+
+  /**
+   * Records an event for a key if doing so would not exceed the limit. 
+   * Returns true if the event is permitted; false if it should be rejected.
+   * Rejected events are not counted against the key.
+   */
+  public boolean tryAcquire(String key)
+  {
+    final long now = clock.getAsLong();
+    final long index = Math.floorDiv(now, windowNanos);
+    final double overlap = 1.0D - (double)Math.floorMod(now, windowNanos) / windowNanos;
+    
+    final Stripe stripe = stripes[spread(key.hashCode()) & (STRIPES - 1)];
+    final boolean permitted;
+    synchronized (stripe)
+    {
+      Window window = stripe.get(key);
+      if (window == null)
+      {
+        window = new Window(index);
+        stripe.put(key, window);
+      }
+      window.roll(index);
+      permitted = window.previous * overlap + window.current < limit;
+      if (permitted)
+      {
+        window.current++;
+      }
+    }
+    
+    (permitted ? accepted : rejected).incrementAndGet();
+    return permitted;
+  }
+
+  /**
+   * Gets the number of events permitted per key per window.
+   */
+  public int getLimit()
+  {
+    return limit;
+  }
+
+  /**
+   * Gets the length of the window in milliseconds.
+   */
+  public long getWindowMillis()
+  {
+    return windowNanos / 1_000_000L;
+  }
+
+  /**
+   * Gets the number of events permitted since construction or reset.
+   */
+  public long getAcceptedCount()
+  {
+    return accepted.get();
+  }
+
+  /**
+   * Gets the number of events rejected since construction or reset.
+   */
+  public long getRejectedCount()
+  {
+    return rejected.get();
+  }
+
+  /**
+   * Gets the number of keys currently tracked.
+   */
+  public int size()
+  {
+    int size = 0;
+    for (Stripe stripe : stripes)
+    {
+      synchronized (stripe)
+      {
+        size += stripe.size();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Forgets all keys and resets the accepted and rejected counts.
+   */
+  public void reset()
+  {
+    for (Stripe stripe : stripes)
+    {
+      synchronized (stripe)
+      {
+        stripe.clear();
+      }
+    }
+    accepted.set(0L);
+    rejected.set(0L);
+  }
+
+  /**
+   * Spreads the higher bits of a hash code into the lower bits used to 
+   * select a stripe.
+   */
+  private static int spread(int hash)
+  {
+    return hash ^ (hash >>> 16) ^ (hash >>> 8);
+  }
+
+  //
+  // Inner classes.
+  //
+
+  /**
+   * The counts for one key.
+   */
+  private static final class Window
+  {
+    private long index;
+    private int  previous;
+    private int  current;
+
+    private Window(long index)
+    {
+      this.index = index;
+    }
+
+    /**
+     * Advances to the window with the given index.
+     */
+    private void roll(long newIndex)
+    {
+      if (newIndex != index)
+      {
+        previous = (newIndex == index + 1) ? current : 0;
+        current = 0;
+        index = newIndex;
+      }
+    }
+  }
+
+  /**
+   * A bounded, access-ordered map of keys to their counts.
+   */
+  private static final class Stripe
+    extends LinkedHashMap<String, Window>
+  {
+    private static final long serialVersionUID = 1L;
+    
+    private final int capacity;
+
+    private Stripe(int capacity)
+    {
+      super(16, 0.75f, true);
+      this.capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Window> eldest)
+    {
+      return size() > capacity;
+    }
+  }
+
+}  // End RateLimiter.
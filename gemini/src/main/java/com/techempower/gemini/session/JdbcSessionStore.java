@@ -0,0 +1,425 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.session;
+
+import java.sql.*;
+import java.util.*;
+
+import com.techempower.data.*;
+import org.slf4j.*;
+
+/**
+ * A SessionStore backed by two database tables, allowing application 
+ * instances sharing a database to share sessions.  The tables are expected
+ * to resemble the following (adjust the column types for your database):
+ *   <pre>
+ * CREATE TABLE GeminiSession (
+ *   id VARCHAR(64) NOT NULL PRIMARY KEY,
+ *   created BIGINT NOT NULL,
+ *   lastaccessed BIGINT NOT NULL,
+ *   maxinactive INT NOT NULL,
+ *   requesthash INT NOT NULL,
+ *   expires BIGINT NOT NULL
+ * );
+ * CREATE INDEX GeminiSession_expires ON GeminiSession (expires);
+ * CREATE TABLE GeminiSessionAttribute (
+ *   sessionid VARCHAR(64) NOT NULL,
+ *   name VARCHAR(255) NOT NULL,
+ *   value BLOB NOT NULL,
+ *   PRIMARY KEY (sessionid, name)
+ * );
+ *   </pre>
+ * Database errors are logged; a session that cannot be loaded is treated
+ * as absent.
+ */
+public class JdbcSessionStore
+  implements SessionStore
+{
+
+  //
+  // Constants.
+  //
+
+  public static final String DEFAULT_SESSION_TABLE   = "GeminiSession";
+  public static final String DEFAULT_ATTRIBUTE_TABLE = "GeminiSessionAttribute";
+
+  //
+  // Member variables.
+  //
+
+  private final ConnectorFactory connectorFactory;
+  private final Logger           log = LoggerFactory.getLogger(getClass());
+  private final String           loadQuery;
+  private final String           loadAttributeQuery;
+  private final String           attributeNamesQuery;
+  private final String           updateQuery;
+  private final String           insertQuery;
+  private final String           updateAttributeQuery;
+  private final String           insertAttributeQuery;
+  private final String           deleteAttributeQuery;
+  private final String           deleteQuery;
+  private final String           deleteAttributesQuery;
+  private final String           purgeAttributesQuery;
+  private final String           purgeQuery;
+  private final String           sizeQuery;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor using the default table names.
+   */
+  public JdbcSessionStore(ConnectorFactory connectorFactory)
+  {
+    this(connectorFactory, DEFAULT_SESSION_TABLE, DEFAULT_ATTRIBUTE_TABLE);
+  }
+
+  /**
+   * Constructor.
+   */
+  public JdbcSessionStore(ConnectorFactory connectorFactory, 
+      String sessionTable, String attributeTable)
+  {
+    this.connectorFactory = connectorFactory;
+    
+    final String quote = connectorFactory.getIdentifierQuoteString();
+    final String sessions = quote + sessionTable + quote;
+    final String attributes = quote + attributeTable + quote;
+    
+    this.loadQuery = "SELECT created, lastaccessed, maxinactive, requesthash FROM "
+        + sessions + " WHERE id = ?;";
+    this.loadAttributeQuery = "SELECT value FROM " + attributes 
+        + " WHERE sessionid = ? AND name = ?;";
+    this.attributeNamesQuery = "SELECT name FROM " + attributes 
+        + " WHERE sessionid = ?;";
+    this.updateQuery = "UPDATE " + sessions 
+        + " SET lastaccessed = ?, maxinactive = ?, requesthash = ?, expires = ?"
+        + " WHERE id = ?;";
+    this.insertQuery = "INSERT INTO " + sessions 
+        + " (lastaccessed, maxinactive, requesthash, expires, id, created)"
+        + " VALUES (?, ?, ?, ?, ?, ?);";
+    this.updateAttributeQuery = "UPDATE " + attributes 
+        + " SET value = ? WHERE sessionid = ? AND name = ?;";
+    this.insertAttributeQuery = "INSERT INTO " + attributes 
+        + " (value, sessionid, name) VALUES (?, ?, ?);";
+    this.deleteAttributeQuery = "DELETE FROM " + attributes 
+        + " WHERE sessionid = ? AND name = ?;";
+    this.deleteQuery = "DELETE FROM " + sessions + " WHERE id = ?;";
+    this.deleteAttributesQuery = "DELETE FROM " + attributes 
+        + " WHERE sessionid = ?;";
+    this.purgeAttributesQuery = "DELETE FROM " + attributes 
+        + " WHERE sessionid IN (SELECT id FROM " + sessions 
+        + " WHERE expires <= ?);";
+    this.purgeQuery = "DELETE FROM " + sessions + " WHERE expires <= ?;";
+    this.sizeQuery = "SELECT COUNT(*) FROM " + sessions + ";";
+  }
+
+  @Override
+  public SessionRecord load(String id)
+  {
+    try (ConnectionMonitor monitor = connectorFactory.getConnectionMonitor();
+         PreparedStatement statement = monitor.prepareStatement(loadQuery))
+    {
+      statement.setString(1, id);
+      try (ResultSet resultSet = statement.executeQuery())
+      {
+        if (resultSet.next())
+        {
+          return new SessionRecord(id, resultSet.getLong(1), 
+              resultSet.getLong(2), resultSet.getInt(3), resultSet.getInt(4));
+        }
+      }
+    }
+    catch (SQLException e)
+    {
+      log.warn("Exception while loading session {}.", id, e);
+    }
+    return null;
+  }
+
+  @Override
+  public byte[] loadAttribute(String id, String name)
+  {
+    try (ConnectionMonitor monitor = connectorFactory.getConnectionMonitor();
+         PreparedStatement statement = monitor.prepareStatement(loadAttributeQuery))
+    {
+      statement.setString(1, id);
+      statement.setString(2, name);
+      try (ResultSet resultSet = statement.executeQuery())
+      {
+        if (resultSet.next())
+        {
+          return resultSet.getBytes(1);
+        }
+      }
+    }
+    catch (SQLException e)
+    {
+      log.warn("Exception while loading attribute {} of session {}.", 
+          name, id, e);
+    }
+    return null;
+  }
+
+  @Override
+  public Set<String> getAttributeNames(String id)
+  {
+    final Set<String> names = new HashSet<>();
+    try (ConnectionMonitor monitor = connectorFactory.getConnectionMonitor();
+         PreparedStatement statement = monitor.prepareStatement(attributeNamesQuery))
+    {
+      statement.setString(1, id);
+      try (ResultSet resultSet = statement.executeQuery())
+      {
+        while (resultSet.next())
+        {
+          names.add(resultSet.getString(1));
+        }
+      }
+    }
+    catch (SQLException e)
+    {
+      log.warn("Exception while listing attributes of session {}.", id, e);
+    }
+    return names;
+  }
+
+  /**
+   * Saves the session record and attributes in one transaction.  For an
+   * existing session, the record is only updated; if its row is gone, the
+   * transaction is rolled back so that the writes are dropped rather than
+   * bringing a deleted session back.
+   */
+  @Override
+  public void save(SessionRecord record, boolean create, 
+      Map<String, byte[]> changed, Collection<String> removed)
+  {
+    try (ConnectionMonitor monitor = connectorFactory.getConnectionMonitor())
+    {
+      final Connection connection = monitor.getConnection();
+      final boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+      try
+      {
+        if (saveRecord(monitor, record, create))
+        {
+          saveAttributes(monitor, record.getId(), changed, removed);
+          connection.commit();
+        }
+        else
+        {
+          connection.rollback();
+          log.debug("Session {} no longer exists; discarding save.", 
+              record.getId());
+        }
+      }
+      catch (SQLException e)
+      {
+        connection.rollback();
+        throw e;
+      }
+      finally
+      {
+        connection.setAutoCommit(autoCommit);
+      }
+    }
+    catch (SQLException e)
+    {
+      log.warn("Exception while saving session {}.", record.getId(), e);
+    }
+  }
+
+  /**
+   * Inserts a new session's record or updates an existing one, returning
+   * false if an existing session's row no longer exists.
+   */
+  private boolean saveRecord(ConnectionMonitor monitor, SessionRecord record,
+      boolean create) throws SQLException
+  {
+    if (create)
+    {
+      try (PreparedStatement insert = monitor.prepareStatement(insertQuery))
+      {
+        setRecordParameters(insert, record);
+        insert.setLong(6, record.getCreated());
+        insert.executeUpdate();
+        return true;
+      }
+    }
+    try (PreparedStatement update = monitor.prepareStatement(updateQuery))
+    {
+      setRecordParameters(update, record);
+      return update.executeUpdate() > 0;
+    }
+  }
+
+  /**
+   * Writes changed attributes and deletes removed ones.
+   */
+  private void saveAttributes(ConnectionMonitor monitor, String id,
+      Map<String, byte[]> changed, Collection<String> removed) 
+      throws SQLException
+  {
+    for (Map.Entry<String, byte[]> attribute : changed.entrySet())
+    {
+      try (PreparedStatement update = monitor.prepareStatement(updateAttributeQuery))
+      {
+        setAttributeParameters(update, id, attribute);
+        if (update.executeUpdate() == 0)
+        {
+          try (PreparedStatement insert = monitor.prepareStatement(insertAttributeQuery))
+          {
+            setAttributeParameters(insert, id, attribute);
+            insert.executeUpdate();
+          }
+        }
+      }
+    }
+    if (!removed.isEmpty())
+    {
+      try (PreparedStatement delete = monitor.prepareStatement(deleteAttributeQuery))
+      {
+        for (String name : removed)
+        {
+          delete.setString(1, id);
+          delete.setString(2, name);
+          delete.addBatch();
+        }
+        delete.executeBatch();
+      }
+    }
+  }
+
+  /**
+   * Sets the first five parameters of the update and insert statements.
+   */
+  private static void setRecordParameters(PreparedStatement statement, 
+      SessionRecord record) throws SQLException
+  {
+    statement.setLong(1, record.getLastAccessed());
+    statement.setInt(2, record.getMaxInactiveInterval());
+    statement.setInt(3, record.getRequestHash());
+    statement.setLong(4, record.getExpiration());
+    statement.setString(5, record.getId());
+  }
+
+  /**
+   * Sets the parameters of the attribute update and insert statements.
+   */
+  private static void setAttributeParameters(PreparedStatement statement, 
+      String id, Map.Entry<String, byte[]> attribute) throws SQLException
+  {
+    statement.setBytes(1, attribute.getValue());
+    statement.setString(2, id);
+    statement.setString(3, attribute.getKey());
+  }
+
+  /**
+   * Deletes the session's row and then its attributes, in one transaction.
+   * Deleting the row first waits for any save of the session in progress,
+   * whose attributes are then deleted as well.
+   */
+  @Override
+  public void delete(String id)
+  {
+    try (ConnectionMonitor monitor = connectorFactory.getConnectionMonitor())
+    {
+      final Connection connection = monitor.getConnection();
+      final boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+      try
+      {
+        try (PreparedStatement statement = monitor.prepareStatement(deleteQuery))
+        {
+          statement.setString(1, id);
+          statement.executeUpdate();
+        }
+        try (PreparedStatement statement = monitor.prepareStatement(deleteAttributesQuery))
+        {
+          statement.setString(1, id);
+          statement.executeUpdate();
+        }
+        connection.commit();
+      }
+      catch (SQLException e)
+      {
+        connection.rollback();
+        throw e;
+      }
+      finally
+      {
+        connection.setAutoCommit(autoCommit);
+      }
+    }
+    catch (SQLException e)
+    {
+      log.warn("Exception while deleting session {}.", id, e);
+    }
+  }
+
+  @Override
+  public int purgeExpired(long now)
+  {
+    try (ConnectionMonitor monitor = connectorFactory.getConnectionMonitor())
+    {
+      try (PreparedStatement statement = monitor.prepareStatement(purgeAttributesQuery))
+      {
+        statement.setLong(1, now);
+        statement.executeUpdate();
+      }
+      try (PreparedStatement statement = monitor.prepareStatement(purgeQuery))
+      {
+        statement.setLong(1, now);
+        return statement.executeUpdate();
+      }
+    }
+    catch (SQLException e)
+    {
+      log.warn("Exception while purging expired sessions.", e);
+      return 0;
+    }
+  }
+
+  @Override
+  public int size()
+  {
+    try (ConnectionMonitor monitor = connectorFactory.getConnectionMonitor();
+         PreparedStatement statement = monitor.prepareStatement(sizeQuery);
+         ResultSet resultSet = statement.executeQuery())
+    {
+      return resultSet.next() ? resultSet.getInt(1) : 0;
+    }
+    catch (SQLException e)
+    {
+      log.warn("Exception while counting sessions.", e);
+      return -1;
+    }
+  }
+
+}  // End JdbcSessionStore.
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.session;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A SessionStore that keeps sessions in memory, for a single application
+ * instance.  Sessions are held in a ConcurrentHashMap, whose lock striping
+ * lets requests for different sessions proceed without contention; each 
+ * session's attributes are held in their own concurrent map.
+ */
+public class MemorySessionStore
+  implements SessionStore
+{
+
+  //
+  // Member variables.
+  //
+
+  private final ConcurrentMap<String, StoredEntry> sessions = 
+      new ConcurrentHashMap<>();
+
+  //
+  // Member methods.
+  //
+
+  @Override
+  public SessionRecord load(String id)
+  {
+    final StoredEntry entry = sessions.get(id);
+    if (entry == null)
+    {
+      return null;
+    }
+    synchronized (entry)
+    {
+      return new SessionRecord(entry.record);
+    }
+  }
+
+  @Override
+  public byte[] loadAttribute(String id, String name)
+  {
+    final StoredEntry entry = sessions.get(id);
+    return (entry == null) ? null : entry.attributes.get(name);
+  }
+
+  @Override
+  public Set<String> getAttributeNames(String id)
+  {
+    final StoredEntry entry = sessions.get(id);
+    return (entry == null) 
+        ? Collections.emptySet() 
+        : new HashSet<>(entry.attributes.keySet());
+  }
+
+  @Override
+  public void save(SessionRecord record, boolean create, 
+      Map<String, byte[]> changed, Collection<String> removed)
+  {
+    final StoredEntry entry = create
+        ? sessions.computeIfAbsent(record.getId(), 
+            id -> new StoredEntry(new SessionRecord(record)))
+        : sessions.get(record.getId());
+    if (entry == null)
+    {
+      // The session was deleted; discard the save.
+      return;
+    }
+    synchronized (entry)
+    {
+      entry.record.setLastAccessed(
+          Math.max(entry.record.getLastAccessed(), record.getLastAccessed()));
+      entry.record.setMaxInactiveInterval(record.getMaxInactiveInterval());
+      entry.record.setRequestHash(record.getRequestHash());
+    }
+    entry.attributes.putAll(changed);
+    for (String name : removed)
+    {
+      entry.attributes.remove(name);
+    }
+  }
+
+  @Override
+  public void delete(String id)
+  {
+    sessions.remove(id);
+  }
+
+  @Override
+  public int purgeExpired(long now)
+  {
+    int purged = 0;
+    for (Iterator<StoredEntry> iter = sessions.values().iterator(); iter.hasNext(); )
+    {
+      final StoredEntry entry = iter.next();
+      synchronized (entry)
+      {
+        if (entry.record.isExpired(now))
+        {
+          iter.remove();
+          purged++;
+        }
+      }
+    }
+    return purged;
+  }
+
+  @Override
+  public int size()
+  {
+    return sessions.size();
+  }
+
+  //
+  // Inner classes.
+  //
+
+  /**
+   * A stored session.
+   */
+  private static final class StoredEntry
+  {
+    private final SessionRecord                 record;
+    private final ConcurrentMap<String, byte[]> attributes = 
+        new ConcurrentHashMap<>();
+
+    private StoredEntry(SessionRecord record)
+    {
+      this.record = record;
+    }
+  }
+
+}  // End MemorySessionStore.
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.session;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Tracks session expiration times in a timing wheel: a ring of slots, each
+ * covering one tick of time, into which sessions are placed by expiration
+ * time.  Adding a session is constant-time and the sweeper visits only the
+ * slots whose ticks have elapsed, rather than every session or a timer per
+ * session.
+ *   <p>
+ * Entries are not moved when a session is accessed.  Instead, when a 
+ * session's slot comes due, the caller checks the session's current 
+ * expiration and re-adds it if it has been extended.  Expiration times more
+ * than one revolution away simply remain in their slot until their tick is
+ * reached.
+ */
+class SessionExpiryWheel
+{
+
+  //
+  // Member variables.
+  //
+
+  private final long                   tickMillis;
+  private final Queue<Entry>[]         slots;
+  private final int                    mask;
+  private volatile long                processedTick;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   * 
+   * @param tickMillis The length of one tick in milliseconds.
+   * @param slotCount The number of slots, rounded up to a power of two.
+   * @param now The current time in milliseconds.
+   */
+  @SuppressWarnings("unchecked")
+  SessionExpiryWheel(long tickMillis, int slotCount, long now)
+  {
+    this.tickMillis = tickMillis;
+    final int size = Integer.highestOneBit(Math.max(2, slotCount) * 2 - 1);
+    this.slots = (Queue<Entry>[])new Queue<?>[size];
+    for (int i = 0; i < size; i++)
+    {
+      this.slots[i] = new ConcurrentLinkedQueue<>();
+    }
+    this.mask = size - 1;
+    this.processedTick = now / tickMillis;
+  }
+
+  /**
+   * Adds a session to be checked once its expiration time has passed.
+   */
+  void add(String id, long expiration)
+  {
+    if (expiration == Long.MAX_VALUE)
+    {
+      return;
+    }
+    // Round up so that the session is not checked before it expires, and
+    // never place it in a slot that has already been swept.
+    final long tick = Math.max(processedTick + 1, 
+        (expiration + tickMillis - 1) / tickMillis);
+    slots[(int)(tick & mask)].add(new Entry(id, tick));
+  }
+
+  /**
+   * Sweeps the slots for all ticks elapsed as of the given time, passing
+   * the ID of each session whose expiration tick has been reached to the
+   * consumer.  Must be called from a single thread.
+   */
+  void advance(long now, Consumer<String> due)
+  {
+    final long target = now / tickMillis;
+    // No need to sweep more than one full revolution.
+    long tick = Math.max(processedTick + 1, target - mask);
+    for (; tick <= target; tick++)
+    {
+      final Queue<Entry> slot = slots[(int)(tick & mask)];
+      for (int remaining = slot.size(); remaining > 0; remaining--)
+      {
+        final Entry entry = slot.poll();
+        if (entry == null)
+        {
+          break;
+        }
+        if (entry.tick <= target)
+        {
+          due.accept(entry.id);
+        }
+        else
+        {
+          slot.add(entry);
+        }
+      }
+      processedTick = tick;
+    }
+  }
+
+  /**
+   * Gets the number of entries in the wheel.
+   */
+  int size()
+  {
+    int size = 0;
+    for (Queue<Entry> slot : slots)
+    {
+      size += slot.size();
+    }
+    return size;
+  }
+
+  //
+  // Inner classes.
+  //
+
+  /**
+   * A session and the tick at which it is due.
+   */
+  private static final class Entry
+  {
+    private final String id;
+    private final long   tick;
+
+    private Entry(String id, long tick)
+    {
+      this.id = id;
+      this.tick = tick;
+    }
+  }
+
+}  // End SessionExpiryWheel.
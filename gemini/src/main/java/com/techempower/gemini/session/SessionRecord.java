@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.session;
+
+/**
+ * The metadata of a session kept in a SessionStore: its ID, creation and
+ * last-access times, timeout, and the request hash used by strict 
+ * sessions.  Attribute values are stored separately so that they can be
+ * loaded individually.
+ */
+public class SessionRecord
+{
+
+  //
+  // Member variables.
+  //
+
+  private final String id;
+  private final long   created;
+  private long         lastAccessed;
+  private int          maxInactiveInterval;
+  private int          requestHash;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   * 
+   * @param id The session ID.
+   * @param created The creation time in milliseconds.
+   * @param lastAccessed The last access time in milliseconds.
+   * @param maxInactiveInterval The timeout in seconds.
+   * @param requestHash The strict-session request hash, or 0.
+   */
+  public SessionRecord(String id, long created, long lastAccessed, 
+      int maxInactiveInterval, int requestHash)
+  {
+    this.id = id;
+    this.created = created;
+    this.lastAccessed = lastAccessed;
+    this.maxInactiveInterval = maxInactiveInterval;
+    this.requestHash = requestHash;
+  }
+
+  /**
+   * Constructs a copy of a record.
+   */
+  public SessionRecord(SessionRecord record)
+  {
+    this(record.id, record.created, record.lastAccessed, 
+        record.maxInactiveInterval, record.requestHash);
+  }
+
+  public String getId()
+  {
+    return id;
+  }
+
+  public long getCreated()
+  {
+    return created;
+  }
+
+  public long getLastAccessed()
+  {
+    return lastAccessed;
+  }
+
+  public void setLastAccessed(long lastAccessed)
+  {
+    this.lastAccessed = lastAccessed;
+  }
+
+  public int getMaxInactiveInterval()
+  {
+    return maxInactiveInterval;
+  }
+
+  public void setMaxInactiveInterval(int maxInactiveInterval)
+  {
+    this.maxInactiveInterval = maxInactiveInterval;
+  }
+
+  public int getRequestHash()
+  {
+    return requestHash;
+  }
+
+  public void setRequestHash(int requestHash)
+  {
+    this.requestHash = requestHash;
+  }
+
+  /**
+   * Gets the time in milliseconds at which the session expires if not 
+   * accessed again, or Long.MAX_VALUE if it never expires.
+   */
+  public long getExpiration()
+  {
+    return maxInactiveInterval <= 0 
+        ? Long.MAX_VALUE 
+        : lastAccessed + maxInactiveInterval * 1000L;
+  }
+
+  /**
+   * Determines whether the session has expired as of the given time.
+   */
+  public boolean isExpired(long now)
+  {
+    return now >= getExpiration();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "SessionRecord [" + id + "; last accessed " + lastAccessed + "]";
+  }
+
+}  // End SessionRecord.
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.session;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+import org.objenesis.strategy.*;
+
+import com.esotericsoftware.kryo.*;
+import com.esotericsoftware.kryo.io.*;
+import com.esotericsoftware.kryo.util.*;
+
+/**
+ * Serializes session attribute values with Kryo, which produces much more
+ * compact output than Java serialization and does not require values to
+ * implement Serializable.  Kryo instances are not thread-safe, so they are
+ * pooled.
+ *   <p>
+ * Session values frequently refer to application singletons (e.g., a 
+ * user object referring to the application's Security).  Register such
+ * types with addSingleton so that references to them are written as a 
+ * placeholder and read back as the live instance rather than copied.
+ */
+public class SessionSerializer
+{
+
+  //
+  // Constants.
+  //
+
+  private static final int BUFFER_SIZE         = 512;
+  private static final int MAXIMUM_BUFFER_SIZE = -1;
+
+  //
+  // Member variables.
+  //
+
+  private final Map<Class<?>, Supplier<?>> singletons = new ConcurrentHashMap<>();
+  private final Pool<Kryo>                 kryos = new Pool<Kryo>(true, false, 32)
+  {
+    @Override
+    protected Kryo create()
+    {
+      return createKryo();
+    }
+  };
+  private final Pool<Output>               outputs = new Pool<Output>(true, false, 32)
+  {
+    @Override
+    protected Output create()
+    {
+      return new Output(BUFFER_SIZE, MAXIMUM_BUFFER_SIZE);
+    }
+  };
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Registers a type whose instances should not be serialized; references 
+   * to any instance of the type (or its subtypes) are read back as the 
+   * value provided by the supplier.  Register singletons before serializing.
+   */
+  public <T> SessionSerializer addSingleton(Class<T> type, Supplier<? extends T> supplier)
+  {
+    singletons.put(type, supplier);
+    kryos.clear();
+    return this;
+  }
+
+  /**
+   * Serializes a value.
+   */
+  public byte[] serialize(Object value)
+  {
+    final Kryo kryo = kryos.obtain();
+    final Output output = outputs.obtain();
+    try
+    {
+      output.reset();
+      kryo.writeClassAndObject(output, value);
+      return output.toBytes();
+    }
+    finally
+    {
+      outputs.free(output);
+      kryos.free(kryo);
+    }
+  }
+
+  /**
+   * Deserializes a value.
+   * 
+   * @throws KryoException if the bytes cannot be read, e.g., because a 
+   *         class has changed incompatibly.
+   */
+  public Object deserialize(byte[] bytes)
+  {
+    final Kryo kryo = kryos.obtain();
+    try
+    {
+      return kryo.readClassAndObject(new Input(bytes));
+    }
+    finally
+    {
+      kryos.free(kryo);
+    }
+  }
+
+  /**
+   * Constructs and configures a Kryo instance.  Overload to register
+   * classes or serializers.
+   */
+  protected Kryo createKryo()
+  {
+    final Kryo kryo = new Kryo();
+    kryo.setRegistrationRequired(false);
+    kryo.setReferences(true);
+    kryo.setInstantiatorStrategy(
+        new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+    final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+    if (loader != null)
+    {
+      kryo.setClassLoader(loader);
+    }
+    for (Map.Entry<Class<?>, Supplier<?>> singleton : singletons.entrySet())
+    {
+      kryo.addDefaultSerializer(singleton.getKey(), 
+          new SingletonSerializer(singleton.getValue()));
+    }
+    return kryo;
+  }
+
+  //
+  // Inner classes.
+  //
+
+  /**
+   * Writes nothing and reads the current instance from a supplier.
+   */
+  private static final class SingletonSerializer
+    extends Serializer<Object>
+  {
+    private final Supplier<?> supplier;
+
+    private SingletonSerializer(Supplier<?> supplier)
+    {
+      super(false, true);
+      this.supplier = supplier;
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output, Object object)
+    {
+      // Nothing to write.
+    }
+
+    @Override
+    public Object read(Kryo kryo, Input input, Class<? extends Object> type)
+    {
+      return supplier.get();
+    }
+  }
+
+}  // End SessionSerializer.
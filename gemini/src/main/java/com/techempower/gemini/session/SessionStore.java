@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.session;
+
+import java.util.*;
+
+/**
+ * Persists sessions for StoredSessionManager.  A session is a 
+ * SessionRecord plus a set of named attributes, each stored as serialized
+ * bytes so that attributes can be loaded and written individually.
+ *   <p>
+ * Implementations must be safe for concurrent use.  The store is shared by
+ * every application instance that should see the same sessions; e.g., 
+ * JdbcSessionStore lets instances behind a load balancer share sessions
+ * without sticky routing.
+ */
+public interface SessionStore
+{
+
+  /**
+   * Loads a session's record, or returns null if there is no such session.
+   * The record returned must not be shared with other callers.
+   */
+  SessionRecord load(String id);
+
+  /**
+   * Loads the serialized value of one attribute, or returns null if the 
+   * session has no such attribute.
+   */
+  byte[] loadAttribute(String id, String name);
+
+  /**
+   * Gets the names of a session's attributes.
+   */
+  Set<String> getAttributeNames(String id);
+
+  /**
+   * Saves a session's record along with changed attributes and the names
+   * of removed attributes.  Attributes not mentioned are left as they are.
+   * The session is created only if create is true; otherwise, if the 
+   * session no longer exists (because it was invalidated or expired while
+   * the caller held it), the save is discarded so that a deleted session
+   * is not brought back.
+   * 
+   * @param record The session's record.
+   * @param create Whether this is the first save of a new session.
+   * @param changed Serialized values of attributes set or changed.
+   * @param removed Names of attributes removed.
+   */
+  void save(SessionRecord record, boolean create, Map<String, byte[]> changed, 
+      Collection<String> removed);
+
+  /**
+   * Deletes a session and its attributes.
+   */
+  void delete(String id);
+
+  /**
+   * Deletes all sessions that have expired as of the given time, returning
+   * the number deleted.  Called periodically to catch sessions that no
+   * running application instance is tracking.
+   */
+  int purgeExpired(long now);
+
+  /**
+   * Gets the number of sessions stored, or -1 if unknown.
+   */
+  default int size()
+  {
+    return -1;
+  }
+
+}  // End SessionStore.
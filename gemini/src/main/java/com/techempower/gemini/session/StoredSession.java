@@ -0,0 +1,298 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.session;
+
+import java.util.*;
+
+/**
+ * A Session whose state is kept in a SessionStore by StoredSessionManager.
+ * One StoredSession is constructed per request.  Attributes are loaded 
+ * from the store individually, on first use, and at the end of the request
+ * flush writes back only attributes that were set or removed, or whose 
+ * values were read and then modified in place.
+ *   <p>
+ * Concurrent requests for the same session each have their own 
+ * StoredSession, so an attribute set by both is resolved by whichever
+ * request completes last.
+ */
+public class StoredSession
+  implements Session
+{
+
+  //
+  // Member variables.
+  //
+
+  private final StoredSessionManager manager;
+  private final SessionRecord        record;
+  private final boolean              isNew;
+  private final Map<String, Object>  values = new HashMap<>();
+  private final Map<String, byte[]>  loaded = new HashMap<>();
+  private final Set<String>          changed = new HashSet<>();
+  private final Set<String>          removed = new HashSet<>();
+  private boolean                    recordChanged;
+  private boolean                    invalidated = false;
+  private boolean                    stored;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   */
+  protected StoredSession(StoredSessionManager manager, SessionRecord record, 
+      boolean isNew)
+  {
+    this.manager = manager;
+    this.record = record;
+    this.isNew = isNew;
+    this.recordChanged = isNew;
+    this.stored = !isNew;
+  }
+
+  /**
+   * Gets the session's record.
+   */
+  protected SessionRecord getRecord()
+  {
+    return record;
+  }
+
+  @Override
+  public boolean isNew()
+  {
+    return isNew;
+  }
+
+  @Override
+  public synchronized Enumeration<String> getAttributeNames()
+  {
+    if (invalidated)
+    {
+      return Collections.emptyEnumeration();
+    }
+    final Set<String> names = isNew 
+        ? new HashSet<>() 
+        : manager.getStore().getAttributeNames(record.getId());
+    names.addAll(changed);
+    names.removeAll(removed);
+    return Collections.enumeration(names);
+  }
+
+  @Override
+  public synchronized Object getAttribute(String name)
+  {
+    if (invalidated)
+    {
+      return null;
+    }
+    if (values.containsKey(name))
+    {
+      return values.get(name);
+    }
+    
+    Object value = null;
+    if (!isNew)
+    {
+      final byte[] bytes = manager.getStore().loadAttribute(record.getId(), name);
+      if (bytes != null)
+      {
+        value = manager.deserialize(record.getId(), name, bytes);
+        if (value != null)
+        {
+          loaded.put(name, bytes);
+        }
+      }
+    }
+    values.put(name, value);
+    return value;
+  }
+
+  @Override
+  public int getMaxInactiveInterval()
+  {
+    return record.getMaxInactiveInterval();
+  }
+
+  @Override
+  public synchronized void setAttribute(String name, Object o)
+  {
+    if (o == null)
+    {
+      removeAttribute(name);
+    }
+    else if (!invalidated)
+    {
+      values.put(name, o);
+      changed.add(name);
+      removed.remove(name);
+    }
+  }
+
+  @Override
+  public void setAttribute(String name, SessionListener o)
+  {
+    setAttribute(name, (Object)o);
+    if (o != null)
+    {
+      o.sessionBound(this);
+    }
+  }
+
+  @Override
+  public void removeAttribute(String name)
+  {
+    final Object previous;
+    synchronized (this)
+    {
+      if (invalidated)
+      {
+        return;
+      }
+      previous = getAttribute(name);
+      values.put(name, null);
+      loaded.remove(name);
+      changed.remove(name);
+      removed.add(name);
+    }
+    if (previous instanceof SessionListener)
+    {
+      ((SessionListener)previous).sessionUnbound(this);
+    }
+  }
+
+  @Override
+  public String getId()
+  {
+    return record.getId();
+  }
+
+  @Override
+  public void invalidate()
+  {
+    final List<SessionListener> listeners = new ArrayList<>();
+    synchronized (this)
+    {
+      if (invalidated)
+      {
+        return;
+      }
+      for (String name : Collections.list(getAttributeNames()))
+      {
+        final Object value = getAttribute(name);
+        if (value instanceof SessionListener)
+        {
+          listeners.add((SessionListener)value);
+        }
+      }
+      invalidated = true;
+    }
+    manager.destroy(record.getId());
+    for (SessionListener listener : listeners)
+    {
+      listener.sessionUnbound(this);
+    }
+  }
+
+  /**
+   * Has this session been invalidated?
+   */
+  public synchronized boolean isInvalidated()
+  {
+    return invalidated;
+  }
+
+  @Override
+  public synchronized void setMaxInactiveInterval(int timeout)
+  {
+    if (timeout != record.getMaxInactiveInterval())
+    {
+      record.setMaxInactiveInterval(timeout);
+      recordChanged = true;
+    }
+  }
+
+  /**
+   * Writes changes back to the store: attributes set or removed during the 
+   * request, attributes that were read and whose serialized form has since
+   * changed, and the record if it is new, was modified, or its last-access
+   * time should be refreshed.
+   */
+  protected synchronized void flush(boolean touch)
+  {
+    if (invalidated)
+    {
+      return;
+    }
+    
+    final Map<String, byte[]> writes = new HashMap<>();
+    for (String name : changed)
+    {
+      final byte[] bytes = manager.serialize(record.getId(), name, values.get(name));
+      if (bytes != null)
+      {
+        writes.put(name, bytes);
+      }
+    }
+    for (Map.Entry<String, byte[]> entry : loaded.entrySet())
+    {
+      if (!changed.contains(entry.getKey()))
+      {
+        final byte[] bytes = manager.serialize(record.getId(), entry.getKey(), 
+            values.get(entry.getKey()));
+        if (bytes != null && !Arrays.equals(bytes, entry.getValue()))
+        {
+          writes.put(entry.getKey(), bytes);
+        }
+      }
+    }
+    
+    if (recordChanged || touch || !writes.isEmpty() || !removed.isEmpty())
+    {
+      manager.getStore().save(record, !stored, writes, removed);
+      stored = true;
+    }
+    
+    // Subsequent flushes only write further changes.
+    for (Map.Entry<String, byte[]> entry : writes.entrySet())
+    {
+      loaded.put(entry.getKey(), entry.getValue());
+    }
+    changed.clear();
+    removed.clear();
+    recordChanged = false;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "StoredSession [" + record.getId() + "]";
+  }
+
+}  // End StoredSession.
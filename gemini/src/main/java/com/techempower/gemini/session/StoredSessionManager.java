@@ -0,0 +1,497 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.session;
+
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import com.techempower.asynchronous.*;
+import com.techempower.cache.*;
+import com.techempower.gemini.*;
+import com.techempower.gemini.pyxis.*;
+import com.techempower.util.*;
+import org.slf4j.*;
+
+/**
+ * A SessionManager that keeps sessions in a SessionStore rather than in the
+ * servlet container, so that application instances sharing a store (e.g., 
+ * a JdbcSessionStore) can serve any session without sticky routing.  The
+ * session ID is carried in a cookie.  Attribute values are serialized with
+ * a SessionSerializer, loaded lazily per attribute, and written back at the
+ * end of each request only if they changed; see StoredSession.
+ *   <p>
+ * Sessions expire after the configured timeout without access.  Sessions 
+ * seen by this instance are tracked in a timing wheel and checked when 
+ * their expiration time passes; sessions no instance is tracking (e.g., 
+ * after a restart) are removed by a periodic purge of the store.  To limit
+ * writes, an unchanged session's last-access time is only written once 
+ * per minute or once per tenth of the timeout, whichever is less, so 
+ * expiration is approximate to within that interval.
+ *   <p>
+ * Reads the following configuration options from the .conf file:
+ *    <ul>
+ * <li>SessionTimeout - Timeout for sessions in seconds.  Default: 3600.
+ * <li>StrictSessions - Invalidates sessions whose requests' User-Agent,
+ *     Accept-Charset, and Keep-Alive headers stop matching those of the 
+ *     request that created the session.
+ * <li>RefererTracking - Captures the HTTP "referer" (sic) request header
+ *     provided when a session is new.
+ * <li>StoredSessions.CookieName - The session cookie's name.  Default: 
+ *     GSESSIONID.
+ * <li>StoredSessions.CookieDomain - The session cookie's domain, if any.
+ * <li>StoredSessions.CookiePath - The session cookie's path.  Default: /.
+ * <li>StoredSessions.SecureCookie - Send the cookie only over HTTPS?  
+ *     Default: no.
+ * <li>StoredSessions.HttpOnlyCookie - Hide the cookie from client-side 
+ *     scripts?  Default: yes.
+ * <li>StoredSessions.ExpiryTickSeconds - The precision of the expiration
+ *     timing wheel.  Default: 10.
+ * <li>StoredSessions.PurgeIntervalSeconds - How often to purge expired
+ *     sessions from the store.  Default: 3600.
+ *    </ul>
+ *   <p>
+ * To use, overload GeminiApplication.constructSessionManager:
+ *   <pre>
+ * return new StoredSessionManager(this, new JdbcSessionStore(getConnectorFactory()));
+ *   </pre>
+ */
+public class StoredSessionManager
+  implements SessionManager,
+             RequestListener,
+             Asynchronous
+{
+
+  //
+  // Constants.
+  //
+
+  public static final int    DEFAULT_TIMEOUT      = 3600;      // One hour
+  public static final String DEFAULT_COOKIE_NAME  = "GSESSIONID";
+  public static final int    DEFAULT_TICK_SECONDS = 10;
+  public static final String REQUEST_ATTRIBUTE    = "Gemini-Stored-Session";
+  
+  private static final int   WHEEL_SLOTS          = 512;
+  private static final int   ID_BYTES             = 24;
+  private static final long  MAXIMUM_TOUCH_INTERVAL = 60_000L;
+
+  //
+  // Member variables.
+  //
+
+  private final Logger            log = LoggerFactory.getLogger(getClass());
+  private final SessionStore      store;
+  private final SessionSerializer serializer = new SessionSerializer();
+  private final SecureRandom      random = new SecureRandom();
+  private final AtomicLong        sessionAccumulator = new AtomicLong();
+  private final Set<String>       tracked = ConcurrentHashMap.newKeySet();
+  private final AtomicLong        expiredCount = new AtomicLong();
+  private volatile int            timeoutSeconds = DEFAULT_TIMEOUT;
+  private boolean                 strictSessions = false;
+  private boolean                 refererTracking = false;
+  private String                  cookieName = DEFAULT_COOKIE_NAME;
+  private String                  cookieDomain = null;
+  private String                  cookiePath = "/";
+  private boolean                 secureCookie = false;
+  private boolean                 httpOnlyCookie = true;
+  private int                     tickSeconds = DEFAULT_TICK_SECONDS;
+  private int                     purgeIntervalSeconds = DEFAULT_FREQUENCY;
+  private volatile SessionExpiryWheel wheel;
+  private ScheduledExecutorService sweeper;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   */
+  public StoredSessionManager(GeminiApplication application, SessionStore store)
+  {
+    this.store = store;
+    this.serializer
+        .addSingleton(GeminiApplication.class, () -> application)
+        .addSingleton(PyxisSecurity.class, application::getSecurity)
+        .addSingleton(EntityStore.class, application::getStore);
+    this.wheel = new SessionExpiryWheel(tickSeconds * 1000L, WHEEL_SLOTS, 
+        System.currentTimeMillis());
+    application.getConfigurator().addConfigurable(this);
+    application.addRequestListener(this);
+    application.addAsynchronous(this);
+  }
+
+  /**
+   * Constructor.  Sessions are kept in memory, in a MemorySessionStore.
+   */
+  public StoredSessionManager(GeminiApplication application)
+  {
+    this(application, new MemorySessionStore());
+  }
+
+  @Override
+  public void configure(EnhancedProperties props)
+  {
+    timeoutSeconds = props.getInt("SessionTimeout", DEFAULT_TIMEOUT);
+    log.info("Session timeout: {} seconds.", timeoutSeconds);
+    strictSessions = props.getBoolean("StrictSessions", false);
+    refererTracking = props.getBoolean("RefererTracking", false);
+    
+    final EnhancedProperties.Focus focus = props.focus("StoredSessions.");
+    cookieName = focus.get("CookieName", DEFAULT_COOKIE_NAME);
+    cookieDomain = focus.get("CookieDomain", null);
+    cookiePath = focus.get("CookiePath", "/");
+    secureCookie = focus.getBoolean("SecureCookie", false);
+    httpOnlyCookie = focus.getBoolean("HttpOnlyCookie", true);
+    purgeIntervalSeconds = focus.getInt("PurgeIntervalSeconds", 
+        DEFAULT_FREQUENCY, 1, Integer.MAX_VALUE);
+    final int newTickSeconds = focus.getInt("ExpiryTickSeconds", 
+        DEFAULT_TICK_SECONDS, 1, Integer.MAX_VALUE);
+    if (newTickSeconds != tickSeconds)
+    {
+      tickSeconds = newTickSeconds;
+      wheel = new SessionExpiryWheel(tickSeconds * 1000L, WHEEL_SLOTS, 
+          System.currentTimeMillis());
+      tracked.clear();
+    }
+  }
+
+  @Override
+  public synchronized void begin()
+  {
+    if (sweeper == null)
+    {
+      sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "Stored session sweeper");
+        thread.setDaemon(true);
+        return thread;
+      });
+      sweeper.scheduleWithFixedDelay(this::sweep, tickSeconds, tickSeconds, 
+          TimeUnit.SECONDS);
+      sweeper.scheduleWithFixedDelay(this::purge, purgeIntervalSeconds, 
+          purgeIntervalSeconds, TimeUnit.SECONDS);
+    }
+  }
+
+  @Override
+  public synchronized void end()
+  {
+    if (sweeper != null)
+    {
+      sweeper.shutdownNow();
+      sweeper = null;
+    }
+  }
+
+  @Override
+  public int getTimeoutSeconds()
+  {
+    return timeoutSeconds;
+  }
+
+  /**
+   * Gets the SessionStore.
+   */
+  public SessionStore getStore()
+  {
+    return store;
+  }
+
+  /**
+   * Gets the SessionSerializer, e.g., to register application singletons.
+   */
+  public SessionSerializer getSerializer()
+  {
+    return serializer;
+  }
+
+  /**
+   * Gets the number of sessions expired by this instance.
+   */
+  public long getExpiredCount()
+  {
+    return expiredCount.get();
+  }
+
+  @Override
+  public Session getSession(Request request, boolean create)
+  {
+    final Object existing = request.getAttribute(REQUEST_ATTRIBUTE);
+    if (existing instanceof StoredSession 
+        && !((StoredSession)existing).isInvalidated())
+    {
+      return (StoredSession)existing;
+    }
+    
+    final long now = System.currentTimeMillis();
+    SessionRecord record = null;
+    final Cookie cookie = request.getCookie(cookieName);
+    if (cookie != null && cookie.getValue() != null && !cookie.getValue().isEmpty())
+    {
+      record = store.load(cookie.getValue());
+    }
+    if (record != null && record.isExpired(now))
+    {
+      destroy(record.getId());
+      record = null;
+    }
+    
+    // If strict sessions is enabled, a mismatched request hash suggests a
+    // different browser is using the session ID; replace the session.
+    boolean replace = false;
+    if (record != null 
+        && strictSessions 
+        && record.getRequestHash() != getRequestHash(request))
+    {
+      log.info("Session hash mismatch.  Invalidating session {}", 
+          record.getId());
+      destroy(record.getId());
+      record = null;
+      replace = true;
+    }
+    
+    final StoredSession session;
+    if (record != null)
+    {
+      session = new StoredSession(this, record, false);
+    }
+    else if (create || replace)
+    {
+      record = new SessionRecord(constructSessionKey(), now, now, 
+          timeoutSeconds, strictSessions ? getRequestHash(request) : 0);
+      request.setCookie(cookieName, record.getId(), cookieDomain, cookiePath, 
+          -1, secureCookie, httpOnlyCookie);
+      session = new StoredSession(this, record, true);
+      session.setAttribute(GeminiConstants.SESSION_ID_NAME, constructSessionID());
+      if (refererTracking && request.getHeader("referer") != null)
+      {
+        session.setAttribute(GeminiConstants.SESSION_REFERER, 
+            request.getHeader("referer"));
+      }
+    }
+    else
+    {
+      return null;
+    }
+    
+    if (tracked.add(record.getId()))
+    {
+      wheel.add(record.getId(), record.getExpiration());
+    }
+    request.setAttribute(REQUEST_ATTRIBUTE, session);
+    return session;
+  }
+
+  @Override
+  public void requestStarting(Context context)
+  {
+    // Does nothing.
+  }
+
+  /**
+   * Writes back changes to the request's session, if any.
+   */
+  @Override
+  public void requestCompleting(Context context)
+  {
+    final Object session = context.getRequest().getAttribute(REQUEST_ATTRIBUTE);
+    if (session instanceof StoredSession)
+    {
+      final StoredSession storedSession = (StoredSession)session;
+      final SessionRecord record = storedSession.getRecord();
+      final long now = System.currentTimeMillis();
+      final long touchInterval = record.getMaxInactiveInterval() > 0
+          ? Math.min(MAXIMUM_TOUCH_INTERVAL, record.getMaxInactiveInterval() * 100L)
+          : MAXIMUM_TOUCH_INTERVAL;
+      final boolean touch = now - record.getLastAccessed() >= touchInterval;
+      if (touch)
+      {
+        record.setLastAccessed(now);
+      }
+      try
+      {
+        storedSession.flush(touch);
+      }
+      catch (RuntimeException exc)
+      {
+        log.warn("Exception while saving session {}.", record.getId(), exc);
+      }
+    }
+  }
+
+  /**
+   * Removes a session from the store.
+   */
+  protected void destroy(String id)
+  {
+    tracked.remove(id);
+    store.delete(id);
+  }
+
+  /**
+   * Checks sessions whose expiration times have passed, removing those 
+   * that have not been accessed since and rescheduling the others.
+   */
+  protected void sweep()
+  {
+    try
+    {
+      final long now = System.currentTimeMillis();
+      final SessionExpiryWheel currentWheel = wheel;
+      currentWheel.advance(now, id -> {
+        final SessionRecord record = store.load(id);
+        if (record == null)
+        {
+          tracked.remove(id);
+        }
+        else if (record.isExpired(now))
+        {
+          // Invalidating notifies any SessionListeners among the attributes.
+          new StoredSession(this, record, false).invalidate();
+          expiredCount.incrementAndGet();
+        }
+        else
+        {
+          currentWheel.add(id, record.getExpiration());
+        }
+      });
+    }
+    catch (RuntimeException exc)
+    {
+      log.warn("Exception while expiring sessions.", exc);
+    }
+  }
+
+  /**
+   * Removes expired sessions from the store, including those this instance
+   * is not tracking.
+   */
+  protected void purge()
+  {
+    try
+    {
+      final int purged = store.purgeExpired(System.currentTimeMillis());
+      if (purged > 0)
+      {
+        log.info("Purged {} expired sessions.", purged);
+      }
+    }
+    catch (RuntimeException exc)
+    {
+      log.warn("Exception while purging sessions.", exc);
+    }
+  }
+
+  /**
+   * Serializes an attribute value, returning null if it cannot be 
+   * serialized.
+   */
+  protected byte[] serialize(String id, String name, Object value)
+  {
+    try
+    {
+      return serializer.serialize(value);
+    }
+    catch (RuntimeException exc)
+    {
+      log.warn("Unable to serialize attribute {} of session {}.", name, id, exc);
+      return null;
+    }
+  }
+
+  /**
+   * Deserializes an attribute value, returning null if it cannot be 
+   * deserialized (e.g., because its class has changed).
+   */
+  protected Object deserialize(String id, String name, byte[] bytes)
+  {
+    try
+    {
+      return serializer.deserialize(bytes);
+    }
+    catch (RuntimeException exc)
+    {
+      log.warn("Unable to deserialize attribute {} of session {}.", name, id, exc);
+      return null;
+    }
+  }
+
+  /**
+   * Hashes a few request attributes together to determine a decent 
+   * representation of the user's client.  This is used for the strict 
+   * session feature.
+   */
+  protected int getRequestHash(Request request)
+  {
+    String toHash = ""
+      + request.getHeader("User-Agent")
+      + request.getHeader("Accept-Charset")
+      + request.getHeader("Keep-Alive");
+    return toHash.hashCode();
+  }
+
+  /**
+   * Constructs a random, unguessable session key for the session cookie.
+   */
+  protected String constructSessionKey()
+  {
+    final byte[] bytes = new byte[ID_BYTES];
+    random.nextBytes(bytes);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+  }
+
+  /**
+   * Constructs a semi-"unique" 13-digit session ID, stored in the session
+   * as Gemini-Session-ID, based off of the session's sequence number and 
+   * the current time.
+   */
+  protected String constructSessionID()
+  {
+    StringBuilder sessionID = new StringBuilder(13);
+    
+    // The first 5 digits are the session sequence number.
+    String sessionSequenceNumber = Long.toString(
+        sessionAccumulator.incrementAndGet(), Character.MAX_RADIX);
+    for (int i = sessionSequenceNumber.length(); i < 5; i++)
+    {
+      sessionID.append('0');
+    }
+    sessionID.append(sessionSequenceNumber);
+    
+    // The next 8 digits are the current time in milliseconds.
+    String timeStamp = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+    for (int i = timeStamp.length(); i < 8; i++)
+    {
+      sessionID.append('0');
+    }
+    sessionID.append(timeStamp);
+
+    return sessionID.toString();
+  }
+
+}  // End StoredSessionManager.
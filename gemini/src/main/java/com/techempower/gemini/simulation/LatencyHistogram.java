@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package com.techempower.gemini.simulation;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * A fixed-size, log-linear histogram of durations in nanoseconds, in the
+ * style of HdrHistogram.  Values are grouped into buckets whose width grows
+ * with their magnitude so that every recorded value is represented to
+ * within about 1.6% (two significant digits) while the whole range of a
+ * long fits in a few thousand counters.
+ *   <p>
+ * Recording is lock-free and safe for concurrent use; reading percentiles
+ * while values are still being recorded yields an approximate snapshot.
+ */
+public class LatencyHistogram
+{
+
+  //
+  // Constants.
+  //
+
+  /**
+   * Values below this are counted exactly; above it, each power of two is
+   * divided into HALF_BUCKETS linear sub-buckets.
+   */
+  private static final int SUB_BUCKETS  = 128;
+  private static final int HALF_BUCKETS = SUB_BUCKETS / 2;
+  private static final int SUB_BITS     = 7;
+  private static final int BUCKET_COUNT = SUB_BUCKETS
+      + (Long.SIZE - SUB_BITS) * HALF_BUCKETS;
+
+  //
+  // Member variables.
+  //
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAdder       total = new LongAdder();
+  private final LongAdder       sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+  private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Records one duration in nanoseconds.  Negative values are recorded as
+   * zero.
+   */
+  public void record(long nanos)
+  {
+    final long value = Math.max(0L, nanos);
+    counts.incrementAndGet(indexFor(value));
+    total.increment();
+    sum.add(value);
+    max.accumulate(value);
+    min.accumulate(value);
+  }
+
+  /**
+   * Gets the number of values recorded.
+   */
+  public long getCount()
+  {
+    return total.sum();
+  }
+
+  /**
+   * Gets the largest value recorded, in nanoseconds.
+   */
+  public long getMax()
+  {
+    return max.get();
+  }
+
+  /**
+   * Gets the smallest value recorded, in nanoseconds; zero if nothing has
+   * been recorded.
+   */
+  public long getMin()
+  {
+    final long value = min.get();
+    return (value == Long.MAX_VALUE ? 0L : value);
+  }
+
+  /**
+   * Gets the mean of the values recorded, in nanoseconds.
+   */
+  public double getMean()
+  {
+    final long count = getCount();
+    return (count == 0L ? 0.0 : (double)sum.sum() / count);
+  }
+
+  /**
+   * Gets the value, in nanoseconds, at or below which the given percentage
+   * of recorded values fall.  The result is the upper bound of the bucket
+   * containing that value, capped at the maximum recorded.
+   *
+   * @param percentile A percentage between 0 and 100, e.g., 99.9.
+   */
+  public long getValueAtPercentile(double percentile)
+  {
+    final long count = getCount();
+    if (count == 0L)
+    {
+      return 0L;
+    }
+    final double bounded = Math.min(100.0, Math.max(0.0, percentile));
+    final long target = Math.max(1L, (long)Math.ceil(bounded / 100.0 * count));
+    long seen = 0L;
+    for (int i = 0; i < BUCKET_COUNT; i++)
+    {
+      seen += counts.get(i);
+      if (seen >= target)
+      {
+        return Math.min(highestValueFor(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * Adds all of the values recorded by another histogram into this one.
+   */
+  public void add(LatencyHistogram other)
+  {
+    for (int i = 0; i < BUCKET_COUNT; i++)
+    {
+      final long value = other.counts.get(i);
+      if (value > 0L)
+      {
+        counts.addAndGet(i, value);
+      }
+    }
+    total.add(other.total.sum());
+    sum.add(other.sum.sum());
+    max.accumulate(other.max.get());
+    min.accumulate(other.min.get());
+  }
+
+  /**
+   * Discards all recorded values.
+   */
+  public void reset()
+  {
+    for (int i = 0; i < BUCKET_COUNT; i++)
+    {
+      counts.set(i, 0L);
+    }
+    total.reset();
+    sum.reset();
+    max.reset();
+    min.reset();
+  }
+
+  /**
+   * Gets the bucket index for a non-negative value.
+   */
+  static int indexFor(long value)
+  {
+    if (value < SUB_BUCKETS)
+    {
+      return (int)value;
+    }
+    // Keep the top SUB_BITS bits of the value; the shift selects the power
+    // of two and the remaining bits the linear sub-bucket within it.
+    final int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - (SUB_BITS - 1);
+    final int mantissa = (int)(value >>> shift);
+    return SUB_BUCKETS + (shift - 1) * HALF_BUCKETS + (mantissa - HALF_BUCKETS);
+  }
+
+  /**
+   * Gets the largest value that would be counted in the given bucket.
+   */
+  static long highestValueFor(int index)
+  {
+    if (index < SUB_BUCKETS)
+    {
+      return index;
+    }
+    final int shift = (index - SUB_BUCKETS) / HALF_BUCKETS + 1;
+    final long mantissa = (index - SUB_BUCKETS) % HALF_BUCKETS + HALF_BUCKETS;
+    final long highest = ((mantissa + 1L) << shift) - 1L;
+    // The topmost bucket overflows a long.
+    return (highest < 0L ? Long.MAX_VALUE : highest);
+  }
+
+}  // End LatencyHistogram.
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package com.techempower.gemini.simulation;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.techempower.gemini.*;
+
+/**
+ * Generates load against a {@link Simulation} in-process by running many
+ * {@link SimClient}s concurrently, each repeatedly playing a
+ * {@link LoadScenario}.  Every request is timed and recorded against its
+ * route, and the run produces a {@link LoadReport} with latency percentiles
+ * and throughput.
+ *   <p>
+ * Each client gets its own thread and its own simulated session (sessions
+ * are keyed by client id in {@link SimSessionManager}), so scenarios that
+ * log in and then browse behave as they would for distinct users.
+ *   <p>
+ * Example:
+ *   <pre>
+ * LoadReport report = new LoadHarness(simulation)
+ *     .setClients(50)
+ *     .setDurationMillis(30 * UtilityConstants.SECOND)
+ *     .run(scenario);
+ * log.info("{}", report);
+ *   </pre>
+ *   <p>
+ * A run ends when every client has completed its iterations or when the
+ * duration elapses, whichever is first; at least one of the two must be
+ * set.  Because the whole application runs in this JVM, results measure
+ * the application's own request handling without network or servlet
+ * container overhead.
+ */
+public class LoadHarness
+{
+
+  //
+  // Member variables.
+  //
+
+  private final Logger     log = LoggerFactory.getLogger(getClass());
+  private final Simulation simulation;
+  private int              clients = 10;
+  private int              firstClientId = 1;
+  private int              iterations = 1;
+  private long             durationMillis = 0L;
+  private long             thinkTimeMillis = 0L;
+  private long             rampUpMillis = 0L;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   */
+  public LoadHarness(Simulation simulation)
+  {
+    this.simulation = simulation;
+  }
+
+  /**
+   * Sets the number of concurrent simulated clients.  Default is 10.
+   */
+  public LoadHarness setClients(int clients)
+  {
+    this.clients = Math.max(1, clients);
+    return this;
+  }
+
+  /**
+   * Sets the id given to the first simulated client; subsequent clients
+   * are numbered consecutively.  Default is 1.  Distinct ranges keep the
+   * sessions of separate runs apart.
+   */
+  public LoadHarness setFirstClientId(int firstClientId)
+  {
+    this.firstClientId = firstClientId;
+    return this;
+  }
+
+  /**
+   * Sets the number of times each client plays the scenario.  Zero means
+   * no limit, in which case a duration must be set.  Default is 1.
+   */
+  public LoadHarness setIterations(int iterations)
+  {
+    this.iterations = Math.max(0, iterations);
+    return this;
+  }
+
+  /**
+   * Sets the maximum duration of the run in milliseconds.  Zero means no
+   * limit, in which case a number of iterations must be set.  Default is 0.
+   */
+  public LoadHarness setDurationMillis(long durationMillis)
+  {
+    this.durationMillis = Math.max(0L, durationMillis);
+    return this;
+  }
+
+  /**
+   * Sets a pause taken by each client between requests.  Default is 0.
+   */
+  public LoadHarness setThinkTimeMillis(long thinkTimeMillis)
+  {
+    this.thinkTimeMillis = Math.max(0L, thinkTimeMillis);
+    return this;
+  }
+
+  /**
+   * Sets a period over which client start times are spread evenly, rather
+   * than starting all clients at once.  Default is 0.
+   */
+  public LoadHarness setRampUpMillis(long rampUpMillis)
+  {
+    this.rampUpMillis = Math.max(0L, rampUpMillis);
+    return this;
+  }
+
+  /**
+   * Runs the scenario and returns a report once all clients have finished.
+   *
+   * @throws IllegalStateException if neither iterations nor a duration
+   *         have been set.
+   * @throws InterruptedException if the calling thread is interrupted
+   *         while waiting, in which case the clients are interrupted too.
+   */
+  public LoadReport run(LoadScenario scenario) throws InterruptedException
+  {
+    if ((iterations == 0) && (durationMillis == 0L))
+    {
+      throw new IllegalStateException("Either iterations or a duration must be set.");
+    }
+
+    final LoadReport report = new LoadReport(scenario, clients);
+    final AtomicInteger threadNumber = new AtomicInteger();
+    final ExecutorService executor = Executors.newFixedThreadPool(clients,
+        runnable -> {
+          final Thread thread = new Thread(runnable,
+              "Load client " + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    final long start = System.nanoTime();
+    final long deadline = (durationMillis > 0L
+        ? start + TimeUnit.MILLISECONDS.toNanos(durationMillis)
+        : Long.MAX_VALUE);
+
+    log.info("Starting scenario \"{}\" with {} clients.", scenario.getName(), clients);
+    try
+    {
+      for (int i = 0; i < clients; i++)
+      {
+        final SimClient client = new SimClient(firstClientId + i);
+        final long delay = (clients > 1 ? rampUpMillis * i / (clients - 1) : 0L);
+        executor.execute(() -> runClient(client, scenario, report, delay, deadline));
+      }
+      executor.shutdown();
+      while (!executor.awaitTermination(1L, TimeUnit.SECONDS))
+      {
+        // Keep waiting; each client stops on its own.
+      }
+    }
+    catch (InterruptedException iexc)
+    {
+      executor.shutdownNow();
+      throw iexc;
+    }
+    finally
+    {
+      report.setElapsedNanos(System.nanoTime() - start);
+    }
+
+    log.info("Scenario \"{}\" complete: {} requests, {} errors, {} req/s.",
+        scenario.getName(), report.getRequestCount(), report.getErrorCount(),
+        Math.round(report.getThroughput()));
+    return report;
+  }
+
+  /**
+   * Plays the scenario on behalf of one client until its iterations are
+   * complete, the deadline passes, or the thread is interrupted.
+   */
+  private void runClient(SimClient client, LoadScenario scenario,
+      LoadReport report, long delay, long deadline)
+  {
+    try
+    {
+      if (delay > 0L)
+      {
+        Thread.sleep(delay);
+      }
+      for (int iteration = 0; (iterations == 0) || (iteration < iterations); iteration++)
+      {
+        for (LoadScenario.Step step : scenario.getSteps())
+        {
+          if ((System.nanoTime() - deadline >= 0L)
+              || (Thread.currentThread().isInterrupted()))
+          {
+            return;
+          }
+          final long requestStart = System.nanoTime();
+          boolean error;
+          try
+          {
+            final int status = execute(client, step);
+            error = (status < 0) || (status >= 400);
+          }
+          catch (Exception exc)
+          {
+            log.debug("Request to {} failed.", step.getUrl(), exc);
+            error = true;
+          }
+          report.route(step.getRoute()).record(System.nanoTime() - requestStart, error);
+
+          if (thinkTimeMillis > 0L)
+          {
+            Thread.sleep(thinkTimeMillis);
+          }
+        }
+      }
+    }
+    catch (InterruptedException iexc)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Executes one step of a scenario and returns the HTTP status of the
+   * response, or -1 if the simulation refused the request because the
+   * application is not running.  Subclasses may override this to issue
+   * requests differently.
+   */
+  protected int execute(SimClient client, LoadScenario.Step step)
+  {
+    final Context context = step.isPost()
+        ? simulation.postRequest(client, step.getUrl(), step.getParameters())
+        : simulation.getRequest(client, step.getUrl(), step.getParameters());
+    if (context == null)
+    {
+      return -1;
+    }
+    final Request request = context.getRequest();
+    return (request instanceof SimRequest ? ((SimRequest)request).getStatus() : 200);
+  }
+
+}  // End LoadHarness.
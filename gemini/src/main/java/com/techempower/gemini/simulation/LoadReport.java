@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package com.techempower.gemini.simulation;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * The results of a {@link LoadHarness} run: per-route latency percentiles,
+ * error counts, and throughput.  Routes are listed in the order they first
+ * appear in the scenario.  toString renders a plain-text table suitable
+ * for logging.
+ */
+public class LoadReport
+{
+
+  //
+  // Constants.
+  //
+
+  private static final double[] PERCENTILES = { 50.0, 90.0, 99.0, 99.9 };
+
+  //
+  // Member variables.
+  //
+
+  private final String                  scenarioName;
+  private final int                     clients;
+  private final Map<String, RouteStats> routes = new LinkedHashMap<>();
+  private volatile long                 elapsedNanos;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.  Creates an empty entry for each route in the scenario so
+   * that the route map is never modified while clients are recording.
+   */
+  LoadReport(LoadScenario scenario, int clients)
+  {
+    this.scenarioName = scenario.getName();
+    this.clients = clients;
+    for (LoadScenario.Step step : scenario.getSteps())
+    {
+      routes.computeIfAbsent(step.getRoute(), RouteStats::new);
+    }
+  }
+
+  /**
+   * Gets the statistics for a route of the scenario.
+   */
+  RouteStats route(String route)
+  {
+    return routes.get(route);
+  }
+
+  /**
+   * Sets the wall-clock duration of the run.
+   */
+  void setElapsedNanos(long elapsedNanos)
+  {
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  /**
+   * Gets the name of the scenario that was run.
+   */
+  public String getScenarioName()
+  {
+    return scenarioName;
+  }
+
+  /**
+   * Gets the number of concurrent simulated clients.
+   */
+  public int getClients()
+  {
+    return clients;
+  }
+
+  /**
+   * Gets the wall-clock duration of the run in nanoseconds.
+   */
+  public long getElapsedNanos()
+  {
+    return elapsedNanos;
+  }
+
+  /**
+   * Gets the statistics for each route, in scenario order.
+   */
+  public Collection<RouteStats> getRoutes()
+  {
+    return Collections.unmodifiableCollection(routes.values());
+  }
+
+  /**
+   * Gets the statistics for a single route; null if the scenario has no
+   * such route.
+   */
+  public RouteStats getRoute(String route)
+  {
+    return routes.get(route);
+  }
+
+  /**
+   * Gets a histogram combining all routes.
+   */
+  public LatencyHistogram getOverallLatency()
+  {
+    final LatencyHistogram overall = new LatencyHistogram();
+    for (RouteStats stats : routes.values())
+    {
+      overall.add(stats.getLatency());
+    }
+    return overall;
+  }
+
+  /**
+   * Gets the total number of requests completed across all routes.
+   */
+  public long getRequestCount()
+  {
+    long count = 0L;
+    for (RouteStats stats : routes.values())
+    {
+      count += stats.getLatency().getCount();
+    }
+    return count;
+  }
+
+  /**
+   * Gets the total number of failed requests across all routes.
+   */
+  public long getErrorCount()
+  {
+    long count = 0L;
+    for (RouteStats stats : routes.values())
+    {
+      count += stats.getErrorCount();
+    }
+    return count;
+  }
+
+  /**
+   * Gets the overall throughput in requests per second.
+   */
+  public double getThroughput()
+  {
+    return perSecond(getRequestCount());
+  }
+
+  /**
+   * Converts a count over the run's elapsed time to a per-second rate.
+   */
+  private double perSecond(long count)
+  {
+    return (elapsedNanos <= 0L ? 0.0 : count * 1_000_000_000.0 / elapsedNanos);
+  }
+
+  @Override
+  public String toString()
+  {
+    final StringBuilder sb = new StringBuilder();
+    sb.append(String.format("Scenario \"%s\": %d clients, %.1f s, %d requests, %d errors, %.1f req/s%n",
+        scenarioName, clients, elapsedNanos / 1_000_000_000.0,
+        getRequestCount(), getErrorCount(), getThroughput()));
+    sb.append(String.format("%-30s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+        "Route", "Count", "Errors", "Req/s", "p50 ms", "p90 ms", "p99 ms",
+        "p99.9 ms", "Max ms"));
+    for (RouteStats stats : routes.values())
+    {
+      appendRow(sb, stats.getRoute(), stats.getLatency(), stats.getErrorCount());
+    }
+    appendRow(sb, "(all)", getOverallLatency(), getErrorCount());
+    return sb.toString();
+  }
+
+  /**
+   * Appends one row of the table rendered by toString.
+   */
+  private void appendRow(StringBuilder sb, String route,
+      LatencyHistogram latency, long errors)
+  {
+    sb.append(String.format("%-30s %9d %7d %9.1f", route, latency.getCount(),
+        errors, perSecond(latency.getCount())));
+    for (double percentile : PERCENTILES)
+    {
+      sb.append(String.format(" %9.2f", latency.getValueAtPercentile(percentile) / 1_000_000.0));
+    }
+    sb.append(String.format(" %9.2f%n", latency.getMax() / 1_000_000.0));
+  }
+
+  /**
+   * Latency and error statistics for one route.
+   */
+  public static class RouteStats
+  {
+    private final String           route;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder        errors = new LongAdder();
+
+    private RouteStats(String route)
+    {
+      this.route = route;
+    }
+
+    /**
+     * Records a completed request.
+     */
+    void record(long nanos, boolean error)
+    {
+      latency.record(nanos);
+      if (error)
+      {
+        errors.increment();
+      }
+    }
+
+    /**
+     * Gets the route name.
+     */
+    public String getRoute()
+    {
+      return route;
+    }
+
+    /**
+     * Gets the latency histogram of all requests to this route, including
+     * failed ones.
+     */
+    public LatencyHistogram getLatency()
+    {
+      return latency;
+    }
+
+    /**
+     * Gets the number of requests to this route that failed: threw an
+     * exception, were refused because the application was not running,
+     * or completed with an HTTP status of 400 or higher.
+     */
+    public long getErrorCount()
+    {
+      return errors.sum();
+    }
+  }
+
+}  // End LoadReport.
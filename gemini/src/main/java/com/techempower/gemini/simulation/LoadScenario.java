@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package com.techempower.gemini.simulation;
+
+import java.util.*;
+
+/**
+ * An ordered script of simulated requests that a {@link LoadHarness} plays
+ * repeatedly on behalf of each simulated client.  Each step is a GET or
+ * POST against a URL and is reported under a route name, which defaults to
+ * the URL with any query string removed so that requests differing only by
+ * parameters are aggregated together.
+ *   <p>
+ * Example:
+ *   <pre>
+ * LoadScenario scenario = new LoadScenario("browse")
+ *     .get("/")
+ *     .get("/products?page=2", "products")
+ *     .post("/cart", Collections.singletonMap("id", "5"), "add-to-cart");
+ *   </pre>
+ *   <p>
+ * Once built, a scenario is immutable in practice and may be shared by any
+ * number of client threads.
+ */
+public class LoadScenario
+{
+
+  //
+  // Member variables.
+  //
+
+  private final String     name;
+  private final List<Step> steps = new ArrayList<>();
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   *
+   * @param name A name for the scenario, used in reports.
+   */
+  public LoadScenario(String name)
+  {
+    this.name = name;
+  }
+
+  /**
+   * Adds a GET step reported under the URL's path.
+   */
+  public LoadScenario get(String url)
+  {
+    return get(url, null, null);
+  }
+
+  /**
+   * Adds a GET step reported under the given route name.
+   */
+  public LoadScenario get(String url, String route)
+  {
+    return get(url, null, route);
+  }
+
+  /**
+   * Adds a GET step with parameters, reported under the given route name
+   * (or the URL's path if the route is null).
+   */
+  public LoadScenario get(String url, Map<String, String> parameters,
+      String route)
+  {
+    steps.add(new Step(false, url, parameters, route));
+    return this;
+  }
+
+  /**
+   * Adds a POST step reported under the URL's path.
+   */
+  public LoadScenario post(String url, Map<String, String> parameters)
+  {
+    return post(url, parameters, null);
+  }
+
+  /**
+   * Adds a POST step with parameters, reported under the given route name
+   * (or the URL's path if the route is null).
+   */
+  public LoadScenario post(String url, Map<String, String> parameters,
+      String route)
+  {
+    steps.add(new Step(true, url, parameters, route));
+    return this;
+  }
+
+  /**
+   * Gets the scenario's name.
+   */
+  public String getName()
+  {
+    return name;
+  }
+
+  /**
+   * Gets the steps of the scenario, in order.
+   */
+  public List<Step> getSteps()
+  {
+    return Collections.unmodifiableList(steps);
+  }
+
+  /**
+   * One request within a scenario.
+   */
+  public static class Step
+  {
+    private final boolean             post;
+    private final String              url;
+    private final Map<String, String> parameters;
+    private final String              route;
+
+    private Step(boolean post, String url, Map<String, String> parameters,
+        String route)
+    {
+      this.post = post;
+      this.url = url;
+      // SimRequest copies the parameters it is given, so a single shared
+      // map is safe across clients.
+      this.parameters = (parameters == null
+          ? null
+          : Collections.unmodifiableMap(new HashMap<>(parameters)));
+      if (route != null)
+      {
+        this.route = route;
+      }
+      else
+      {
+        final int query = url.indexOf('?');
+        this.route = (query >= 0 ? url.substring(0, query) : url);
+      }
+    }
+
+    /**
+     * Is this step a POST (as opposed to a GET)?
+     */
+    public boolean isPost()
+    {
+      return post;
+    }
+
+    /**
+     * Gets the URL requested by this step.
+     */
+    public String getUrl()
+    {
+      return url;
+    }
+
+    /**
+     * Gets the parameters sent by this step; may be null.
+     */
+    public Map<String, String> getParameters()
+    {
+      return parameters;
+    }
+
+    /**
+     * Gets the route name under which this step is reported.
+     */
+    public String getRoute()
+    {
+      return route;
+    }
+  }
+
+}  // End LoadScenario.
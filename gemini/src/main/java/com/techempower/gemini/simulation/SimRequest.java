@@ -44,6 +44,7 @@ public abstract class SimRequest
   private String                      url;
   private final String                uri;
   private final String                requestSignature;
+  private final String                clientId;
   private String                      queryString;
   private Hashtable<String, String>   parameters;
   private final List<SimCookie>       cookies             = new ArrayList<>();
@@ -51,6 +52,7 @@ public abstract class SimRequest
   private boolean                     redirected          = false;
   private String                      renderedJSP;
   private String                      includedFile;
+  private int                         status              = 200;
 
   /**
    * Constructs a new simulated web request with the given parameters.
@@ -68,7 +70,7 @@ public abstract class SimRequest
     this.application     = application;
     this.infrastructure  = this.application.getInfrastructure();
     //this.simulation      = simulation;
-    //this.clientID        = String.valueOf(client.getId()); 
+    this.clientId        = (client != null ? String.valueOf(client.getId()) : null);
     
     // the path can optionally look like /?cmd=login&username=admin
     // so we need to process the path in this case.
@@ -181,8 +183,8 @@ public abstract class SimRequest
   @Override
   public PrintWriter getWriter() throws IOException
   {
-    
-    return null;
+    // Simulated responses are not captured; discard anything written.
+    return new PrintWriter(Writer.nullWriter());
   }
 
   @Override
@@ -257,14 +259,17 @@ public abstract class SimRequest
   @Override
   public String getClientId()
   {
-    
-    return null;
+    return this.clientId;
   }
 
   @Override
   public HttpMethod getRequestMethod()
   {
-    return null;
+    if (isPost())
+    {
+      return HttpMethod.POST;
+    }
+    return HttpMethod.GET;
   }
 
   @Override
@@ -387,7 +392,15 @@ public abstract class SimRequest
   @Override
   public void setStatus(int status)
   {
-    
+    this.status = status;
+  }
+
+  /**
+   * Returns the most recent status code set on the response, 200 by default.
+   */
+  public int getStatus()
+  {
+    return this.status;
   }
 
   @Override
@@ -27,6 +27,7 @@
 package com.techempower.gemini.simulation;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import com.techempower.gemini.*;
 import com.techempower.gemini.session.*;
@@ -49,15 +50,16 @@ public class SimSessionManager
   // Member variables.
   //
 
-  private Map<String, SimSession> sessions;
+  private final Map<String, SimSession> sessions;
 
   /**
    * Constructor.
    */
   public SimSessionManager(GeminiApplication application)
   {
-    // Create a synchronized set for the sessions.
-    this.sessions = new HashMap<>();
+    // Simulated clients may run concurrently (see LoadHarness), so the
+    // session map must be safe for concurrent access.
+    this.sessions = new ConcurrentHashMap<>();
     application.getConfigurator().addConfigurable(this);
   }
 
@@ -82,16 +84,31 @@ public class SimSessionManager
    */
   private SimSession getSession(boolean create, SimRequest request)
   {
-    if(create)
+    final String clientId = request.getClientId();
+    if (clientId == null)
     {
-      this.sessions.put(request.getClientId(), new SimSession());
-    }
-    else if(!this.sessions.containsKey(request.getClientId()))
-    {
-      this.sessions.put(request.getClientId(), new SimSession());
+      // Requests without a client cannot be associated with a session, so
+      // they get a throwaway one.
+      return new SimSession();
     }
     
-    return this.sessions.get(request.getClientId());
+    return this.sessions.computeIfAbsent(clientId, id -> new SimSession());
+  }
+  
+  /**
+   * Discards all simulated sessions.
+   */
+  public void clear()
+  {
+    this.sessions.clear();
+  }
+  
+  /**
+   * Returns the number of simulated sessions currently held.
+   */
+  public int getSessionCount()
+  {
+    return this.sessions.size();
   }
 
   @Override
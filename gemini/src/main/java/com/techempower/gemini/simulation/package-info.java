@@ -26,6 +26,9 @@
  *******************************************************************************/
 
 /**
- * Utilities for simulating HTTP requests in a Gemini application.
+ * Utilities for simulating HTTP requests in a Gemini application.  The
+ * LoadHarness plays a LoadScenario of simulated requests from many
+ * concurrent clients and reports per-route latency percentiles and
+ * throughput.
  */
 package com.techempower.gemini.simulation;
@@ -0,0 +1,379 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package com.techempower.io;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Compresses everything written to it in either the gzip or zlib
+ * ("deflate") format, using a Deflater borrowed from a DeflaterPool.
+ * Unlike GZIPOutputStream, this can return its Deflater to a pool when
+ * finished, and it keeps count of bytes in and out and of the time spent
+ * compressing so that callers can report on the cost and benefit.
+ *   <p>
+ * finish() completes the compressed data without closing the underlying
+ * stream; close() does both.  One of the two must be called to return the
+ * Deflater to the pool.
+ */
+public class CompressingOutputStream
+  extends    OutputStream
+{
+
+  //
+  // Constants.
+  //
+
+  private static final int    BUFFER_SIZE = 8192;
+  private static final byte[] GZIP_HEADER = { 
+      (byte)0x1f, (byte)0x8b,   // Magic number.
+      Deflater.DEFLATED,        // Compression method.
+      0,                        // Flags.
+      0, 0, 0, 0,               // Modification time.
+      0,                        // Extra flags.
+      (byte)0xff                // Operating system: unknown.
+  };
+
+  /**
+   * The HTTP content-codings supported.
+   */
+  public enum Encoding
+  {
+    GZIP("gzip", true),
+    DEFLATE("deflate", false);
+    
+    private final String  token;
+    private final boolean nowrap;
+    
+    Encoding(String token, boolean nowrap)
+    {
+      this.token = token;
+      this.nowrap = nowrap;
+    }
+    
+    /**
+     * Gets the content-coding token, for use in a Content-Encoding header.
+     */
+    public String getToken()
+    {
+      return token;
+    }
+    
+    /**
+     * Does this encoding use raw deflate data (as opposed to zlib)?  Use
+     * this to construct a suitable DeflaterPool.
+     */
+    public boolean isNowrap()
+    {
+      return nowrap;
+    }
+    
+    /**
+     * Selects the preferred supported encoding from an Accept-Encoding
+     * request header, honoring quality values, or returns null if the
+     * client accepts neither.  gzip is preferred when both are equally
+     * acceptable.
+     */
+    public static Encoding negotiate(String acceptEncoding)
+    {
+      if (acceptEncoding == null)
+      {
+        return null;
+      }
+      double gzip = -1.0;
+      double deflate = -1.0;
+      double wildcard = -1.0;
+      for (String element : acceptEncoding.split(","))
+      {
+        final String[] parts = element.split(";");
+        final String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+        double quality = 1.0;
+        for (int i = 1; i < parts.length; i++)
+        {
+          final String parameter = parts[i].trim();
+          if (parameter.startsWith("q="))
+          {
+            try
+            {
+              quality = Double.parseDouble(parameter.substring(2));
+            }
+            catch (NumberFormatException nfexc)
+            {
+              quality = 0.0;
+            }
+          }
+        }
+        switch (coding)
+        {
+          case "gzip":
+          case "x-gzip":
+            gzip = quality;
+            break;
+          case "deflate":
+            deflate = quality;
+            break;
+          case "*":
+            wildcard = quality;
+            break;
+          default:
+            break;
+        }
+      }
+      // Codings not named explicitly take the wildcard's quality.
+      if (gzip < 0.0)
+      {
+        gzip = wildcard;
+      }
+      if (deflate < 0.0)
+      {
+        deflate = wildcard;
+      }
+      if ((gzip > 0.0) && (gzip >= deflate))
+      {
+        return GZIP;
+      }
+      if (deflate > 0.0)
+      {
+        return DEFLATE;
+      }
+      return null;
+    }
+  }
+
+  //
+  // Member variables.
+  //
+
+  private final OutputStream out;
+  private final Encoding     encoding;
+  private final DeflaterPool pool;
+  private final CRC32        crc;
+  private final byte[]       buffer = new byte[BUFFER_SIZE];
+  private final byte[]       single = new byte[1];
+  private Deflater           deflater;
+  private long               bytesIn;
+  private long               bytesOut;
+  private long               compressionNanos;
+  private boolean            finished;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.  For gzip, the header is written immediately.
+   *
+   * @param out The stream to receive compressed data.
+   * @param encoding The format to write.
+   * @param pool A pool of Deflaters created with the encoding's nowrap
+   *        setting.
+   */
+  public CompressingOutputStream(OutputStream out, Encoding encoding,
+      DeflaterPool pool) throws IOException
+  {
+    this.out = out;
+    this.encoding = encoding;
+    this.pool = pool;
+    this.crc = (encoding == Encoding.GZIP ? new CRC32() : null);
+    this.deflater = pool.borrow();
+    if (crc != null)
+    {
+      out.write(GZIP_HEADER);
+      bytesOut += GZIP_HEADER.length;
+    }
+  }
+
+  @Override
+  public void write(int b) throws IOException
+  {
+    single[0] = (byte)b;
+    write(single, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException
+  {
+    if (finished)
+    {
+      throw new IOException("Compressed stream already finished.");
+    }
+    if (len == 0)
+    {
+      return;
+    }
+    if (crc != null)
+    {
+      crc.update(b, off, len);
+    }
+    bytesIn += len;
+    deflater.setInput(b, off, len);
+    while (!deflater.needsInput())
+    {
+      deflate(Deflater.NO_FLUSH);
+    }
+  }
+
+  /**
+   * Flushes all data written so far through to the underlying stream.  Each
+   * flush costs a few bytes of compressed output, so callers should avoid
+   * flushing more often than necessary.
+   */
+  @Override
+  public void flush() throws IOException
+  {
+    if (!finished)
+    {
+      while (deflate(Deflater.SYNC_FLUSH) == buffer.length)
+      {
+        // Keep going until the Deflater has no more pending output.
+      }
+    }
+    out.flush();
+  }
+
+  /**
+   * Completes the compressed data, returning the Deflater to its pool, 
+   * without closing the underlying stream.  Subsequent calls have no
+   * effect.
+   */
+  public void finish() throws IOException
+  {
+    if (finished)
+    {
+      return;
+    }
+    finished = true;
+    try
+    {
+      deflater.finish();
+      while (!deflater.finished())
+      {
+        deflate(Deflater.NO_FLUSH);
+      }
+      if (crc != null)
+      {
+        writeIntLittleEndian((int)crc.getValue());
+        writeIntLittleEndian((int)bytesIn);
+      }
+    }
+    finally
+    {
+      releaseDeflater();
+    }
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    try
+    {
+      finish();
+    }
+    finally
+    {
+      releaseDeflater();
+      out.close();
+    }
+  }
+
+  /**
+   * Gets the format being written.
+   */
+  public Encoding getEncoding()
+  {
+    return encoding;
+  }
+
+  /**
+   * Gets the number of uncompressed bytes written.
+   */
+  public long getBytesIn()
+  {
+    return bytesIn;
+  }
+
+  /**
+   * Gets the number of compressed bytes, including any gzip header and
+   * trailer, passed to the underlying stream.
+   */
+  public long getBytesOut()
+  {
+    return bytesOut;
+  }
+
+  /**
+   * Gets the time spent in the Deflater, in nanoseconds.  Compression is
+   * CPU-bound on the calling thread, so this approximates its CPU cost.
+   */
+  public long getCompressionNanos()
+  {
+    return compressionNanos;
+  }
+
+  /**
+   * Runs the Deflater once and writes whatever it produces, returning the
+   * number of bytes produced.
+   */
+  private int deflate(int flushMode) throws IOException
+  {
+    final long start = System.nanoTime();
+    final int count = deflater.deflate(buffer, 0, buffer.length, flushMode);
+    compressionNanos += System.nanoTime() - start;
+    if (count > 0)
+    {
+      out.write(buffer, 0, count);
+      bytesOut += count;
+    }
+    return count;
+  }
+
+  /**
+   * Writes a 32-bit value in the little-endian order used by gzip.
+   */
+  private void writeIntLittleEndian(int value) throws IOException
+  {
+    for (int i = 0; i < 4; i++)
+    {
+      out.write((value >>> (8 * i)) & 0xff);
+    }
+    bytesOut += 4;
+  }
+
+  /**
+   * Returns the Deflater to its pool, if not already done.
+   */
+  private void releaseDeflater()
+  {
+    if (deflater != null)
+    {
+      pool.release(deflater);
+      deflater = null;
+    }
+  }
+
+}  // End CompressingOutputStream.
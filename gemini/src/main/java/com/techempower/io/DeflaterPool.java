@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package com.techempower.io;
+
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * A bounded pool of Deflaters sharing one compression level and format.
+ * A Deflater holds a sizable native buffer (its window and hash tables)
+ * that is costly to allocate for every response and is only released by
+ * end() or finalization, so reusing them avoids both the allocation and
+ * the native memory churn.
+ *   <p>
+ * Deflaters are borrowed in a freshly reset state and must be returned
+ * with release(); at most maximumIdle are retained and any beyond that
+ * are ended.
+ */
+public class DeflaterPool
+{
+
+  //
+  // Member variables.
+  //
+
+  private final int                      level;
+  private final boolean                  nowrap;
+  private final BlockingQueue<Deflater>  idle;
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   *
+   * @param level The compression level, 0-9 or Deflater.DEFAULT_COMPRESSION.
+   * @param nowrap True for raw deflate data (as wrapped by gzip); false for
+   *        the zlib format (the HTTP "deflate" content-coding).
+   * @param maximumIdle The maximum number of idle Deflaters to retain.
+   */
+  public DeflaterPool(int level, boolean nowrap, int maximumIdle)
+  {
+    this.level = level;
+    this.nowrap = nowrap;
+    this.idle = new ArrayBlockingQueue<>(Math.max(1, maximumIdle));
+  }
+
+  /**
+   * Borrows a Deflater, creating one if none are idle.
+   */
+  public Deflater borrow()
+  {
+    final Deflater deflater = idle.poll();
+    return (deflater != null ? deflater : new Deflater(level, nowrap));
+  }
+
+  /**
+   * Returns a Deflater to the pool, ending it if the pool is full.
+   */
+  public void release(Deflater deflater)
+  {
+    deflater.reset();
+    if (!idle.offer(deflater))
+    {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Gets the number of idle Deflaters currently retained.
+   */
+  public int getIdleCount()
+  {
+    return idle.size();
+  }
+
+  /**
+   * Ends all idle Deflaters.
+   */
+  public void clear()
+  {
+    Deflater deflater;
+    while ((deflater = idle.poll()) != null)
+    {
+      deflater.end();
+    }
+  }
+
+}  // End DeflaterPool.
@@ -27,6 +27,8 @@
 package com.techempower.js;
 
 import java.io.*;
+import java.util.*;
+import java.util.stream.*;
 
 import com.fasterxml.jackson.core.*;
 import com.fasterxml.jackson.databind.*;
@@ -34,6 +36,13 @@ import com.fasterxml.jackson.databind.*;
 /**
  * Uses the Jackson JSON serialization library to write Java objects to
  * JSON. 
+ *   <p>
+ * The Writer and OutputStream variants of write encode directly to the
+ * target through a JsonGenerator rather than building an intermediate
+ * String, and leave the target open.  Iterables and Iterators are written
+ * element by element as they are traversed, and a java.util.stream.Stream
+ * (such as one backed by a database cursor) is written as a JSON array
+ * and then closed, so large results need not be materialized.
  */
 public class   JacksonJavaScriptWriter
     implements JavaScriptWriter {
@@ -66,12 +75,46 @@ public class   JacksonJavaScriptWriter
 
   @Override
   public void write(Object object, Appendable out) throws IOException {
+    if (out instanceof Writer) {
+      try (JsonGenerator generator = mapper.getFactory().createGenerator((Writer)out)) {
+        write(object, generator);
+      }
+    }
+    else {
+      out.append(write(object));
+    }
+  }
+
+  @Override
+  public void write(Object object, OutputStream out) throws IOException {
+    try (JsonGenerator generator = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+      write(object, generator);
+    }
+  }
+
+  /**
+   * Writes the object to a generator, leaving the generator's target open.
+   */
+  private void write(Object object, JsonGenerator generator) throws IOException {
+    // The caller owns the target; closing the generator should only flush.
+    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    // Flushing after every element of a stream would turn each into its
+    // own small write to the target.
+    final ObjectWriter writer = mapper.writer()
+        .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     try {
-      if (out instanceof Writer) {
-        mapper.writeValue((Writer)out, object);
+      if (object instanceof BaseStream) {
+        try (BaseStream<?, ?> stream = (BaseStream<?, ?>)object) {
+          generator.writeStartArray();
+          final Iterator<?> iterator = stream.iterator();
+          while (iterator.hasNext()) {
+            writer.writeValue(generator, iterator.next());
+          }
+          generator.writeEndArray();
+        }
       }
       else {
-        out.append(mapper.writeValueAsString(out));
+        writer.writeValue(generator, object);
       }
     }
     catch (JsonProcessingException jpexc) {
@@ -27,6 +27,7 @@
 package com.techempower.js;
 
 import java.io.*;
+import java.nio.charset.*;
 
 /**
  * Implementations of this interface can write Java objects to JSON.  The
@@ -58,4 +59,24 @@ public interface JavaScriptWriter {
   */
  void write(Object object, Appendable out) throws IOException;
 
+ /**
+  * Writes the object to a byte stream in JavaScript notation, encoded as
+  * UTF-8.  The stream is flushed but not closed.  The default
+  * implementation adapts the stream to a Writer; implementations that can
+  * encode directly to bytes should override this.
+  *
+  * @param object The object to be written in JavaScript notation.
+  * @param out The target for the object in JavaScript notation.
+  * @throws IllegalArgumentException If traversing the object would have
+  *                                  resulted in an infinite loop because of a
+  *                                  circular reference.
+  * @throws IOException If an I/O error occurs.
+  */
+ default void write(Object object, OutputStream out) throws IOException {
+   final Writer writer = new BufferedWriter(
+       new OutputStreamWriter(out, StandardCharsets.UTF_8));
+   write(object, writer);
+   writer.flush();
+ }
+
 }
@@ -40,7 +40,10 @@ import org.slf4j.LoggerFactory;
  * minimum priority.  It is assumed that events can run at low priority.
  *
  * @see Scheduler
+ * @deprecated The Scheduler now runs events that require their own thread
+ * on a shared pool of worker threads and no longer uses this class.
  */
+@Deprecated
 public class EventRunnerThread
   extends    EndableThread
 {
@@ -66,8 +66,8 @@ public abstract class ScheduledEvent
   private long    lastRunTime       = 0L;
   private long    lastCompleteTime  = 0L;
   private long    lastRunDuration   = 0L;
-  private boolean executing         = false;
-  private boolean enabled           = true;
+  private volatile boolean executing = false;
+  private volatile boolean enabled   = true;
   private final String  name;
   private final String  description;
 
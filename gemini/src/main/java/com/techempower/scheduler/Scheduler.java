@@ -27,7 +27,10 @@
 
 package com.techempower.scheduler;
 
+import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import com.techempower.*;
 import com.techempower.asynchronous.*;
@@ -37,32 +40,46 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * A simple task scheduler.  Maintains a separate thread that periodically
- * checks the clock and runs any events that are scheduled to execute.  An 
- * instance of this object is created by the application at its start time.
+ * A simple task scheduler.  Maintains a separate thread that sleeps until
+ * the next event is due and then runs any events that are scheduled to 
+ * execute.  An instance of this object is created by the application at its
+ * start time.
  *    <p>
  * Events should be added to the Scheduler at construction time within the
  * constructScheduler method in your application's Application subclass.
  *    <p>
  * Events should all be subclasses of ScheduledEvent.  When events are 
- * executed, they can be executed on the Scheduler thread or a separate 
+ * executed, they can be executed on the Scheduler thread or on a worker
  * thread, if desired; this is specified by the requiresOwnThread method.
+ * Worker threads are drawn from a bounded pool shared by all events, so an
+ * event that requires its own thread may wait for a worker if all are busy.
  *    <p>
  * After performing their work, Events can reschedule themselves by calling 
  * scheduleEvent, even if they are already scheduled.  This will change the 
  * scheduled execution time (or reschedule the event if the scheduleEvent 
  * method is called from within the Event's execute method).
  *    <p>
+ * Scheduled times are kept in a priority queue, so the Scheduler thread 
+ * wakes when the earliest event is due rather than polling.  Because events
+ * may also become due without calling scheduleEvent (for example, by being
+ * enabled after their scheduled time has passed, or by not rescheduling 
+ * themselves after executing), all events are also checked at least once 
+ * per sleep time.
+ *    <p>
  * Configuration file settings:
  *    <ul>
- * <li>SchedulerSleepSeconds - Sets the number of seconds to sleep the
- *     Scheduler's thread before checking for events that need to be run.
+ * <li>SchedulerSleepSeconds - Sets the maximum number of seconds the
+ *     Scheduler's thread will sleep before checking all events.
  * <li>SchedulerEnabled - Defaults to true; if set to false, the Scheduler
  *     will not run any events.
+ * <li>SchedulerThreads - The maximum number of worker threads for events
+ *     that require their own thread.  Default: 10.
+ * <li>SchedulerVirtualThreads - Defaults to false; if set to true and the
+ *     Java runtime supports virtual threads, worker threads will be virtual
+ *     threads.
  *    </ul>
  *
  * @see ScheduledEvent
- * @see EventRunnerThread
  * @see SchedulerThread
  */
 public class Scheduler
@@ -76,6 +93,8 @@ public class Scheduler
   public static final int    DEFAULT_SLEEP_TIME = 5000;      // five seconds
   public static final int    MINIMUM_SLEEP_TIME_SECONDS = 0;
   public static final int    MAXIMUM_SLEEP_TIME_SECONDS = 600;  // 10 minutes.
+  public static final int    DEFAULT_WORKER_THREADS = 10;
+  public static final IntRange REASONABLE_WORKER_THREADS = new IntRange(1, 500);
 
   //
   // Member variables.
@@ -83,10 +102,18 @@ public class Scheduler
 
   private final TechEmpowerApplication  application;
   private final Logger                  log = LoggerFactory.getLogger(getClass());
-  private final List<ScheduledEvent>    scheduledEvents  = new ArrayList<>();
+  private final Set<ScheduledEvent>     scheduledEvents  = new LinkedHashSet<>();
+  private final PriorityQueue<Pending>  pending          = new PriorityQueue<>();
   private final SchedulerThread         schedulerThread;
+  private final ThreadPoolExecutor      workers;
+  private final AtomicInteger           workerNumber     = new AtomicInteger();
+  private final AtomicLong              workerExecutions = new AtomicLong();
+  private final LatencyStats            startDelay       = new LatencyStats("Event start delay");
   private       long                    sleepTime        = DEFAULT_SLEEP_TIME;
   private       boolean                 schedulerEnabled = true;
+  private       long                    nextFullCheck;
+  private       boolean                 scheduleChanged;
+  private volatile ThreadFactory        virtualThreadFactory;
 
   //
   // Member methods.
@@ -99,6 +126,10 @@ public class Scheduler
   {
     this.application     = application;
     this.schedulerThread = new SchedulerThread(this);
+    this.workers         = new ThreadPoolExecutor(DEFAULT_WORKER_THREADS, 
+        DEFAULT_WORKER_THREADS, 60L, TimeUnit.SECONDS, 
+        new LinkedBlockingQueue<>(), this::newWorkerThread);
+    this.workers.allowCoreThreadTimeOut(true);
     
     // Register as an asynchronous resource.
     application.addAsynchronous(this);
@@ -112,8 +143,66 @@ public class Scheduler
   {
     // Configure the Scheduler.
     setSleepTime(props.getInt("SchedulerSleepSeconds", 
-        (int)(getSleepTime() * UtilityConstants.SECOND)));
+        (int)(getSleepTime() / UtilityConstants.SECOND)));
     setEnabled(props.getBoolean("SchedulerEnabled", true));
+    
+    final int threads = NumberHelper.boundInteger(
+        props.getInt("SchedulerThreads", DEFAULT_WORKER_THREADS), 
+        REASONABLE_WORKER_THREADS);
+    if (threads < workers.getCorePoolSize())
+    {
+      workers.setCorePoolSize(threads);
+      workers.setMaximumPoolSize(threads);
+    }
+    else
+    {
+      workers.setMaximumPoolSize(threads);
+      workers.setCorePoolSize(threads);
+    }
+    
+    virtualThreadFactory = props.getBoolean("SchedulerVirtualThreads", false)
+        ? createVirtualThreadFactory()
+        : null;
+  }
+
+  /**
+   * Creates a worker thread, which is a virtual thread if so configured.
+   */
+  private Thread newWorkerThread(Runnable runnable)
+  {
+    final ThreadFactory virtual = virtualThreadFactory;
+    if (virtual != null)
+    {
+      return virtual.newThread(runnable);
+    }
+    final Thread thread = new Thread(runnable, 
+        "Event Runner " + workerNumber.incrementAndGet());
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    return thread;
+  }
+
+  /**
+   * Creates a virtual thread factory using reflection, since virtual threads
+   * are not available in all supported Java versions.  Returns null if 
+   * virtual threads are not supported.
+   */
+  private ThreadFactory createVirtualThreadFactory()
+  {
+    try
+    {
+      final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder = builderClass.getMethod("name", String.class, long.class)
+          .invoke(builder, "Event Runner (virtual) ", 1L);
+      return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+    }
+    catch (ClassNotFoundException | NoSuchMethodException 
+        | IllegalAccessException | InvocationTargetException exc)
+    {
+      log.info("Virtual threads are not supported; using platform threads.");
+      return null;
+    }
   }
 
   /**
@@ -135,7 +224,7 @@ public class Scheduler
   {
     event.setScheduledTime(whenToInvoke);
 
-    if (scheduledEvents.contains(event))
+    if (!scheduledEvents.add(event))
     {
       // Rescheduled.
       log.info("{} rescheduled for {}", event.getName(),
@@ -143,13 +232,19 @@ public class Scheduler
     }
     else
     {
-      // If the scheduled events collection does not yet have a record of
-      // this event, add it.
-      scheduledEvents.add(event);
-
       log.info("{} scheduled for {}", event,
           DateHelper.STANDARD_TECH_FORMAT.format(new Date(whenToInvoke)));
     }
+    
+    // Entries for the event's previous time are skipped when they come due.
+    // Wake the Scheduler thread if this is now the earliest event.
+    final Pending head = pending.peek();
+    pending.add(new Pending(event, whenToInvoke));
+    if (head == null || whenToInvoke < head.time)
+    {
+      scheduleChanged = true;
+      notifyAll();
+    }
   }
 
   /**
@@ -167,6 +262,7 @@ public class Scheduler
   public synchronized void clear()
   {
     scheduledEvents.clear();
+    pending.clear();
   }
 
   /**
@@ -177,12 +273,13 @@ public class Scheduler
   {
     if (event != null)
     {
+      // Queued entries for the event are skipped when they come due.
       scheduledEvents.remove(event);
     }
   }
 
   /**
-   * Gets an iterator over the events collection.
+   * Gets a copy of the events collection.
    */
   public synchronized List<ScheduledEvent> getEvents()
   {
@@ -212,6 +309,7 @@ public class Scheduler
   public synchronized void end()
   {
     schedulerThread.setKeepRunning(false);
+    workers.shutdown();
   }
 
   /**
@@ -266,7 +364,8 @@ public class Scheduler
   }
 
   /**
-   * Sets the sleep time of the scheduler, in seconds.  Default is FIVE
+   * Sets the sleep time of the scheduler, in seconds.  This is the longest
+   * the Scheduler will go without checking all events.  Default is FIVE
    * SECONDS.  Only values between 1 and 600 are allowed.
    */
   public void setSleepTime(int seconds)
@@ -279,7 +378,107 @@ public class Scheduler
   }
 
   /**
-   * Checks the schedule and executes events that are due.
+   * Runs events that are due, checking all events if the sleep time has
+   * elapsed since they were last checked, and returns the number of 
+   * milliseconds until the next event is due or all events should be 
+   * checked again.  Called by the SchedulerThread.
+   */
+  protected long runDueEvents()
+  {
+    final long now = System.currentTimeMillis();
+    if (now >= nextFullCheck)
+    {
+      nextFullCheck = now + sleepTime;
+      checkSchedule();
+    }
+    else if (isEnabled())
+    {
+      for (ScheduledEvent event : pollDueEvents(now))
+      {
+        runIfReady(event, now);
+      }
+    }
+    
+    synchronized (this)
+    {
+      final Pending head = pending.peek();
+      final long untilFullCheck = nextFullCheck - System.currentTimeMillis();
+      return head == null 
+          ? untilFullCheck 
+          : Math.min(untilFullCheck, head.time - System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * Waits up to the given number of milliseconds, or until an event is 
+   * scheduled earlier than the previously earliest event.  Called by the
+   * SchedulerThread.
+   */
+  protected synchronized void awaitScheduleChange(long millis)
+    throws InterruptedException
+  {
+    if (!scheduleChanged && millis > 0L)
+    {
+      wait(millis);
+    }
+    scheduleChanged = false;
+  }
+
+  /**
+   * Removes the queued entries that are due, returning their events.  
+   * Entries for events that have since been rescheduled or removed are 
+   * discarded.
+   */
+  private synchronized List<ScheduledEvent> pollDueEvents(long now)
+  {
+    List<ScheduledEvent> due = Collections.emptyList();
+    while (!pending.isEmpty() && pending.peek().time <= now)
+    {
+      final Pending entry = pending.poll();
+      if (  (scheduledEvents.contains(entry.event))
+         && (entry.event.getScheduledTime() == entry.time)
+         && (!due.contains(entry.event))
+         )
+      {
+        if (due.isEmpty())
+        {
+          due = new ArrayList<>(2);
+        }
+        due.add(entry.event);
+      }
+    }
+    return due;
+  }
+
+  /**
+   * Runs an event if it is enabled, is not currently executing, and its 
+   * scheduled time has passed.  Events that are not ready are picked up by
+   * the next full check.
+   */
+  private void runIfReady(ScheduledEvent event, long now)
+  {
+    if (  (event.isEnabled())
+       && (!event.isExecuting())
+       && (event.getScheduledTime() <= now)
+       )
+    {
+      startDelay.record(TimeUnit.MILLISECONDS.toNanos(
+          Math.max(0L, now - event.getScheduledTime())));
+      if (event.requiresOwnThread())
+      {
+        // Run on a worker thread if the event requires it.
+        executeEventNewThread(event, false);
+      }
+      else
+      {
+        // Execute on the current thread.
+        executeEventCurrentThread(event, false);
+      }
+    }
+  }
+
+  /**
+   * Checks all events and executes those that are due.
    */
   public void checkSchedule()
   {
@@ -288,44 +487,26 @@ public class Scheduler
     {
       // Get the current date and time.
       final long now = System.currentTimeMillis();
-
-      // Get an iterator over the events.
-      final List<ScheduledEvent> events = getEvents();
-      final Iterator<ScheduledEvent> iter = events.iterator();
       
-      ScheduledEvent event;
+      // Discard the queued entries that are due, since every due event is
+      // about to be checked.
+      pollDueEvents(now);
 
-      while (  (iter.hasNext())
-            && (isEnabled())  // Stop looping if the scheduler becomes disabled.
-            )
+      for (ScheduledEvent event : getEvents())
       {
-        event = iter.next();
-
-        // If the event is enabled, is not currently executing, and its 
-        // scheduled time has passed, then let's go.
-        if (  (event.isEnabled())
-           && (!event.isExecuting())
-           && (event.getScheduledTime() <= now)
-           )
+        // Stop looping if the scheduler becomes disabled.
+        if (!isEnabled())
         {
-          if (event.requiresOwnThread())
-          {
-            // Start a thread if the event requires it.
-            executeEventNewThread(event, false);
-          }
-          else
-          {
-            // Execute on the current thread.
-            executeEventCurrentThread(event, false);
-          }
+          break;
         }
+        runIfReady(event, now);
       }
     }
   }
 
   /**
-   * Executes a provided event on a new EventRunnerThread.  Returns true if
-   * an EventRunnerThread was started.
+   * Executes a provided event on a worker thread.  Returns true if the 
+   * event was submitted for execution.
    *
    * @param event The ScheduledEvent to run.
    * @param onDemandExecution Whether this execution is the result of
@@ -338,9 +519,17 @@ public class Scheduler
       // Set executing flag.
       event.setExecuting(true);
 
-      log.info("Executing {} on new thread.", event.getName());
-      final EventRunnerThread ert = new EventRunnerThread(event, this, onDemandExecution);
-      ert.start();
+      log.info("Executing {} on worker thread.", event.getName());
+      try
+      {
+        workers.execute(() -> runOnWorker(event, onDemandExecution));
+      }
+      catch (RejectedExecutionException exc)
+      {
+        event.setExecuting(false);
+        log.info("Unable to execute {}; the Scheduler is stopped.", event.getName());
+        return false;
+      }
 
       return true;
     }
@@ -350,6 +539,32 @@ public class Scheduler
     }
   }
 
+  /**
+   * Runs an event on a worker thread.
+   */
+  private void runOnWorker(ScheduledEvent event, boolean onDemandExecution)
+  {
+    final Chronograph chrono = new Chronograph();
+    workerExecutions.incrementAndGet();
+    try
+    {
+      event.execute(this, onDemandExecution);
+    }
+    catch (Exception exc)
+    {
+      log.error("Exception while executing (worker thread) {}", event, exc);
+    }
+    catch (Error error)
+    {
+      log.error("Error while executing (worker thread) {}", event, error);
+    }
+    finally
+    {
+      event.setExecuting(false);
+      log.info("{} complete. {}", event.getName(), chrono);
+    }
+  }
+
   /**
    * Executes a provided event on the current thread.  Returns true if the
    * execution completed; false if there was an exception.
@@ -396,13 +611,78 @@ public class Scheduler
     }
   }
 
+  /**
+   * Gets the number of worker threads currently executing events.
+   */
+  public int getActiveWorkerCount()
+  {
+    return workers.getActiveCount();
+  }
+
+  /**
+   * Gets the number of events waiting for a worker thread.
+   */
+  public int getQueuedWorkerCount()
+  {
+    return workers.getQueue().size();
+  }
+
+  /**
+   * Gets the maximum number of worker threads.
+   */
+  public int getMaximumWorkerCount()
+  {
+    return workers.getMaximumPoolSize();
+  }
+
+  /**
+   * Gets the number of event executions started on worker threads.
+   */
+  public long getWorkerExecutionCount()
+  {
+    return workerExecutions.get();
+  }
+
+  /**
+   * Gets statistics for how long after their scheduled times events were 
+   * started.
+   */
+  public LatencyStats getStartDelay()
+  {
+    return startDelay;
+  }
+
   /**
    * Standard toString.
    */
   @Override
-  public String toString()
+  public synchronized String toString()
+  {
+    return "[Scheduler: " + scheduledEvents.size() + " event(s); "
+        + workers.getActiveCount() + "/" + workers.getMaximumPoolSize() 
+        + " workers active]";
+  }
+
+  /**
+   * A scheduled time for an event, ordered by time.
+   */
+  private static final class Pending
+    implements Comparable<Pending>
   {
-    return "[Scheduler: " + scheduledEvents.size() + " event(s)]";
+    private final ScheduledEvent event;
+    private final long           time;
+
+    private Pending(ScheduledEvent event, long time)
+    {
+      this.event = event;
+      this.time = time;
+    }
+
+    @Override
+    public int compareTo(Pending other)
+    {
+      return Long.compare(time, other.time);
+    }
   }
 
 }   // End Scheduler.
@@ -79,12 +79,19 @@ public class SchedulerThread
     // Keep going until setKeepRunning(false) is called.
     while (checkPause())
     {
-      scheduler.checkSchedule();
+      final long wait = Math.max(1L, scheduler.runDueEvents());
 
-      // Sleep for a while.  This sleep time, of course, specifies the
-      // clarity of the scheduler.
-      nextCheck = System.currentTimeMillis() + scheduler.getSleepTime(); 
-      simpleSleep(scheduler.getSleepTime());
+      // Sleep until the next event is due, an earlier event is scheduled, 
+      // or it is time to check all events.
+      nextCheck = System.currentTimeMillis() + wait; 
+      try
+      {
+        scheduler.awaitScheduleChange(wait);
+      }
+      catch (InterruptedException iexc)
+      {
+        // Interrupted by setKeepRunning(false); checkPause handles stopping.
+      }
     }
 
     log.info("Scheduler thread stopped [{}; {}].",
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.util;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Accumulates the count, total, and maximum of a series of durations, such
+ * as the latency of an operation, with minimal contention between threads
+ * recording concurrently.
+ *   <p>
+ * Typical use:
+ *   <pre>
+ * final long start = System.nanoTime();
+ * ...
+ * stats.record(System.nanoTime() - start);
+ *   </pre>
+ */
+public class LatencyStats
+{
+
+  //
+  // Member variables.
+  //
+
+  private final String        name;
+  private final LongAdder     count = new LongAdder();
+  private final LongAdder     totalNanos = new LongAdder();
+  private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+  //
+  // Member methods.
+  //
+
+  /**
+   * Constructor.
+   * 
+   * @param name A name for rendering in toString.
+   */
+  public LatencyStats(String name)
+  {
+    this.name = name;
+  }
+
+  /**
+   * Records one duration in nanoseconds.
+   */
+  public void record(long nanos)
+  {
+    count.increment();
+    totalNanos.add(nanos);
+    maxNanos.accumulate(nanos);
+  }
+
+  /**
+   * Records the time elapsed since a start time provided by 
+   * System.nanoTime.
+   */
+  public void recordSince(long startNanos)
+  {
+    record(System.nanoTime() - startNanos);
+  }
+
+  public String getName()
+  {
+    return name;
+  }
+
+  public long getCount()
+  {
+    return count.sum();
+  }
+
+  public long getTotalNanos()
+  {
+    return totalNanos.sum();
+  }
+
+  public long getMaxNanos()
+  {
+    return maxNanos.get();
+  }
+
+  /**
+   * Gets the mean duration in nanoseconds, or 0 if nothing is recorded.
+   */
+  public long getAverageNanos()
+  {
+    final long samples = getCount();
+    return samples == 0 ? 0L : getTotalNanos() / samples;
+  }
+
+  /**
+   * Resets all counts.
+   */
+  public void reset()
+  {
+    count.reset();
+    totalNanos.reset();
+    maxNanos.reset();
+  }
+
+  @Override
+  public String toString()
+  {
+    return name + " [count: " + getCount() 
+        + "; avg: " + (getAverageNanos() / 1000L) + "us"
+        + "; max: " + (getMaxNanos() / 1000L) + "us]";
+  }
+
+}  // End LatencyStats.
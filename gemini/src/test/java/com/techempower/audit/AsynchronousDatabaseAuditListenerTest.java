@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.audit;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import com.techempower.*;
+
+/**
+ * Tests for AsynchronousDatabaseAuditListener, with the database insert
+ * replaced by an in-memory collection.
+ */
+public class AsynchronousDatabaseAuditListenerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final TechEmpowerApplication app = new TechEmpowerApplication();
+  private final AuditSession session = new AuditSession(
+      new AuditManager(app), new TestAuditable(1L));
+
+  @Test
+  public void writesInBatches() {
+    final TestListener listener = new TestListener();
+    listener.setBatchSize(100);
+    listener.begin();
+    for (int i = 0; i < 450; i++) {
+      listener.auditCommitted(session, audit(i));
+    }
+    listener.end();
+    assertEquals(450, listener.inserted.size());
+    assertEquals(450, listener.getWrittenCount());
+    assertTrue(listener.largestBatch <= 100);
+    assertEquals(0, listener.getQueueDepth());
+  }
+
+  @Test
+  public void spillsAndReplaysAfterRestart() throws Exception {
+    final File spill = new File(folder.getRoot(), "audits.spill");
+
+    final TestListener failing = new TestListener();
+    failing.fail = true;
+    failing.setSpillFile(spill);
+    failing.begin();
+    for (int i = 0; i < 5; i++) {
+      failing.auditCommitted(session, audit(i));
+    }
+    failing.end();
+    assertEquals(5, failing.getSpilledCount());
+    assertTrue(spill.exists());
+
+    final TestListener recovered = new TestListener();
+    recovered.setSpillFile(spill);
+    recovered.begin();
+    final long deadline = System.currentTimeMillis() + 5000L;
+    while (recovered.getWrittenCount() < 5 
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10L);
+    }
+    recovered.end();
+    assertEquals(5, recovered.inserted.size());
+    assertEquals("value 4", recovered.inserted.get(4).getNewValue());
+    assertFalse(spill.exists());
+  }
+
+  @Test
+  public void resumesInterruptedReplayAfterRecordedOffset() throws Exception {
+    final File spill = new File(folder.getRoot(), "audits.spill");
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    long offset = 0L;
+    for (int i = 0; i < 5; i++) {
+      AuditRecord.of(session, audit(i)).writeTo(out);
+      if (i == 1) {
+        offset = bytes.size();
+      }
+    }
+    // Simulate a replay that inserted the first two audits before stopping.
+    try (OutputStream file = new FileOutputStream(spill.getPath() + ".replay")) {
+      bytes.writeTo(file);
+    }
+    try (DataOutputStream file = new DataOutputStream(
+        new FileOutputStream(spill.getPath() + ".offset"))) {
+      file.writeLong(offset);
+    }
+
+    final TestListener recovered = replay(spill, 3);
+    assertEquals(3, recovered.inserted.size());
+    assertEquals("value 2", recovered.inserted.get(0).getNewValue());
+    assertFalse(new File(spill.getPath() + ".replay").exists());
+    assertFalse(new File(spill.getPath() + ".offset").exists());
+  }
+
+  @Test
+  public void ignoresOffsetLeftWithoutItsReplayFile() throws Exception {
+    final File spill = new File(folder.getRoot(), "audits.spill");
+    final TestListener failing = new TestListener();
+    failing.fail = true;
+    failing.setSpillFile(spill);
+    failing.begin();
+    for (int i = 0; i < 3; i++) {
+      failing.auditCommitted(session, audit(i));
+    }
+    failing.end();
+    // Simulate a replay interrupted after deleting its file but not its
+    // offset.
+    try (DataOutputStream file = new DataOutputStream(
+        new FileOutputStream(spill.getPath() + ".offset"))) {
+      file.writeLong(spill.length() - 1L);
+    }
+
+    final TestListener recovered = replay(spill, 3);
+    assertEquals(3, recovered.inserted.size());
+    assertEquals("value 0", recovered.inserted.get(0).getNewValue());
+    assertFalse(new File(spill.getPath() + ".offset").exists());
+  }
+
+  @Test
+  public void setsAsideUnreadableSpill() throws Exception {
+    final File spill = new File(folder.getRoot(), "audits.spill");
+    final TestListener failing = new TestListener();
+    failing.fail = true;
+    failing.setSpillFile(spill);
+    failing.begin();
+    for (int i = 0; i < 3; i++) {
+      failing.auditCommitted(session, audit(i));
+    }
+    failing.end();
+    try (OutputStream file = new FileOutputStream(spill, true)) {
+      file.write(new byte[] { 0, 0, 1 });
+    }
+
+    final TestListener recovered = replay(spill, 3);
+    assertEquals(3, recovered.inserted.size());
+    assertFalse(spill.exists());
+    assertFalse(new File(spill.getPath() + ".replay").exists());
+    assertEquals(1, folder.getRoot().listFiles(
+        (dir, name) -> name.startsWith("audits.spill.unreadable-")).length);
+  }
+
+  private TestListener replay(File spill, int expected) throws InterruptedException {
+    final TestListener recovered = new TestListener();
+    recovered.setSpillFile(spill);
+    recovered.begin();
+    final long deadline = System.currentTimeMillis() + 5000L;
+    while (recovered.getWrittenCount() < expected 
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10L);
+    }
+    recovered.end();
+    return recovered;
+  }
+
+  private Audit audit(int index) {
+    return new Audit(session, Audit.CHANGE, new TestAuditable(100L + index), 
+        1, "old", "value " + index);
+  }
+
+  private class TestListener extends AsynchronousDatabaseAuditListener {
+    private final List<AuditRecord> inserted = new CopyOnWriteArrayList<>();
+    private volatile boolean fail;
+    private volatile int largestBatch;
+
+    private TestListener() {
+      super(app, null);
+      setFlushInterval(10L);
+    }
+
+    @Override
+    protected void insert(List<AuditRecord> records) throws SQLException {
+      if (fail) {
+        throw new SQLException("Unavailable");
+      }
+      largestBatch = Math.max(largestBatch, records.size());
+      inserted.addAll(records);
+    }
+  }
+
+  private static class TestAuditable implements Auditable {
+    private long id;
+
+    private TestAuditable(long id) {
+      this.id = id;
+    }
+
+    @Override
+    public long getId() {
+      return id;
+    }
+
+    @Override
+    public void setId(long identity) {
+      this.id = identity;
+    }
+
+    @Override
+    public void initialize() {
+    }
+
+    @Override
+    public boolean isInitialized() {
+      return true;
+    }
+
+    @Override
+    public String getAuditableName() {
+      return "Test " + id;
+    }
+
+    @Override
+    public int getAuditableTypeID() {
+      return 1;
+    }
+  }
+
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+import com.techempower.util.*;
+
+/**
+ * Tests for GroupStore's sorted order.
+ */
+public class GroupStoreTest {
+
+  private static final Comparator<Item> BY_RANK = 
+      Comparator.comparingInt(item -> item.rank);
+
+  @Test
+  public void reorderMovesObjectsMutatedInPlace() {
+    for (CacheStorage storage : CacheStorage.values()) {
+      final List<Item> items = new ArrayList<>();
+      for (int i = 1; i <= 50; i++) {
+        items.add(new Item(i, i * 10));
+      }
+      final GroupStore<Item> store = GroupStore.create(storage, BY_RANK, items);
+
+      // Move one item from the middle to the front, and another to the end,
+      // changing their sort keys in place.
+      final Item first = store.get(25L);
+      first.rank = 0;
+      store.reorder(first);
+      final Item last = store.get(10L);
+      last.rank = 1000;
+      store.reorder(last);
+
+      assertEquals(50, store.size());
+      final List<Item> ordered = store.snapshot();
+      assertSame(first, ordered.get(0));
+      assertSame(last, ordered.get(49));
+      for (int i = 1; i < ordered.size(); i++) {
+        assertTrue(ordered.get(i - 1).rank <= ordered.get(i).rank);
+      }
+
+      // A reordered object is still found by comparison afterward.
+      assertSame(first, store.remove(25L));
+      assertEquals(49, store.snapshot().size());
+      assertFalse(store.snapshot().contains(first));
+    }
+  }
+
+  @Test
+  public void reorderOfAnUnchangedObjectKeepsItsPosition() {
+    final List<Item> items = Arrays.asList(new Item(1, 30), new Item(2, 10), 
+        new Item(3, 20));
+    final GroupStore<Item> store = GroupStore.create(CacheStorage.STANDARD, 
+        BY_RANK, items);
+    store.reorder(store.get(3L));
+    final List<Long> ids = new ArrayList<>();
+    for (Item item : store.ordered()) {
+      ids.add(item.getId());
+    }
+    assertEquals(Arrays.asList(2L, 3L, 1L), ids);
+  }
+
+  private static class Item implements Identifiable {
+    private long id;
+    private int rank;
+
+    private Item(long id, int rank) {
+      this.id = id;
+      this.rank = rank;
+    }
+
+    @Override
+    public long getId() {
+      return id;
+    }
+
+    @Override
+    public void setId(long id) {
+      this.id = id;
+    }
+  }
+}
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.cache;
+
+import static org.junit.Assert.*;
+
+import gnu.trove.map.*;
+import gnu.trove.map.hash.*;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+import com.techempower.*;
+import com.techempower.data.*;
+import com.techempower.util.*;
+
+/**
+ * Tests for LruCacheGroup, using a stub database that has no rows and
+ * accepts every write.
+ */
+public class LruCacheGroupTest {
+
+  private static final long ID = 7L;
+
+  private final CountDownLatch loading = new CountDownLatch(1);
+  private final CountDownLatch release = new CountDownLatch(1);
+  private ExecutorService executor;
+  private LruCacheGroup<Widget> group;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newSingleThreadExecutor();
+    final EntityStore store = new EntityStore(new TechEmpowerApplication(),
+        new StubFactory());
+    // A batch load that returns a copy of the entity, as read before any
+    // concurrent change, once it is released.
+    group = new LruCacheGroup<Widget>(store, Widget.class, "widgets", "id",
+        Widget::new, null, null, null, 100, false, false) {
+      @Override
+      protected TLongObjectMap<Widget> rawMap(Collection<Long> ids) {
+        final TLongObjectMap<Widget> result = new TLongObjectHashMap<>();
+        result.put(ID, new Widget(ID, "loaded"));
+        loading.countDown();
+        try {
+          release.await();
+        }
+        catch (InterruptedException exc) {
+          Thread.currentThread().interrupt();
+        }
+        return result;
+      }
+    };
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void removeDuringABatchLoadIsNotUndone() throws Exception {
+    final Future<List<Widget>> batch = startBatchLoad();
+    group.remove(ID);
+    release.countDown();
+
+    // The caller of the batch load still sees what it read...
+    assertEquals("loaded", batch.get(5, TimeUnit.SECONDS).get(0).name);
+    // ...but the removed entity is not cached, and the database has no row.
+    assertNull(group.get(ID));
+  }
+
+  @Test
+  public void resetDuringABatchLoadDiscardsTheLoadedCopy() throws Exception {
+    final Future<List<Widget>> batch = startBatchLoad();
+    group.reset();
+    release.countDown();
+
+    batch.get(5, TimeUnit.SECONDS);
+    assertNull(group.get(ID));
+  }
+
+  @Test
+  public void batchLoadsAreCachedWhenNothingChanges() throws Exception {
+    final Future<List<Widget>> batch = startBatchLoad();
+    release.countDown();
+
+    final Widget loaded = batch.get(5, TimeUnit.SECONDS).get(0);
+    assertSame(loaded, group.get(ID));
+  }
+
+  private Future<List<Widget>> startBatchLoad() throws InterruptedException {
+    final Future<List<Widget>> batch = executor.submit(
+        () -> group.list(Arrays.asList(ID, ID + 1)));
+    assertTrue(loading.await(5, TimeUnit.SECONDS));
+    return batch;
+  }
+
+  /**
+   * The cached entity type.
+   */
+  public static class Widget implements Identifiable {
+    private long id;
+    private String name;
+
+    public Widget() {
+    }
+
+    Widget(long id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+
+    @Override
+    public long getId() {
+      return id;
+    }
+
+    @Override
+    public void setId(long identity) {
+      this.id = identity;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+  }
+
+  /**
+   * A ConnectorFactory whose connections, statements and result sets do
+   * nothing: queries find no rows and updates change nothing.
+   */
+  private static class StubFactory implements ConnectorFactory {
+    @Override
+    public ConnectionMonitor getConnectionMonitor() {
+      return stub(ConnectionMonitor.class);
+    }
+
+    private static <S> S stub(Class<S> type) {
+      return type.cast(Proxy.newProxyInstance(
+          StubFactory.class.getClassLoader(), new Class<?>[] { type },
+          (proxy, method, args) -> {
+            final Class<?> returns = method.getReturnType();
+            if (returns == int.class) {
+              return 0;
+            }
+            if (returns == long.class) {
+              return 0L;
+            }
+            if (returns == boolean.class) {
+              return false;
+            }
+            return returns.isInterface() ? stub(returns) : null;
+          }));
+    }
+
+    @Override
+    public void configure(EnhancedProperties props) {
+    }
+
+    @Override
+    public void determineIdentifierQuoteString() {
+    }
+
+    @Override
+    public String getIdentifierQuoteString() {
+      return "\"";
+    }
+
+    @Override
+    public DatabaseAffinity getDatabaseAffinity() {
+      return null;
+    }
+
+    @Override
+    public boolean isEnabled() {
+      return true;
+    }
+  }
+}
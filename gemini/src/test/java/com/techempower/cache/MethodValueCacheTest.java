@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+import org.junit.*;
+
+import com.techempower.*;
+import com.techempower.util.*;
+
+/**
+ * Tests for MethodValueCache's composite and range indexes, comparing each
+ * lookup against a linear scan of the same entities.
+ */
+public class MethodValueCacheTest {
+
+  private static final String[] STATUSES = { "open", "pending", "closed" };
+  private static final String[] COMPOSITE = { "getStatus", "getOwner" };
+  private static final Comparator<Ticket> BY_PRIORITY_THEN_ID = 
+      Comparator.comparing(Ticket::getPriority)
+          .thenComparingLong(Ticket::getId);
+
+  private final Map<Long, Ticket> tickets = new LinkedHashMap<>();
+  private MethodValueCache<Ticket> cache;
+
+  @Before
+  public void setUp() {
+    // Few distinct values, so that many tickets share each one.
+    final Random random = new Random(11);
+    for (long id = 200; id >= 1; id--) {
+      tickets.put(id, new Ticket(id, STATUSES[random.nextInt(STATUSES.length)],
+          1L + random.nextInt(4), 
+          random.nextInt(10) == 0 ? null : random.nextInt(15)));
+    }
+    cache = new MethodValueCache<>(new TicketStore(), Ticket.class);
+  }
+
+  @Test
+  public void compositeLookupsMatchALinearScan() {
+    for (int pass = 0; pass < 2; pass++) {
+      assertCompositeLookupsMatch();
+    }
+    assertTrue(cache.getObjects(COMPOSITE, new Object[] { "missing", 1L }).isEmpty());
+    assertTrue(cache.getObjects(COMPOSITE, new Object[] { "open", 99L }).isEmpty());
+  }
+
+  @Test
+  public void rangeLookupsMatchALinearScan() {
+    for (int pass = 0; pass < 2; pass++) {
+      assertRangeLookupsMatch();
+    }
+  }
+
+  @Test
+  public void indexesFollowUpdatesAndDeletes() {
+    assertCompositeLookupsMatch();
+    assertRangeLookupsMatch();
+
+    final Ticket moved = tickets.get(17L);
+    moved.status = "closed";
+    moved.owner = 4L;
+    moved.priority = 3;
+    cache.update(17L);
+    final Ticket cleared = tickets.get(18L);
+    cleared.priority = null;
+    cache.update(18L);
+    tickets.remove(19L);
+    cache.delete(19L);
+
+    assertCompositeLookupsMatch();
+    assertRangeLookupsMatch();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void compositeLookupsRequireOneValuePerMethod() {
+    cache.getObjects(COMPOSITE, new Object[] { "open" });
+  }
+
+  private void assertCompositeLookupsMatch() {
+    for (String status : STATUSES) {
+      for (long owner = 1L; owner <= 4L; owner++) {
+        final String s = status;
+        final long o = owner;
+        assertEquals(status + "/" + owner,
+            scan(t -> t.getStatus().equals(s) && t.getOwner() == o, 
+                Comparator.comparingLong(Ticket::getId)),
+            ids(cache.getObjects(COMPOSITE, new Object[] { status, owner })));
+      }
+    }
+  }
+
+  private void assertRangeLookupsMatch() {
+    final Integer[][] bounds = {
+        { null, null }, { null, 4 }, { 10, null }, { 3, 9 }, { 5, 5 }, 
+        { -10, 0 }, { 14, 100 }, { 20, 30 }, { 9, 3 }, { -5, -1 } };
+    for (Integer[] bound : bounds) {
+      final Integer from = bound[0];
+      final Integer to = bound[1];
+      assertEquals(from + ".." + to,
+          scan(t -> t.getPriority() != null
+                  && (from == null || t.getPriority() >= from)
+                  && (to == null || t.getPriority() <= to), 
+              BY_PRIORITY_THEN_ID),
+          ids(cache.getObjectsBetween("getPriority", from, to)));
+    }
+  }
+
+  private List<Long> scan(Predicate<Ticket> predicate, Comparator<Ticket> order) {
+    return tickets.values().stream()
+        .filter(predicate)
+        .sorted(order)
+        .map(Ticket::getId)
+        .collect(Collectors.toList());
+  }
+
+  private static List<Long> ids(List<Ticket> found) {
+    return found.stream().map(Ticket::getId).collect(Collectors.toList());
+  }
+
+  /**
+   * An EntityStore that serves the test's tickets without a database.
+   */
+  private class TicketStore extends EntityStore {
+    private TicketStore() {
+      super(new TechEmpowerApplication(), null);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends Identifiable> List<T> list(Class<T> type) {
+      return (List<T>)new ArrayList<>(tickets.values());
+    }
+
+    @Override
+    public <T extends Identifiable> T get(Class<T> type, long identifier) {
+      return type.cast(tickets.get(identifier));
+    }
+  }
+
+  public static class Ticket implements Identifiable {
+    private long id;
+    private String status;
+    private long owner;
+    private Integer priority;
+
+    private Ticket(long id, String status, long owner, Integer priority) {
+      this.id = id;
+      this.status = status;
+      this.owner = owner;
+      this.priority = priority;
+    }
+
+    @Override
+    public long getId() {
+      return id;
+    }
+
+    @Override
+    public void setId(long id) {
+      this.id = id;
+    }
+
+    public String getStatus() {
+      return status;
+    }
+
+    public long getOwner() {
+      return owner;
+    }
+
+    public Integer getPriority() {
+      return priority;
+    }
+  }
+}
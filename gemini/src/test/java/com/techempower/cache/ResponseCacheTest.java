@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.cache;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+
+import com.techempower.util.*;
+
+/**
+ * Tests for ResponseCache.
+ */
+public class ResponseCacheTest {
+
+  private static final String KEY = "/products";
+
+  @Test
+  public void concurrentRendersAreCoalesced() throws Exception {
+    final ResponseCache cache = new ResponseCache();
+    final AtomicInteger renders = new AtomicInteger();
+    final CountDownLatch rendering = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<ResponseCache.Entry>> results = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        results.add(executor.submit(() -> cache.get(KEY, () -> {
+          renders.incrementAndGet();
+          rendering.countDown();
+          release.await();
+          return entry("rendered", Collections.emptySet());
+        })));
+      }
+      rendering.await();
+      Thread.sleep(50);
+      release.countDown();
+      for (Future<ResponseCache.Entry> result : results) {
+        assertEquals("rendered", body(result.get(5, TimeUnit.SECONDS)));
+      }
+      assertEquals(1, renders.get());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void entityChangesInvalidateTaggedEntries() throws Exception {
+    final ResponseCache cache = new ResponseCache();
+    cache.put("type", entry("a", Collections.singleton(ResponseCache.tagFor(Widget.class))));
+    cache.put("one", entry("b", Collections.singleton(ResponseCache.tagFor(Widget.class, 1L))));
+    cache.put("two", entry("c", Collections.singleton(ResponseCache.tagFor(Widget.class, 2L))));
+    cache.put("untagged", entry("d", Collections.emptySet()));
+
+    cache.cacheObjectExpired(Widget.class, 1L);
+    assertNull(cache.get("type"));
+    assertNull(cache.get("one"));
+    assertNotNull(cache.get("two"));
+    assertNotNull(cache.get("untagged"));
+
+    cache.cacheTypeReset(Widget.class);
+    assertNull(cache.get("two"));
+    assertNotNull(cache.get("untagged"));
+  }
+
+  @Test
+  public void replacedEntriesKeepTheTagsTheyShare() throws Exception {
+    final ResponseCache cache = new ResponseCache();
+    final String one = ResponseCache.tagFor(Widget.class, 1L);
+    final String two = ResponseCache.tagFor(Widget.class, 2L);
+    cache.put(KEY, entry("first", new HashSet<>(Arrays.asList(one, two))));
+    cache.put(KEY, entry("second", Collections.singleton(one)));
+    assertEquals("second", body(cache.get(KEY)));
+
+    // The tag dropped by the replacement no longer applies to the key.
+    cache.invalidateTag(two);
+    assertEquals("second", body(cache.get(KEY)));
+
+    cache.invalidateTag(one);
+    assertNull(cache.get(KEY));
+  }
+
+  @Test
+  public void expiredAndUncacheableEntriesAreNotServed() throws Exception {
+    final ResponseCache cache = new ResponseCache();
+    cache.put(KEY, new ResponseCache.Entry(bytes("stale"), "text/plain", 0L,
+        Collections.emptySet()));
+    assertNull(cache.get(KEY));
+
+    final ResponseCache.Entry uncacheable = cache.get(KEY, () ->
+        new ResponseCache.Entry(bytes("error"), "text/plain", 60_000L,
+            Collections.emptySet(), false));
+    assertEquals("error", body(uncacheable));
+    assertNull(cache.get(KEY));
+  }
+
+  @Test
+  public void invalidationDuringRenderIsNotRetained() throws Exception {
+    final ResponseCache cache = new ResponseCache();
+    final ResponseCache.Entry rendered = cache.get(KEY, () -> {
+      cache.cacheObjectExpired(Widget.class, 7L);
+      return entry("racy", Collections.singleton(ResponseCache.tagFor(Widget.class, 7L)));
+    });
+    assertEquals("racy", body(rendered));
+    assertNull(cache.get(KEY));
+  }
+
+  private static ResponseCache.Entry entry(String body, Set<String> tags) {
+    return new ResponseCache.Entry(bytes(body), "text/plain; charset=UTF-8",
+        60_000L, tags);
+  }
+
+  private static byte[] bytes(String body) {
+    return body.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String body(ResponseCache.Entry entry) {
+    return new String(entry.getBody(), StandardCharsets.UTF_8);
+  }
+
+  public static class Widget implements Identifiable {
+    private long id;
+
+    @Override
+    public long getId() {
+      return id;
+    }
+
+    @Override
+    public void setId(long id) {
+      this.id = id;
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package com.techempower.collection;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * Tests for ConcurrentLongMap.
+ */
+public class ConcurrentLongMapTest {
+
+  @Test
+  public void putGetRemove() {
+    ConcurrentLongMap<String> map = new ConcurrentLongMap<>();
+    Map<Long, String> expected = new HashMap<>();
+    Random random = new Random(42);
+    for (int i = 0; i < 5000; i++) {
+      long key = random.nextLong() % 2000;
+      if (random.nextInt(3) == 0) {
+        assertEquals(expected.remove(key), map.remove(key));
+      }
+      else {
+        assertEquals(expected.put(key, "v" + i), map.put(key, "v" + i));
+      }
+    }
+    assertEquals(expected.size(), map.size());
+    for (Map.Entry<Long, String> entry : expected.entrySet()) {
+      assertEquals(entry.getValue(), map.get(entry.getKey()));
+      assertTrue(map.containsKey(entry.getKey()));
+    }
+    assertEquals(new HashSet<>(expected.values()), new HashSet<>(map.values()));
+    long[] keys = map.keys();
+    Arrays.sort(keys);
+    assertArrayEquals(expected.keySet().stream().mapToLong(Long::longValue).sorted().toArray(), keys);
+  }
+
+  @Test
+  public void clear() {
+    ConcurrentLongMap<String> map = new ConcurrentLongMap<>();
+    map.put(1L, "one");
+    map.put(Long.MIN_VALUE, "min");
+    assertTrue(map.containsValue("min"));
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertNull(map.get(1L));
+    assertFalse(map.values().iterator().hasNext());
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void rejectsNullValues() {
+    new ConcurrentLongMap<String>().put(1L, null);
+  }
+
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package com.techempower.collection;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * Tests for SortedIndex.
+ */
+public class SortedIndexTest {
+
+  private static final Comparator<int[]> BY_VALUE = 
+      Comparator.<int[]>comparingInt(a -> a[0]).thenComparingInt(a -> a[1]);
+
+  @Test
+  public void addKeepsOrder() {
+    SortedIndex<Integer> index = new SortedIndex<>(Comparator.naturalOrder());
+    List<Integer> expected = new ArrayList<>();
+    Random random = new Random(42);
+    for (int i = 0; i < 1000; i++) {
+      int value = random.nextInt(100000);
+      if (!expected.contains(value)) {
+        expected.add(value);
+      }
+      index.add(value);
+    }
+    Collections.sort(expected);
+    assertEquals(expected.size(), index.size());
+    assertEquals(expected, index.toList());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i), index.get(i));
+      assertEquals(i, index.indexOf(expected.get(i)));
+    }
+  }
+
+  @Test
+  public void removeKeepsOrder() {
+    List<Integer> values = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      values.add(i);
+    }
+    SortedIndex<Integer> index = new SortedIndex<>(Comparator.naturalOrder(), values);
+    Collections.shuffle(values, new Random(7));
+    List<Integer> remaining = new ArrayList<>(values.subList(250, 500));
+    for (Integer value : values.subList(0, 250)) {
+      assertTrue(index.remove(value));
+    }
+    assertFalse(index.remove(-1));
+    Collections.sort(remaining);
+    assertEquals(remaining, index.toList());
+  }
+
+  @Test
+  public void removeFindsMutatedElement() {
+    SortedIndex<int[]> index = new SortedIndex<>(BY_VALUE);
+    int[] mutated = null;
+    for (int i = 0; i < 100; i++) {
+      int[] element = { i * 10, i };
+      if (i == 40) {
+        mutated = element;
+      }
+      index.add(element);
+    }
+    mutated[0] = 995;
+    assertTrue(index.remove(mutated));
+    index.add(mutated);
+    assertEquals(100, index.size());
+    assertSame(mutated, index.get(99));
+    int previous = -1;
+    for (int[] element : index) {
+      assertTrue(element[0] > previous);
+      previous = element[0];
+    }
+  }
+
+  @Test
+  public void iteratorIsSnapshot() {
+    SortedIndex<Integer> index = new SortedIndex<>(Comparator.naturalOrder(), 
+        Arrays.asList(3, 1, 2));
+    Iterator<Integer> iterator = index.iterator();
+    index.add(0);
+    index.remove(2);
+    List<Integer> seen = new ArrayList<>();
+    iterator.forEachRemaining(seen::add);
+    assertEquals(Arrays.asList(1, 2, 3), seen);
+    assertEquals(Arrays.asList(0, 1, 3), index.toList());
+  }
+
+  @Test
+  public void page() {
+    List<Integer> values = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      values.add(i);
+    }
+    SortedIndex<Integer> index = new SortedIndex<>(Comparator.naturalOrder(), values);
+    for (int offset = 0; offset <= 105; offset += 7) {
+      int to = Math.min(offset + 10, 100);
+      assertEquals(offset < 100 ? values.subList(offset, to) : Collections.emptyList(), 
+          index.page(offset, 10));
+    }
+    assertEquals(values, index.page(0, Integer.MAX_VALUE));
+    assertTrue(index.page(0, 0).isEmpty());
+  }
+
+  @Test
+  public void snapshotIsStable() {
+    SortedIndex<Integer> index = new SortedIndex<>(Comparator.naturalOrder(), 
+        Arrays.asList(5, 3, 9));
+    List<Integer> snapshot = index.snapshot();
+    index.add(4);
+    index.remove(9);
+    assertEquals(Arrays.asList(3, 5, 9), snapshot);
+    assertEquals(Integer.valueOf(9), snapshot.get(2));
+    assertEquals(Arrays.asList(3, 4, 5), index.snapshot());
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void getOutOfRange() {
+    new SortedIndex<Integer>(Comparator.naturalOrder()).get(0);
+  }
+
+}
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.data;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.*;
+import java.sql.*;
+
+import org.junit.*;
+
+import com.techempower.util.*;
+
+/**
+ * Tests for ReplicaRoutingConnectorFactory, using stub factories in place
+ * of real databases.
+ */
+public class ReplicaRoutingConnectorFactoryTest {
+
+  private StubFactory primary;
+  private StubFactory replica1;
+  private StubFactory replica2;
+  private long[] lags;
+  private ReplicaRoutingConnectorFactory router;
+
+  @Before
+  public void setUp() {
+    primary = new StubFactory("primary");
+    replica1 = new StubFactory("replica1");
+    replica2 = new StubFactory("replica2");
+    lags = new long[] { 0L, 0L };
+    router = new ReplicaRoutingConnectorFactory(primary, replica1, replica2) {
+      @Override
+      protected long measureLag(ConnectorFactory replica, long now) throws SQLException {
+        final long lag = lags[replica == replica1 ? 0 : 1];
+        if (lag < 0L) {
+          throw new SQLException("Unreachable");
+        }
+        return lag;
+      }
+    };
+    router.configure(new EnhancedProperties()
+        .put("db.Replicas.MaximumLagMillis", 1000)
+        .put("db.Replicas.LagCheckIntervalMillis", 3_600_000));
+  }
+
+  @After
+  public void tearDown() {
+    router.end();
+    ReadRouting.endRequest();
+  }
+
+  @Test
+  public void readsAreSpreadAcrossReplicasAndWritesGoToPrimary() throws SQLException {
+    for (int i = 0; i < 4; i++) {
+      router.getReadConnectionMonitor();
+    }
+    assertEquals(2, replica1.connections);
+    assertEquals(2, replica2.connections);
+    assertEquals(0, primary.connections);
+
+    ReadRouting.beginRequest();
+    router.getConnectionMonitor();
+    assertEquals(1, primary.connections);
+  }
+
+  @Test
+  public void readsFollowWritesWithinARequest() throws SQLException {
+    ReadRouting.beginRequest();
+    assertEquals("replica1", name(router.getReadConnectionMonitor()));
+    router.getConnectionMonitor();
+    assertEquals("primary", name(router.getReadConnectionMonitor()));
+
+    // A new request reads from replicas again.
+    ReadRouting.beginRequest();
+    assertEquals("replica2", name(router.getReadConnectionMonitor()));
+  }
+
+  @Test
+  public void readsFollowWritesOutsideOfARequest() throws SQLException {
+    router.getConnectionMonitor();
+    assertEquals("primary", name(router.getReadConnectionMonitor()));
+    assertEquals(1L, router.getPrimaryReadCount());
+  }
+
+  @Test
+  public void readsWithinAPrimaryScopeGoToPrimary() throws SQLException {
+    try (ReadRouting.Scope outer = ReadRouting.readPrimary()) {
+      try (ReadRouting.Scope inner = ReadRouting.readPrimary()) {
+        assertEquals("primary", name(router.getReadConnectionMonitor()));
+      }
+      assertEquals("primary", name(router.getReadConnectionMonitor()));
+    }
+    assertEquals("replica1", name(router.getReadConnectionMonitor()));
+  }
+
+  @Test
+  public void laggingAndUnavailableReplicasAreSkipped() throws SQLException {
+    lags[0] = 5000L;
+    router.checkReplicas();
+    assertEquals(5000L, router.getReplicaLag(0));
+    assertEquals("replica2", name(router.getReadConnectionMonitor()));
+    assertEquals("replica2", name(router.getReadConnectionMonitor()));
+
+    lags[1] = -1L;
+    router.checkReplicas();
+    assertEquals(-1L, router.getReplicaLag(1));
+    assertEquals("primary", name(router.getReadConnectionMonitor()));
+
+    lags[0] = 0L;
+    lags[1] = 0L;
+    replica1.failing = true;
+    router.checkReplicas();
+    router.getReadConnectionMonitor();
+    router.getReadConnectionMonitor();
+    assertEquals(-1L, router.getReplicaLag(0));
+    assertEquals(0, replica1.connections);
+  }
+
+  private static String name(ConnectionMonitor monitor) {
+    return monitor.toString();
+  }
+
+  /**
+   * A ConnectorFactory whose ConnectionMonitors only report the factory's
+   * name.
+   */
+  private static class StubFactory implements ConnectorFactory {
+    private final String name;
+    private int connections;
+    private boolean failing;
+
+    StubFactory(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public ConnectionMonitor getConnectionMonitor() throws SQLException {
+      if (failing) {
+        throw new SQLException("Connection refused");
+      }
+      connections++;
+      return (ConnectionMonitor)Proxy.newProxyInstance(
+          getClass().getClassLoader(), new Class<?>[] { ConnectionMonitor.class },
+          (proxy, method, args) -> "toString".equals(method.getName()) ? name : null);
+    }
+
+    @Override
+    public void configure(EnhancedProperties props) {
+    }
+
+    @Override
+    public void determineIdentifierQuoteString() {
+    }
+
+    @Override
+    public String getIdentifierQuoteString() {
+      return "\"";
+    }
+
+    @Override
+    public DatabaseAffinity getDatabaseAffinity() {
+      return null;
+    }
+
+    @Override
+    public boolean isEnabled() {
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.data.mapping;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+
+import org.junit.*;
+
+import com.techempower.data.*;
+
+/**
+ * Tests for EntityRowMapper.
+ */
+public class EntityRowMapperTest {
+
+  public static class Row {
+    private int count;
+    private long total;
+    private double ratio;
+    private boolean active;
+    private String name;
+    private Integer nullable;
+
+    public void setCount(int count) { this.count = count; }
+    public void setTotal(long total) { this.total = total; }
+    public void setRatio(double ratio) { this.ratio = ratio; }
+    public Row setActive(boolean active) { this.active = active; return this; }
+    public void setName(String name) { this.name = name; }
+    public void setNullable(Integer nullable) { this.nullable = nullable; }
+  }
+
+  private static DataFieldToMethodMap map(String setter, Class<?> type,
+      String column, int index, int sqlType) throws Exception {
+    return new DataFieldToMethodMap(Row.class.getMethod(setter, type),
+        column, index, sqlType, 0);
+  }
+
+  private static DataFieldToMethodMap[] mappings() throws Exception {
+    return new DataFieldToMethodMap[] {
+        map("setCount", int.class, "count", 1, Types.INTEGER),
+        map("setTotal", long.class, "total", 2, Types.BIGINT),
+        map("setRatio", double.class, "ratio", 3, Types.DOUBLE),
+        map("setActive", boolean.class, "active", 4, Types.BOOLEAN),
+        map("setName", String.class, "name", 5, Types.VARCHAR),
+        map("setNullable", Integer.class, "nullable", 6, Types.INTEGER)
+    };
+  }
+
+  /**
+   * Creates a ResultSet positioned on a single row of the provided values,
+   * indexed from 1.
+   */
+  private static ResultSet row(Object... values) {
+    return (ResultSet)Proxy.newProxyInstance(
+        EntityRowMapperTest.class.getClassLoader(),
+        new Class<?>[] { ResultSet.class },
+        (proxy, method, args) -> {
+          final Object value = values[(Integer)args[0] - 1];
+          switch (method.getName()) {
+            case "getInt": return ((Number)value).intValue();
+            case "getLong": return ((Number)value).longValue();
+            case "getDouble": return ((Number)value).doubleValue();
+            case "getBoolean": return value;
+            case "getString": return value;
+            default: throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+
+  @Test
+  public void readsTypedAndFallbackValues() throws Exception {
+    final EntityRowMapper<Row> mapper = EntityRowMapper.create(mappings(),
+        map -> true,
+        (map, rs) -> map.getFieldName().equals("nullable") ? 42 : null);
+    final Row row = new Row();
+    mapper.read(row, row(7, 8_000_000_000L, 0.5, true, "seven", null));
+
+    assertEquals(7, row.count);
+    assertEquals(8_000_000_000L, row.total);
+    assertEquals(0.5, row.ratio, 0.0);
+    assertTrue(row.active);
+    assertEquals("seven", row.name);
+    assertEquals(Integer.valueOf(42), row.nullable);
+  }
+
+  @Test
+  public void usesFallbackForIndirectMappings() throws Exception {
+    final EntityRowMapper<Row> mapper = EntityRowMapper.create(mappings(),
+        map -> !map.getFieldName().equals("count"),
+        (map, rs) -> map.getFieldName().equals("count") ? 99 : null);
+    final Row row = new Row();
+    mapper.read(row, row(7, 1L, 0.0, false, null, null));
+
+    assertEquals(99, row.count);
+    assertEquals(1L, row.total);
+    assertNull(row.name);
+    assertNull(row.nullable);
+  }
+
+  @Test
+  public void wrapsFieldFailures() throws Exception {
+    final EntityRowMapper<Row> mapper = EntityRowMapper.create(mappings(),
+        map -> true,
+        (map, rs) -> { throw new SQLException("failed"); });
+    try {
+      mapper.read(new Row(), row(1, 1L, 0.0, false, "a", null));
+      fail("Expected an EntityException.");
+    }
+    catch (EntityException e) {
+      assertTrue(e.getMessage().contains("setNullable"));
+      assertTrue(e.getCause() instanceof SQLException);
+    }
+  }
+
+}
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.email;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.mail.*;
+import javax.mail.internet.*;
+
+import org.junit.*;
+
+/**
+ * Tests for SmtpTransportPool against a minimal local SMTP server.
+ */
+public class SmtpTransportPoolTest {
+
+  private StubSmtpServer server;
+  private Session session;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new StubSmtpServer();
+    final Properties props = new Properties();
+    props.put("mail.smtp.host", "127.0.0.1");
+    props.put("mail.smtp.port", "" + server.getPort());
+    props.put("mail.smtp.connectiontimeout", "5000");
+    props.put("mail.smtp.timeout", "5000");
+    session = Session.getInstance(props);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    server.close();
+  }
+
+  @Test
+  public void reusesConnections() throws Exception {
+    final SmtpTransportPool pool = new SmtpTransportPool();
+    for (int i = 0; i < 5; i++) {
+      final SmtpTransportPool.PooledTransport transport = pool.borrow(session);
+      assertEquals(i > 0, transport.isReused());
+      transport.send(message(i));
+      pool.release(transport);
+    }
+    pool.closeIdle();
+    assertEquals(5, server.messages.get());
+    assertEquals(1, server.connections.get());
+    assertEquals(1, pool.getOpenedCount());
+    assertEquals(4, pool.getReusedCount());
+    assertEquals(0, pool.getIdleCount());
+  }
+
+  @Test
+  public void recyclesAfterMaximumMessages() throws Exception {
+    final SmtpTransportPool pool = new SmtpTransportPool();
+    pool.setMaximumMessages(2);
+    for (int i = 0; i < 5; i++) {
+      final SmtpTransportPool.PooledTransport transport = pool.borrow(session);
+      transport.send(message(i));
+      pool.release(transport);
+    }
+    pool.closeIdle();
+    assertEquals(5, server.messages.get());
+    assertEquals(3, server.connections.get());
+  }
+
+  private MimeMessage message(int index) throws MessagingException {
+    final MimeMessage message = new MimeMessage(session);
+    message.setFrom(new InternetAddress("sender@example.com"));
+    message.setRecipients(Message.RecipientType.TO, 
+        InternetAddress.parse("recipient" + index + "@example.com"));
+    message.setSubject("Message " + index);
+    message.setText("Body " + index);
+    message.saveChanges();
+    return message;
+  }
+
+  /**
+   * Accepts SMTP connections and acknowledges every command.
+   */
+  private static class StubSmtpServer implements Closeable {
+    private final ServerSocket socket = new ServerSocket(0);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger messages = new AtomicInteger();
+
+    private StubSmtpServer() throws IOException {
+      executor.execute(this::accept);
+    }
+
+    private int getPort() {
+      return socket.getLocalPort();
+    }
+
+    private void accept() {
+      try {
+        while (true) {
+          final Socket client = socket.accept();
+          connections.incrementAndGet();
+          executor.execute(() -> converse(client));
+        }
+      }
+      catch (IOException e) {
+        // Closed.
+      }
+    }
+
+    private void converse(Socket client) {
+      try (Socket c = client;
+           BufferedReader in = new BufferedReader(new InputStreamReader(
+               c.getInputStream(), StandardCharsets.US_ASCII));
+           Writer out = new OutputStreamWriter(c.getOutputStream(), 
+               StandardCharsets.US_ASCII)) {
+        reply(out, "220 stub");
+        String line;
+        while ((line = in.readLine()) != null) {
+          final String command = line.toUpperCase();
+          if (command.startsWith("DATA")) {
+            reply(out, "354 go ahead");
+            while (!".".equals(in.readLine())) {
+              // Consume the message.
+            }
+            messages.incrementAndGet();
+            reply(out, "250 queued");
+          }
+          else if (command.startsWith("QUIT")) {
+            reply(out, "221 bye");
+            return;
+          }
+          else {
+            reply(out, "250 OK");
+          }
+        }
+      }
+      catch (IOException e) {
+        // Client went away.
+      }
+    }
+
+    private static void reply(Writer out, String line) throws IOException {
+      out.write(line + "\r\n");
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.close();
+      executor.shutdownNow();
+    }
+  }
+
+}
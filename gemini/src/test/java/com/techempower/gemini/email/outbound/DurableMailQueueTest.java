@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.email.outbound;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import com.techempower.gemini.email.*;
+
+/**
+ * Tests for DurableMailQueue.
+ */
+public class DurableMailQueueTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void recoversUnacknowledgedMail() throws IOException {
+    final File directory = folder.newFolder();
+    try (DurableMailQueue queue = new DurableMailQueue(directory, 4096)) {
+      for (int i = 0; i < 5; i++) {
+        queue.append(email(i));
+      }
+      final DurableMailQueue.Entry first = queue.poll();
+      final DurableMailQueue.Entry second = queue.poll();
+      assertEquals("Subject 0", first.getEmail().getSubject());
+      assertEquals("recipient1@example.com", second.getEmail().getRecipient());
+      queue.acknowledge(first);
+      // The second is read but never acknowledged, as if the application
+      // stopped during its delivery.
+      assertEquals(4, queue.getPendingCount());
+    }
+
+    try (DurableMailQueue queue = new DurableMailQueue(directory, 4096)) {
+      assertEquals(4, queue.getPendingCount());
+      final List<String> subjects = new ArrayList<>();
+      DurableMailQueue.Entry entry;
+      while ((entry = queue.poll()) != null) {
+        subjects.add(entry.getEmail().getSubject());
+        queue.acknowledge(entry);
+      }
+      assertEquals(Arrays.asList("Subject 1", "Subject 2", "Subject 3", "Subject 4"), 
+          subjects);
+      assertEquals(0, queue.getPendingCount());
+    }
+  }
+
+  @Test
+  public void rollsOverAndDeletesSegments() throws IOException {
+    final File directory = folder.newFolder();
+    try (DurableMailQueue queue = new DurableMailQueue(directory, 1024)) {
+      for (int i = 0; i < 50; i++) {
+        queue.append(email(i));
+      }
+      assertTrue(queue.getSegmentCount() > 3);
+      for (int i = 0; i < 50; i++) {
+        final DurableMailQueue.Entry entry = queue.poll();
+        assertEquals("Subject " + i, entry.getEmail().getSubject());
+        queue.acknowledge(entry);
+      }
+      assertNull(queue.poll());
+      assertEquals(1, queue.getSegmentCount());
+      assertEquals(1, directory.list().length);
+    }
+  }
+
+  @Test
+  public void discardsTornRecord() throws IOException {
+    final File directory = folder.newFolder();
+    try (DurableMailQueue queue = new DurableMailQueue(directory, 4096)) {
+      queue.append(email(0));
+      queue.append(email(1));
+    }
+    // Corrupt the last byte of the second record's payload.
+    final File segment = directory.listFiles()[0];
+    try (FileChannel channel = FileChannel.open(segment.toPath(), 
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 4096);
+      final int second = 9 + buffer.getInt(0);
+      final int end = second + 9 + buffer.getInt(second);
+      buffer.put(end - 1, (byte)(buffer.get(end - 1) + 1));
+    }
+    try (DurableMailQueue queue = new DurableMailQueue(directory, 4096)) {
+      assertEquals(1, queue.getPendingCount());
+      assertEquals("Subject 0", queue.poll().getEmail().getSubject());
+      assertNull(queue.poll());
+    }
+  }
+
+  private static EmailPackage email(int index) {
+    final EmailPackage email = new EmailPackage("Subject " + index, 
+        "Body " + index, "recipient" + index + "@example.com", 
+        "author@example.com");
+    email.addHeader(new EmailHeader("X-Index", "" + index));
+    return email;
+  }
+
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.mustache;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+import com.github.mustachejava.*;
+
+/**
+ * Tests for EncodedTemplateWriter.
+ */
+public class EncodedTemplateWriterTest {
+
+  private static final String TEMPLATE =
+      "<ul class=\"café\">{{#items}}<li>{{name}} — 😀</li>{{/items}}</ul>";
+
+  @Test
+  public void matchesWriterOutputAcrossBufferFlushes() throws IOException {
+    final Mustache mustache = compile();
+    final Object scope = scope("plain", "ümläut", "emoji 🎉", "cjk 漢字");
+    final Map<char[], byte[]> segments = new ConcurrentHashMap<>();
+
+    final byte[] first = render(mustache, scope, segments);
+    final int segmentCount = segments.size();
+    final byte[] second = render(mustache, scope, segments);
+
+    assertEquals(expected(mustache, scope), new String(first, StandardCharsets.UTF_8));
+    assertArrayEquals(first, second);
+    assertTrue(segmentCount > 0);
+    assertEquals(segmentCount, segments.size());
+  }
+
+  @Test
+  public void encodesWithoutSegmentMap() throws IOException {
+    final Mustache mustache = compile();
+    final Object scope = scope("a", "b");
+    assertEquals(expected(mustache, scope),
+        new String(render(mustache, scope, null), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void surrogatePairsSplitAcrossWrites() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final EncodedTemplateWriter writer = new EncodedTemplateWriter(out, new byte[16], null);
+    writer.write("x\ud83d");
+    writer.write("\ude00y");
+    writer.write("\ud83d");
+    writer.close();
+    assertEquals("x😀y?", new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  private static Mustache compile() {
+    return new DefaultMustacheFactory().compile(new StringReader(TEMPLATE), "list");
+  }
+
+  private static byte[] render(Mustache mustache, Object scope,
+      Map<char[], byte[]> segments) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final EncodedTemplateWriter writer = new EncodedTemplateWriter(out, new byte[16], segments);
+    mustache.execute(writer, scope);
+    writer.close();
+    return out.toByteArray();
+  }
+
+  private static String expected(Mustache mustache, Object scope) {
+    final StringWriter writer = new StringWriter();
+    mustache.execute(writer, scope);
+    return writer.toString();
+  }
+
+  private static Object scope(String... names) {
+    final List<Map<String, String>> items = new ArrayList<>();
+    for (String name : names) {
+      items.add(Collections.singletonMap("name", name));
+    }
+    return Collections.singletonMap("items", items);
+  }
+}
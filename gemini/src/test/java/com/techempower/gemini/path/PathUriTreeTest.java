@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.path;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+import com.esotericsoftware.reflectasm.*;
+import com.techempower.gemini.Request.*;
+import com.techempower.gemini.path.MethodUriHandler.*;
+
+/**
+ * Tests for MethodUriHandler's route table.
+ */
+public class PathUriTreeTest {
+
+  public static class Handler {
+    public boolean none() { return true; }
+    public boolean one(String a) { return true; }
+    public boolean two(String a, String b) { return true; }
+  }
+
+  private static PathUriTree tree(String... routes) throws Exception {
+    final MethodAccess access = MethodAccess.get(Handler.class);
+    final PathUriTree tree = new PathUriTree();
+    for (String route : routes) {
+      final int variables = route.split("\\{", -1).length - 1;
+      final String name = variables == 0 ? "none" : variables == 1 ? "one" : "two";
+      tree.addMethod(new PathUriMethod(
+          Handler.class.getMethod(name, 
+              Collections.nCopies(variables, String.class).toArray(new Class<?>[0])),
+          route, HttpMethod.GET, access));
+    }
+    return tree;
+  }
+
+  private static String search(PathUriTree tree, String uri) {
+    final PathUriMethod method = tree.search(new PathSegments(uri));
+    return method == null ? null : method.uri;
+  }
+
+  @Test
+  public void exactBeatsVariableBeatsWildcard() throws Exception {
+    final PathUriTree tree = tree("users/new", "users/{id}", "users/*");
+    assertEquals("users/new", search(tree, "/users/new"));
+    assertEquals("users/{id}", search(tree, "/users/42"));
+    assertEquals("users/*", search(tree, "/users/42/extra"));
+    assertNull(search(tree, "/users"));
+  }
+
+  @Test
+  public void fallsBackWhenExactBranchDeadEnds() throws Exception {
+    final PathUriTree tree = tree("users/new/form", "users/{id}/{tab}");
+    assertEquals("users/new/form", search(tree, "/users/new/form"));
+    assertEquals("users/{id}/{tab}", search(tree, "/users/new/posts"));
+    assertNull(search(tree, "/users/new"));
+  }
+
+  @Test
+  public void rootRoutes() throws Exception {
+    final PathUriTree tree = tree("", "{page}");
+    assertEquals("", search(tree, ""));
+    assertEquals("{page}", search(tree, "/about"));
+    assertNull(search(tree, "/about/us"));
+  }
+
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.pyxis;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+
+/**
+ * Tests for FailedAttemptTracker.
+ */
+public class FailedAttemptTrackerTest {
+
+  @Test
+  public void countsWithinWindow() {
+    final AtomicLong now = new AtomicLong(1_000_000L);
+    final FailedAttemptTracker tracker = 
+        new FailedAttemptTracker(60_000L, 64 * 1024, now::get);
+    assertEquals(1, tracker.recordFailure("client:1.2.3.4"));
+    assertEquals(2, tracker.recordFailure("client:1.2.3.4"));
+    assertEquals(1, tracker.recordFailure("client:5.6.7.8"));
+    // Failures age out once the window has passed.
+    now.addAndGet(70_000L);
+    assertEquals(0, tracker.getFailures("client:1.2.3.4"));
+    assertEquals(1, tracker.recordFailure("client:1.2.3.4"));
+  }
+
+  @Test
+  public void clearsAndLocksOut() {
+    final AtomicLong now = new AtomicLong(1_000_000L);
+    final FailedAttemptTracker tracker = 
+        new FailedAttemptTracker(60_000L, 64 * 1024, now::get);
+    tracker.recordFailure("user:alice");
+    tracker.recordFailure("user:alice");
+    tracker.clear("user:alice");
+    assertEquals(0, tracker.getFailures("user:alice"));
+    
+    tracker.lockOut("user:alice", now.get() + 5_000L);
+    assertTrue(tracker.isLockedOut("user:alice"));
+    assertFalse(tracker.isLockedOut("user:bob"));
+    now.addAndGet(5_000L);
+    assertFalse(tracker.isLockedOut("user:alice"));
+    assertEquals(1, tracker.getLockoutCount());
+  }
+
+  @Test
+  public void keysWithEqualHashCodesAreCountedSeparately() {
+    final FailedAttemptTracker tracker = 
+        new FailedAttemptTracker(60_000L, 64 * 1024, () -> 0L);
+    assertEquals("Aa".hashCode(), "BB".hashCode());
+    tracker.recordFailure("Aa");
+    tracker.recordFailure("Aa");
+    tracker.lockOut("Aa", 5_000L);
+    assertEquals(0, tracker.getFailures("BB"));
+    assertFalse(tracker.isLockedOut("BB"));
+  }
+
+  @Test
+  public void estimatesTrackedKeysInFixedMemory() {
+    final FailedAttemptTracker tracker = 
+        new FailedAttemptTracker(60_000L, 256 * 1024, () -> 0L);
+    for (int i = 0; i < 500; i++) {
+      tracker.recordFailure("client:10.0." + (i / 256) + "." + (i % 256));
+    }
+    final int estimate = tracker.getEstimatedTrackedKeys();
+    assertTrue(String.valueOf(estimate), estimate > 450 && estimate < 550);
+    assertEquals(1, tracker.getFailures("client:10.0.0.1"));
+  }
+
+}
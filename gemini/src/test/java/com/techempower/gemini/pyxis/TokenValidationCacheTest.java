@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.pyxis;
+
+import static org.junit.Assert.*;
+
+import java.sql.*;
+import java.util.*;
+
+import org.junit.*;
+
+import com.techempower.gemini.pyxis.LoginTokenManager.*;
+
+/**
+ * Tests for TokenValidationCache.
+ */
+public class TokenValidationCacheTest {
+
+  private final Set<Long> tokens = new HashSet<>();
+  private final TokenValidationCache cache = new TokenValidationCache(100, 60);
+
+  private TokenValidation get(String cookieValue) throws SQLException {
+    return cache.get(cookieValue, tokens::contains);
+  }
+
+  @Test
+  public void servesValidationsWhileTheirTokensExist() throws SQLException {
+    final TokenValidation validation = new TokenValidation(true, "alice", 1L);
+    tokens.add(1L);
+    cache.put("alice|token", validation);
+    assertSame(validation, get("alice|token"));
+    assertNull(get("bob|token"));
+  }
+
+  @Test
+  public void revokedTokensAreNotServed() throws SQLException {
+    // E.g., purged, trimmed, or cleared by another instance; or re-cached
+    // by a request that read the token just before it was deleted.
+    tokens.add(1L);
+    cache.put("alice|token", new TokenValidation(true, "alice", 1L));
+    tokens.remove(1L);
+    assertNull(get("alice|token"));
+    tokens.add(1L);
+    assertNull(get("alice|token"));
+  }
+
+  @Test
+  public void failedValidationsNeedNoToken() throws SQLException {
+    final TokenValidation failure = new TokenValidation(false, "alice", 0L);
+    cache.put("alice|wrong", failure);
+    assertSame(failure, get("alice|wrong"));
+  }
+
+  @Test
+  public void invalidatesByUser() throws SQLException {
+    tokens.add(1L);
+    tokens.add(2L);
+    cache.put("alice|token", new TokenValidation(true, "alice", 1L));
+    cache.put("bob|token", new TokenValidation(true, "bob", 2L));
+    cache.invalidateUser("alice");
+    assertNull(get("alice|token"));
+    assertNotNull(get("bob|token"));
+    cache.invalidateAll();
+    assertNull(get("bob|token"));
+  }
+
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.ratelimit;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+
+/**
+ * Tests for RateLimiter and PrefixTrie.
+ */
+public class RateLimiterTest {
+
+  private static final long MILLIS = 1_000_000L;
+
+  @Test
+  public void limitsWithinWindow() {
+    final AtomicLong now = new AtomicLong();
+    final RateLimiter limiter = new RateLimiter(3, 1000, 100, now::get);
+    assertTrue(limiter.tryAcquire("a"));
+    assertTrue(limiter.tryAcquire("a"));
+    assertTrue(limiter.tryAcquire("a"));
+    assertFalse(limiter.tryAcquire("a"));
+    assertTrue(limiter.tryAcquire("b"));
+    assertEquals(4, limiter.getAcceptedCount());
+    assertEquals(1, limiter.getRejectedCount());
+  }
+
+  @Test
+  public void slidesPreviousWindow() {
+    final AtomicLong now = new AtomicLong();
+    final RateLimiter limiter = new RateLimiter(4, 1000, 100, now::get);
+    for (int i = 0; i < 4; i++) {
+      assertTrue(limiter.tryAcquire("a"));
+    }
+    // Half of the previous window still overlaps: 4 * 0.5 = 2 counted.
+    now.set(1500 * MILLIS);
+    assertTrue(limiter.tryAcquire("a"));
+    assertTrue(limiter.tryAcquire("a"));
+    assertFalse(limiter.tryAcquire("a"));
+    // Two windows later, nothing carries over.
+    now.set(3000 * MILLIS);
+    for (int i = 0; i < 4; i++) {
+      assertTrue(limiter.tryAcquire("a"));
+    }
+  }
+
+  @Test
+  public void boundsTrackedKeys() {
+    final RateLimiter limiter = new RateLimiter(1, 1000, 128, () -> 0L);
+    for (int i = 0; i < 10_000; i++) {
+      limiter.tryAcquire("10.0." + (i / 256) + "." + (i % 256));
+    }
+    assertTrue(limiter.size() <= 128);
+  }
+
+  @Test
+  public void matchesLongestPrefix() {
+    final PrefixTrie<String> trie = new PrefixTrie<String>()
+        .put("/api/", "api")
+        .put("/api/search", "search");
+    assertEquals("search", trie.longestMatch("/api/search?q=1"));
+    assertEquals("api", trie.longestMatch("/api/users"));
+    assertNull(trie.longestMatch("/ap"));
+    assertNull(trie.longestMatch(null));
+    assertTrue(PrefixTrie.of("10.0.", "192.168.1.").matches("192.168.1.20"));
+    assertFalse(PrefixTrie.of("10.0.").matches("110.0.0.1"));
+  }
+
+}
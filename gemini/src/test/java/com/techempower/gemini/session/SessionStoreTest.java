@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.session;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * Tests for the parts of StoredSessionManager that do not require an
+ * application: serialization, the memory store, and the expiry wheel.
+ */
+public class SessionStoreTest {
+
+  static class Owner {
+  }
+
+  static class Value {
+    Owner owner;
+    List<String> items = new ArrayList<>();
+    Value(Owner owner) { this.owner = owner; }
+  }
+
+  @Test
+  public void serializesSingletonsByReference() {
+    final Owner owner = new Owner();
+    final SessionSerializer serializer = new SessionSerializer()
+        .addSingleton(Owner.class, () -> owner);
+    final Value value = new Value(owner);
+    value.items.add("a");
+    final Value copy = (Value)serializer.deserialize(serializer.serialize(value));
+    assertSame(owner, copy.owner);
+    assertEquals(value.items, copy.items);
+  }
+
+  @Test
+  public void savesOnlyChangedAttributes() {
+    final MemorySessionStore store = new MemorySessionStore();
+    final SessionRecord record = new SessionRecord("s", 0L, 0L, 60, 0);
+    store.save(record, true, Collections.singletonMap("a", new byte[] { 1 }), 
+        Collections.emptySet());
+    store.save(record, false, Collections.singletonMap("b", new byte[] { 2 }), 
+        Collections.emptySet());
+    assertArrayEquals(new byte[] { 1 }, store.loadAttribute("s", "a"));
+    store.save(record, false, Collections.emptyMap(), Collections.singleton("a"));
+    assertEquals(Collections.singleton("b"), store.getAttributeNames("s"));
+    assertEquals(0, store.purgeExpired(59_999L));
+    assertEquals(1, store.purgeExpired(60_000L));
+    assertNull(store.load("s"));
+  }
+
+  @Test
+  public void saveDoesNotRecreateDeletedSession() {
+    final MemorySessionStore store = new MemorySessionStore();
+    final SessionRecord record = new SessionRecord("s", 0L, 0L, 60, 0);
+    store.save(record, true, Collections.singletonMap("user", new byte[] { 1 }), 
+        Collections.emptySet());
+    store.delete("s");
+    store.save(record, false, Collections.singletonMap("user", new byte[] { 2 }), 
+        Collections.emptySet());
+    assertNull(store.load("s"));
+    assertNull(store.loadAttribute("s", "user"));
+    assertEquals(0, store.size());
+  }
+
+  @Test
+  public void wheelReleasesEntriesWhenDue() {
+    final SessionExpiryWheel wheel = new SessionExpiryWheel(1000L, 8, 0L);
+    wheel.add("soon", 2500L);
+    wheel.add("later", 20_000L);
+    final List<String> due = new ArrayList<>();
+    wheel.advance(2999L, due::add);
+    assertTrue(due.isEmpty());
+    wheel.advance(3000L, due::add);
+    assertEquals(Collections.singletonList("soon"), due);
+    // "later" shares a slot with earlier ticks but is held until its own.
+    wheel.advance(19_999L, due::add);
+    assertEquals(1, due.size());
+    wheel.advance(20_000L, due::add);
+    assertEquals(Arrays.asList("soon", "later"), due);
+    assertEquals(0, wheel.size());
+  }
+
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.gemini.simulation;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+/**
+ * Tests for LoadHarness and LatencyHistogram.
+ */
+public class LoadHarnessTest {
+
+  @Test
+  public void histogramPercentilesAreWithinPrecision() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 1; value <= 10_000; value++) {
+      histogram.record(value * 1_000L);
+    }
+    assertEquals(10_000, histogram.getCount());
+    assertEquals(10_000_000L, histogram.getMax());
+    assertWithin(5_000_000L, histogram.getValueAtPercentile(50.0));
+    assertWithin(9_900_000L, histogram.getValueAtPercentile(99.0));
+    assertEquals(10_000_000L, histogram.getValueAtPercentile(100.0));
+  }
+
+  @Test
+  public void histogramBucketsCoverTheirValues() {
+    for (long value : new long[] { 0L, 127L, 128L, 1_000L, 123_456_789L, Long.MAX_VALUE }) {
+      final int index = LatencyHistogram.indexFor(value);
+      assertTrue(LatencyHistogram.highestValueFor(index) >= value);
+      if (index > 0) {
+        assertTrue(LatencyHistogram.highestValueFor(index - 1) < value);
+      }
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void runsEachClientThroughTheScenario() throws Exception {
+    final Set<Integer> clientIds = ConcurrentHashMap.newKeySet();
+    final LoadHarness harness = new LoadHarness(null) {
+      @Override
+      protected int execute(SimClient client, LoadScenario.Step step) {
+        clientIds.add(client.getId());
+        return step.getUrl().startsWith("/missing") ? 404 : 200;
+      }
+    };
+    final LoadScenario scenario = new LoadScenario("test")
+        .get("/home?page=1")
+        .get("/home?page=2")
+        .post("/missing", Collections.singletonMap("a", "b"));
+
+    final LoadReport report = harness.setClients(4).setIterations(5).run(scenario);
+
+    assertEquals(4, clientIds.size());
+    assertEquals(60, report.getRequestCount());
+    assertEquals(2, report.getRoutes().size());
+    assertEquals(40, report.getRoute("/home").getLatency().getCount());
+    assertEquals(0, report.getRoute("/home").getErrorCount());
+    assertEquals(20, report.getRoute("/missing").getErrorCount());
+    assertTrue(report.getThroughput() > 0.0);
+    assertTrue(report.toString().contains("/missing"));
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue("Expected about " + expected + " but was " + actual,
+        Math.abs(actual - expected) <= expected / 50);
+  }
+
+}
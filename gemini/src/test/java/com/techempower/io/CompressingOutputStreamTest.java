@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.io;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.zip.*;
+
+import org.junit.*;
+
+import com.techempower.io.CompressingOutputStream.Encoding;
+
+/**
+ * Tests for CompressingOutputStream and DeflaterPool.
+ */
+public class CompressingOutputStreamTest {
+
+  private static final byte[] CONTENT = repeat("{\"id\":1,\"name\":\"Gemini\"},", 500)
+      .getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  public void gzipIsReadableByGzipInputStream() throws IOException {
+    final DeflaterPool pool = new DeflaterPool(6, Encoding.GZIP.isNowrap(), 2);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final CompressingOutputStream gzip = new CompressingOutputStream(out, Encoding.GZIP, pool);
+    gzip.write(CONTENT, 0, 100);
+    gzip.flush();
+    gzip.write(CONTENT, 100, CONTENT.length - 100);
+    gzip.finish();
+
+    assertArrayEquals(CONTENT, readAll(new GZIPInputStream(
+        new ByteArrayInputStream(out.toByteArray()))));
+    assertEquals(CONTENT.length, gzip.getBytesIn());
+    assertEquals(out.size(), gzip.getBytesOut());
+    assertTrue(gzip.getBytesOut() < CONTENT.length / 10);
+    assertEquals(1, pool.getIdleCount());
+  }
+
+  @Test
+  public void deflateIsZlibFormat() throws IOException {
+    final DeflaterPool pool = new DeflaterPool(6, Encoding.DEFLATE.isNowrap(), 2);
+    for (int i = 0; i < 2; i++) {
+      // The second pass reuses the pooled Deflater.
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (CompressingOutputStream deflate = new CompressingOutputStream(out, Encoding.DEFLATE, pool)) {
+        deflate.write(CONTENT);
+      }
+      assertArrayEquals(CONTENT, readAll(new InflaterInputStream(
+          new ByteArrayInputStream(out.toByteArray()))));
+    }
+    assertEquals(1, pool.getIdleCount());
+  }
+
+  @Test
+  public void negotiatesPreferredEncoding() {
+    assertNull(Encoding.negotiate(null));
+    assertNull(Encoding.negotiate("identity"));
+    assertNull(Encoding.negotiate("gzip;q=0, deflate;q=0"));
+    assertEquals(Encoding.GZIP, Encoding.negotiate("gzip, deflate, br"));
+    assertEquals(Encoding.GZIP, Encoding.negotiate("x-gzip"));
+    assertEquals(Encoding.DEFLATE, Encoding.negotiate("gzip;q=0.5, deflate"));
+    assertEquals(Encoding.DEFLATE, Encoding.negotiate("gzip;q=0, *"));
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    try (InputStream input = in) {
+      return input.readAllBytes();
+    }
+  }
+
+  private static String repeat(String text, int count) {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      sb.append(text);
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.js;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+
+import org.junit.*;
+
+/**
+ * Tests for JacksonJavaScriptWriter.
+ */
+public class JacksonJavaScriptWriterTest {
+
+  private final JacksonJavaScriptWriter writer = new JacksonJavaScriptWriter();
+
+  @Test
+  public void writesObjectToNonWriterAppendable() throws IOException {
+    final StringBuilder out = new StringBuilder();
+    writer.write(Collections.singletonMap("a", 1), out);
+    assertEquals("{\"a\":1}", out.toString());
+  }
+
+  @Test
+  public void writesUtf8ToOutputStreamAndLeavesItOpen() throws IOException {
+    final Map<String, Object> object = new LinkedHashMap<>();
+    object.put("name", "café");
+    object.put("values", Arrays.asList(1, 2, 3));
+    final AtomicBoolean closed = new AtomicBoolean();
+    final ByteArrayOutputStream out = new ByteArrayOutputStream() {
+      @Override
+      public void close() {
+        closed.set(true);
+      }
+    };
+
+    writer.write(object, out);
+
+    assertEquals(writer.write(object), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    assertFalse(closed.get());
+  }
+
+  @Test
+  public void writesStreamsAsArraysAndClosesThem() throws IOException {
+    final AtomicBoolean closed = new AtomicBoolean();
+    final Stream<Integer> source = IntStream.rangeClosed(1, 3).boxed()
+        .onClose(() -> closed.set(true));
+    final StringWriter out = new StringWriter();
+
+    writer.write(source, out);
+
+    assertEquals("[1,2,3]", out.toString());
+    assertTrue(closed.get());
+  }
+
+  @Test
+  public void writesIteratorsLazily() throws IOException {
+    final AtomicInteger produced = new AtomicInteger();
+    final Iterator<Integer> source = new Iterator<Integer>() {
+      @Override
+      public boolean hasNext() {
+        return produced.get() < 3;
+      }
+      @Override
+      public Integer next() {
+        return produced.incrementAndGet();
+      }
+    };
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    writer.write(source, out);
+
+    assertEquals("[1,2,3]", new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+}
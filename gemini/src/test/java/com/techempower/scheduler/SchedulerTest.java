@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2018, TechEmpower, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name TechEmpower, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TECHEMPOWER, INC. BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+
+package com.techempower.scheduler;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+import com.techempower.*;
+
+/**
+ * Tests for Scheduler.
+ */
+public class SchedulerTest {
+
+  private Scheduler scheduler;
+
+  @Before
+  public void setUp() {
+    scheduler = new TechEmpowerApplication().getScheduler();
+    // Long enough that only waking for the due event can run it in time.
+    scheduler.setSleepTime(600);
+  }
+
+  @After
+  public void tearDown() {
+    scheduler.end();
+  }
+
+  @Test(timeout = 5000)
+  public void wakesWhenEventIsDue() throws Exception {
+    final CountDownLatch ran = new CountDownLatch(2);
+    scheduler.begin();
+    // Scheduled after the Scheduler thread has started waiting.
+    Thread.sleep(100L);
+    final ScheduledEvent event = new ScheduledEvent("Test", "Test") {
+      @Override
+      public void execute(Scheduler s, boolean onDemand) {
+        ran.countDown();
+        if (ran.getCount() > 0) {
+          s.scheduleEvent(this, System.currentTimeMillis() + 50L);
+        }
+        else {
+          s.removeEvent(this);
+        }
+      }
+    };
+    scheduler.scheduleEvent(event, System.currentTimeMillis() + 50L);
+    assertTrue(ran.await(2, TimeUnit.SECONDS));
+    assertEquals(2, event.getExecutions());
+  }
+
+  @Test(timeout = 5000)
+  public void runsOwnThreadEventsOnWorkers() throws Exception {
+    final BlockingQueue<String> threadNames = new LinkedBlockingQueue<>();
+    final ScheduledEvent event = new ScheduledEvent("Worker", "Worker") {
+      @Override
+      public boolean requiresOwnThread() {
+        return true;
+      }
+
+      @Override
+      public void execute(Scheduler s, boolean onDemand) {
+        s.removeEvent(this);
+        threadNames.add(Thread.currentThread().getName());
+      }
+    };
+    scheduler.begin();
+    scheduler.scheduleEvent(event, System.currentTimeMillis() + 50L);
+    assertTrue(threadNames.poll(2, TimeUnit.SECONDS).startsWith("Event Runner"));
+    assertEquals(1, scheduler.getWorkerExecutionCount());
+    assertTrue(scheduler.getEvents().isEmpty());
+  }
+
+}